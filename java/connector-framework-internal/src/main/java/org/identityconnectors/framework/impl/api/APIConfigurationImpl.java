@@ -31,6 +31,7 @@ import java.util.Set;
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ObjectCacheConfiguration;
 import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.api.operations.APIOperation;
 
@@ -46,6 +47,12 @@ public class APIConfigurationImpl implements APIConfiguration {
 
     private ResultsHandlerConfiguration resultsHandlerConfiguration;
 
+    private ObjectCacheConfiguration objectCacheConfiguration;
+
+    private String syncSnapshotDirectory;
+
+    private long schemaCacheTimeToLive;
+
     private boolean isConnectorPoolingSupported;
 
     private ConfigurationPropertiesImpl configurationProperties;
@@ -85,6 +92,11 @@ public class APIConfigurationImpl implements APIConfiguration {
         if (null != other.resultsHandlerConfiguration) {
             this.setResultsHandlerConfiguration(new ResultsHandlerConfiguration(other.resultsHandlerConfiguration));
         }
+        if (null != other.objectCacheConfiguration) {
+            this.setObjectCacheConfiguration(new ObjectCacheConfiguration(other.objectCacheConfiguration));
+        }
+        this.syncSnapshotDirectory = other.syncSnapshotDirectory;
+        this.schemaCacheTimeToLive = other.schemaCacheTimeToLive;
         this.isConnectorPoolingSupported = other.isConnectorPoolingSupported;
         ConfigurationPropertiesImpl prop = new ConfigurationPropertiesImpl();
         prop.setProperties(other.getConfigurationProperties().getProperties());
@@ -232,4 +244,51 @@ public class APIConfigurationImpl implements APIConfiguration {
     public void setResultsHandlerConfiguration(ResultsHandlerConfiguration config) {
         this.resultsHandlerConfiguration = config;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ObjectCacheConfiguration getObjectCacheConfiguration() {
+        if (null == objectCacheConfiguration) {
+            objectCacheConfiguration = new ObjectCacheConfiguration();
+        }
+        return objectCacheConfiguration;
+    }
+
+    public void setObjectCacheConfiguration(ObjectCacheConfiguration config) {
+        this.objectCacheConfiguration = config;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSyncSnapshotDirectory(String directory) {
+        this.syncSnapshotDirectory = directory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSyncSnapshotDirectory() {
+        return syncSnapshotDirectory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSchemaCacheTimeToLiveMillis(long timeToLive) {
+        this.schemaCacheTimeToLive = timeToLive;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSchemaCacheTimeToLiveMillis() {
+        return schemaCacheTimeToLive;
+    }
 }
@@ -28,13 +28,22 @@ package org.identityconnectors.framework.impl.api;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.Base64;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.AuthenticationApiOp;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
 import org.identityconnectors.framework.api.operations.DeleteApiOp;
 import org.identityconnectors.framework.api.operations.GetApiOp;
@@ -50,6 +59,8 @@ import org.identityconnectors.framework.api.operations.UpdateDeltaApiOp;
 import org.identityconnectors.framework.api.operations.ValidateApiOp;
 import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.AttributeDelta;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResultsHandler;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
@@ -62,6 +73,10 @@ import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
+import org.identityconnectors.framework.impl.metrics.ConnectorMetrics;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
+import org.identityconnectors.framework.impl.metrics.OperationMetrics;
+import org.identityconnectors.framework.impl.trace.OperationTracer;
 
 /**
  * Implements all the methods of the facade.
@@ -72,6 +87,22 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
 
     private final String connectorFacadeKey;
 
+    /**
+     * Operation pipelines built so far, keyed by API operation.
+     */
+    private final ConcurrentMap<Class<? extends APIOperation>, CachedOperation> operations =
+            new ConcurrentHashMap<Class<? extends APIOperation>, CachedOperation>();
+
+    /**
+     * Objects read through this facade, see {@link #getObjectCache()}.
+     */
+    private ObjectCache objectCache;
+
+    /**
+     * {@link System#nanoTime()} of the last operation looked up.
+     */
+    private volatile long lastUsed = System.nanoTime();
+
     /**
      * Builds up the maps of supported operations and calls.
      */
@@ -109,10 +140,11 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
      */
     @Override
     public final APIOperation getOperation(Class<? extends APIOperation> api) {
-        if (!configuration.isSupportedOperation(api)) {
+        if (!isSupportedOperation(api)) {
             return null;
         }
-        return getOperationImplementation(api);
+        lastUsed = System.nanoTime();
+        return getCachedOperation(api);
     }
 
     /**
@@ -128,14 +160,53 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         return connectorFacadeKey;
     }
 
+    /**
+     * Returns the key of this facade qualified by the connector running it.
+     * Two versions of a bundle, or the same connector on two connector
+     * servers, may run facades of the same configuration key. It is also the
+     * key of the schema of this facade in the {@link SchemaCache}.
+     */
+    protected String getQualifiedKey() {
+        return qualifyKey(configuration.getConnectorInfo().getConnectorKey(), connectorFacadeKey);
+    }
+
+    /**
+     * Qualifies the configuration key of a facade by the connector running it.
+     */
+    public static String qualifyKey(final ConnectorKey connectorKey,
+            final String connectorFacadeKey) {
+        return connectorKey.getBundleName() + ":" + connectorKey.getBundleVersion() + ":"
+                + connectorKey.getConnectorName() + "/" + connectorFacadeKey;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public final Set<Class<? extends APIOperation>> getSupportedOperations() {
+        if (isSyncEmulated()) {
+            Set<Class<? extends APIOperation>> operations =
+                    new HashSet<Class<? extends APIOperation>>(configuration.getSupportedOperations());
+            operations.add(SyncApiOp.class);
+            return Collections.unmodifiableSet(operations);
+        }
         return configuration.getSupportedOperations();
     }
 
+    private boolean isSupportedOperation(final Class<? extends APIOperation> api) {
+        return configuration.isSupportedOperation(api) || (api == SyncApiOp.class && isSyncEmulated());
+    }
+
+    /**
+     * Tells whether the sync operation is emulated with search snapshots, see
+     * {@link org.identityconnectors.framework.api.APIConfiguration#setSyncSnapshotDirectory(String)}.
+     */
+    protected final boolean isSyncEmulated() {
+        return configuration.getSyncSnapshotDirectory() != null
+                && !configuration.isSupportedOperation(SyncApiOp.class)
+                && configuration.isSupportedOperation(SearchApiOp.class);
+    }
+
     // =======================================================================
     // Operation API Methods
     // =======================================================================
@@ -275,6 +346,41 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         return ((GetApiOp) this.getOperationCheckSupported(GetApiOp.class)).getObject(objectClass, uid, options);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Set<Uid> getObjects(final ObjectClass objectClass, final Collection<Uid> uids,
+            final ResultsHandler handler, final OperationOptions options) {
+        Assertions.nullCheck(handler, "handler");
+        // objects still buffered or streamed once the handler stopped are
+        // dropped, so work out here which ones it did not get
+        final Set<String> handled = new HashSet<String>();
+        final boolean[] stopped = new boolean[1];
+        Set<Uid> missing =
+                ((GetApiOp) this.getOperationCheckSupported(GetApiOp.class)).getObjects(
+                        objectClass, uids, new ResultsHandler() {
+                            @Override
+                            public boolean handle(final ConnectorObject obj) {
+                                if (stopped[0]) {
+                                    return false;
+                                }
+                                handled.add(obj.getUid().getUidValue());
+                                stopped[0] = !handler.handle(obj);
+                                return !stopped[0];
+                            }
+                        }, options);
+        if (stopped[0]) {
+            missing = new LinkedHashSet<Uid>();
+            for (Uid uid : uids) {
+                if (!handled.contains(uid.getUidValue())) {
+                    missing.add(uid);
+                }
+            }
+        }
+        return missing;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -310,22 +416,32 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         return ((SyncApiOp) this.getOperationCheckSupported(SyncApiOp.class)).getLatestSyncToken(objectClass);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void executeBatch(final List<BatchOperation> operations,
+            final BatchResultsHandler handler, final OperationOptions options) {
+        ((BatchApiOp) this.getOperationCheckSupported(BatchApiOp.class)).executeBatch(operations,
+                handler, options);
+    }
+
     private static final String MSG = "Operation ''{0}'' not supported.";
 
     private APIOperation getOperationCheckSupported(final Class<? extends APIOperation> api) {
         // check if this operation is supported.
-        if (!configuration.isSupportedOperation(api)) {
+        if (!isSupportedOperation(api)) {
             String str = MessageFormat.format(MSG, api);
             throw new UnsupportedOperationException(str);
         }
-        return getOperationImplementation(api);
+        return getCachedOperation(api);
     }
     
     private APIOperation getDeltaOperationCheckSupported(final Class<? extends APIOperation>... apis) {
         // check if this operation is supported.
     	for (Class<? extends APIOperation> api : apis){
-    		if(configuration.isSupportedOperation(api)){
-    			return getOperationImplementation(UpdateDeltaApiOp.class);
+    		if(isSupportedOperation(api)){
+    			return getCachedOperation(UpdateDeltaApiOp.class);
     		}
     	}
     	String str = MessageFormat.format(MSG, (Object[]) apis);
@@ -333,6 +449,71 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         
     }
 
+    /**
+     * Returns the pipeline of the given operation, building it only the first
+     * time or when one of the optional logging, tracing, metrics or coalescing
+     * proxies has been switched on or off in the meantime.
+     */
+    private APIOperation getCachedOperation(final Class<? extends APIOperation> api) {
+        lastUsed = System.nanoTime();
+        if (!isOperationCacheable(api)) {
+            return newOperation(api);
+        }
+        final int flags = (LoggingProxy.isLoggable() ? CachedOperation.LOGGING : 0)
+                | (OperationTracer.isEnabled() ? CachedOperation.TRACING : 0)
+                | (MetricsRegistry.isEnabled() ? CachedOperation.METRICS : 0)
+                | (CoalescingProxy.isEnabled() ? CachedOperation.COALESCING : 0);
+        CachedOperation cached = operations.get(api);
+        if (cached == null || cached.flags != flags) {
+            // racing threads may build the same pipeline twice, which is harmless
+            cached = new CachedOperation(newOperation(api), flags);
+            operations.put(api, cached);
+        }
+        return cached.operation;
+    }
+
+    /**
+     * Builds the pipeline of the given operation, behind the object cache if
+     * enabled.
+     */
+    private APIOperation newOperation(final Class<? extends APIOperation> api) {
+        APIOperation operation = getOperationImplementation(api);
+        ObjectCache cache = getObjectCache();
+        if (cache != null) {
+            operation = newAPIOperationProxy(api, new ObjectCacheProxy(api, operation, cache));
+        }
+        return operation;
+    }
+
+    /**
+     * Returns the object cache of this facade, created on first use.
+     *
+     * @return null if the cache is not enabled.
+     */
+    private synchronized ObjectCache getObjectCache() {
+        if (objectCache == null && configuration.getObjectCacheConfiguration().isEnabled()) {
+            ConnectorMetrics metrics = null;
+            if (MetricsRegistry.isEnabled()) {
+                metrics = MetricsRegistry.getConnectorMetrics(
+                        configuration.getConnectorInfo().getConnectorKey());
+            }
+            objectCache = new ObjectCache(configuration.getObjectCacheConfiguration(), metrics);
+        }
+        return objectCache;
+    }
+
+    /**
+     * Tells whether the pipeline returned by
+     * {@link #getOperationImplementation(Class)} may be reused for subsequent
+     * calls of the same operation.
+     *
+     * @param api The operation
+     * @return <code>true</code> by default
+     */
+    protected boolean isOperationCacheable(final Class<? extends APIOperation> api) {
+        return true;
+    }
+
     /**
      * Creates a new {@link APIOperation} proxy given a handler.
      */
@@ -354,6 +535,14 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         return configuration;
     }
 
+    /**
+     * Returns the {@link System#nanoTime()} of the last operation looked up,
+     * either through {@link #getOperation(Class)} or by a facade method.
+     */
+    final long getLastUsed() {
+        return lastUsed;
+    }
+
     /**
      * Creates the timeout proxy for the given operation.
      *
@@ -372,6 +561,57 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         return newAPIOperationProxy(api, handler);
     }
 
+    /**
+     * Creates a proxy recording the operation into the {@link MetricsRegistry},
+     * to be used only if {@link MetricsRegistry#isEnabled()}.
+     *
+     * @param api The operation
+     * @param target The underlying object
+     * @return The proxy
+     */
+    protected final APIOperation createMetricsProxy(
+            final Class<? extends APIOperation> api, final APIOperation target) {
+
+        return newAPIOperationProxy(api, new MetricsProxy(MetricsRegistry.getConnectorMetrics(
+                getAPIConfiguration().getConnectorInfo().getConnectorKey()).getOperation(
+                api.getSimpleName()), target));
+    }
+
+    /**
+     * Creates a proxy sharing identical concurrent calls, to be used only if
+     * {@link CoalescingProxy#isEnabled()} and the operation
+     * {@link CoalescingProxy#isCoalescable(Class) can be coalesced}.
+     *
+     * @param api The operation
+     * @param target The underlying object
+     * @return The proxy
+     */
+    protected final APIOperation createCoalescingProxy(
+            final Class<? extends APIOperation> api, final APIOperation target) {
+
+        OperationMetrics metrics = null;
+        if (MetricsRegistry.isEnabled()) {
+            metrics = MetricsRegistry.getConnectorMetrics(
+                    getAPIConfiguration().getConnectorInfo().getConnectorKey()).getOperation(
+                    api.getSimpleName());
+        }
+        return newAPIOperationProxy(api, new CoalescingProxy(getQualifiedKey(), target, metrics));
+    }
+
+    /**
+     * Creates a tracing proxy, to be used only if {@link OperationTracer#isEnabled()}.
+     *
+     * @param api The operation
+     * @param target The underlying object
+     * @return The proxy
+     */
+    protected final APIOperation createTracingProxy(
+            final Class<? extends APIOperation> api, final APIOperation target) {
+
+        return newAPIOperationProxy(api,
+                new TracingProxy(api, getAPIConfiguration().getConnectorInfo().getConnectorKey(), target));
+    }
+
     /**
      * Creates a logging proxy.
      *
@@ -384,4 +624,24 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
 
         return newAPIOperationProxy(api, new LoggingProxy(api, target));
     }
+
+    private static final class CachedOperation {
+
+        static final int LOGGING = 1;
+
+        static final int TRACING = 2;
+
+        static final int METRICS = 4;
+
+        static final int COALESCING = 8;
+
+        final APIOperation operation;
+
+        final int flags;
+
+        CachedOperation(final APIOperation operation, final int flags) {
+            this.operation = operation;
+            this.flags = flags;
+        }
+    }
 }
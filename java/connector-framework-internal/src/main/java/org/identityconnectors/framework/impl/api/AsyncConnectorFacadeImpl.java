@@ -0,0 +1,428 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.AsyncConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.OperationFuture;
+import org.identityconnectors.framework.api.ResultsSubscriber;
+import org.identityconnectors.framework.api.ResultsSubscription;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.BatchAwareResultsHandler;
+import org.identityconnectors.framework.common.objects.BatchAwareSyncResultsHandler;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+
+/**
+ * Runs the operations of a facade on the threads of an executor.
+ * <p/>
+ * Searches and syncs do not run on that executor but on a bounded pool of the
+ * framework, so a publication waiting for its subscriber never delays the
+ * other operations. A subscriber requesting no results pins a thread of that
+ * pool: the connector is held in its results handler, and a remote connector
+ * server at its next {@code OperationResponsePause}, as the client only asks
+ * for more data once the results before are handled, until the subscriber
+ * requests more or cancels. The subscriptions beyond the
+ * {@link #PUBLICATION_THREADS_PROP size of the pool} wait in a queue for a
+ * thread to be freed.
+ *
+ * @since 1.4.4
+ */
+public class AsyncConnectorFacadeImpl implements AsyncConnectorFacade {
+
+    private static final Log LOG = Log.getLog(AsyncConnectorFacadeImpl.class);
+
+    /**
+     * System property setting the number of threads of the shared pool
+     * running the operations on single objects, 16 by default.
+     */
+    public static final String THREADS_PROP = "org.identityconnectors.framework.api.asyncThreads";
+
+    /**
+     * System property setting the maximum number of threads of the shared
+     * pool running the searches and syncs, 64 by default.
+     */
+    public static final String PUBLICATION_THREADS_PROP =
+            "org.identityconnectors.framework.api.asyncPublicationThreads";
+
+    private static ExecutorService sharedExecutor;
+
+    private static ExecutorService publicationExecutor;
+
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = Executors.newFixedThreadPool(Integer.getInteger(THREADS_PROP, 16),
+                    new DaemonThreadFactory("ConnectorFacade-async-"));
+        }
+        return sharedExecutor;
+    }
+
+    private static synchronized ExecutorService getPublicationExecutor() {
+        if (publicationExecutor == null) {
+            // one thread per running publication, as each may wait for its
+            // subscriber, the idle ones stop after a while
+            final int threads = Integer.getInteger(PUBLICATION_THREADS_PROP, 64);
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("ConnectorFacade-publication-"));
+            pool.allowCoreThreadTimeOut(true);
+            publicationExecutor = pool;
+        }
+        return publicationExecutor;
+    }
+
+    private final ConnectorFacade facade;
+
+    private final ExecutorService executor;
+
+    public AsyncConnectorFacadeImpl(final ConnectorFacade facade, final ExecutorService executor) {
+        Assertions.nullCheck(facade, "facade");
+        this.facade = facade;
+        this.executor = executor != null ? executor : getSharedExecutor();
+    }
+
+    @Override
+    public ConnectorFacade getConnectorFacade() {
+        return facade;
+    }
+
+    @Override
+    public OperationFuture<Uid> create(final ObjectClass objectClass,
+            final Set<Attribute> createAttributes, final OperationOptions options) {
+        return submit(new Callable<Uid>() {
+            @Override
+            public Uid call() {
+                return facade.create(objectClass, createAttributes, options);
+            }
+        });
+    }
+
+    @Override
+    public OperationFuture<Uid> update(final ObjectClass objectClass, final Uid uid,
+            final Set<Attribute> replaceAttributes, final OperationOptions options) {
+        return submit(new Callable<Uid>() {
+            @Override
+            public Uid call() {
+                return facade.update(objectClass, uid, replaceAttributes, options);
+            }
+        });
+    }
+
+    @Override
+    public OperationFuture<Void> delete(final ObjectClass objectClass, final Uid uid,
+            final OperationOptions options) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                facade.delete(objectClass, uid, options);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public OperationFuture<ConnectorObject> getObject(final ObjectClass objectClass,
+            final Uid uid, final OperationOptions options) {
+        return submit(new Callable<ConnectorObject>() {
+            @Override
+            public ConnectorObject call() {
+                return facade.getObject(objectClass, uid, options);
+            }
+        });
+    }
+
+    @Override
+    public void search(final ObjectClass objectClass, final Filter filter,
+            final OperationOptions options,
+            final ResultsSubscriber<ConnectorObject, SearchResult> subscriber) {
+        final SearchPublication publication = new SearchPublication(subscriber);
+        publication.start(new Callable<SearchResult>() {
+            @Override
+            public SearchResult call() {
+                return facade.search(objectClass, filter, publication, options);
+            }
+        });
+    }
+
+    @Override
+    public void sync(final ObjectClass objectClass, final SyncToken token,
+            final OperationOptions options, final ResultsSubscriber<SyncDelta, SyncToken> subscriber) {
+        final SyncPublication publication = new SyncPublication(subscriber);
+        publication.start(new Callable<SyncToken>() {
+            @Override
+            public SyncToken call() {
+                return facade.sync(objectClass, token, publication, options);
+            }
+        });
+    }
+
+    private <T> OperationFuture<T> submit(final Callable<T> operation) {
+        OperationTask<T> task = new OperationTask<T>(operation);
+        executor.execute(task);
+        return task;
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+
+        private final AtomicInteger number = new AtomicInteger(1);
+
+        DaemonThreadFactory(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread(r, prefix + number.getAndIncrement());
+            t.setDaemon(true);
+            t.setContextClassLoader(AsyncConnectorFacadeImpl.class.getClassLoader());
+            return t;
+        }
+    }
+
+    /**
+     * Runs an operation in the locale of the caller, then its listeners.
+     */
+    private static class OperationTask<T> extends FutureTask<T> implements OperationFuture<T> {
+
+        private final Locale locale;
+
+        private final List<Runnable> listeners = new ArrayList<Runnable>();
+
+        private boolean completed = false;
+
+        OperationTask(final Callable<T> operation) {
+            super(operation);
+            // pooled threads do not inherit the locale
+            locale = CurrentLocale.isSet() ? CurrentLocale.get() : null;
+        }
+
+        @Override
+        public void run() {
+            final Locale previous = CurrentLocale.isSet() ? CurrentLocale.get() : null;
+            if (locale != null) {
+                CurrentLocale.set(locale);
+            }
+            try {
+                super.run();
+            } finally {
+                if (previous != null) {
+                    CurrentLocale.set(previous);
+                } else {
+                    CurrentLocale.clear();
+                }
+            }
+        }
+
+        @Override
+        public void addListener(final Runnable listener) {
+            Assertions.nullCheck(listener, "listener");
+            synchronized (listeners) {
+                if (!completed) {
+                    listeners.add(listener);
+                    return;
+                }
+            }
+            runListener(listener);
+        }
+
+        @Override
+        protected void done() {
+            List<Runnable> done;
+            synchronized (listeners) {
+                completed = true;
+                done = new ArrayList<Runnable>(listeners);
+                listeners.clear();
+            }
+            for (Runnable listener : done) {
+                runListener(listener);
+            }
+        }
+
+        private static void runListener(final Runnable listener) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOG.warn(e, "Listener of an operation failed");
+            }
+        }
+    }
+
+    /**
+     * Passes the results of an operation to a subscriber as it requests them.
+     */
+    private abstract class Publication<T, R> implements ResultsSubscription {
+
+        private final ResultsSubscriber<T, R> subscriber;
+
+        private long demand = 0;
+
+        private boolean cancelled = false;
+
+        Publication(final ResultsSubscriber<T, R> subscriber) {
+            Assertions.nullCheck(subscriber, "subscriber");
+            this.subscriber = subscriber;
+        }
+
+        void start(final Callable<R> operation) {
+            subscriber.onSubscribe(this);
+            if (isCancelled()) {
+                return;
+            }
+            getPublicationExecutor().execute(new OperationTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    R outcome;
+                    try {
+                        outcome = operation.call();
+                    } catch (Exception e) {
+                        if (!isCancelled()) {
+                            subscriber.onError(ConnectorException.wrap(e));
+                        }
+                        return null;
+                    }
+                    if (!isCancelled()) {
+                        subscriber.onComplete(outcome);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        /**
+         * Passes a result once requested.
+         *
+         * @return false if the subscription is cancelled.
+         */
+        boolean publish(final T result) {
+            synchronized (this) {
+                while (demand == 0 && !cancelled) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw ConnectorException.wrap(e);
+                    }
+                }
+                if (cancelled) {
+                    return false;
+                }
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            }
+            subscriber.onNext(result);
+            return !isCancelled();
+        }
+
+        boolean publishAll(final List<? extends T> results) {
+            for (T result : results) {
+                if (!publish(result)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void request(final long n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("Requested " + n + " results");
+            }
+            // an unbounded demand past Long.MAX_VALUE
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final class SearchPublication extends Publication<ConnectorObject, SearchResult>
+            implements BatchAwareResultsHandler {
+
+        SearchPublication(final ResultsSubscriber<ConnectorObject, SearchResult> subscriber) {
+            super(subscriber);
+        }
+
+        @Override
+        public boolean handle(final ConnectorObject connectorObject) {
+            return publish(connectorObject);
+        }
+
+        @Override
+        public boolean handleBatch(final List<ConnectorObject> connectorObjects) {
+            return publishAll(connectorObjects);
+        }
+    }
+
+    private final class SyncPublication extends Publication<SyncDelta, SyncToken>
+            implements BatchAwareSyncResultsHandler {
+
+        SyncPublication(final ResultsSubscriber<SyncDelta, SyncToken> subscriber) {
+            super(subscriber);
+        }
+
+        @Override
+        public boolean handle(final SyncDelta delta) {
+            return publish(delta);
+        }
+
+        @Override
+        public boolean handleBatch(final List<SyncDelta> deltas) {
+            return publishAll(deltas);
+        }
+    }
+}
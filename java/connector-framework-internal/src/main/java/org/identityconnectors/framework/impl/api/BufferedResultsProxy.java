@@ -36,6 +36,8 @@ import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.identityconnectors.framework.impl.trace.OperationSpan;
+import org.identityconnectors.framework.impl.trace.OperationTracer;
 
 public class BufferedResultsProxy implements InvocationHandler {
 
@@ -81,6 +83,8 @@ public class BufferedResultsProxy implements InvocationHandler {
 
         private final ArrayBlockingQueue<Object> buffer;
 
+        private final OperationSpan span;
+
         private Object result = null;
 
         public BufferedResultsHandler(Method method, Object target, Object[] arguments,
@@ -90,6 +94,7 @@ public class BufferedResultsProxy implements InvocationHandler {
             this.arguments = arguments;
             buffer = new ArrayBlockingQueue<Object>(bufferSize);
             this.timeoutMillis = timeoutMillis;
+            this.span = OperationTracer.current();
         }
 
         @Override
@@ -150,7 +155,8 @@ public class BufferedResultsProxy implements InvocationHandler {
             for (int i = 0; i < paramTypes.length; i++) {
                 Class<?> paramType = paramTypes[i];
                 if (StreamHandlerUtil.isAdaptableToObjectStreamHandler(paramType)) {
-                    actualArguments[i] = StreamHandlerUtil.adaptFromObjectStreamHandler(paramType, this);
+                    actualArguments[i] = StreamHandlerUtil.adaptFromObjectStreamHandler(
+                            StreamHandlerUtil.getAdaptedType(paramType, arguments[i]), this);
                 } else {
                     actualArguments[i] = arguments[i];
                 }
@@ -160,6 +166,10 @@ public class BufferedResultsProxy implements InvocationHandler {
 
         @Override
         public void run() {
+            // this is a new thread, nothing to restore
+            if (span != null) {
+                OperationTracer.attach(span);
+            }
             try {
                 try {
                     result = method.invoke(target, createActualArguments());
@@ -0,0 +1,224 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.identityconnectors.framework.api.operations.ResolveUsernameApiOp;
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.api.operations.TestApiOp;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.impl.metrics.OperationMetrics;
+
+/**
+ * Proxy sharing one execution between identical concurrent read operations.
+ * <p>
+ * A call made while an identical one, on the same connector with the same
+ * facade configuration, method and arguments, is in flight waits for that call and returns its
+ * result or throws its exception instead of borrowing another connector. Only
+ * the {@link #isCoalescable(Class) read operations} returning immutable
+ * results are coalesced. Coalescing is off by default, it is turned on with
+ * the {@value #ENABLED_PROP} system property or {@link #setEnabled(boolean)}.
+ *
+ * @since 1.4.4
+ */
+public class CoalescingProxy implements InvocationHandler {
+
+    public static final String ENABLED_PROP = "org.identityconnectors.framework.coalescing.enabled";
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROP);
+
+    /**
+     * Calls in flight of all facades.
+     */
+    private static final ConcurrentMap<CallKey, FutureTask<Object>> IN_FLIGHT =
+            new ConcurrentHashMap<CallKey, FutureTask<Object>>();
+
+    private final String connectorFacadeKey;
+
+    private final Object target;
+
+    private final OperationMetrics metrics;
+
+    /**
+     * Creates the proxy.
+     *
+     * @param connectorFacadeKey
+     *            the key of the facade qualified by its connector, see
+     *            {@link AbstractConnectorFacade#getQualifiedKey()}
+     * @param target
+     *            the underlying object
+     * @param metrics
+     *            where to count the coalesced calls, or null
+     */
+    public CoalescingProxy(final String connectorFacadeKey, final Object target,
+            final OperationMetrics metrics) {
+        this.connectorFacadeKey = connectorFacadeKey;
+        this.target = target;
+        this.metrics = metrics;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns coalescing on or off, facades created while off do not coalesce
+     * their operations.
+     */
+    public static void setEnabled(final boolean enable) {
+        enabled = enable;
+    }
+
+    /**
+     * Tells whether the calls of an operation can be coalesced.
+     */
+    public static boolean isCoalescable(final Class<? extends APIOperation> api) {
+        return api == GetApiOp.class || api == SchemaApiOp.class || api == TestApiOp.class
+                || api == ResolveUsernameApiOp.class;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable {
+        // do not coalesce equals, hashCode, toString, nor calls streaming results
+        if (method.getDeclaringClass() == Object.class || !isReturningResult(method)) {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+        final CallKey key = new CallKey(connectorFacadeKey, method, args);
+        FutureTask<Object> call = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws Exception {
+                return method.invoke(target, args);
+            }
+        });
+        final FutureTask<Object> inFlight = IN_FLIGHT.putIfAbsent(key, call);
+        if (inFlight == null) {
+            try {
+                call.run();
+            } finally {
+                IN_FLIGHT.remove(key, call);
+            }
+        } else {
+            call = inFlight;
+            if (metrics != null) {
+                metrics.recordCoalesced();
+            }
+        }
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InvocationTargetException) {
+                throw ((InvocationTargetException) cause).getTargetException();
+            }
+            throw cause;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ConnectorException.wrap(e);
+        }
+    }
+
+    /**
+     * Methods streaming their results to a handler are not coalesced.
+     */
+    private static boolean isReturningResult(final Method method) {
+        for (Class<?> type : method.getParameterTypes()) {
+            if (StreamHandlerUtil.isAdaptableToObjectStreamHandler(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Identifies a call. Operation options are compared by value.
+     */
+    private static final class CallKey {
+
+        private final String connectorFacadeKey;
+
+        private final Method method;
+
+        private final Object[] args;
+
+        private final int hashCode;
+
+        CallKey(final String connectorFacadeKey, final Method method, final Object[] args) {
+            this.connectorFacadeKey = connectorFacadeKey;
+            this.method = method;
+            this.args = args == null ? new Object[0] : args.clone();
+            for (int i = 0; i < this.args.length; i++) {
+                if (this.args[i] instanceof OperationOptions) {
+                    this.args[i] = toComparable((OperationOptions) this.args[i]);
+                }
+            }
+            hashCode = (connectorFacadeKey.hashCode() * 31 + method.hashCode()) * 31
+                    + Arrays.deepHashCode(this.args);
+        }
+
+        private static Map<String, Object> toComparable(final OperationOptions options) {
+            Map<String, Object> rv = new TreeMap<String, Object>();
+            for (Map.Entry<String, Object> entry : options.getOptions().entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof Object[]) {
+                    value = Arrays.asList((Object[]) value);
+                }
+                rv.put(entry.getKey(), value);
+            }
+            return rv;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof CallKey)) {
+                return false;
+            }
+            CallKey other = (CallKey) obj;
+            return hashCode == other.hashCode && method.equals(other.method)
+                    && connectorFacadeKey.equals(other.connectorFacadeKey)
+                    && Arrays.deepEquals(args, other.args);
+        }
+    }
+}
@@ -23,8 +23,11 @@
  */
 package org.identityconnectors.framework.impl.api;
 
+import java.util.concurrent.ExecutorService;
+
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.AsyncConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
 import org.identityconnectors.framework.api.ConnectorInfo;
@@ -87,6 +90,17 @@ public class ConnectorFacadeFactoryImpl extends ConnectorFacadeFactory {
         return ret;
     }
 
+    @Override
+    public AsyncConnectorFacade newAsyncInstance(final ConnectorFacade facade,
+            final ExecutorService executor) {
+        return new AsyncConnectorFacadeImpl(facade, executor);
+    }
+
+    @Override
+    public void invalidateSchema(final ConnectorFacade facade) {
+        SchemaCache.invalidate(facade);
+    }
+
     /**
      * Dispose of all object pools and other resources associated with this
      * class.
@@ -45,6 +45,12 @@ public class ConnectorInfoManagerFactoryImpl extends ConnectorInfoManagerFactory
     private final Map<RemoteManagerKey, RemoteConnectorInfoManagerImpl> remoteManagerCache =
             new HashMap<RemoteManagerKey, RemoteConnectorInfoManagerImpl>();
 
+    /**
+     * Incremented whenever the local managers are cleared, updated under the
+     * localManagerCache lock.
+     */
+    private volatile int localManagerGeneration = 0;
+
     public ConnectorInfoManagerFactoryImpl() {
     }
 
@@ -52,9 +58,19 @@ public class ConnectorInfoManagerFactoryImpl extends ConnectorInfoManagerFactory
     public void clearLocalCache() {
         synchronized (localManagerCache) {
             localManagerCache.clear();
+            localManagerGeneration++;
         }
     }
 
+    /**
+     * Returns a number changing whenever the local managers are cleared, so
+     * that data derived from a local manager can be checked for staleness
+     * without taking any lock.
+     */
+    public int getLocalManagerGeneration() {
+        return localManagerGeneration;
+    }
+
     @Override
     public void clearRemoteCache() {
         synchronized (remoteManagerCache) {
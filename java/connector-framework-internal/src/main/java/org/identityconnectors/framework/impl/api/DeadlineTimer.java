@@ -0,0 +1,223 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.api;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shared timer interrupting the threads whose operation outlives its deadline,
+ * or whose {@link Trigger} fires.
+ * <p/>
+ * A single daemon thread checks the registered operations every
+ * {@link #TICK_MILLIS} milliseconds at most and parks while none is
+ * registered, so scheduling and cancelling an operation cost no more than a
+ * concurrent set insertion and removal.
+ */
+public final class DeadlineTimer implements Runnable {
+
+    /**
+     * Granularity of the timer.
+     */
+    static final long TICK_MILLIS = 10;
+
+    private static final DeadlineTimer INSTANCE = new DeadlineTimer();
+
+    /**
+     * Innermost operation scheduled on the current thread.
+     */
+    private static final ThreadLocal<Entry> CURRENT = new ThreadLocal<Entry>();
+
+    /**
+     * Condition checked on each tick, interrupting the operation as soon as
+     * it holds.
+     */
+    public interface Trigger {
+
+        boolean isTriggered();
+    }
+
+    /**
+     * An operation running on a thread until its deadline.
+     */
+    public static final class Entry extends AtomicInteger {
+
+        private static final long serialVersionUID = 1L;
+
+        static final int RUNNING = 0;
+
+        static final int INTERRUPTING = 1;
+
+        static final int EXPIRED = 2;
+
+        static final int DONE = 3;
+
+        final Thread thread;
+
+        final long deadlineNanos;
+
+        final Trigger trigger;
+
+        final Entry outer;
+
+        Entry(final Thread thread, final long deadlineNanos, final Trigger trigger,
+                final Entry outer) {
+            this.thread = thread;
+            this.deadlineNanos = deadlineNanos;
+            this.trigger = trigger;
+            this.outer = outer;
+        }
+    }
+
+    private final Set<Entry> entries =
+            Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+
+    private final Thread thread;
+
+    private volatile boolean parked;
+
+    private DeadlineTimer() {
+        thread = new Thread(this, "ConnId deadline timer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Registers the current thread to be interrupted at the given deadline.
+     *
+     * @param deadlineNanos
+     *            the deadline as a {@link System#nanoTime()} value.
+     * @return the entry to pass to {@link #cancel(Entry)} once the operation
+     *         is over.
+     */
+    public static Entry schedule(final long deadlineNanos) {
+        return schedule(deadlineNanos, null);
+    }
+
+    /**
+     * Registers the current thread to be interrupted at the given deadline or
+     * as soon as the trigger fires.
+     *
+     * @param deadlineNanos
+     *            the deadline as a {@link System#nanoTime()} value.
+     * @param trigger
+     *            the trigger, may be null.
+     * @return the entry to pass to {@link #cancel(Entry)} once the operation
+     *         is over.
+     */
+    public static Entry schedule(final long deadlineNanos, final Trigger trigger) {
+        final Entry entry =
+                new Entry(Thread.currentThread(), deadlineNanos, trigger, CURRENT.get());
+        CURRENT.set(entry);
+        INSTANCE.entries.add(entry);
+        if (INSTANCE.parked) {
+            LockSupport.unpark(INSTANCE.thread);
+        }
+        return entry;
+    }
+
+    /**
+     * Unregisters the entry of an operation which is over, to be called from
+     * the thread which scheduled it.
+     *
+     * @return false if the deadline passed and the thread has been
+     *         interrupted, in which case the interrupt status is cleared.
+     */
+    public static boolean cancel(final Entry entry) {
+        INSTANCE.entries.remove(entry);
+        if (CURRENT.get() == entry) {
+            if (entry.outer != null) {
+                CURRENT.set(entry.outer);
+            } else {
+                CURRENT.remove();
+            }
+        }
+        if (entry.compareAndSet(Entry.RUNNING, Entry.DONE)) {
+            return true;
+        }
+        // wait for the timer to be done with the interruption before clearing it
+        while (entry.get() == Entry.INTERRUPTING) {
+            Thread.yield();
+        }
+        Thread.interrupted();
+        return false;
+    }
+
+    /**
+     * Tells whether the timer interrupted an operation of the current thread
+     * which is not cancelled yet, in which case whatever the operation was
+     * using may have been left in a bad state.
+     */
+    public static boolean isExpired() {
+        for (Entry entry = CURRENT.get(); entry != null; entry = entry.outer) {
+            if (entry.get() != Entry.RUNNING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            if (entries.isEmpty()) {
+                parked = true;
+                if (entries.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+            final long now = System.nanoTime();
+            long wait = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+            for (Entry entry : entries) {
+                final long left = entry.deadlineNanos - now;
+                if (left > 0 && !isTriggered(entry)) {
+                    wait = Math.min(wait, left);
+                } else if (entry.compareAndSet(Entry.RUNNING, Entry.INTERRUPTING)) {
+                    entries.remove(entry);
+                    try {
+                        entry.thread.interrupt();
+                    } finally {
+                        entry.set(Entry.EXPIRED);
+                    }
+                }
+            }
+            LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    private static boolean isTriggered(final Entry entry) {
+        try {
+            return entry.trigger != null && entry.trigger.isTriggered();
+        } catch (RuntimeException e) {
+            // a failing trigger must not stop the timer
+            return true;
+        }
+    }
+}
@@ -49,6 +49,17 @@ public class DelegatingTimeoutProxy implements InvocationHandler {
      */
     private final int bufferSize;
 
+    /**
+     * Handler of the stream handler methods, <code>null</code> if neither a
+     * timeout nor a buffer is configured
+     */
+    private final InvocationHandler streamHandler;
+
+    /**
+     * Handler of the other methods, <code>null</code> if there is no timeout
+     */
+    private final InvocationHandler methodHandler;
+
     /**
      * Create a new MethodTimeoutProxy.
      *
@@ -60,6 +71,13 @@ public class DelegatingTimeoutProxy implements InvocationHandler {
         this.target = target;
         this.timeoutMillis = timeoutMillis;
         this.bufferSize = bufferSize;
+        // both handlers are stateless, so build them once for all calls
+        this.streamHandler = timeoutMillis != APIOperation.NO_TIMEOUT || bufferSize != 0
+                ? new BufferedResultsProxy(target, bufferSize, timeoutMillis)
+                : null;
+        this.methodHandler = timeoutMillis != APIOperation.NO_TIMEOUT
+                ? new MethodTimeoutProxy(target, timeoutMillis)
+                : null;
     }
 
     @Override
@@ -71,23 +89,11 @@ public class DelegatingTimeoutProxy implements InvocationHandler {
             return method.invoke(target, args);
         }
 
-        // figure out the actual handler that we want to delegate to
-        InvocationHandler handler = null;
-
+        // figure out the actual handler that we want to delegate to:
         // if this is as stream handler method, we need the
-        // buffered results proxy (if configured)
-        if (isStreamHandlerMethod(method)) {
-            if (timeoutMillis != APIOperation.NO_TIMEOUT || bufferSize != 0) {
-                handler = new BufferedResultsProxy(target, bufferSize, timeoutMillis);
-            }
-        }
-        // otherwise it's a basic timeout proxy
-        else {
-            if (timeoutMillis != APIOperation.NO_TIMEOUT) {
-                // everything else is a general purpose timeout proxy
-                handler = new MethodTimeoutProxy(target, timeoutMillis);
-            }
-        }
+        // buffered results proxy (if configured), otherwise it's
+        // a basic timeout proxy
+        InvocationHandler handler = isStreamHandlerMethod(method) ? streamHandler : methodHandler;
 
         // delegate to the timeout handler if specified
         if (handler != null) {
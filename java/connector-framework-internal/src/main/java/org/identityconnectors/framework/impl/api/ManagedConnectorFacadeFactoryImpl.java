@@ -23,53 +23,354 @@
 
 package org.identityconnectors.framework.impl.api;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.identityconnectors.common.Base64;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorInfo;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+import org.identityconnectors.framework.impl.api.local.ConnectorPoolManager.ConnectorPoolKey;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorFacadeImpl;
 
+/**
+ * Factory sharing the ConnectorFacades of identical configurations.
+ * <p>
+ * The cache holds at most {@value #MAX_SIZE_PROP} facades, evicting the least
+ * recently looked up one when full, and drops the facades which were not used
+ * for {@value #IDLE_TIMEOUT_PROP} milliseconds. A facade counts as used when it
+ * is looked up here and when one of its operations is called. An evicted
+ * facade releases its connector pool and stateful configuration once it was
+ * not used within the idle timeout, unless a cached facade shares the pool; a
+ * caller still holding one can keep using it, the resources are then created
+ * again.
+ */
 public class ManagedConnectorFacadeFactoryImpl extends ConnectorFacadeFactoryImpl {
 
     private static final Log LOG = Log.getLog(ManagedConnectorFacadeFactoryImpl.class);
 
+    public static final String MAX_SIZE_PROP =
+            "org.identityconnectors.framework.facade.cache.maxSize";
+
+    public static final String IDLE_TIMEOUT_PROP =
+            "org.identityconnectors.framework.facade.cache.idleTimeout";
+
+    /**
+     * Statistics bean
+     *
+     * @since 1.4.4
+     */
+    public static final class CacheStatistics {
+        private final int size;
+        private final long numHits;
+        private final long numMisses;
+        private final long numEvictions;
+        private final int numPendingDisposal;
+
+        private CacheStatistics(final int size, final long numHits, final long numMisses,
+                final long numEvictions, final int numPendingDisposal) {
+            this.size = size;
+            this.numHits = numHits;
+            this.numMisses = numMisses;
+            this.numEvictions = numEvictions;
+            this.numPendingDisposal = numPendingDisposal;
+        }
+
+        /**
+         * Returns the number of cached facades.
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the number of lookups which found the facade in the cache.
+         */
+        public long getNumHits() {
+            return numHits;
+        }
+
+        /**
+         * Returns the number of lookups which had to create the facade.
+         */
+        public long getNumMisses() {
+            return numMisses;
+        }
+
+        /**
+         * Returns the number of facades evicted because the cache was full or
+         * they were idle for too long.
+         */
+        public long getNumEvictions() {
+            return numEvictions;
+        }
+
+        /**
+         * Returns the number of evicted facades still in use, disposed once
+         * idle.
+         */
+        public int getNumPendingDisposal() {
+            return numPendingDisposal;
+        }
+    }
+
+    /**
+     * A cached facade with the last time it was looked up.
+     */
+    private static final class CacheEntry {
+        private final ConnectorFacade facade;
+        private final String poolId;
+        private volatile long lastAccess = System.nanoTime();
+
+        private CacheEntry(final ConnectorFacade facade) {
+            this.facade = facade;
+            this.poolId = getPoolId(facade);
+        }
+
+        /**
+         * Returns the last time the facade was looked up or used.
+         */
+        private long getLastUse() {
+            long access = lastAccess;
+            if (facade instanceof AbstractConnectorFacade) {
+                long used = ((AbstractConnectorFacade) facade).getLastUsed();
+                if (used - access > 0) {
+                    return used;
+                }
+            }
+            return access;
+        }
+    }
+
+    /**
+     * Cache of the various ConnectorFacades, least recently looked up first.
+     * The cache, {@link #PENDING} and {@link #POOL_USERS} are guarded by the
+     * cache.
+     */
+    private static final Map<String, CacheEntry> CACHE =
+            new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+    /**
+     * Evicted facades used within the idle timeout, disposed once idle.
+     */
+    private static final List<CacheEntry> PENDING = new ArrayList<CacheEntry>();
+
+    /**
+     * Number of cached facades per connector pool.
+     */
+    private static final Map<String, Integer> POOL_USERS = new HashMap<String, Integer>();
+
+    private static volatile int maxSize = Integer.getInteger(MAX_SIZE_PROP, 1000);
+
+    private static volatile long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(
+            IDLE_TIMEOUT_PROP, TimeUnit.HOURS.toMillis(1)));
+
+    private static volatile long lastIdleCheck = System.nanoTime();
+
+    private static final AtomicLong NUM_HITS = new AtomicLong();
+
+    private static final AtomicLong NUM_MISSES = new AtomicLong();
+
+    private static final AtomicLong NUM_EVICTIONS = new AtomicLong();
+
+    /**
+     * Sets the maximum number of cached facades, 0 or less for no limit.
+     *
+     * @since 1.4.4
+     */
+    public static void setMaxSize(final int size) {
+        maxSize = size;
+    }
+
+    /**
+     * Sets how long a facade may stay unused before it is disposed, 0 or less
+     * to keep idle facades.
+     *
+     * @since 1.4.4
+     */
+    public static void setIdleTimeout(final long timeout, final TimeUnit unit) {
+        idleTimeoutNanos = unit.toNanos(timeout);
+    }
+
     /**
-     * Cache of the various ConnectorFacades.
+     * Returns the current statistics of the facade cache.
+     *
+     * @since 1.4.4
      */
-    private static final ConcurrentMap<String, ConnectorFacade> CACHE =
-            new ConcurrentHashMap<String, ConnectorFacade>();
+    public static CacheStatistics getCacheStatistics() {
+        synchronized (CACHE) {
+            return new CacheStatistics(CACHE.size(), NUM_HITS.get(), NUM_MISSES.get(),
+                    NUM_EVICTIONS.get(), PENDING.size());
+        }
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
     public ConnectorFacade newInstance(final APIConfiguration config) {
-        ConnectorFacade facade = super.newInstance(config);
-        ConnectorFacade ret = CACHE.putIfAbsent(facade.getConnectorFacadeKey(), facade);
-        if (null != ret) {
+        // the serialized configuration is the key, look it up before paying
+        // for a new facade
+        final APIConfigurationImpl impl = (APIConfigurationImpl) config;
+        String key = Base64.encode(SerializerUtil.serializeBinaryObject(impl));
+        return newInstance(impl.getConnectorInfo(), key);
+    }
+
+    @Override
+    public ConnectorFacade newInstance(final ConnectorInfo connectorInfo, String config) {
+        evictIdle();
+        CacheEntry entry;
+        synchronized (CACHE) {
+            entry = CACHE.get(config);
+        }
+        if (null != entry) {
+            NUM_HITS.incrementAndGet();
+            entry.lastAccess = System.nanoTime();
+            return entry.facade;
+        }
+        NUM_MISSES.incrementAndGet();
+        // new ConnectorFacade creation must remain cheap operation
+        final CacheEntry created = new CacheEntry(super.newInstance(connectorInfo, config));
+        final List<CacheEntry> evicted = new ArrayList<CacheEntry>();
+        synchronized (CACHE) {
+            entry = CACHE.get(config);
+            if (null == entry) {
+                CACHE.put(config, created);
+                addPoolUser(created);
+                // the least recently looked up facades go first
+                final int size = maxSize;
+                for (Iterator<CacheEntry> it = CACHE.values().iterator(); size > 0
+                        && CACHE.size() > size && it.hasNext();) {
+                    CacheEntry eldest = it.next();
+                    it.remove();
+                    removePoolUser(eldest);
+                    evicted.add(eldest);
+                    NUM_EVICTIONS.incrementAndGet();
+                }
+            }
+        }
+        if (null != entry) {
             LOG.ok("ConnectorFacade found in cache");
-            facade = ret;
+            entry.lastAccess = System.nanoTime();
+            return entry.facade;
+        }
+        for (CacheEntry e : evicted) {
+            LOG.ok("Evicting least recently used ConnectorFacade");
+            evict(e);
         }
+        return created.facade;
+    }
 
-        return facade;
+    /**
+     * Evicts the facades idle for too long and disposes the evicted ones
+     * which became idle, at most every half idle timeout.
+     */
+    private static void evictIdle() {
+        final long timeout = idleTimeoutNanos;
+        final long now = System.nanoTime();
+        if (timeout <= 0 || now - lastIdleCheck < timeout / 2) {
+            return;
+        }
+        lastIdleCheck = now;
+        final List<CacheEntry> evicted = new ArrayList<CacheEntry>();
+        synchronized (CACHE) {
+            for (Iterator<CacheEntry> it = CACHE.values().iterator(); it.hasNext();) {
+                CacheEntry entry = it.next();
+                if (now - entry.getLastUse() >= timeout) {
+                    it.remove();
+                    removePoolUser(entry);
+                    evicted.add(entry);
+                    NUM_EVICTIONS.incrementAndGet();
+                }
+            }
+            evicted.addAll(PENDING);
+            PENDING.clear();
+        }
+        for (CacheEntry entry : evicted) {
+            LOG.ok("Evicting idle ConnectorFacade");
+            evict(entry);
+        }
     }
 
-    @Override
-    public ConnectorFacade newInstance(final ConnectorInfo connectorInfo, String config) {
-        ConnectorFacade facade = CACHE.get(config);
-        if (null == facade) {
-            // new ConnectorFacade creation must remain cheap operation
-            facade = super.newInstance(connectorInfo, config);
-            ConnectorFacade ret = CACHE.putIfAbsent(facade.getConnectorFacadeKey(), facade);
-            if (null != ret) {
-                LOG.ok("ConnectorFacade found in cache");
-                facade = ret;
+    /**
+     * Releases the resources of an evicted facade. A facade used within the
+     * idle timeout is disposed once idle. Without an idle timeout it is
+     * disposed at once, a caller still holding it creates the resources
+     * again. The connector pool shared with a cached facade, for example one
+     * which only differs in its timeouts, is left to that facade.
+     */
+    private static void evict(final CacheEntry entry) {
+        final long timeout = idleTimeoutNanos;
+        if (timeout > 0 && System.nanoTime() - entry.getLastUse() < timeout) {
+            LOG.ok("Evicted ConnectorFacade is still in use, disposing it once idle");
+            synchronized (CACHE) {
+                PENDING.add(entry);
+            }
+            return;
+        }
+        synchronized (CACHE) {
+            if (null != entry.poolId && POOL_USERS.containsKey(entry.poolId)) {
+                LOG.ok("Evicted ConnectorFacade shares its pool, keeping its resources");
+                return;
+            }
+        }
+        dispose(entry.facade);
+    }
+
+    private static void addPoolUser(final CacheEntry entry) {
+        if (null != entry.poolId) {
+            Integer users = POOL_USERS.get(entry.poolId);
+            POOL_USERS.put(entry.poolId, users == null ? 1 : users + 1);
+        }
+    }
+
+    private static void removePoolUser(final CacheEntry entry) {
+        if (null != entry.poolId) {
+            Integer users = POOL_USERS.get(entry.poolId);
+            if (users == null || users <= 1) {
+                POOL_USERS.remove(entry.poolId);
+            } else {
+                POOL_USERS.put(entry.poolId, users - 1);
+            }
+        }
+    }
+
+    /**
+     * Identifies the connector pool of a facade like its
+     * {@link ConnectorPoolKey}, whose hash only tells the connectors apart.
+     *
+     * @return null if the facade does not pool connectors.
+     */
+    private static String getPoolId(final ConnectorFacade facade) {
+        if (facade instanceof LocalConnectorFacadeImpl) {
+            APIConfigurationImpl config = ((LocalConnectorFacadeImpl) facade).getAPIConfiguration();
+            if (config.isConnectorPoolingSupported()) {
+                return AbstractConnectorFacade.qualifyKey(config.getConnectorInfo()
+                        .getConnectorKey(), SerializerUtil.serializeBase64Object(config
+                        .getConfigurationProperties())
+                        + "/" + SerializerUtil.serializeBase64Object(config
+                                .getConnectorPoolConfiguration()));
+            }
+        }
+        return null;
+    }
+
+    private static void dispose(final ConnectorFacade facade) {
+        if (facade instanceof LocalConnectorFacadeImpl) {
+            try {
+                ((LocalConnectorFacadeImpl) facade).dispose();
+            } catch (Exception e) {
+                LOG.warn(e, "Failed to dispose facade: {0}", facade);
             }
         }
-        return facade;
     }
 
     /**
@@ -79,16 +380,17 @@ public class ManagedConnectorFacadeFactoryImpl extends ConnectorFacadeFactoryImp
     @Override
     public void dispose() {
         super.dispose();
-        for (ConnectorFacade facade : CACHE.values()) {
-            if (facade instanceof LocalConnectorFacadeImpl) {
-                try {
-                    ((LocalConnectorFacadeImpl) facade).dispose();
-                } catch (Exception e) {
-                    LOG.warn(e, "Failed to dispose facade: {0}", facade);
-                }
-            }
+        final List<CacheEntry> entries = new ArrayList<CacheEntry>();
+        synchronized (CACHE) {
+            entries.addAll(CACHE.values());
+            entries.addAll(PENDING);
+            CACHE.clear();
+            PENDING.clear();
+            POOL_USERS.clear();
+        }
+        for (CacheEntry entry : entries) {
+            dispose(entry.facade);
         }
-        CACHE.clear();
     }
 
 }
@@ -35,8 +35,12 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.identityconnectors.framework.spi.OperationDeadline;
+import org.identityconnectors.framework.impl.trace.OperationSpan;
+import org.identityconnectors.framework.impl.trace.OperationTracer;
 
 /**
  * General-purpose timeout proxy for providing timeouts on all methods on the
@@ -45,9 +49,70 @@ import org.identityconnectors.framework.common.exceptions.OperationTimeoutExcept
  * element by element basis. Moreover, it would be unsafe for search since the
  * thread could continue to return elements after it has timed out and we need
  * to guarantee that not happen.
+ * <p/>
+ * How the timeout is enforced depends on the {@link Mode}, set with the
+ * {@value #MODE_PROP} system property or {@link #setMode(Mode)}. In every mode
+ * the deadline is published to the connector through {@link OperationDeadline}.
  */
 public class MethodTimeoutProxy implements InvocationHandler {
 
+    private static final Log LOG = Log.getLog(MethodTimeoutProxy.class);
+
+    /**
+     * System property selecting the {@link Mode}, <code>EXECUTOR</code> by
+     * default.
+     */
+    public static final String MODE_PROP = "org.identityconnectors.framework.timeout.mode";
+
+    /**
+     * The ways of enforcing the timeout.
+     */
+    public enum Mode {
+
+        /**
+         * The operation runs on a pooled thread while the caller waits for it
+         * until the timeout; the operation keeps running past the timeout.
+         */
+        EXECUTOR,
+
+        /**
+         * The operation runs on the caller thread, which a shared timer
+         * interrupts at the deadline.
+         */
+        INTERRUPT,
+
+        /**
+         * The operation runs on the caller thread and only the connector
+         * checking {@link OperationDeadline} can stop it at the deadline.
+         */
+        DEADLINE
+    }
+
+    private static volatile Mode mode = initialMode();
+
+    private static Mode initialMode() {
+        final String value = System.getProperty(MODE_PROP);
+        if (value != null) {
+            try {
+                return Mode.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Unknown timeout mode {0}, using {1}", value, Mode.EXECUTOR);
+            }
+        }
+        return Mode.EXECUTOR;
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    public static void setMode(final Mode newMode) {
+        if (newMode == null) {
+            throw new IllegalArgumentException("Timeout mode must not be null");
+        }
+        mode = newMode;
+    }
+
     /**
      * Get a pool of threads to use for operational timeouts.
      */
@@ -84,19 +149,41 @@ public class MethodTimeoutProxy implements InvocationHandler {
             return method.invoke(target, args);
         }
 
+        final long now = System.nanoTime();
+        long deadline = now + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        // an enclosing operation, or the remote client, may have an earlier deadline
+        final Long previous = OperationDeadline.getDeadlineNanos();
+        if (previous != null && previous - deadline < 0) {
+            deadline = previous;
+        }
+        final long effectiveDeadline = deadline;
+        final Mode current = mode;
+        if (current != Mode.EXECUTOR) {
+            return invokeOnCallerThread(method, args, deadline, current == Mode.INTERRUPT);
+        }
+
         final Locale locale = CurrentLocale.get();
+        final OperationSpan span = OperationTracer.current();
 
         Callable<Object> callable = new Callable<Object>() {
             @Override
             public Object call() throws Exception {
                 try {
                     try {
-                        // propagate current locale
+                        // propagate current locale and span
                         // since this is a thread pool
                         CurrentLocale.set(locale);
+                        if (span != null) {
+                            OperationTracer.attach(span);
+                        }
+                        OperationDeadline.setDeadlineNanos(effectiveDeadline);
                         return method.invoke(target, args);
                     } finally {
+                        OperationDeadline.setDeadlineNanos(null);
                         CurrentLocale.clear();
+                        if (span != null) {
+                            OperationTracer.restore(null);
+                        }
                     }
                 } catch (InvocationTargetException e) {
                     Throwable root = e.getCause();
@@ -113,17 +200,52 @@ public class MethodTimeoutProxy implements InvocationHandler {
             }
         };
 
+        // package in a future task so we can set a timeout..
+        FutureTask<Object> t = new FutureTask<Object>(callable);
         try {
-            // package in a future task so we can set a timeout..
-            FutureTask<Object> t = new FutureTask<Object>(callable);
             // execute it in the thread pool so we don't waste resources.
             THREADPOOL.execute(t);
             // execute and hope it doesn't timeout :)
-            return t.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return t.get(deadline - now, TimeUnit.NANOSECONDS);
         } catch (TimeoutException ex) {
             throw new OperationTimeoutException(ex);
+        } catch (InterruptedException ex) {
+            // the caller gave up, so does the operation
+            t.cancel(true);
+            Thread.currentThread().interrupt();
+            throw ConnectorException.wrap(ex);
         } catch (ExecutionException ex) {
             throw ex.getCause();
         }
     }
+
+    /**
+     * Runs the operation on the current thread, reporting its failure as an
+     * {@link OperationTimeoutException} if it was interrupted by the deadline
+     * timer or ended past its deadline. An operation which completed is never
+     * failed, as it may have changed the resource already.
+     */
+    private Object invokeOnCallerThread(final Method method, final Object[] args,
+            final long deadline, final boolean interrupt) throws Throwable {
+        final Long previous = OperationDeadline.getDeadlineNanos();
+        OperationDeadline.setDeadlineNanos(deadline);
+        final DeadlineTimer.Entry entry = interrupt ? DeadlineTimer.schedule(deadline) : null;
+        Object result = null;
+        Throwable failure = null;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            failure = e.getCause();
+        } finally {
+            OperationDeadline.setDeadlineNanos(previous);
+        }
+        final boolean interrupted = entry != null && !DeadlineTimer.cancel(entry);
+        if (failure == null) {
+            return result;
+        }
+        if (interrupted || System.nanoTime() - deadline >= 0) {
+            throw new OperationTimeoutException(failure);
+        }
+        throw failure;
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.api;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.identityconnectors.framework.common.objects.BatchAwareResultsHandler;
+import org.identityconnectors.framework.common.objects.BatchAwareSyncResultsHandler;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
+import org.identityconnectors.framework.impl.metrics.OperationMetrics;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.identityconnectors.framework.spi.SyncCheckpointResultsHandler;
+
+/**
+ * Proxy recording calls, errors, timeouts, latency and streamed objects of an
+ * operation into the {@link MetricsRegistry}.
+ */
+public class MetricsProxy implements InvocationHandler {
+
+    private final Object target;
+
+    private final OperationMetrics metrics;
+
+    public MetricsProxy(final OperationMetrics metrics, final Object target) {
+        this.metrics = metrics;
+        this.target = target;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        // do not measure equals, hashCode, toString
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(target, args);
+        }
+        Object[] actualArgs = args;
+        Counter counter = null;
+        if (args != null) {
+            Class<?>[] paramTypes = method.getParameterTypes();
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] == null) {
+                    continue;
+                }
+                if (ResultsHandler.class.isAssignableFrom(paramTypes[i])) {
+                    CountingResultsHandler handler =
+                            new CountingResultsHandler((ResultsHandler) args[i]);
+                    counter = handler;
+                    actualArgs = replace(args, actualArgs, i, handler);
+                } else if (SyncResultsHandler.class.isAssignableFrom(paramTypes[i])) {
+                    CountingSyncResultsHandler handler =
+                            new CountingSyncResultsHandler((SyncResultsHandler) args[i]);
+                    counter = handler;
+                    actualArgs = replace(args, actualArgs, i, handler);
+                }
+            }
+        }
+
+        final long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            return method.invoke(target, actualArgs);
+        } catch (InvocationTargetException e) {
+            error = e.getTargetException();
+            throw error;
+        } finally {
+            metrics.record(System.nanoTime() - start, error,
+                    error instanceof OperationTimeoutException);
+            if (counter != null) {
+                metrics.recordObjects(counter.count);
+            }
+        }
+    }
+
+    private static Object[] replace(final Object[] args, final Object[] actualArgs, final int index,
+            final Object value) {
+        Object[] rv = actualArgs == args ? args.clone() : actualArgs;
+        rv[index] = value;
+        return rv;
+    }
+
+    private static class Counter {
+        long count;
+    }
+
+    private static class CountingResultsHandler extends Counter
+            implements SearchResultsHandler, BatchAwareResultsHandler {
+
+        private final ResultsHandler handler;
+
+        CountingResultsHandler(final ResultsHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void handleResult(final SearchResult result) {
+            if (handler instanceof SearchResultsHandler) {
+                ((SearchResultsHandler) handler).handleResult(result);
+            }
+        }
+
+        @Override
+        public boolean handle(final ConnectorObject connectorObject) {
+            count++;
+            return handler.handle(connectorObject);
+        }
+
+        @Override
+        public boolean handleBatch(final List<ConnectorObject> connectorObjects) {
+            count += connectorObjects.size();
+            return ResultsHandlerUtil.handleBatch(handler, connectorObjects);
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(handler);
+        }
+    }
+
+    private static class CountingSyncResultsHandler extends Counter
+            implements SyncCheckpointResultsHandler, BatchAwareSyncResultsHandler {
+
+        private final SyncResultsHandler handler;
+
+        CountingSyncResultsHandler(final SyncResultsHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean handle(final SyncDelta delta) {
+            count++;
+            return handler.handle(delta);
+        }
+
+        @Override
+        public boolean handleBatch(final List<SyncDelta> deltas) {
+            count += deltas.size();
+            return ResultsHandlerUtil.handleBatch(handler, deltas);
+        }
+
+        @Override
+        public void handleCheckpoint(final SyncToken checkpoint) {
+            if (handler instanceof SyncCheckpointResultsHandler) {
+                ((SyncCheckpointResultsHandler) handler).handleCheckpoint(checkpoint);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(handler);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.api.ObjectCacheConfiguration;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.impl.metrics.ConnectorMetrics;
+
+/**
+ * Objects read through a facade, see {@link ObjectCacheConfiguration}.
+ * <p>
+ * The objects are cached per object class and uid, one entry per distinct
+ * set of attributes to get. The least recently used uids are dropped when
+ * the cache holds more than the configured number of uids.
+ *
+ * @since 1.4.4
+ */
+public final class ObjectCache {
+
+    /**
+     * An object with the time it expires at.
+     */
+    private static final class Entry {
+        private final ConnectorObject object;
+        private final long expiresAt;
+
+        private Entry(final ConnectorObject object, final long expiresAt) {
+            this.object = object;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final ObjectCacheConfiguration configuration;
+
+    private final long timeToLiveNanos;
+
+    private final ConnectorMetrics metrics;
+
+    /**
+     * Entries per object class and uid, then per attributes to get.
+     */
+    private final LinkedHashMap<List<String>, Map<List<String>, Entry>> objects;
+
+    /**
+     * Incremented by each invalidation, an object read before it is not
+     * cached.
+     */
+    private long generation;
+
+    /**
+     * Creates the cache.
+     *
+     * @param configuration
+     *            the configuration of the facade
+     * @param metrics
+     *            where to record the hits and misses, or null
+     */
+    public ObjectCache(final ObjectCacheConfiguration configuration,
+            final ConnectorMetrics metrics) {
+        this.configuration = new ObjectCacheConfiguration(configuration);
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getTimeToLiveMillis());
+        this.metrics = metrics;
+        final int maxObjects = configuration.getMaxObjects();
+        objects = new LinkedHashMap<List<String>, Map<List<String>, Entry>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<List<String>, Map<List<String>, Entry>> eldest) {
+                return size() > maxObjects;
+            }
+        };
+    }
+
+    /**
+     * Tells whether the object read with the given options can be cached,
+     * only the options selecting the attributes to get are supported.
+     */
+    public boolean isCacheable(final ObjectClass objectClass, final OperationOptions options) {
+        if (!configuration.isEnabled(objectClass)) {
+            return false;
+        }
+        if (options != null) {
+            for (String name : options.getOptions().keySet()) {
+                if (!OperationOptions.OP_ATTRIBUTES_TO_GET.equals(name)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the cached object.
+     *
+     * @return null if the object is not cached or expired.
+     */
+    public ConnectorObject get(final ObjectClass objectClass, final Uid uid,
+            final OperationOptions options) {
+        ConnectorObject rv = null;
+        synchronized (this) {
+            Map<List<String>, Entry> entries = objects.get(key(objectClass, uid));
+            Entry entry = entries == null ? null : entries.get(attributesToGet(options));
+            if (entry != null && System.nanoTime() - entry.expiresAt < 0) {
+                rv = entry.object;
+            }
+        }
+        if (metrics != null) {
+            metrics.recordObjectCacheLookup(rv != null);
+        }
+        return rv;
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put}, to be read before
+     * reading the object.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches an object unless the cache was invalidated since the object was
+     * read.
+     */
+    public synchronized void put(final long readGeneration, final ObjectClass objectClass,
+            final Uid uid, final OperationOptions options, final ConnectorObject object) {
+        if (readGeneration != generation) {
+            return;
+        }
+        List<String> key = key(objectClass, uid);
+        Map<List<String>, Entry> entries = objects.get(key);
+        if (entries == null) {
+            entries = new HashMap<List<String>, Entry>();
+            objects.put(key, entries);
+        }
+        entries.put(attributesToGet(options), new Entry(object, System.nanoTime()
+                + timeToLiveNanos));
+    }
+
+    /**
+     * Drops an object.
+     *
+     * @param objectClass
+     *            the class of the object, null if not known
+     */
+    public synchronized void invalidate(final ObjectClass objectClass, final Uid uid) {
+        generation++;
+        if (objectClass != null) {
+            objects.remove(key(objectClass, uid));
+        } else {
+            for (Iterator<List<String>> it = objects.keySet().iterator(); it.hasNext();) {
+                if (it.next().get(1).equals(uid.getUidValue())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all objects.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        objects.clear();
+    }
+
+    /**
+     * Returns the number of cached uids.
+     */
+    public synchronized int size() {
+        return objects.size();
+    }
+
+    private static List<String> key(final ObjectClass objectClass, final Uid uid) {
+        return Arrays.asList(objectClass.getObjectClassValue(), uid.getUidValue());
+    }
+
+    private static List<String> attributesToGet(final OperationOptions options) {
+        String[] names = options == null ? null : options.getAttributesToGet();
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        List<String> rv = new ArrayList<String>(Arrays.asList(names));
+        Collections.sort(rv);
+        // distinguish an empty list of attributes from the default ones
+        rv.add(0, "");
+        return rv;
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
+import org.identityconnectors.framework.api.operations.CreateApiOp;
+import org.identityconnectors.framework.api.operations.DeleteApiOp;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.identityconnectors.framework.api.operations.ScriptOnConnectorApiOp;
+import org.identityconnectors.framework.api.operations.ScriptOnResourceApiOp;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.api.operations.SyncApiOp;
+import org.identityconnectors.framework.api.operations.UpdateApiOp;
+import org.identityconnectors.framework.api.operations.UpdateDeltaApiOp;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.BatchAwareResultsHandler;
+import org.identityconnectors.framework.common.objects.BatchAwareSyncResultsHandler;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.identityconnectors.framework.spi.SyncCheckpointResultsHandler;
+import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
+
+/**
+ * Proxy reading objects through the {@link ObjectCache} of a facade and
+ * dropping the objects the other operations change.
+ * <p>
+ * {@link GetApiOp#getObject} and searches for a single uid are served from
+ * the cache. The objects passed to or returned by create, update, delete and
+ * batch operations and the objects of the sync deltas are dropped, scripts
+ * drop all objects.
+ */
+public class ObjectCacheProxy implements InvocationHandler {
+
+    private final Class<? extends APIOperation> api;
+
+    private final Object target;
+
+    private final ObjectCache cache;
+
+    public ObjectCacheProxy(final Class<? extends APIOperation> api, final Object target,
+            final ObjectCache cache) {
+        this.api = api;
+        this.target = target;
+        this.cache = cache;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeTarget(method, args);
+        }
+        if (api == GetApiOp.class && "getObject".equals(method.getName())) {
+            return getObject(method, args);
+        }
+        if (api == SearchApiOp.class) {
+            return search(method, args);
+        }
+        if (api == SyncApiOp.class && "sync".equals(method.getName())) {
+            Object[] actualArgs = args.clone();
+            actualArgs[2] = newInvalidatingHandler((SyncResultsHandler) args[2]);
+            return invokeTarget(method, actualArgs);
+        }
+        if (api == ScriptOnConnectorApiOp.class || api == ScriptOnResourceApiOp.class) {
+            try {
+                return invokeTarget(method, args);
+            } finally {
+                cache.invalidateAll();
+            }
+        }
+        if (api == BatchApiOp.class) {
+            try {
+                return invokeTarget(method, args);
+            } finally {
+                @SuppressWarnings("unchecked")
+                List<BatchOperation> operations = (List<BatchOperation>) args[0];
+                for (BatchOperation operation : operations) {
+                    if (operation.getUid() != null) {
+                        cache.invalidate(operation.getObjectClass(), operation.getUid());
+                    }
+                }
+            }
+        }
+        if (api == CreateApiOp.class || api == UpdateApiOp.class
+                || api == UpdateDeltaApiOp.class || api == DeleteApiOp.class) {
+            return write(method, args);
+        }
+        return invokeTarget(method, args);
+    }
+
+    private Object getObject(final Method method, final Object[] args) throws Throwable {
+        final ObjectClass objectClass = (ObjectClass) args[0];
+        final Uid uid = (Uid) args[1];
+        final OperationOptions options = (OperationOptions) args[2];
+        if (objectClass == null || uid == null || !cache.isCacheable(objectClass, options)) {
+            return invokeTarget(method, args);
+        }
+        ConnectorObject object = cache.get(objectClass, uid, options);
+        if (object == null) {
+            long generation = cache.getGeneration();
+            object = (ConnectorObject) invokeTarget(method, args);
+            if (object != null) {
+                cache.put(generation, objectClass, uid, options, object);
+            }
+        }
+        return object;
+    }
+
+    private Object search(final Method method, final Object[] args) throws Throwable {
+        final ObjectClass objectClass = (ObjectClass) args[0];
+        final Uid uid = getUid((Filter) args[1]);
+        final ResultsHandler handler = (ResultsHandler) args[2];
+        final OperationOptions options = (OperationOptions) args[3];
+        if (objectClass == null || uid == null || handler == null
+                || !cache.isCacheable(objectClass, options)) {
+            return invokeTarget(method, args);
+        }
+        ConnectorObject object = cache.get(objectClass, uid, options);
+        if (object != null) {
+            handler.handle(object);
+            SearchResult result = new SearchResult();
+            if (handler instanceof SearchResultsHandler) {
+                ((SearchResultsHandler) handler).handleResult(result);
+            }
+            return result;
+        }
+        long generation = cache.getGeneration();
+        CapturingResultsHandler capturing = new CapturingResultsHandler(handler);
+        Object[] actualArgs = args.clone();
+        actualArgs[2] = capturing;
+        Object result = invokeTarget(method, actualArgs);
+        if (capturing.count == 1 && uid.equals(capturing.object.getUid())) {
+            cache.put(generation, objectClass, uid, options, capturing.object);
+        }
+        return result;
+    }
+
+    /**
+     * Drops the objects passed to and returned by an operation.
+     */
+    private Object write(final Method method, final Object[] args) throws Throwable {
+        Object result = null;
+        try {
+            result = invokeTarget(method, args);
+            return result;
+        } finally {
+            if (args != null && args.length > 0 && args[0] instanceof ObjectClass) {
+                ObjectClass objectClass = (ObjectClass) args[0];
+                for (Object arg : args) {
+                    if (arg instanceof Uid) {
+                        cache.invalidate(objectClass, (Uid) arg);
+                    }
+                }
+                if (result instanceof Uid) {
+                    cache.invalidate(objectClass, (Uid) result);
+                }
+            }
+        }
+    }
+
+    private Object invokeTarget(final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * Returns the uid an equality filter looks for, or null.
+     */
+    private static Uid getUid(final Filter filter) {
+        if (filter instanceof EqualsFilter) {
+            Attribute attribute = ((EqualsFilter) filter).getAttribute();
+            if (attribute instanceof Uid) {
+                return (Uid) attribute;
+            }
+            if (AttributeUtil.namesEqual(Uid.NAME, attribute.getName())) {
+                Object value = AttributeUtil.getSingleValue(attribute);
+                if (value instanceof String) {
+                    return new Uid((String) value);
+                }
+            }
+        }
+        return null;
+    }
+
+    private SyncResultsHandler newInvalidatingHandler(final SyncResultsHandler handler) {
+        if (handler instanceof SyncTokenResultsHandler) {
+            return new InvalidatingSyncTokenResultsHandler((SyncTokenResultsHandler) handler);
+        }
+        return new InvalidatingSyncResultsHandler(handler);
+    }
+
+    /**
+     * Remembers the last object of a search.
+     */
+    private static class CapturingResultsHandler
+            implements SearchResultsHandler, BatchAwareResultsHandler {
+
+        private final ResultsHandler handler;
+
+        private ConnectorObject object;
+
+        private int count;
+
+        CapturingResultsHandler(final ResultsHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void handleResult(final SearchResult result) {
+            if (handler instanceof SearchResultsHandler) {
+                ((SearchResultsHandler) handler).handleResult(result);
+            }
+        }
+
+        @Override
+        public boolean handle(final ConnectorObject connectorObject) {
+            object = connectorObject;
+            count++;
+            return handler.handle(connectorObject);
+        }
+
+        @Override
+        public boolean handleBatch(final List<ConnectorObject> connectorObjects) {
+            if (!connectorObjects.isEmpty()) {
+                object = connectorObjects.get(connectorObjects.size() - 1);
+                count += connectorObjects.size();
+            }
+            return ResultsHandlerUtil.handleBatch(handler, connectorObjects);
+        }
+    }
+
+    /**
+     * Drops the objects of the sync deltas before passing them on.
+     */
+    private class InvalidatingSyncResultsHandler
+            implements SyncCheckpointResultsHandler, BatchAwareSyncResultsHandler {
+
+        private final SyncResultsHandler handler;
+
+        InvalidatingSyncResultsHandler(final SyncResultsHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean handle(final SyncDelta delta) {
+            invalidate(delta);
+            return handler.handle(delta);
+        }
+
+        @Override
+        public boolean handleBatch(final List<SyncDelta> deltas) {
+            for (SyncDelta delta : deltas) {
+                invalidate(delta);
+            }
+            return ResultsHandlerUtil.handleBatch(handler, deltas);
+        }
+
+        private void invalidate(final SyncDelta delta) {
+            cache.invalidate(delta.getObjectClass(), delta.getUid());
+            if (delta.getPreviousUid() != null) {
+                cache.invalidate(delta.getObjectClass(), delta.getPreviousUid());
+            }
+        }
+
+        @Override
+        public void handleCheckpoint(final SyncToken checkpoint) {
+            if (handler instanceof SyncCheckpointResultsHandler) {
+                ((SyncCheckpointResultsHandler) handler).handleCheckpoint(checkpoint);
+            }
+        }
+    }
+
+    private class InvalidatingSyncTokenResultsHandler extends InvalidatingSyncResultsHandler
+            implements SyncTokenResultsHandler {
+
+        private final SyncTokenResultsHandler handler;
+
+        InvalidatingSyncTokenResultsHandler(final SyncTokenResultsHandler handler) {
+            super(handler);
+            this.handler = handler;
+        }
+
+        @Override
+        public void handleResult(final SyncToken result) {
+            handler.handleResult(result);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.common.objects.Schema;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+
+/**
+ * Cache of the schemas returned by the connectors, per connector and facade
+ * configuration.
+ * <p>
+ * A cached schema is returned for the
+ * {@link org.identityconnectors.framework.api.APIConfiguration#getSchemaCacheTimeToLiveMillis()
+ * time to live} of the facade configuration. The cache is disabled by default
+ * since some applications rely on the schema operation to reach the
+ * connector. Once expired the schema is fetched again; a remote facade then
+ * sends the tag of the schema it holds so the connector server does not send
+ * it back when it did not change.
+ *
+ * @since 1.4.4
+ */
+public final class SchemaCache {
+
+    /**
+     * Expired entries are kept for conditional fetches, they are dropped once
+     * the cache holds more entries than this.
+     */
+    private static final int SWEEP_THRESHOLD = 256;
+
+    /**
+     * A cached schema with its tag.
+     */
+    public static final class Entry {
+        private final Schema schema;
+        private final long expiresAt;
+        private volatile String tag;
+
+        private Entry(final Schema schema, final String tag, final long expiresAt) {
+            this.schema = schema;
+            this.tag = tag;
+            this.expiresAt = expiresAt;
+        }
+
+        public Schema getSchema() {
+            return schema;
+        }
+
+        /**
+         * Returns the tag identifying the content of the schema.
+         */
+        public String getTag() {
+            String rv = tag;
+            if (rv == null) {
+                rv = computeTag(schema);
+                tag = rv;
+            }
+            return rv;
+        }
+
+        private boolean isExpired(final long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    private static final ConcurrentMap<String, Entry> CACHE =
+            new ConcurrentHashMap<String, Entry>();
+
+    private SchemaCache() {
+    }
+
+    /**
+     * Returns the cached schema of a facade configuration.
+     *
+     * @return null if the schema is not cached or expired.
+     */
+    public static Schema get(final String key) {
+        Entry entry = getEntry(key);
+        return entry == null || entry.isExpired(System.nanoTime()) ? null : entry.getSchema();
+    }
+
+    /**
+     * Returns the cached entry of a facade configuration, even expired.
+     */
+    public static Entry getEntry(final String key) {
+        return CACHE.get(key);
+    }
+
+    /**
+     * Caches the schema of a facade configuration.
+     *
+     * @param tag
+     *            the tag of the schema, null to compute it when needed.
+     * @param timeToLive
+     *            milliseconds the schema is cached for, nothing is cached if
+     *            not positive.
+     */
+    public static void put(final String key, final Schema schema, final String tag,
+            final long timeToLive) {
+        if (timeToLive <= 0 || schema == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        CACHE.put(key, new Entry(schema, tag, now + TimeUnit.MILLISECONDS.toNanos(timeToLive)));
+        if (CACHE.size() > SWEEP_THRESHOLD) {
+            for (Iterator<Entry> it = CACHE.values().iterator(); it.hasNext();) {
+                if (it.next().isExpired(now)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the tag of a schema, reusing the one of the cached entry.
+     */
+    public static String getTag(final String key, final Schema schema) {
+        Entry entry = CACHE.get(key);
+        if (entry != null && entry.getSchema() == schema) {
+            return entry.getTag();
+        }
+        return computeTag(schema);
+    }
+
+    /**
+     * Computes the tag identifying the content of a schema.
+     */
+    public static String computeTag(final Schema schema) {
+        return SecurityUtil.computeBase64SHA1Hash(SerializerUtil.serializeBinaryObject(schema));
+    }
+
+    /**
+     * Drops the cached schema of a facade configuration.
+     */
+    public static void invalidate(final String key) {
+        CACHE.remove(key);
+    }
+
+    /**
+     * Drops the cached schema of a facade, see
+     * {@link org.identityconnectors.framework.api.ConnectorFacadeFactory#invalidateSchema(ConnectorFacade)}.
+     */
+    public static void invalidate(final ConnectorFacade facade) {
+        if (facade instanceof AbstractConnectorFacade) {
+            invalidate(((AbstractConnectorFacade) facade).getQualifiedKey());
+        }
+    }
+
+    /**
+     * Drops all the cached schemas.
+     */
+    public static void invalidateAll() {
+        CACHE.clear();
+    }
+}
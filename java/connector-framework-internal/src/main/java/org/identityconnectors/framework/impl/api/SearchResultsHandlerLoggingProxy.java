@@ -23,13 +23,18 @@
  */
 package org.identityconnectors.framework.impl.api;
 
+import java.util.List;
+
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.BatchAwareResultsHandler;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
 import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
 
-public class SearchResultsHandlerLoggingProxy implements SearchResultsHandler {
+public class SearchResultsHandlerLoggingProxy
+        implements SearchResultsHandler, BatchAwareResultsHandler {
 
     private static final Log LOG = Log.getLog(SearchResultsHandlerLoggingProxy.class);
 
@@ -46,7 +51,7 @@ public class SearchResultsHandlerLoggingProxy implements SearchResultsHandler {
     @Override
     public void handleResult(final SearchResult result) {
         if (origHandler instanceof SearchResultsHandler) {
-            LOG.log(SearchResultsHandler.class, "handleResult", LoggingProxy.LOG_LEVEL, "Enter: " + result, null);
+            LOG.log(SearchResultsHandler.class, "handleResult", LoggingProxy.LOG_LEVEL, null, "Enter: {0}", result);
             try {
                 SearchResultsHandler.class.cast(origHandler).handleResult(result);
                 LOG.log(SearchResultsHandler.class, "handleResult", LoggingProxy.LOG_LEVEL, "Return: ", null);
@@ -59,10 +64,10 @@ public class SearchResultsHandlerLoggingProxy implements SearchResultsHandler {
 
     @Override
     public boolean handle(final ConnectorObject connectorObject) {
-        LOG.log(ResultsHandler.class, "handle", LoggingProxy.LOG_LEVEL, "Enter: " + connectorObject, null);
+        LOG.log(ResultsHandler.class, "handle", LoggingProxy.LOG_LEVEL, null, "Enter: {0}", connectorObject);
         try {
             boolean ret = origHandler.handle(connectorObject);
-            LOG.log(ResultsHandler.class, "handle", LoggingProxy.LOG_LEVEL, "Return: " + ret, null);
+            LOG.log(ResultsHandler.class, "handle", LoggingProxy.LOG_LEVEL, null, "Return: {0}", ret);
             return ret;
         } catch (RuntimeException e) {
             LOG.log(ResultsHandler.class, "handle", LoggingProxy.LOG_LEVEL, "Exception: ", e);
@@ -70,4 +75,20 @@ public class SearchResultsHandlerLoggingProxy implements SearchResultsHandler {
         }
     }
 
+    @Override
+    public boolean handleBatch(final List<ConnectorObject> connectorObjects) {
+        LOG.log(BatchAwareResultsHandler.class, "handleBatch", LoggingProxy.LOG_LEVEL, null,
+                "Enter: {0}", connectorObjects);
+        try {
+            boolean ret = ResultsHandlerUtil.handleBatch(origHandler, connectorObjects);
+            LOG.log(BatchAwareResultsHandler.class, "handleBatch", LoggingProxy.LOG_LEVEL, null,
+                    "Return: {0}", ret);
+            return ret;
+        } catch (RuntimeException e) {
+            LOG.log(BatchAwareResultsHandler.class, "handleBatch", LoggingProxy.LOG_LEVEL,
+                    "Exception: ", e);
+            throw e;
+        }
+    }
+
 }
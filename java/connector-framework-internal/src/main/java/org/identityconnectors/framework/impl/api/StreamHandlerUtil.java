@@ -23,20 +23,31 @@
  */
 package org.identityconnectors.framework.impl.api;
 
+import java.util.List;
+
 import org.identityconnectors.common.Assertions;
+import org.identityconnectors.framework.common.objects.BatchAwareResultsHandler;
+import org.identityconnectors.framework.common.objects.BatchAwareSyncResultsHandler;
+import org.identityconnectors.framework.common.objects.BatchResult;
+import org.identityconnectors.framework.common.objects.BatchResultsHandler;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
 import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.common.objects.SyncDelta;
 import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.identityconnectors.framework.spi.SyncCheckpointResultsHandler;
 
 public class StreamHandlerUtil {
 
     /**
-     * Adapts from a ObjectStreamHandler to a ResultsHandler (or SearchResultsHandler).
+     * Adapts from a ObjectStreamHandler to a ResultsHandler (or SearchResultsHandler),
+     * streaming the batches as {@link List}s.
      */
-    private static class SearchResultsHandlerAdapter implements SearchResultsHandler {
+    private static class SearchResultsHandlerAdapter
+            implements SearchResultsHandler, BatchAwareResultsHandler {
 
         private final ObjectStreamHandler target;
 
@@ -53,12 +64,18 @@ public class StreamHandlerUtil {
         public boolean handle(final ConnectorObject obj) {
             return target.handle(obj);
         }
+
+        @Override
+        public boolean handleBatch(final List<ConnectorObject> objects) {
+            return objects.isEmpty() || target.handle(objects);
+        }
     }
 
     /**
-     * Adapts from a ObjectStreamHandler to a SyncResultsHandler.
+     * Adapts from a ObjectStreamHandler to a SyncResultsHandler, streaming the
+     * batches as {@link List}s.
      */
-    private static class SyncResultsHandlerAdapter implements SyncResultsHandler {
+    private static class SyncResultsHandlerAdapter implements BatchAwareSyncResultsHandler {
 
         private final ObjectStreamHandler target;
 
@@ -70,6 +87,48 @@ public class StreamHandlerUtil {
         public boolean handle(final SyncDelta obj) {
             return target.handle(obj);
         }
+
+        @Override
+        public boolean handleBatch(final List<SyncDelta> deltas) {
+            return deltas.isEmpty() || target.handle(deltas);
+        }
+    }
+
+    /**
+     * Adapts from a ObjectStreamHandler to a SyncCheckpointResultsHandler,
+     * streaming the checkpoints as {@link SyncToken}s.
+     */
+    private static class SyncCheckpointResultsHandlerAdapter extends SyncResultsHandlerAdapter
+            implements SyncCheckpointResultsHandler {
+
+        private final ObjectStreamHandler target;
+
+        public SyncCheckpointResultsHandlerAdapter(final ObjectStreamHandler target) {
+            super(target);
+            this.target = target;
+        }
+
+        @Override
+        public void handleCheckpoint(final SyncToken checkpoint) {
+            target.handle(checkpoint);
+        }
+    }
+
+    /**
+     * Adapts from a ObjectStreamHandler to a BatchResultsHandler.
+     */
+    private static class BatchResultsHandlerAdapter implements BatchResultsHandler {
+
+        private final ObjectStreamHandler target;
+
+        public BatchResultsHandlerAdapter(final ObjectStreamHandler target) {
+            this.target = target;
+        }
+
+        @Override
+        public boolean handle(final BatchResult result) {
+            return target.handle(result);
+        }
     }
 
     /**
@@ -95,16 +154,31 @@ public class StreamHandlerUtil {
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public boolean handle(final Object obj) {
             if (targetInterface == ResultsHandler.class || targetInterface == SearchResultsHandler.class) {
-                if (obj instanceof ConnectorObject) {
+                if (obj instanceof List) {
+                    return ResultsHandlerUtil.handleBatch((ResultsHandler) target,
+                            (List<ConnectorObject>) obj);
+                } else if (obj instanceof ConnectorObject) {
                     return ((ResultsHandler) target).handle((ConnectorObject) obj);
                 } else if (obj instanceof SearchResult) {
                     ((SearchResultsHandler) target).handleResult((SearchResult) obj);
                     return true;
                 }
             } else if (targetInterface == SyncResultsHandler.class) {
+                if (obj instanceof SyncToken) {
+                    if (target instanceof SyncCheckpointResultsHandler) {
+                        ((SyncCheckpointResultsHandler) target).handleCheckpoint((SyncToken) obj);
+                    }
+                    return true;
+                } else if (obj instanceof List) {
+                    return ResultsHandlerUtil.handleBatch((SyncResultsHandler) target,
+                            (List<SyncDelta>) obj);
+                }
                 return ((SyncResultsHandler) target).handle((SyncDelta) obj);
+            } else if (targetInterface == BatchResultsHandler.class) {
+                return ((BatchResultsHandler) target).handle((BatchResult) obj);
             }
 
             throw new UnsupportedOperationException("Unhandled case: " + targetInterface);
@@ -112,7 +186,29 @@ public class StreamHandlerUtil {
     }
 
     public static boolean isAdaptableToObjectStreamHandler(final Class<?> clazz) {
-        return (ResultsHandler.class.isAssignableFrom(clazz) || SyncResultsHandler.class.isAssignableFrom(clazz));
+        return (ResultsHandler.class.isAssignableFrom(clazz)
+                || SyncResultsHandler.class.isAssignableFrom(clazz)
+                || BatchResultsHandler.class.isAssignableFrom(clazz));
+    }
+
+    /**
+     * Returns the interface to adapt back a stream handler argument to,
+     * keeping the sync checkpoints if the handler takes them.
+     *
+     * @param paramType
+     *            the type of the argument
+     * @param handler
+     *            the stream handler argument
+     * @return the interface to pass to
+     *         {@link #adaptFromObjectStreamHandler(Class, ObjectStreamHandler)}
+     * @since 1.4.4
+     */
+    public static Class<?> getAdaptedType(final Class<?> paramType, final Object handler) {
+        if (paramType == SyncResultsHandler.class
+                && handler instanceof SyncCheckpointResultsHandler) {
+            return SyncCheckpointResultsHandler.class;
+        }
+        return paramType;
     }
 
     public static ObjectStreamHandler adaptToObjectStreamHandler(final Class<?> interfaceType, final Object target) {
@@ -124,6 +220,10 @@ public class StreamHandlerUtil {
             return new SearchResultsHandlerAdapter(target);
         } else if (interfaceType == SyncResultsHandler.class) {
             return new SyncResultsHandlerAdapter(target);
+        } else if (interfaceType == SyncCheckpointResultsHandler.class) {
+            return new SyncCheckpointResultsHandlerAdapter(target);
+        } else if (interfaceType == BatchResultsHandler.class) {
+            return new BatchResultsHandlerAdapter(target);
         }
 
         throw new UnsupportedOperationException("Unhandled case: " + interfaceType);
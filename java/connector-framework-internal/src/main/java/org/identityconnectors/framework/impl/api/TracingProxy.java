@@ -0,0 +1,203 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.common.objects.BatchAwareResultsHandler;
+import org.identityconnectors.framework.common.objects.BatchAwareSyncResultsHandler;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.impl.trace.OperationSpan;
+import org.identityconnectors.framework.impl.trace.OperationTracer;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.identityconnectors.framework.spi.SyncCheckpointResultsHandler;
+
+/**
+ * Proxy responsible for tracing sampled operations from the API, see
+ * {@link OperationTracer}.
+ */
+public class TracingProxy implements InvocationHandler {
+
+    private final Object target;
+
+    private final Class<? extends APIOperation> op;
+
+    private final ConnectorKey connectorKey;
+
+    public TracingProxy(final Class<? extends APIOperation> api, final ConnectorKey connectorKey,
+            final Object target) {
+        this.op = api;
+        this.connectorKey = connectorKey;
+        this.target = target;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        // do not trace equals, hashCode, toString
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(target, args);
+        }
+        final OperationSpan span = OperationTracer.startSpan(op, method.getName(), connectorKey);
+        if (span == null) {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+
+        Object[] actualArgs = args;
+        if (args != null) {
+            actualArgs = new Object[args.length];
+            Class<?>[] paramTypes = method.getParameterTypes();
+            for (int i = 0; i < args.length; i++) {
+                actualArgs[i] = wrapHandler(paramTypes[i], args[i], span);
+            }
+        }
+
+        final OperationSpan previous = OperationTracer.attach(span);
+        Throwable error = null;
+        try {
+            return method.invoke(target, actualArgs);
+        } catch (InvocationTargetException e) {
+            error = e.getTargetException();
+            throw error;
+        } finally {
+            OperationTracer.restore(previous);
+            OperationTracer.finishSpan(span, error);
+        }
+    }
+
+    private static Object wrapHandler(final Class<?> paramType, final Object arg, final OperationSpan span) {
+        if (arg == null) {
+            return null;
+        }
+        if (ResultsHandler.class.isAssignableFrom(paramType)) {
+            return new TracingResultsHandler((ResultsHandler) arg, span);
+        } else if (SyncResultsHandler.class.isAssignableFrom(paramType)) {
+            return new TracingSyncResultsHandler((SyncResultsHandler) arg, span);
+        }
+        return arg;
+    }
+
+    private static class TracingResultsHandler
+            implements SearchResultsHandler, BatchAwareResultsHandler {
+
+        private final ResultsHandler handler;
+
+        private final OperationSpan span;
+
+        TracingResultsHandler(final ResultsHandler handler, final OperationSpan span) {
+            this.handler = handler;
+            this.span = span;
+        }
+
+        @Override
+        public void handleResult(final SearchResult result) {
+            if (handler instanceof SearchResultsHandler) {
+                ((SearchResultsHandler) handler).handleResult(result);
+            }
+        }
+
+        @Override
+        public boolean handle(final ConnectorObject connectorObject) {
+            final long start = System.nanoTime();
+            try {
+                return handler.handle(connectorObject);
+            } finally {
+                span.addHandled(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public boolean handleBatch(final List<ConnectorObject> connectorObjects) {
+            final long start = System.nanoTime();
+            try {
+                return ResultsHandlerUtil.handleBatch(handler, connectorObjects);
+            } finally {
+                span.addHandled(System.nanoTime() - start, connectorObjects.size());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(handler);
+        }
+    }
+
+    private static class TracingSyncResultsHandler
+            implements SyncCheckpointResultsHandler, BatchAwareSyncResultsHandler {
+
+        private final SyncResultsHandler handler;
+
+        private final OperationSpan span;
+
+        TracingSyncResultsHandler(final SyncResultsHandler handler, final OperationSpan span) {
+            this.handler = handler;
+            this.span = span;
+        }
+
+        @Override
+        public boolean handle(final SyncDelta delta) {
+            final long start = System.nanoTime();
+            try {
+                return handler.handle(delta);
+            } finally {
+                span.addHandled(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public boolean handleBatch(final List<SyncDelta> deltas) {
+            final long start = System.nanoTime();
+            try {
+                return ResultsHandlerUtil.handleBatch(handler, deltas);
+            } finally {
+                span.addHandled(System.nanoTime() - start, deltas.size());
+            }
+        }
+
+        @Override
+        public void handleCheckpoint(final SyncToken checkpoint) {
+            if (handler instanceof SyncCheckpointResultsHandler) {
+                ((SyncCheckpointResultsHandler) handler).handleCheckpoint(checkpoint);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(handler);
+        }
+    }
+}
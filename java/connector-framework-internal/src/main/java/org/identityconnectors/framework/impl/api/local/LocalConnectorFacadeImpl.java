@@ -23,12 +23,14 @@
  */
 package org.identityconnectors.framework.impl.api.local;
 
+import java.io.File;
 import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.AuthenticationApiOp;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
 import org.identityconnectors.framework.api.operations.DeleteApiOp;
 import org.identityconnectors.framework.api.operations.GetApiOp;
@@ -45,9 +47,12 @@ import org.identityconnectors.framework.api.operations.ValidateApiOp;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.AbstractConnectorFacade;
+import org.identityconnectors.framework.impl.api.CoalescingProxy;
 import org.identityconnectors.framework.impl.api.LoggingProxy;
 import org.identityconnectors.framework.impl.api.local.operations.APIOperationRunner;
 import org.identityconnectors.framework.impl.api.local.operations.AuthenticationImpl;
+import org.identityconnectors.framework.impl.api.local.operations.BatchImpl;
+import org.identityconnectors.framework.impl.api.local.operations.CachedSchemaImpl;
 import org.identityconnectors.framework.impl.api.local.operations.ConnectorAPIOperationRunner;
 import org.identityconnectors.framework.impl.api.local.operations.ConnectorAPIOperationRunnerProxy;
 import org.identityconnectors.framework.impl.api.local.operations.ConnectorOperationalContext;
@@ -60,12 +65,15 @@ import org.identityconnectors.framework.impl.api.local.operations.SchemaImpl;
 import org.identityconnectors.framework.impl.api.local.operations.ScriptOnConnectorImpl;
 import org.identityconnectors.framework.impl.api.local.operations.ScriptOnResourceImpl;
 import org.identityconnectors.framework.impl.api.local.operations.SearchImpl;
+import org.identityconnectors.framework.impl.api.local.operations.SnapshotSyncImpl;
 import org.identityconnectors.framework.impl.api.local.operations.SyncImpl;
 import org.identityconnectors.framework.impl.api.local.operations.TestImpl;
 import org.identityconnectors.framework.impl.api.local.operations.ThreadClassLoaderManagerProxy;
 import org.identityconnectors.framework.impl.api.local.operations.UpdateDeltaImpl;
 import org.identityconnectors.framework.impl.api.local.operations.UpdateImpl;
 import org.identityconnectors.framework.impl.api.local.operations.ValidateImpl;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
+import org.identityconnectors.framework.impl.trace.OperationTracer;
 import org.identityconnectors.framework.spi.Connector;
 
 /**
@@ -108,6 +116,8 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
         addImplementation(ScriptOnConnectorApiOp.class, ScriptOnConnectorImpl.class);
         addImplementation(ScriptOnResourceApiOp.class, ScriptOnResourceImpl.class);
         addImplementation(SyncApiOp.class, SyncImpl.class);
+        addImplementation(BatchApiOp.class, BatchImpl.class);
+        addImplementation(GetApiOp.class, GetImpl.class);
     }
 
     // =======================================================================
@@ -165,10 +175,32 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
         return operationalContext;
     }
 
+    /**
+     * Creates the handler obtaining the connector for each call. When there
+     * is no shared operational context, the handler creates a fresh one per
+     * call so that the pipeline can still be reused.
+     */
+    private ConnectorAPIOperationRunnerProxy newRunnerProxy(
+            final Constructor<? extends APIOperationRunner> constructor) {
+        if (null == operationalContext) {
+            return new ConnectorAPIOperationRunnerProxy(connectorInfo, getAPIConfiguration(), constructor);
+        }
+        return new ConnectorAPIOperationRunnerProxy(operationalContext, constructor);
+    }
+
     // =======================================================================
     // ConnectorFacade Interface
     // =======================================================================
 
+    /**
+     * The validate operation works on a fresh configuration on each call, so
+     * its pipeline is not reused.
+     */
+    @Override
+    protected boolean isOperationCacheable(final Class<? extends APIOperation> api) {
+        return api != ValidateApiOp.class;
+    }
+
     @Override
     protected APIOperation getOperationImplementation(final Class<? extends APIOperation> api) {
 
@@ -181,16 +213,21 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
             final OperationalContext context =
                     new OperationalContext(connectorInfo, getAPIConfiguration());
             proxy = new ValidateImpl(context);
-        } else if (api == GetApiOp.class) {
+        } else if (api == SyncApiOp.class && isSyncEmulated()) {
             final Constructor<? extends APIOperationRunner> constructor =
                     API_TO_IMPL.get(SearchApiOp.class);
-            final ConnectorAPIOperationRunnerProxy handler =
-                    new ConnectorAPIOperationRunnerProxy(getOperationalContext(), constructor);
-            proxy = new GetImpl((SearchApiOp) newAPIOperationProxy(SearchApiOp.class, handler));
+            final ConnectorAPIOperationRunnerProxy handler = newRunnerProxy(constructor);
+            proxy = new SnapshotSyncImpl(new File(getAPIConfiguration().getSyncSnapshotDirectory()),
+                    (SearchApiOp) newAPIOperationProxy(SearchApiOp.class, handler));
+        } else if (api == SchemaApiOp.class) {
+            final Constructor<? extends APIOperationRunner> constructor = API_TO_IMPL.get(api);
+            final ConnectorAPIOperationRunnerProxy handler = newRunnerProxy(constructor);
+            proxy = new CachedSchemaImpl(getQualifiedKey(),
+                    getAPIConfiguration().getSchemaCacheTimeToLiveMillis(),
+                    (SchemaApiOp) newAPIOperationProxy(api, handler));
         } else {
             final Constructor<? extends APIOperationRunner> constructor = API_TO_IMPL.get(api);
-            final ConnectorAPIOperationRunnerProxy handler =
-                    new ConnectorAPIOperationRunnerProxy(getOperationalContext(), constructor);
+            final ConnectorAPIOperationRunnerProxy handler = newRunnerProxy(constructor);
             proxy = newAPIOperationProxy(api, handler);
         }
 
@@ -199,8 +236,21 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
                 newAPIOperationProxy(api, new ThreadClassLoaderManagerProxy(connectorInfo
                         .getConnectorClass().getClassLoader(), proxy));
 
+        // share identical concurrent reads
+        if (CoalescingProxy.isEnabled() && CoalescingProxy.isCoalescable(api)) {
+            proxy = createCoalescingProxy(api, proxy);
+        }
+
         // now wrap the proxy in the appropriate timeout proxy
         proxy = createTimeoutProxy(api, proxy);
+        // record metrics
+        if (MetricsRegistry.isEnabled()) {
+            proxy = createMetricsProxy(api, proxy);
+        }
+        // sample operations if tracing is on..
+        if (OperationTracer.isEnabled()) {
+            proxy = createTracingProxy(api, proxy);
+        }
         // wrap in a logging proxy..
         if (LoggingProxy.isLoggable()) {
             proxy = createLoggingProxy(api, proxy);
@@ -26,13 +26,20 @@
 package org.identityconnectors.framework.impl.api.local;
 
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.lang.ref.WeakReference;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.logging.Log;
@@ -49,10 +56,19 @@ public class ObjectPool<T> {
     public static final class Statistics {
         private final int numIdle;
         private final int numActive;
+        private final long numBorrows;
+        private final long numWaits;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
 
-        private Statistics(final int numIdle, final int numActive) {
+        private Statistics(final int numIdle, final int numActive, final long numBorrows,
+                final long numWaits, final long totalWaitNanos, final long maxWaitNanos) {
             this.numIdle = numIdle;
             this.numActive = numActive;
+            this.numBorrows = numBorrows;
+            this.numWaits = numWaits;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
         }
 
         /**
@@ -68,6 +84,43 @@ public class ObjectPool<T> {
         public int getNumActive() {
             return numActive - numIdle;
         }
+
+        /**
+         * Returns the number of successful borrows.
+         *
+         * @since 1.4.4
+         */
+        public long getNumBorrows() {
+            return numBorrows;
+        }
+
+        /**
+         * Returns the number of borrows which had to wait for an object to be
+         * returned.
+         *
+         * @since 1.4.4
+         */
+        public long getNumWaits() {
+            return numWaits;
+        }
+
+        /**
+         * Returns the time spent waiting by all the borrows, in nanoseconds.
+         *
+         * @since 1.4.4
+         */
+        public long getTotalWaitNanos() {
+            return totalWaitNanos;
+        }
+
+        /**
+         * Returns the longest time a borrow waited, in nanoseconds.
+         *
+         * @since 1.4.4
+         */
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
     }
 
     /**
@@ -79,6 +132,18 @@ public class ObjectPool<T> {
          */
         private final T object;
 
+        /**
+         * True while the object sits in the idle queue and nobody claimed it
+         */
+        private final AtomicBoolean idle = new AtomicBoolean();
+
+        /**
+         * True while a node of the idle queue refers to the object. An object
+         * claimed by its last borrower keeps its node until the node is
+         * polled, and gets it back if it is returned before that.
+         */
+        private final AtomicBoolean queued = new AtomicBoolean();
+
         /**
          * True if this is currently active, false if it is idle
          */
@@ -87,7 +152,7 @@ public class ObjectPool<T> {
         /**
          * Last state change (change from active to idle or vice-versa)
          */
-        private long lastStateChangeTimestamp;
+        private volatile long lastStateChangeTimestamp;
 
         /**
          * Is this a freshly created object (never been pooled)?
@@ -107,11 +172,13 @@ public class ObjectPool<T> {
 
         @Override
         public void close() throws IOException {
-            try {
-                returnObject(this);
-            } catch (InterruptedException e) {
-                LOG.error(e, "Failed to close/dispose PooledObject object");
-            }
+            returnObject(this);
+        }
+
+        @Override
+        public void invalidate() {
+            setActive(false);
+            dispose(this);
         }
 
         public boolean isNew() {
@@ -129,6 +196,13 @@ public class ObjectPool<T> {
             }
         }
 
+        /**
+         * Takes the object out of the idle state, only one caller succeeds.
+         */
+        public boolean claim() {
+            return idle.compareAndSet(true, false);
+        }
+
         private void touch() {
             lastStateChangeTimestamp = System.currentTimeMillis();
         }
@@ -139,10 +213,160 @@ public class ObjectPool<T> {
     }
 
     /**
-     * Set contains all the PooledObject was made by this pool. It contains all
-     * idle and borrowed(active) objects.
+     * Token handed to a waiting borrower to make it look at the pool again.
+     */
+    private static final Object WAKE_UP = new Object();
+
+    /**
+     * Token set by a waiting borrower which gave up.
+     */
+    private static final Object CANCELLED = new Object();
+
+    /**
+     * A borrower waiting for an object, released objects are handed to the
+     * waiters in arrival order.
+     */
+    private static final class Waiter {
+
+        private final Thread thread = Thread.currentThread();
+
+        private final AtomicReference<Object> slot = new AtomicReference<Object>();
+
+        boolean offer(final Object o) {
+            if (slot.compareAndSet(null, o)) {
+                LockSupport.unpark(thread);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Stops waiting.
+         *
+         * @return null or what was handed over in the meantime
+         */
+        Object cancel() {
+            if (slot.compareAndSet(null, CANCELLED)) {
+                return null;
+            }
+            return slot.get();
+        }
+    }
+
+    /**
+     * Runs {@link ObjectPool#evict()} periodically, without keeping the pool
+     * from being garbage collected.
+     * <p/>
+     * The shared scheduler thread only hands the runs over to the workers, so
+     * that a connector slow to test or create does not delay the eviction of
+     * the other pools. A run starting while the previous one is not over is
+     * skipped.
+     */
+    private static class Evictor implements Runnable {
+
+        private final WeakReference<ObjectPool<?>> poolRef;
+
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private volatile ScheduledFuture<?> future;
+
+        Evictor(final ObjectPool<?> pool) {
+            poolRef = new WeakReference<ObjectPool<?>>(pool);
+        }
+
+        @Override
+        public void run() {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                getEvictorWorkers().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            evict();
+                        } finally {
+                            running.set(false);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                running.set(false);
+                LOG.warn(e, "Failed to schedule the eviction of idle objects");
+            }
+        }
+
+        private void evict() {
+            ObjectPool<?> pool = poolRef.get();
+            if (pool == null || pool.isShutdown()) {
+                cancel();
+                return;
+            }
+            try {
+                pool.evict();
+            } catch (Throwable t) {
+                LOG.warn(t, "Failed to evict idle objects");
+            }
+        }
+
+        void cancel() {
+            ScheduledFuture<?> f = future;
+            if (f != null) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Single daemon thread shared by the evictors of all the pools.
+     */
+    private static ScheduledExecutorService evictorExecutor;
+
+    private static synchronized ScheduledExecutorService getEvictorExecutor() {
+        if (evictorExecutor == null) {
+            evictorExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r, "ObjectPool Evictor");
+                    t.setDaemon(true);
+                    t.setContextClassLoader(ObjectPool.class.getClassLoader());
+                    return t;
+                }
+            });
+        }
+        return evictorExecutor;
+    }
+
+    /**
+     * Daemon threads running the evictions, one per pool being evicted at
+     * most, reused across the pools.
      */
-    private Set<PooledObject> activeObjects;
+    private static ExecutorService evictorWorkers;
+
+    private static synchronized ExecutorService getEvictorWorkers() {
+        if (evictorWorkers == null) {
+            evictorWorkers = Executors.newCachedThreadPool(new ThreadFactory() {
+
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r, "ObjectPool Evictor-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setContextClassLoader(ObjectPool.class.getClassLoader());
+                    return t;
+                }
+            });
+        }
+        return evictorWorkers;
+    }
+
+    /**
+     * Number of objects made by this pool and not disposed yet, idle and
+     * borrowed(active) ones.
+     */
+    private final AtomicInteger totalObjects = new AtomicInteger();
 
     /**
      * Queue of idle objects. The one that has been idle for the longest comes
@@ -152,18 +376,36 @@ public class ObjectPool<T> {
             new ConcurrentLinkedQueue<PooledObject>();
 
     /**
-     * Limits the maximum available pooled object in the pool.
+     * Size of {@link #idleObjects}, kept apart since
+     * {@link ConcurrentLinkedQueue#size()} traverses the queue.
+     */
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * Borrowers waiting for an object, the one waiting for the longest comes
+     * first.
+     */
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+
+    /**
+     * Last object returned by the current thread, if
+     * {@code ThreadAffinity} is on.
      */
-    private Semaphore totalPermit;
+    private final ThreadLocal<WeakReference<PooledObject>> lastReturned =
+            new ThreadLocal<WeakReference<PooledObject>>();
 
     /**
-     * Lock to maintain the state changes of the pool.
+     * Limits the maximum available pooled object in the pool.
      */
-    /** Lock held by take, poll, etc */
-    private final ReentrantLock takeLock = new ReentrantLock();
+    private final Semaphore totalPermit;
+
+    private final AtomicLong numBorrows = new AtomicLong();
 
-    /** Wait queue for waiting takes */
-    private final Condition notEmpty = takeLock.newCondition();
+    private final AtomicLong numWaits = new AtomicLong();
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
 
     /**
      * ObjectPoolHandler we use for managing object lifecycle
@@ -175,6 +417,11 @@ public class ObjectPool<T> {
      */
     private final ObjectPoolConfiguration poolConfiguration;
 
+    /**
+     * Background evictor, null if disabled.
+     */
+    private final Evictor evictor;
+
     /**
      * Is the pool shutdown
      */
@@ -196,8 +443,17 @@ public class ObjectPool<T> {
         this.handler = handler;
         // clone it
         poolConfiguration = this.handler.validate(config);
-        activeObjects = new HashSet<PooledObject>(poolConfiguration.getMaxObjects());
         totalPermit = new Semaphore(poolConfiguration.getMaxObjects());
+
+        long period = poolConfiguration.getTimeBetweenEvictionRunsMillis();
+        if (period > 0) {
+            evictor = new Evictor(this);
+            evictor.future =
+                    getEvictorExecutor().scheduleWithFixedDelay(evictor, period, period,
+                            TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
     }
 
     /**
@@ -214,26 +470,58 @@ public class ObjectPool<T> {
      *
      * @param pooled
      */
-    private void returnObject(PooledObject pooled) throws InterruptedException {
+    private void returnObject(PooledObject pooled) {
+        pooled.setActive(false);
+        pooled.setNew(false);
         if (isShutdown() || poolConfiguration.getMaxIdle() < 1) {
             dispose(pooled);
         } else {
-            try {
-                for (PooledObject entry : idleObjects) {
-                    if ((poolConfiguration.getMaxIdle() <= idleObjects.size())
-                            || entry.isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis())) {
-                        if (idleObjects.remove(entry)) {
-                            dispose(entry);
-                        }
-                    }
-                }
-            } finally {
-                pooled.setActive(false);
-                pooled.setNew(false);
-                idleObjects.add(pooled);
-                signalNotEmpty();
+            if (poolConfiguration.isThreadAffinity()) {
+                lastReturned.set(new WeakReference<PooledObject>(pooled));
+            }
+            release(pooled);
+        }
+    }
+
+    /**
+     * Hands an object over to the longest waiting borrower if the pool is
+     * fair, or puts it in the idle queue.
+     */
+    private void release(PooledObject pooled) {
+        if (poolConfiguration.isFair() && handOff(pooled)) {
+            return;
+        }
+        // make room by disposing of the one idle for the longest, older
+        // objects are left to the evictor and to the borrowers
+        if (poolConfiguration.getMaxIdle() <= idleCount.get()) {
+            PooledObject oldest = pollIdle();
+            if (null != oldest) {
+                dispose(oldest);
+            }
+        }
+        offerIdle(pooled);
+        // wake up the longest waiting borrower, which looks at the idle queue
+        handOff(WAKE_UP);
+        // the pool may have been shut down before the object was queued
+        if (isShutdown() && pooled.claim()) {
+            idleCount.decrementAndGet();
+            idleObjects.remove(pooled);
+            dispose(pooled);
+        }
+    }
+
+    /**
+     * Hands the object or token to the longest waiting borrower.
+     *
+     * @return false if nobody is waiting
+     */
+    private boolean handOff(final Object o) {
+        for (Waiter waiter = waiters.poll(); waiter != null; waiter = waiters.poll()) {
+            if (waiter.offer(o)) {
+                return true;
             }
         }
+        return false;
     }
 
     /**
@@ -243,13 +531,16 @@ public class ObjectPool<T> {
      */
     public ObjectPoolEntry<T> borrowObject() {
         PooledObject rv = null;
+        final long start = System.nanoTime();
         try {
             do {
-                rv = borrowObjectNoTest();
-                try {
-                    handler.testObject(rv.getPooledObject());
-                } catch (Exception e) {
-                    if (null != rv) {
+                rv = borrowObjectNoTest(start);
+                // objects returned moments ago are not tested again
+                long validationIdleTime = poolConfiguration.getValidationIdleTimeMillis();
+                if (validationIdleTime == 0 || rv.isNew() || rv.isOlderThan(validationIdleTime)) {
+                    try {
+                        handler.testObject(rv.getPooledObject());
+                    } catch (Exception e) {
                         dispose(rv);
                         // if it's a new object, break out of the loop
                         // immediately
@@ -265,6 +556,7 @@ public class ObjectPool<T> {
             LOG.error(e, "Failed to borrow object from pool.");
             throw ConnectorException.wrap(e);
         }
+        numBorrows.incrementAndGet();
         return rv;
     }
 
@@ -274,56 +566,102 @@ public class ObjectPool<T> {
      *
      * @return the object
      */
-    private PooledObject borrowObjectNoTest() throws InterruptedException {
+    private PooledObject borrowObjectNoTest(final long start) throws InterruptedException {
         if (isShutdown()) {
             throw new IllegalStateException("Object pool already shutdown");
         }
 
         // First borrow from the idle pool
         PooledObject pooledConn = borrowIdleObject();
-        if (null == pooledConn) {
-            long nanos = TimeUnit.SECONDS.toNanos(poolConfiguration.getMaxWait());
-            final ReentrantLock lock = this.takeLock;
-            lock.lockInterruptibly();
+        if (null != pooledConn) {
+            return pooledConn;
+        }
+        if (!totalPermit.tryAcquire()) {
             try {
-                do {
-                    if (totalPermit.tryAcquire()) {
-                    	try {
-	                        // If the pool is empty and there are available permits
-	                        // then create a new instance.
-	                        return makeObject();
-                    	} catch (RuntimeException e) {
-                    		totalPermit.release();
-                    		throw e;
-                    	} catch (Error e) {
-                    		totalPermit.release();
-                    		throw e;
-                    	}
-                    } else {
-                        // Wait for permit or object to became available
-                        try {
-                            nanos = notEmpty.awaitNanos(nanos);
-                        } catch (InterruptedException ie) {
-                            notEmpty.signal(); // propagate to non-interrupted
-                                               // thread
-                            throw ConnectorException.wrap(ie);
-                        }
-
-                        if (nanos <= 0) {
-                            throw new ConnectorException("TimeOut");
-                        }
-                        // Try to borrow from the idle pool
-                        pooledConn = borrowIdleObject();
-                        if (null != pooledConn) {
-                            return pooledConn;
-                        }
-                    }
-                } while (nanos > 0);
+                pooledConn = await(start + TimeUnit.SECONDS.toNanos(poolConfiguration.getMaxWait()));
             } finally {
-                lock.unlock();
+                recordWait(System.nanoTime() - start);
+            }
+            if (null != pooledConn) {
+                return pooledConn;
+            }
+        }
+        // If the pool is empty and there are available permits then create a
+        // new instance, outside of the lock since it may take long.
+        try {
+            return makeObject();
+        } catch (RuntimeException e) {
+            releasePermit();
+            throw e;
+        } catch (Error e) {
+            releasePermit();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until an object is handed over or a permit becomes available.
+     *
+     * @return the object handed over, or null if a permit was acquired
+     */
+    private PooledObject await(final long deadline) throws InterruptedException {
+        while (true) {
+            Waiter waiter = new Waiter();
+            waiters.add(waiter);
+            // look again, something may have been released before we queued
+            PooledObject pooledConn = borrowIdleObject();
+            if (null != pooledConn || totalPermit.tryAcquire()) {
+                reject(waiter.cancel());
+                return pooledConn;
+            }
+            Object handed;
+            while ((handed = waiter.slot.get()) == null) {
+                long nanos = deadline - System.nanoTime();
+                if (nanos <= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(this, nanos);
+                if (Thread.interrupted()) {
+                    waiters.remove(waiter);
+                    reject(waiter.cancel());
+                    throw new InterruptedException();
+                }
+            }
+            if (null == handed) {
+                handed = waiter.cancel();
+                if (null == handed) {
+                    waiters.remove(waiter);
+                    throw new ConnectorException("TimeOut");
+                }
+            }
+            if (handed != WAKE_UP) {
+                @SuppressWarnings("unchecked")
+                PooledObject rv = (PooledObject) handed;
+                return rv;
             }
         }
-        return pooledConn;
+    }
+
+    /**
+     * Passes on what was handed over to a borrower which does not need it
+     * anymore.
+     */
+    @SuppressWarnings("unchecked")
+    private void reject(final Object handed) {
+        if (handed == WAKE_UP) {
+            handOff(WAKE_UP);
+        } else if (null != handed) {
+            release((PooledObject) handed);
+        }
+    }
+
+    private void recordWait(final long nanos) {
+        numWaits.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        long max = maxWaitNanos.get();
+        while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+            max = maxWaitNanos.get();
+        }
     }
 
     /**
@@ -331,14 +669,27 @@ public class ObjectPool<T> {
      * <p/>
      * Polls the head object and before it returns it checks the {@code MaxIdle}
      * size and the {@code MinEvictableIdleTime} before accepts the object.
+     * With {@code ThreadAffinity} the object last returned by the current
+     * thread is preferred.
      *
      * @return null if there was no fresh/new object in the queue.
-     * @throws InterruptedException
      */
-    private PooledObject borrowIdleObject() throws InterruptedException {
-        for (PooledObject pooledConn = idleObjects.poll(); pooledConn != null; pooledConn =
-                idleObjects.poll()) {
-            int size = idleObjects.size();
+    private PooledObject borrowIdleObject() {
+        PooledObject pooledConn = null;
+        if (poolConfiguration.isThreadAffinity()) {
+            WeakReference<PooledObject> ref = lastReturned.get();
+            pooledConn = null != ref ? ref.get() : null;
+            if (null != pooledConn && pooledConn.claim()) {
+                // its node stays in the queue, pollIdle skips it
+                idleCount.decrementAndGet();
+            } else {
+                pooledConn = pollIdle();
+            }
+        } else {
+            pooledConn = pollIdle();
+        }
+        for (; pooledConn != null; pooledConn = pollIdle()) {
+            int size = idleCount.get();
             if (poolConfiguration.getMinIdle() < size + 1
                     && ((poolConfiguration.getMaxIdle() < size) || pooledConn
                             .isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis()))) {
@@ -350,6 +701,81 @@ public class ObjectPool<T> {
         return null;
     }
 
+    /**
+     * One run of the background evictor.
+     * <p/>
+     * Disposes of the idle objects older than {@code MinEvictableIdleTime}
+     * while more than {@code MinIdle} are idle, tests the others if
+     * {@code TestWhileIdle} is set and then creates idle objects up to
+     * {@code MinIdle}.
+     */
+    void evict() {
+        final long maxAge = poolConfiguration.getMinEvictableIdleTimeMillis();
+        final int minIdle = poolConfiguration.getMinIdle();
+        if (poolConfiguration.isTestWhileIdle()) {
+            // take every idle object out in turn, so it is not borrowed while
+            // being tested
+            for (int i = idleCount.get(); i > 0 && !isShutdown(); i--) {
+                PooledObject entry = pollIdle();
+                if (null == entry) {
+                    break;
+                }
+                if (minIdle <= idleCount.get() && entry.isOlderThan(maxAge)) {
+                    dispose(entry);
+                    continue;
+                }
+                try {
+                    handler.testObject(entry.getPooledObject());
+                } catch (Exception e) {
+                    LOG.ok(e, "Idle object failed the test, disposing it");
+                    dispose(entry);
+                    continue;
+                }
+                release(entry);
+            }
+        } else {
+            for (PooledObject entry = idleObjects.peek(); entry != null
+                    && minIdle < idleCount.get(); entry = idleObjects.peek()) {
+                // drop the nodes left by the objects claimed by their last
+                // borrower, stop at the first object idle for too short
+                if (entry.idle.get() && !entry.isOlderThan(maxAge)) {
+                    break;
+                }
+                // the head, so it is found at once
+                if (!idleObjects.remove(entry)) {
+                    continue;
+                }
+                entry.queued.set(false);
+                if (entry.claim()) {
+                    idleCount.decrementAndGet();
+                    if (entry.isOlderThan(maxAge)) {
+                        dispose(entry);
+                    } else {
+                        // returned meanwhile
+                        offerIdle(entry);
+                    }
+                }
+            }
+        }
+        // pre-warm up to minIdle idle objects
+        for (int missing = minIdle - idleCount.get(); missing > 0 && !isShutdown()
+                && totalPermit.tryAcquire(); missing--) {
+            PooledObject entry;
+            try {
+                entry = makeObject();
+            } catch (RuntimeException e) {
+                releasePermit();
+                LOG.warn(e, "Failed to create idle object");
+                break;
+            }
+            entry.setNew(false);
+            release(entry);
+        }
+        if (isShutdown()) {
+            disposeIdleObjects();
+        }
+    }
+
     /**
      * Closes any idle objects in the pool.
      * <p/>
@@ -358,30 +784,34 @@ public class ObjectPool<T> {
      */
     public void shutdown() {
         isShutdown = true;
+        if (null != evictor) {
+            evictor.cancel();
+        }
         // just evict idle objects
         // if there are any active objects still
         // going, leave them alone so they can return
         // gracefully
         try {
-            for (PooledObject entry = idleObjects.poll(); entry != null; entry = idleObjects.poll()) {
-                try {
-                    dispose(entry);
-                } catch (InterruptedException e) {
-                    LOG.error(e, "Failed to dispose PooledObject object");
-                }
-            }
+            disposeIdleObjects();
         } finally {
             handler.shutdown();
         }
     }
 
+    private void disposeIdleObjects() {
+        for (PooledObject entry = pollIdle(); entry != null; entry = pollIdle()) {
+            dispose(entry);
+        }
+    }
+
     /**
      * Gets a snapshot of the pool's stats at a point in time.
      *
      * @return The statistics
      */
     public Statistics getStatistics() {
-        return new Statistics(idleObjects.size(), activeObjects.size());
+        return new Statistics(idleCount.get(), totalObjects.get(), numBorrows.get(), numWaits
+                .get(), totalWaitNanos.get(), maxWaitNanos.get());
     }
 
     /**
@@ -392,12 +822,31 @@ public class ObjectPool<T> {
      *             if something happens.
      */
     private PooledObject makeObject() {
-        synchronized (activeObjects) {
-            PooledObject pooledConn =
-                    new PooledObject((activeObjects.size() > 0) ? handler.makeObject() : handler
-                            .makeObject());
-            activeObjects.add(pooledConn);
-            return pooledConn;
+        PooledObject pooledConn = new PooledObject(handler.makeObject());
+        totalObjects.incrementAndGet();
+        return pooledConn;
+    }
+
+    /**
+     * Claims the object idle for the longest.
+     */
+    private PooledObject pollIdle() {
+        for (PooledObject entry = idleObjects.poll(); entry != null; entry = idleObjects.poll()) {
+            entry.queued.set(false);
+            // skip the objects claimed by their last borrower
+            if (entry.claim()) {
+                idleCount.decrementAndGet();
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void offerIdle(final PooledObject entry) {
+        idleCount.incrementAndGet();
+        entry.idle.set(true);
+        if (!entry.queued.getAndSet(true)) {
+            idleObjects.add(entry);
         }
     }
 
@@ -406,38 +855,22 @@ public class ObjectPool<T> {
      *
      * @param entry
      */
-    private void dispose(final PooledObject entry) throws InterruptedException {
-        final ReentrantLock lock = this.takeLock;
-        lock.lockInterruptibly();
+    private void dispose(final PooledObject entry) {
         try {
-            synchronized (activeObjects) {
-                // Make sure the disposed object was the last item in the
-                // activeObjects
-                if (activeObjects.remove(entry) && activeObjects.isEmpty()) {
-                    handler.disposeObject(entry.getPooledObject());
-                } else {
-                    handler.disposeObject(entry.getPooledObject());
-                }
-            }
+            handler.disposeObject(entry.getPooledObject());
         } catch (Exception e) {
             LOG.warn(e, "disposeObject() is not supposed to throw");
         } finally {
-            totalPermit.release();
-            notEmpty.signal();
-            lock.unlock();
+            totalObjects.decrementAndGet();
+            releasePermit();
         }
     }
 
     /**
-     * Signals a waiting take. Called only from borrowObjectNoTest
+     * Releases a permit and lets the longest waiting borrower use it.
      */
-    private void signalNotEmpty() {
-        final ReentrantLock takeLock = this.takeLock;
-        takeLock.lock();
-        try {
-            notEmpty.signal();
-        } finally {
-            takeLock.unlock();
-        }
+    private void releasePermit() {
+        totalPermit.release();
+        handOff(WAKE_UP);
     }
 }
@@ -47,4 +47,12 @@ public interface ObjectPoolEntry<T> extends Closeable {
     @Override
     public void close() throws IOException;
 
+    /**
+     * Disposes of the pooled object instead of putting it back to the pool,
+     * when it may have been left in a bad state.
+     *
+     * @since 1.4.4
+     */
+    public void invalidate();
+
 }
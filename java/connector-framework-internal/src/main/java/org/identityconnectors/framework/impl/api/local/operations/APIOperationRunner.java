@@ -24,7 +24,10 @@ package org.identityconnectors.framework.impl.api.local.operations;
 
 import static org.identityconnectors.common.ReflectionUtil.getInterfaces;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.identityconnectors.framework.api.operations.APIOperation;
 
@@ -33,6 +36,12 @@ import org.identityconnectors.framework.api.operations.APIOperation;
  */
 public abstract class APIOperationRunner {
 
+    /**
+     * Runner classes already checked to implement a single operation.
+     */
+    private static final Set<Class<?>> VALIDATED_CLASSES =
+            Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
     /**
      * Context that has all the information required to execute an operation.
      */
@@ -43,6 +52,9 @@ public abstract class APIOperationRunner {
      */
     public APIOperationRunner(final OperationalContext context) {
         this.context = context;
+        if (VALIDATED_CLASSES.contains(getClass())) {
+            return;
+        }
         // get the APIOperation that this class implements..
         List<Class<? extends APIOperation>> apiOps =
                 getInterfaces(this.getClass(), APIOperation.class);
@@ -50,6 +62,7 @@ public abstract class APIOperationRunner {
         if (apiOps.size() > 1) {
             throw new IllegalStateException("Must only implement one operation.");
         }
+        VALIDATED_CLASSES.add(getClass());
     }
 
     /**
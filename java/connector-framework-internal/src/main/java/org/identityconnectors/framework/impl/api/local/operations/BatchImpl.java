@@ -0,0 +1,252 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
+import org.identityconnectors.framework.api.operations.CreateApiOp;
+import org.identityconnectors.framework.api.operations.DeleteApiOp;
+import org.identityconnectors.framework.api.operations.UpdateApiOp;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
+import org.identityconnectors.framework.common.objects.BatchResultsHandler;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.operations.BatchOp;
+import org.identityconnectors.framework.spi.operations.CreateOp;
+import org.identityconnectors.framework.spi.operations.DeleteOp;
+import org.identityconnectors.framework.spi.operations.SPIOperation;
+import org.identityconnectors.framework.spi.operations.UpdateOp;
+
+/**
+ * Hands the batch to connectors implementing {@link BatchOp}, otherwise runs
+ * its operations one after the other through the create, update and delete
+ * implementations, on the connector checked out for the whole batch. The
+ * operations whose API operation is not supported by the configuration are
+ * reported as failed.
+ */
+public class BatchImpl extends ConnectorAPIOperationRunner implements BatchApiOp {
+
+    // Special logger with SPI operation log name. Used for logging operation entry/exit
+    private static final Log OP_LOG = Log.getLog(BatchOp.class);
+
+    /**
+     * Normalizes the uids of the results reported by the connector, and
+     * gives them the index of the operation in the batch of the caller.
+     */
+    private class NormalizingBatchResultsHandler implements BatchResultsHandler {
+
+        private final List<BatchOperation> operations;
+
+        private final List<Integer> indexes;
+
+        private final BatchResultsHandler target;
+
+        NormalizingBatchResultsHandler(final List<BatchOperation> operations,
+                final List<Integer> indexes, final BatchResultsHandler target) {
+            this.operations = operations;
+            this.indexes = indexes;
+            this.target = target;
+        }
+
+        @Override
+        public boolean handle(final BatchResult result) {
+            if (result.getIndex() < 0 || result.getIndex() >= operations.size()) {
+                return target.handle(result);
+            }
+            int index = indexes.get(result.getIndex());
+            if (result.isSuccess()) {
+                ObjectClass objectClass = operations.get(result.getIndex()).getObjectClass();
+                Uid uid = (Uid) getNormalizer(objectClass).normalizeAttribute(result.getUid());
+                return target.handle(new BatchResult(index, uid));
+            }
+            return target.handle(new BatchResult(index, result.getException()));
+        }
+    }
+
+    /**
+     * Initializes the operation works.
+     */
+    public BatchImpl(final ConnectorOperationalContext context, final Connector connector) {
+        super(context, connector);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void executeBatch(final List<BatchOperation> operations,
+            final BatchResultsHandler handler, OperationOptions options) {
+        Assertions.nullCheck(operations, "operations");
+        Assertions.nullCheck(handler, "handler");
+        for (BatchOperation operation : operations) {
+            Assertions.nullCheck(operation, "operation");
+            if (ObjectClass.ALL.equals(operation.getObjectClass())) {
+                throw new UnsupportedOperationException(
+                        "Operation is not allowed on __ALL__ object class");
+            }
+        }
+        // cast null as empty
+        if (options == null) {
+            options = new OperationOptionsBuilder().build();
+        }
+        if (getConnector() instanceof BatchOp) {
+            executeNative(operations, handler, options);
+        } else {
+            executeEach(operations, handler, options);
+        }
+    }
+
+    private void executeNative(final List<BatchOperation> operations,
+            final BatchResultsHandler handler, final OperationOptions options) {
+        final List<BatchOperation> normalized = new ArrayList<BatchOperation>(operations.size());
+        final List<Integer> indexes = new ArrayList<Integer>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            final BatchOperation operation = operations.get(i);
+            try {
+                checkEnabled(operation.getType());
+            } catch (UnsupportedOperationException e) {
+                if (!handler.handle(new BatchResult(i, e))) {
+                    return;
+                }
+                continue;
+            }
+            indexes.add(i);
+            final ObjectNormalizerFacade normalizer = getNormalizer(operation.getObjectClass());
+            Uid uid = operation.getUid();
+            if (uid != null) {
+                uid = (Uid) normalizer.normalizeAttribute(uid);
+            }
+            normalized.add(new BatchOperation(operation.getType(), operation.getObjectClass(),
+                    uid, normalizer.normalizeAttributes(operation.getAttributes())));
+        }
+        if (normalized.isEmpty()) {
+            return;
+        }
+        if (isLoggable()) {
+            OP_LOG.log(BatchOp.class, "executeBatch", SpiOperationLoggingUtil.LOG_LEVEL,
+                    "Enter: executeBatch(" + normalized + ", " + options + ")", null);
+        }
+        try {
+            ((BatchOp) getConnector()).executeBatch(normalized,
+                    new NormalizingBatchResultsHandler(normalized, indexes, handler), options);
+        } catch (RuntimeException e) {
+            SpiOperationLoggingUtil.logOpException(OP_LOG, BatchOp.class, "executeBatch", e);
+            throw e;
+        }
+        if (isLoggable()) {
+            OP_LOG.log(BatchOp.class, "executeBatch", SpiOperationLoggingUtil.LOG_LEVEL,
+                    "Return", null);
+        }
+    }
+
+    private void executeEach(final List<BatchOperation> operations,
+            final BatchResultsHandler handler, final OperationOptions options) {
+        final Connector connector = getConnector();
+        CreateImpl create = null;
+        UpdateImpl update = null;
+        DeleteImpl delete = null;
+        for (int i = 0; i < operations.size(); i++) {
+            final BatchOperation operation = operations.get(i);
+            BatchResult result;
+            try {
+                checkEnabled(operation.getType());
+                switch (operation.getType()) {
+                case CREATE:
+                    checkSupported(connector, CreateOp.class);
+                    if (create == null) {
+                        create = new CreateImpl(getOperationalContext(), connector);
+                    }
+                    result = new BatchResult(i, create.create(operation.getObjectClass(),
+                            operation.getAttributes(), options));
+                    break;
+                case UPDATE:
+                    checkSupported(connector, UpdateOp.class);
+                    if (update == null) {
+                        update = new UpdateImpl(getOperationalContext(), connector);
+                    }
+                    result = new BatchResult(i, update.update(operation.getObjectClass(),
+                            operation.getUid(), operation.getAttributes(), options));
+                    break;
+                default:
+                    checkSupported(connector, DeleteOp.class);
+                    if (delete == null) {
+                        delete = new DeleteImpl(getOperationalContext(), connector);
+                    }
+                    delete.delete(operation.getObjectClass(), operation.getUid(), options);
+                    result = new BatchResult(i, operation.getUid());
+                    break;
+                }
+            } catch (RuntimeException e) {
+                result = new BatchResult(i, e);
+            }
+            if (!handler.handle(result)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Checks that the configuration supports the API operation of an
+     * operation of the batch.
+     */
+    private void checkEnabled(final BatchOperation.Type type) {
+        final Class<? extends APIOperation> api;
+        switch (type) {
+        case CREATE:
+            api = CreateApiOp.class;
+            break;
+        case UPDATE:
+            api = UpdateApiOp.class;
+            break;
+        default:
+            api = DeleteApiOp.class;
+            break;
+        }
+        final OperationalContext context = getOperationalContext();
+        if (null != context && !context.apiConfiguration.getSupportedOperations().contains(api)) {
+            throw new UnsupportedOperationException("Operation '" + api + "' not supported.");
+        }
+    }
+
+    private static void checkSupported(final Connector connector,
+            final Class<? extends SPIOperation> spi) {
+        if (!spi.isInstance(connector)) {
+            throw new UnsupportedOperationException("Connector does not support "
+                    + spi.getSimpleName());
+        }
+    }
+
+    private static boolean isLoggable() {
+        return OP_LOG.isLoggable(SpiOperationLoggingUtil.LOG_LEVEL);
+    }
+}
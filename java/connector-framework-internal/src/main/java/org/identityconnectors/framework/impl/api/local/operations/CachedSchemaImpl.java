@@ -0,0 +1,69 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.common.objects.Schema;
+import org.identityconnectors.framework.impl.api.SchemaCache;
+
+/**
+ * Returns the schema from the {@link SchemaCache}, asking the connector only
+ * when it is not cached or expired.
+ */
+public class CachedSchemaImpl implements SchemaApiOp {
+
+    private final String key;
+
+    private final long timeToLive;
+
+    private final SchemaApiOp op;
+
+    /**
+     * Creates the operation.
+     *
+     * @param key
+     *            the key of the schema in the {@link SchemaCache}.
+     * @param timeToLive
+     *            milliseconds the schema is cached for, zero to not cache it.
+     * @param schema
+     *            the schema operation of the connector.
+     */
+    public CachedSchemaImpl(final String key, final long timeToLive, final SchemaApiOp schema) {
+        this.key = key;
+        this.timeToLive = timeToLive;
+        this.op = schema;
+    }
+
+    @Override
+    public Schema schema() {
+        if (timeToLive <= 0) {
+            return op.schema();
+        }
+        Schema schema = SchemaCache.get(key);
+        if (schema == null) {
+            schema = op.schema();
+            SchemaCache.put(key, schema, null, timeToLive);
+        }
+        return schema;
+    }
+}
@@ -29,8 +29,14 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.impl.api.DeadlineTimer;
+import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
+import org.identityconnectors.framework.impl.api.local.LocalConnectorInfoImpl;
 import org.identityconnectors.framework.impl.api.local.ObjectPool;
 import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
+import org.identityconnectors.framework.impl.trace.OperationSpan;
+import org.identityconnectors.framework.impl.trace.OperationTracer;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.PoolableConnector;
 
@@ -50,6 +56,18 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
      */
     private final ConnectorOperationalContext context;
 
+    /**
+     * The connector info, used to create a new operational context per call
+     * when there is no shared one.
+     */
+    private final LocalConnectorInfoImpl connectorInfo;
+
+    /**
+     * The configuration, used to create a new operational context per call
+     * when there is no shared one.
+     */
+    private final APIConfigurationImpl apiConfiguration;
+
     /**
      * The implementation constructor. The instance is lazily created upon
      * invocation
@@ -65,6 +83,25 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
     public ConnectorAPIOperationRunnerProxy(ConnectorOperationalContext context,
             Constructor<? extends APIOperationRunner> runnerImplConstructor) {
         this.context = context;
+        this.connectorInfo = null;
+        this.apiConfiguration = null;
+        this.runnerImplConstructor = runnerImplConstructor;
+    }
+
+    /**
+     * Create an APIOperationRunnerProxy which creates a new operational
+     * context on each invocation.
+     * @param connectorInfo The connector info
+     * @param apiConfiguration The configuration
+     * @param runnerImplConstructor The implementation constructor. Implementation
+     * must define a two-argument constructor(OperationalContext,Connector)
+     */
+    public ConnectorAPIOperationRunnerProxy(LocalConnectorInfoImpl connectorInfo,
+            APIConfigurationImpl apiConfiguration,
+            Constructor<? extends APIOperationRunner> runnerImplConstructor) {
+        this.context = null;
+        this.connectorInfo = connectorInfo;
+        this.apiConfiguration = apiConfiguration;
         this.runnerImplConstructor = runnerImplConstructor;
     }
 
@@ -77,25 +114,44 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
         }
         Object ret = null;
         Connector connector = null;
+        final ConnectorOperationalContext context = null != this.context
+                ? this.context : new ConnectorOperationalContext(connectorInfo, apiConfiguration);
         ObjectPool<PoolableConnector> pool = context.getPool();
         ObjectPoolEntry<PoolableConnector> poolEntry = null;
         // get the connector class..
         Class<? extends Connector> connectorClazz = context.getConnectorClass();
+        final OperationSpan span = OperationTracer.current();
         try {
+            long start = span != null || MetricsRegistry.isEnabled() ? System.nanoTime() : 0;
             // pooling is implemented get one..
             if (pool != null) {
-                poolEntry = pool.borrowObject();
+                poolEntry = borrowObject(pool, start);
                 connector = poolEntry.getPooledObject();
+                if (span != null) {
+                    span.addPoolWait(System.nanoTime() - start);
+                }
             }
             else {
                 // get a new instance of the connector..
                 connector = connectorClazz.newInstance();
                 // initialize the connector..
                 connector.init(context.getConfiguration());
+                if (span != null) {
+                    span.addConnectorInit(System.nanoTime() - start);
+                }
             }
             APIOperationRunner runner =
                 runnerImplConstructor.newInstance(context,connector);
-            ret = method.invoke(runner, args);
+            if (span != null) {
+                start = System.nanoTime();
+                try {
+                    ret = method.invoke(runner, args);
+                } finally {
+                    span.addSpiCall(System.nanoTime() - start);
+                }
+            } else {
+                ret = method.invoke(runner, args);
+            }
             // call out to the operation..
         } catch (InvocationTargetException e) {
             Throwable root = e.getCause();
@@ -107,13 +163,20 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
                 // determine if there was a pool..
                 if (poolEntry != null) {
                     try {
-                        //try to return it to the pool even though an
-                        //exception may have happened that leaves it in
-                        //a bad state. The contract of checkAlive
-                        //is that it will tell you if the connector is
-                        //still valid and so we leave it up to the pool
-                        //and connector to work it out.
-                        poolEntry.close();
+                        //the deadline timer interrupted the operation, the
+                        //connector may be in the middle of an I/O and must
+                        //not be handed over to the next borrower
+                        if (DeadlineTimer.isExpired()) {
+                            poolEntry.invalidate();
+                        } else {
+                            //try to return it to the pool even though an
+                            //exception may have happened that leaves it in
+                            //a bad state. The contract of checkAlive
+                            //is that it will tell you if the connector is
+                            //still valid and so we leave it up to the pool
+                            //and connector to work it out.
+                            poolEntry.close();
+                        }
                     } catch (Exception e) {
                         //don't let pool exceptions propagate or mask
                         //other exceptions. do log it though.
@@ -137,4 +200,23 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
         }
         return ret;
     }
+
+    /**
+     * Borrows a connector, recording the wait into the connector's metrics.
+     */
+    private ObjectPoolEntry<PoolableConnector> borrowObject(final ObjectPool<PoolableConnector> pool,
+            final long start) {
+        if (!MetricsRegistry.isEnabled()) {
+            return pool.borrowObject();
+        }
+        boolean failed = true;
+        try {
+            ObjectPoolEntry<PoolableConnector> entry = pool.borrowObject();
+            failed = false;
+            return entry;
+        } finally {
+            MetricsRegistry.getConnectorMetrics(context.getConnectorInfo().getConnectorKey())
+                    .recordPoolBorrow(System.nanoTime() - start, failed);
+        }
+    }
 }
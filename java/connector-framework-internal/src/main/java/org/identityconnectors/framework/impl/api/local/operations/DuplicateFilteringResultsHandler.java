@@ -24,13 +24,18 @@
  */
 package org.identityconnectors.framework.impl.api.local.operations;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import org.identityconnectors.framework.common.objects.BatchAwareResultsHandler;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
 import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
 
-public final class DuplicateFilteringResultsHandler implements SearchResultsHandler {
+public final class DuplicateFilteringResultsHandler
+        implements SearchResultsHandler, BatchAwareResultsHandler {
 
     // =======================================================================
     // Fields
@@ -70,6 +75,18 @@ public final class DuplicateFilteringResultsHandler implements SearchResultsHand
         return stillHandling;
     }
 
+    @Override
+    public boolean handleBatch(final List<ConnectorObject> objects) {
+        List<ConnectorObject> unvisited = new ArrayList<ConnectorObject>(objects.size());
+        for (ConnectorObject object : objects) {
+            if (visitedUIDs.add(object.getUid().getUidValue())) {
+                unvisited.add(object);
+            }
+        }
+        stillHandling = ResultsHandlerUtil.handleBatch(handler, unvisited);
+        return stillHandling;
+    }
+
     @Override
     public void handleResult(final SearchResult result) {
         handler.handleResult(result);
@@ -0,0 +1,311 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.BatchAwareResultsHandler;
+import org.identityconnectors.framework.common.objects.BatchAwareSyncResultsHandler;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.CompositeFilter;
+import org.identityconnectors.framework.common.objects.filter.ExternallyChainedFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+
+/**
+ * Normalizes, filters and reduces the objects to the attributes to get in a
+ * single pass, in place of the chain of {@link NormalizingResultsHandler},
+ * {@link FilteredResultsHandler} and
+ * {@link SearchImpl.AttributesToGetSearchResultsHandler}.
+ * <p/>
+ * Only the attributes returned or evaluated by the filter are normalized, and
+ * the returned object is built once. Batches are passed on as batches of the
+ * matching objects.
+ *
+ * @since 1.4.4
+ */
+public final class FusedResultsHandler implements SearchResultsHandler, BatchAwareResultsHandler {
+
+    private final ResultsHandler handler;
+
+    private final ObjectNormalizerFacade normalizer;
+
+    private final Filter filter;
+
+    private final boolean inValidationMode;
+
+    /**
+     * The names of the attributes to return, null for all.
+     */
+    private final Set<String> returned;
+
+    /**
+     * The names of the attributes evaluated by the filter, null for all.
+     */
+    private final Set<String> filtered;
+
+    /**
+     * Creates the handler.
+     *
+     * @param handler
+     *            the handler of the resulting objects.
+     * @param normalizer
+     *            the normalizer of the attributes, null to keep them as is.
+     * @param filter
+     *            the filter the objects must match, null for all objects.
+     * @param inValidationMode
+     *            whether objects not matching the filter are an error.
+     * @param attrsToGet
+     *            the attributes to return besides the {@link Uid} and the
+     *            {@link Name}, null for all.
+     */
+    public FusedResultsHandler(final ResultsHandler handler,
+            final ObjectNormalizerFacade normalizer, final Filter filter,
+            final boolean inValidationMode, final String[] attrsToGet) {
+        Assertions.nullCheck(handler, "handler");
+        this.handler = handler;
+        this.normalizer = normalizer;
+        this.filter = filter;
+        this.inValidationMode = inValidationMode;
+        if (attrsToGet != null) {
+            returned = CollectionUtil.newCaseInsensitiveSet();
+            returned.add(Uid.NAME);
+            returned.add(Name.NAME);
+            Collections.addAll(returned, attrsToGet);
+        } else {
+            returned = null;
+        }
+        Set<String> names = CollectionUtil.newCaseInsensitiveSet();
+        filtered = filter != null && collectAttributeNames(filter, names) ? names : null;
+    }
+
+    @Override
+    public void handleResult(final SearchResult result) {
+        if (handler instanceof SearchResultsHandler) {
+            SearchResultsHandler.class.cast(handler).handleResult(result);
+        }
+    }
+
+    @Override
+    public boolean handle(final ConnectorObject object) {
+        ConnectorObject result = apply(object);
+        if (result != null) {
+            return handler.handle(result);
+        }
+        checkFiltered(object);
+        return true;
+    }
+
+    @Override
+    public boolean handleBatch(final List<ConnectorObject> objects) {
+        List<ConnectorObject> results = new ArrayList<ConnectorObject>(objects.size());
+        for (ConnectorObject object : objects) {
+            ConnectorObject result = apply(object);
+            if (result != null) {
+                results.add(result);
+            } else {
+                checkFiltered(object);
+            }
+        }
+        return ResultsHandlerUtil.handleBatch(handler, results);
+    }
+
+    private void checkFiltered(final ConnectorObject object) {
+        if (inValidationMode) {
+            throw new IllegalStateException("Object " + object
+                    + " was returned by the connector but failed to pass "
+                    + "the framework filter. This seems like wrong implementation of the filter in the connector.");
+        }
+    }
+
+    /**
+     * Returns the object to hand over.
+     *
+     * @param object
+     *            the object of the connector.
+     * @return the normalized and reduced object or null if it does not match
+     *         the filter.
+     */
+    ConnectorObject apply(final ConnectorObject object) {
+        if (normalizer == null && returned == null && filter == null) {
+            return object;
+        }
+        Set<Attribute> output;
+        Set<Attribute> evaluatedOnly = null;
+        if (returned != null && (filter == null || filtered != null)) {
+            // look up the few attributes needed rather than going through all
+            output = new HashSet<Attribute>(returned.size() * 2);
+            for (String name : returned) {
+                Attribute attribute = object.getAttributeByName(name);
+                if (attribute != null) {
+                    output.add(normalize(attribute));
+                }
+            }
+            if (filter != null) {
+                for (String name : filtered) {
+                    Attribute attribute = object.getAttributeByName(name);
+                    if (attribute != null && !returned.contains(name)) {
+                        if (evaluatedOnly == null) {
+                            evaluatedOnly = new HashSet<Attribute>();
+                        }
+                        evaluatedOnly.add(normalize(attribute));
+                    }
+                }
+            }
+        } else {
+            Set<Attribute> attributes = object.getAttributes();
+            output = new HashSet<Attribute>(attributes.size() * 2);
+            for (Attribute attribute : attributes) {
+                if (returned == null || returned.contains(attribute.getName())) {
+                    output.add(normalize(attribute));
+                } else {
+                    // the filter may evaluate any attribute
+                    if (evaluatedOnly == null) {
+                        evaluatedOnly = new HashSet<Attribute>();
+                    }
+                    evaluatedOnly.add(normalize(attribute));
+                }
+            }
+        }
+        ConnectorObject result = new ConnectorObject(object.getObjectClass(), output);
+        if (filter != null) {
+            ConnectorObject evaluated = result;
+            if (evaluatedOnly != null) {
+                // the filter sees the attributes which are not returned too
+                evaluatedOnly.addAll(output);
+                evaluated = new ConnectorObject(object.getObjectClass(), evaluatedOnly);
+            }
+            if (!filter.accept(evaluated)) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    private Attribute normalize(final Attribute attribute) {
+        return normalizer != null ? normalizer.normalizeAttribute(attribute) : attribute;
+    }
+
+    /**
+     * Collects the names of the attributes a filter evaluates.
+     *
+     * @return false if the filter may evaluate any attribute.
+     */
+    private static boolean collectAttributeNames(final Filter filter, final Set<String> names) {
+        if (filter instanceof AttributeFilter) {
+            names.add(((AttributeFilter) filter).getName());
+            return true;
+        } else if (filter instanceof CompositeFilter) {
+            for (Filter f : ((CompositeFilter) filter).getFilters()) {
+                if (!collectAttributeNames(f, names)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (filter instanceof NotFilter) {
+            return collectAttributeNames(((NotFilter) filter).getFilter(), names);
+        } else if (filter instanceof ExternallyChainedFilter) {
+            return collectAttributeNames(((ExternallyChainedFilter) filter).getFilter(), names);
+        }
+        return false;
+    }
+
+    /**
+     * Normalizes and reduces the objects of the deltas to the attributes to get
+     * in a single pass, in place of the chain of
+     * {@link NormalizingSyncResultsHandler} and
+     * {@link SyncImpl.AttributesToGetSyncResultsHandler}.
+     */
+    public static final class Sync implements BatchAwareSyncResultsHandler {
+
+        private final SyncResultsHandler handler;
+
+        private final FusedResultsHandler objects;
+
+        /**
+         * Creates the handler.
+         *
+         * @param handler
+         *            the handler of the resulting deltas.
+         * @param normalizer
+         *            the normalizer of the attributes, null to keep them as
+         *            is.
+         * @param attrsToGet
+         *            the attributes to return besides the {@link Uid} and the
+         *            {@link Name}, null for all.
+         */
+        public Sync(final SyncResultsHandler handler, final ObjectNormalizerFacade normalizer,
+                final String[] attrsToGet) {
+            Assertions.nullCheck(handler, "handler");
+            this.handler = handler;
+            objects = new FusedResultsHandler(new ResultsHandler() {
+                @Override
+                public boolean handle(ConnectorObject object) {
+                    return true;
+                }
+            }, normalizer, null, false, attrsToGet);
+        }
+
+        @Override
+        public boolean handle(final SyncDelta delta) {
+            return handler.handle(apply(delta));
+        }
+
+        @Override
+        public boolean handleBatch(final List<SyncDelta> deltas) {
+            List<SyncDelta> results = new ArrayList<SyncDelta>(deltas.size());
+            for (SyncDelta delta : deltas) {
+                results.add(apply(delta));
+            }
+            return ResultsHandlerUtil.handleBatch(handler, results);
+        }
+
+        private SyncDelta apply(final SyncDelta delta) {
+            if (delta.getObject() == null) {
+                return delta;
+            }
+            ConnectorObject object = objects.apply(delta.getObject());
+            if (object == delta.getObject()) {
+                return delta;
+            }
+            return new SyncDeltaBuilder(delta).setObject(object).build();
+        }
+    }
+}
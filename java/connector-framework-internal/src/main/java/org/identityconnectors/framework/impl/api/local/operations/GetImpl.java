@@ -25,32 +25,61 @@
 package org.identityconnectors.framework.impl.api.local.operations;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.identityconnectors.common.Assertions;
+import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.api.operations.GetApiOp;
 import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.operations.SearchOp;
 
 /**
  * Uses {@link SearchOp} to find the object that is referenced by the
  * {@link Uid} provided.
  */
-public class GetImpl implements GetApiOp {
+public class GetImpl extends ConnectorAPIOperationRunner implements GetApiOp {
+
+    /**
+     * Number of uids looked up by one search.
+     */
+    static final int CHUNK_SIZE = 100;
 
     final SearchApiOp op;
 
+    /**
+     * Creates the operation searching through the given one, the uids found
+     * are matched to the requested ones as they are.
+     */
     public GetImpl(SearchApiOp search) {
+        super(null, null);
         this.op = search;
     }
 
+    /**
+     * Creates the operation searching the given connector, the uids found are
+     * matched to the requested ones the way the search normalizes them.
+     */
+    public GetImpl(final ConnectorOperationalContext context, final Connector connector) {
+        super(context, connector);
+        this.op = new SearchImpl(context, connector);
+    }
+
     @Override
     public ConnectorObject getObject(ObjectClass objectClass, Uid uid, OperationOptions options) {
         Assertions.nullCheck(objectClass, "objectClass");
@@ -74,4 +103,83 @@ public class GetImpl implements GetApiOp {
         }, options);
         return list.isEmpty() ? null : list.get(0);
     }
+
+    @Override
+    public Set<Uid> getObjects(ObjectClass objectClass, Collection<Uid> uids,
+            final ResultsHandler handler, OperationOptions options) {
+        Assertions.nullCheck(objectClass, "objectClass");
+        if (ObjectClass.ALL.equals(objectClass)) {
+            throw new UnsupportedOperationException("Operation is not allowed on __ALL__ object class");
+        }
+        Assertions.nullCheck(uids, "uids");
+        Assertions.nullCheck(handler, "handler");
+        // cast null as empty
+        if (options == null) {
+            options = new OperationOptionsBuilder().build();
+        }
+        // the uids still to be found, by value as the revision may differ
+        final List<ObjectNormalizerFacade> normalizers = getUidNormalizers(objectClass);
+        final Map<String, Uid> pending = new LinkedHashMap<String, Uid>();
+        for (Uid uid : uids) {
+            Assertions.nullCheck(uid, "uid");
+            String key = getMatchKey(normalizers, uid);
+            if (!pending.containsKey(key)) {
+                pending.put(key, uid);
+            }
+        }
+        final List<Uid> all = new ArrayList<Uid>(pending.values());
+        final boolean[] stopped = new boolean[1];
+        for (int start = 0; start < all.size() && !stopped[0]; start += CHUNK_SIZE) {
+            List<Uid> chunk = all.subList(start, Math.min(start + CHUNK_SIZE, all.size()));
+            List<Filter> filters = new ArrayList<Filter>(chunk.size());
+            for (Uid uid : chunk) {
+                filters.add(FilterBuilder.equalTo(uid));
+            }
+            // No need to log entry/exit here. SeachImpl will do it.
+            op.search(objectClass, FilterBuilder.or(filters), new ResultsHandler() {
+
+                @Override
+                public boolean handle(ConnectorObject obj) {
+                    // skip duplicates and objects nobody asked for
+                    if (pending.remove(getMatchKey(normalizers, obj.getUid())) == null) {
+                        return true;
+                    }
+                    if (!handler.handle(obj)) {
+                        stopped[0] = true;
+                    }
+                    return !stopped[0] && !pending.isEmpty();
+                }
+            }, options);
+        }
+        return new LinkedHashSet<Uid>(pending.values());
+    }
+
+    /**
+     * Returns the normalizers the search applies to the uids found: the one
+     * of the connector if the results are normalized, then the case
+     * normalizer if the filter is case insensitive.
+     */
+    private List<ObjectNormalizerFacade> getUidNormalizers(final ObjectClass objectClass) {
+        final List<ObjectNormalizerFacade> normalizers = new ArrayList<ObjectNormalizerFacade>(2);
+        if (null == getOperationalContext()) {
+            return normalizers;
+        }
+        ResultsHandlerConfiguration hdlCfg = getOperationalContext().getResultsHandlerConfiguration();
+        if (hdlCfg.isEnableNormalizingResultsHandler()) {
+            normalizers.add(getNormalizer(objectClass));
+        }
+        if (hdlCfg.isEnableFilteredResultsHandler() && hdlCfg.isEnableCaseInsensitiveFilter()) {
+            normalizers.add(new ObjectNormalizerFacade(objectClass, new CaseNormalizer()));
+        }
+        return normalizers;
+    }
+
+    private static String getMatchKey(final List<ObjectNormalizerFacade> normalizers,
+            final Uid uid) {
+        Attribute attribute = uid;
+        for (ObjectNormalizerFacade normalizer : normalizers) {
+            attribute = normalizer.normalizeAttribute(attribute);
+        }
+        return AttributeUtil.getAsStringValue(attribute);
+    }
 }
@@ -0,0 +1,236 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+
+/**
+ * Dispatches the {@link SyncDelta}s of a sync to several threads.
+ * <p>
+ * The deltas are partitioned by {@link Uid}: each thread handles its deltas
+ * in the order the connector produced them, so the changes of one object are
+ * never reordered. The number of deltas waiting to be handled is bounded, the
+ * connector is blocked when the threads fall behind.
+ * <p>
+ * The {@link #getSafeToken() safe token} is the token of the latest delta
+ * which, with all the deltas produced before it, has been handled. A sync
+ * resumed from it does not miss any change.
+ *
+ * @since 1.4.4
+ */
+public class ParallelSyncResultsHandler implements SyncResultsHandler {
+
+    /**
+     * Deltas each thread may have waiting.
+     */
+    private static final int PENDING_PER_THREAD = 256;
+
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+
+    private final SyncResultsHandler handler;
+
+    private final ExecutorService[] lanes;
+
+    private final Semaphore pending;
+
+    /**
+     * Dispatched deltas after the safe token, in the connector order.
+     */
+    private final LinkedList<Dispatch> dispatched = new LinkedList<Dispatch>();
+
+    private SyncToken safeToken = null;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    private volatile boolean stopped = false;
+
+    public ParallelSyncResultsHandler(final SyncResultsHandler handler, final int threads) {
+        Assertions.nullCheck(handler, "handler");
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.handler = handler;
+        this.pending = new Semaphore(threads * PENDING_PER_THREAD);
+        ThreadFactory factory = new DispatchThreadFactory();
+        lanes = new ExecutorService[threads];
+        for (int i = 0; i < threads; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(factory);
+        }
+    }
+
+    @Override
+    public boolean handle(final SyncDelta delta) {
+        if (stopped) {
+            return false;
+        }
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ConnectorException.wrap(e);
+        }
+        final Dispatch dispatch = new Dispatch(delta.getToken());
+        synchronized (dispatched) {
+            dispatched.add(dispatch);
+        }
+        lanes[getLane(delta.getUid())].execute(new Runnable() {
+            public void run() {
+                boolean handled = false;
+                try {
+                    if (!stopped) {
+                        if (!handler.handle(delta)) {
+                            stopped = true;
+                        }
+                        handled = true;
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                    stopped = true;
+                } finally {
+                    if (handled) {
+                        complete(dispatch);
+                    }
+                    pending.release();
+                }
+            }
+        });
+        return !stopped;
+    }
+
+    /**
+     * Returns the token of the latest delta handled after all the deltas
+     * produced before it.
+     *
+     * @return the safe token, null if no delta was handled
+     */
+    public SyncToken getSafeToken() {
+        synchronized (dispatched) {
+            return safeToken;
+        }
+    }
+
+    /**
+     * Waits for the dispatched deltas to be handled and releases the threads.
+     *
+     * @param token
+     *            the token reported by the connector at the end of the sync
+     * @return the connector token if all the deltas were handled, the
+     *         {@link #getSafeToken() safe token} if a handler stopped the sync
+     * @throws RuntimeException
+     *             the first exception thrown by a handler
+     */
+    public SyncToken finish(final SyncToken token) {
+        shutdown();
+        Throwable t = failure.get();
+        if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw ConnectorException.wrap(t);
+        }
+        return stopped ? getSafeToken() : token;
+    }
+
+    /**
+     * Stops dispatching, waits for the deltas being handled and releases the
+     * threads.
+     */
+    public void shutdown() {
+        stopped = stopped || failure.get() != null;
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            for (ExecutorService lane : lanes) {
+                lane.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+            throw ConnectorException.wrap(e);
+        }
+    }
+
+    private int getLane(final Uid uid) {
+        return (uid.getUidValue().hashCode() & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private void complete(final Dispatch dispatch) {
+        synchronized (dispatched) {
+            dispatch.done = true;
+            while (!dispatched.isEmpty() && dispatched.getFirst().done) {
+                SyncToken token = dispatched.removeFirst().token;
+                if (token != null) {
+                    safeToken = token;
+                }
+            }
+        }
+    }
+
+    private static final class Dispatch {
+
+        private final SyncToken token;
+
+        private boolean done = false;
+
+        private Dispatch(final SyncToken token) {
+            this.token = token;
+        }
+    }
+
+    /**
+     * Creates daemon threads with the context class loader of the sync.
+     */
+    private static final class DispatchThreadFactory implements ThreadFactory {
+
+        private final String namePrefix =
+                "sync-dispatch-" + POOL_NUMBER.getAndIncrement() + "-thread-";
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        private final ClassLoader contextClassLoader =
+                Thread.currentThread().getContextClassLoader();
+
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            t.setContextClassLoader(contextClassLoader);
+            return t;
+        }
+    }
+}
@@ -25,20 +25,27 @@
  */
 package org.identityconnectors.framework.impl.api.local.operations;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.SecurityUtil;
 import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.common.objects.BatchAwareResultsHandler;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
 import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.SearchResultsHandlerLoggingProxy;
+import org.identityconnectors.framework.spi.AttributeNormalizer;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
 import org.identityconnectors.framework.spi.operations.SearchOp;
@@ -82,6 +89,19 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
                 null != getOperationalContext() ? getOperationalContext()
                         .getResultsHandlerConfiguration() : new ResultsHandlerConfiguration();
 
+        if (hdlCfg.isEnableSortingPagingEmulation() && SortedResults.isRequested(options)) {
+            return searchSorted(objectClass, originalFilter, handler, options, hdlCfg);
+        }
+        return searchConnector(objectClass, originalFilter, handler, options, hdlCfg);
+    }
+
+    /**
+     * Runs the search of the connector through the results handler chain.
+     */
+    private SearchResult searchConnector(final ObjectClass objectClass, final Filter originalFilter,
+            ResultsHandler handler, final OperationOptions options,
+            final ResultsHandlerConfiguration hdlCfg) {
+
         // actualFilter is used for chaining filters - it points to the filter where new filters should be chained
         Filter actualFilter = originalFilter;
 
@@ -98,52 +118,149 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
                     + "in effective (i.e. non-validation) mode. This is not supported.");
         }
 
+        ObjectNormalizerFacade normalizer = null;
         if (hdlCfg.isEnableNormalizingResultsHandler()) {
-            ObjectNormalizerFacade normalizer = getNormalizer(objectClass);
-            // chain a normalizing handler (must come before
-            // filter handler)
-            NormalizingResultsHandler normalizingHandler = new NormalizingResultsHandler(handler, normalizer);
-            // chain a filter handler..
+            ObjectNormalizerFacade facade = getNormalizer(objectClass);
             if (hdlCfg.isEnableFilteredResultsHandler()) {
-                // chain a filter handler..
-                Filter normalizedFilter = normalizer.normalizeFilter(actualFilter);
-                handler = new FilteredResultsHandler(
-                        normalizingHandler, normalizedFilter, hdlCfg.isFilteredResultsHandlerInValidationMode());
-                actualFilter = normalizedFilter;
-            } else {
-                handler = normalizingHandler;
+                actualFilter = facade.normalizeFilter(actualFilter);
+            }
+            if (getConnector() instanceof AttributeNormalizer) {
+                normalizer = facade;
             }
-        } else if (hdlCfg.isEnableFilteredResultsHandler()) {
-            // chain a filter handler..
-            handler = new FilteredResultsHandler(
-                    handler, actualFilter, hdlCfg.isFilteredResultsHandlerInValidationMode());
         }
-        // chain an attributes to get handler..
         String[] attrsToGet = options.getAttributesToGet();
-        if (attrsToGet != null && attrsToGet.length > 0 && hdlCfg.isEnableAttributesToGetSearchResultsHandler()) {
-            handler = getAttributesToGetResultsHandler(handler, options);
+        if (attrsToGet == null || attrsToGet.length == 0
+                || !hdlCfg.isEnableAttributesToGetSearchResultsHandler()) {
+            attrsToGet = null;
+        }
+        // normalize, filter and reduce the objects in a single pass
+        if (normalizer != null || hdlCfg.isEnableFilteredResultsHandler() || attrsToGet != null) {
+            handler = new FusedResultsHandler(handler, normalizer,
+                    hdlCfg.isEnableFilteredResultsHandler() ? actualFilter : null,
+                    hdlCfg.isFilteredResultsHandlerInValidationMode(), attrsToGet);
         }
 
         SearchOp<?> search = ((SearchOp<?>) getConnector());
-        final SearchResult[] result = new SearchResult[] { null };
-        final ResultsHandler handlerChain = handler;
-        rawSearch(search, objectClass, actualFilter, new SearchResultsHandler() {
-
-            @Override
-            public void handleResult(final SearchResult searchResult) {
-                if (handlerChain instanceof SearchResultsHandler) {
-                    SearchResultsHandler.class.cast(handlerChain).handleResult(searchResult);
-                }
-                result[0] = searchResult;
+        ChainResultsHandler handlerChain = new ChainResultsHandler(handler);
+        rawSearch(search, objectClass, actualFilter, handlerChain, options);
+
+        return handlerChain.result;
+    }
+
+    /**
+     * Hands the results of the connector over to the handler chain, keeping
+     * the search result.
+     */
+    private static class ChainResultsHandler
+            implements SearchResultsHandler, BatchAwareResultsHandler {
+
+        private final ResultsHandler handlerChain;
+
+        private SearchResult result = null;
+
+        ChainResultsHandler(final ResultsHandler handlerChain) {
+            this.handlerChain = handlerChain;
+        }
+
+        @Override
+        public void handleResult(final SearchResult searchResult) {
+            if (handlerChain instanceof SearchResultsHandler) {
+                SearchResultsHandler.class.cast(handlerChain).handleResult(searchResult);
             }
+            result = searchResult;
+        }
 
-            @Override
-            public boolean handle(final ConnectorObject connectorObject) {
-                return handlerChain.handle(connectorObject);
+        @Override
+        public boolean handle(final ConnectorObject connectorObject) {
+            return handlerChain.handle(connectorObject);
+        }
+
+        @Override
+        public boolean handleBatch(final List<ConnectorObject> connectorObjects) {
+            return ResultsHandlerUtil.handleBatch(handlerChain, connectorObjects);
+        }
+    }
+
+    /**
+     * Sorts and pages the results of the connector, which runs the search
+     * without the sorting and paging options. The results of a paged search
+     * are kept for the next pages.
+     */
+    private SearchResult searchSorted(final ObjectClass objectClass, final Filter filter,
+            ResultsHandler handler, final OperationOptions options,
+            final ResultsHandlerConfiguration hdlCfg) {
+
+        final OperationOptions connectorOptions = SortedResults.getConnectorOptions(options);
+        final boolean paged = options.getPageSize() != null && options.getPageSize() > 0;
+        final String key = getSortedResultsKey(objectClass, filter, connectorOptions, options);
+        // the connector returns the sort keys too
+        String[] attrsToGet = options.getAttributesToGet();
+        if (attrsToGet != null && attrsToGet.length > 0) {
+            handler = new AttributesToGetSearchResultsHandler(handler, attrsToGet);
+        }
+
+        // only the next pages are served from the kept results, a first page
+        // runs the search again. A cookie is served by the results which
+        // issued it, an offset by the latest results of the query.
+        final boolean byOffset =
+                options.getPagedResultsOffset() != null && options.getPagedResultsOffset() > 0;
+        final String cookie = byOffset ? null : options.getPagedResultsCookie();
+        OperationOptions pageOptions = options;
+        SortedResults results = null;
+        if (paged && cookie != null) {
+            results = SortedResults.get(SortedResults.getResultsId(key, cookie));
+            // the results which issued the cookie are gone, search again
+            // and serve the same position
+            pageOptions = new OperationOptionsBuilder(options).setPagedResultsOffset(
+                    SortedResults.getOffset(cookie) + 1).build();
+        } else if (paged && byOffset && options.getPagedResultsOffset() > 1) {
+            results = SortedResults.getLatest(key);
+        }
+        SearchResult result = null;
+        if (results != null) {
+            LOG.ok("Serving the page from the sorted results");
+            result = results.serve(handler, options);
+        }
+        if (result == null) {
+            SortedResults.Builder builder = new SortedResults.Builder(key, options.getSortKeys());
+            try {
+                searchConnector(objectClass, filter, builder, connectorOptions, hdlCfg);
+                results = builder.build();
+            } finally {
+                builder.dispose();
+            }
+            boolean cached = false;
+            try {
+                result = results.serve(handler, pageOptions);
+                cached = paged && SortedResults.put(results);
+            } finally {
+                if (!cached) {
+                    results.dispose();
+                }
             }
-        }, options);
+        }
+        if (handler instanceof SearchResultsHandler) {
+            ((SearchResultsHandler) handler).handleResult(result);
+        }
+        return result;
+    }
 
-        return result[0];
+    /**
+     * Identifies the sorted results of a search: the configuration of the
+     * connector, the query and the options.
+     */
+    private String getSortedResultsKey(final ObjectClass objectClass, final Filter filter,
+            final OperationOptions connectorOptions, final OperationOptions options) {
+        List<Object> parts = new ArrayList<Object>();
+        parts.add(getConnector().getClass().getName());
+        if (null != getOperationalContext()) {
+            parts.add(getOperationalContext().apiConfiguration.getConfigurationProperties());
+        }
+        parts.add(objectClass);
+        parts.add(filter);
+        parts.add(connectorOptions);
+        parts.add(Arrays.toString(options.getSortKeys()));
+        return SecurityUtil.computeBase64SHA1Hash(SerializerUtil.serializeBinaryObject(parts));
     }
 
     /**
@@ -237,17 +354,6 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
         OP_LOG.log(SearchOp.class, "executeQuery", SpiOperationLoggingUtil.LOG_LEVEL, "Return", null);
     }
 
-    private ResultsHandler getAttributesToGetResultsHandler(
-            final ResultsHandler handler, final OperationOptions options) {
-
-        ResultsHandler ret = handler;
-        String[] attrsToGet = options.getAttributesToGet();
-        if (attrsToGet != null && attrsToGet.length > 0) {
-            ret = new AttributesToGetSearchResultsHandler(handler, attrsToGet);
-        }
-        return ret;
-    }
-
     /**
      * Simple results handler that can reduce attributes to only the set of attribute to get.
      */
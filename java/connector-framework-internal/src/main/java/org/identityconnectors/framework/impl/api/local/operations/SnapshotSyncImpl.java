@@ -0,0 +1,265 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.api.operations.SyncApiOp;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.impl.api.local.operations.SyncSnapshots.Record;
+import org.identityconnectors.framework.impl.api.local.operations.SyncSnapshots.RecordReader;
+import org.identityconnectors.framework.spi.operations.SyncOp;
+
+/**
+ * Emulates the sync operation with full searches, for the connectors which
+ * do not implement {@link SyncOp}.
+ * <p>
+ * Each sync searches all the objects of the object class and compares them
+ * with the {@link SyncSnapshots snapshot} of the generation of the token: the
+ * objects missing from the snapshot are reported as created, those whose
+ * content changed as updated, and the objects of the snapshot not found any
+ * more as deleted. The search becomes the snapshot of a new generation,
+ * referenced by the token of the deltas. When the handler stops the sync,
+ * the new snapshot keeps the previous state of the objects not reported yet,
+ * so the next sync reports them.
+ * <p>
+ * Only the snapshots of the token and of the new generation are kept. If the
+ * snapshot of a token is missing, because the sync which produced it did not
+ * complete, the latest older snapshot is used instead and some changes are
+ * reported again.
+ *
+ * @since 1.4.4
+ */
+public class SnapshotSyncImpl implements SyncApiOp {
+
+    private static final Log LOG = Log.getLog(SnapshotSyncImpl.class);
+
+    /**
+     * Objects sorted in memory before being written to a run file.
+     */
+    static final int RUN_SIZE = 100000;
+
+    private final File directory;
+
+    private final SearchApiOp search;
+
+    private final int runSize;
+
+    public SnapshotSyncImpl(final File directory, final SearchApiOp search) {
+        this(directory, search, RUN_SIZE);
+    }
+
+    SnapshotSyncImpl(final File directory, final SearchApiOp search, final int runSize) {
+        Assertions.nullCheck(directory, "directory");
+        Assertions.nullCheck(search, "search");
+        this.directory = directory;
+        this.search = search;
+        this.runSize = runSize;
+    }
+
+    @Override
+    public SyncToken sync(final ObjectClass objectClass, final SyncToken token,
+            final SyncResultsHandler handler, final OperationOptions options) {
+        Assertions.nullCheck(handler, "handler");
+        return takeSnapshot(objectClass, token, handler, options);
+    }
+
+    /**
+     * Takes a new snapshot, the changes made after it are reported by the
+     * next sync.
+     */
+    @Override
+    public SyncToken getLatestSyncToken(final ObjectClass objectClass) {
+        return takeSnapshot(objectClass, null, null, null);
+    }
+
+    private SyncToken takeSnapshot(final ObjectClass objectClass, final SyncToken token,
+            final SyncResultsHandler handler, OperationOptions options) {
+        Assertions.nullCheck(objectClass, "objectClass");
+        if (ObjectClass.ALL.equals(objectClass)) {
+            throw new UnsupportedOperationException(
+                    "Operation is not allowed on __ALL__ object class");
+        }
+        // convert null into empty
+        if (options == null) {
+            options = new OperationOptionsBuilder().build();
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new ConnectorIOException("Unable to create the directory " + directory);
+        }
+        final SyncSnapshots snapshots = new SyncSnapshots(directory, objectClass, runSize);
+        synchronized (snapshots.getLock()) {
+            try {
+                return takeSnapshot(snapshots, objectClass, token, handler, options);
+            } catch (IOException e) {
+                throw new ConnectorIOException(e);
+            }
+        }
+    }
+
+    private SyncToken takeSnapshot(final SyncSnapshots snapshots, final ObjectClass objectClass,
+            final SyncToken token, final SyncResultsHandler handler,
+            final OperationOptions options) throws IOException {
+        final List<Long> generations = snapshots.getGenerations();
+        final long base = getBaseGeneration(objectClass, token, generations);
+        final long generation =
+                Math.max(base, generations.isEmpty() ? -1 : generations.get(generations.size() - 1)) + 1;
+        final SyncToken newToken = new SyncToken(generation);
+        snapshots.clean(generations.isEmpty() ? new long[0] : toArray(generations));
+
+        final SyncSnapshots.Index index = snapshots.openIndex(base);
+        final SyncSnapshots.Builder builder = snapshots.newBuilder();
+        SyncSnapshots.Writer writer = null;
+        try {
+            final boolean[] stopped = new boolean[1];
+            search.search(objectClass, null, new ResultsHandler() {
+
+                @Override
+                public boolean handle(ConnectorObject object) {
+                    if (stopped[0]) {
+                        return false;
+                    }
+                    try {
+                        Record record = SyncSnapshots.newRecord(object);
+                        Long previous = index.lookup(record);
+                        if (handler != null
+                                && (previous == null || previous != record.getContentHash())) {
+                            SyncDeltaBuilder delta = new SyncDeltaBuilder();
+                            delta.setToken(newToken);
+                            delta.setDeltaType(previous == null ? SyncDeltaType.CREATE
+                                    : SyncDeltaType.UPDATE);
+                            delta.setObject(object);
+                            stopped[0] = !handler.handle(delta.build());
+                        }
+                        builder.add(record);
+                    } catch (IOException e) {
+                        throw new ConnectorIOException(e);
+                    }
+                    return !stopped[0];
+                }
+            }, options);
+
+            // merge the objects found with the previous snapshot
+            writer = snapshots.newWriter(generation);
+            final RecordReader current = builder.sorted();
+            final RecordReader previous = snapshots.openReader(base);
+            try {
+                boolean reportDeletes = !stopped[0];
+                Record c = current.next();
+                Record p = previous.next();
+                Record last = null;
+                while (c != null || p != null) {
+                    int cmp = c == null ? 1 : p == null ? -1 : c.compareTo(p);
+                    if (cmp <= 0) {
+                        // the search may return an object twice
+                        if (last == null || last.compareTo(c) != 0) {
+                            writer.write(c);
+                            last = c;
+                        }
+                        if (cmp == 0) {
+                            p = previous.next();
+                        }
+                        c = current.next();
+                    } else {
+                        if (reportDeletes) {
+                            if (handler != null) {
+                                SyncDeltaBuilder delta = new SyncDeltaBuilder();
+                                delta.setToken(newToken);
+                                delta.setDeltaType(SyncDeltaType.DELETE);
+                                delta.setObjectClass(objectClass);
+                                delta.setUid(new Uid(p.getUid()));
+                                reportDeletes = handler.handle(delta.build());
+                            }
+                        } else {
+                            // not reported, kept for the next sync
+                            writer.write(p);
+                        }
+                        p = previous.next();
+                    }
+                }
+            } finally {
+                current.close();
+                previous.close();
+            }
+            writer.commit();
+            writer = null;
+        } finally {
+            if (writer != null) {
+                writer.abort();
+            }
+            builder.dispose();
+        }
+        snapshots.clean(base, generation);
+        return newToken;
+    }
+
+    /**
+     * Returns the generation of the snapshot to compare the search with.
+     *
+     * @return -1 for an empty snapshot.
+     */
+    private long getBaseGeneration(final ObjectClass objectClass, final SyncToken token,
+            final List<Long> generations) {
+        if (token == null) {
+            return -1;
+        }
+        if (!(token.getValue() instanceof Number)) {
+            throw new IllegalArgumentException("Invalid sync token: " + token.getValue());
+        }
+        long requested = ((Number) token.getValue()).longValue();
+        long base = -1;
+        for (Long generation : generations) {
+            if (generation <= requested) {
+                base = generation;
+            }
+        }
+        if (base != requested) {
+            LOG.warn("Snapshot {0} of {1} not found, reporting the changes since snapshot {2}",
+                    requested, objectClass.getObjectClassValue(), base);
+        }
+        return base;
+    }
+
+    private static long[] toArray(final List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
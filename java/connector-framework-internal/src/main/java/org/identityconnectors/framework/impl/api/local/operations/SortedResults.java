@@ -0,0 +1,678 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SortKey;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+
+/**
+ * Search results sorted by the framework, for the connectors which do not
+ * support sorting and paging.
+ * <p>
+ * The results are sorted with an external merge sort: they are sorted by
+ * runs of bounded size, written to temporary files and merged into a single
+ * file, with the position of every {@value #INDEX_INTERVAL}th object kept in
+ * memory. The pages are then read from the file without searching again.
+ * The results of a paged search are cached for
+ * {@link #setTimeToLive(long, TimeUnit) some time} so that the following
+ * pages, requested by offset or by cookie, are served from the same file.
+ * Each search has its own results: a cookie holds the id of the results
+ * which issued it and is served by them only, while an offset is served by
+ * the latest results of the same query.
+ *
+ * @since 1.4.4
+ */
+public final class SortedResults {
+
+    private static final Log LOG = Log.getLog(SortedResults.class);
+
+    public static final String TTL_PROP = "org.identityconnectors.framework.search.sort.ttl";
+
+    public static final String DIRECTORY_PROP =
+            "org.identityconnectors.framework.search.sort.directory";
+
+    /**
+     * Objects sorted in memory before being written to a run file.
+     */
+    static final int RUN_SIZE = 10000;
+
+    /**
+     * Objects between two indexed positions of the sorted file.
+     */
+    static final int INDEX_INTERVAL = 1024;
+
+    /**
+     * Maximum number of cached results, the least recently used are dropped.
+     */
+    private static final int MAX_CACHED = 32;
+
+    private static final String COOKIE_SEPARATOR = ":";
+
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private static final Map<String, SortedResults> CACHE =
+            new LinkedHashMap<String, SortedResults>(16, 0.75f, true);
+
+    private static volatile long ttlNanos =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong(TTL_PROP, 60 * 1000L));
+
+    private static volatile File directory = new File(System.getProperty(DIRECTORY_PROP,
+            System.getProperty("java.io.tmpdir")));
+
+    /**
+     * Sets how long the results of a paged search are cached, zero disables
+     * the cache.
+     */
+    public static void setTimeToLive(final long ttl, final TimeUnit unit) {
+        ttlNanos = unit.toNanos(ttl);
+        if (ttlNanos <= 0) {
+            clear();
+        }
+    }
+
+    public static long getTimeToLive(final TimeUnit unit) {
+        return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets the directory of the temporary files.
+     */
+    public static void setDirectory(final File dir) {
+        directory = dir;
+    }
+
+    public static File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Drops all the cached results.
+     */
+    public static void clear() {
+        List<SortedResults> dropped;
+        synchronized (CACHE) {
+            dropped = new ArrayList<SortedResults>(CACHE.values());
+            CACHE.clear();
+        }
+        for (SortedResults results : dropped) {
+            results.dispose();
+        }
+    }
+
+    /**
+     * Tells whether the options ask for sorting or paging.
+     */
+    public static boolean isRequested(final OperationOptions options) {
+        return (options.getSortKeys() != null && options.getSortKeys().length > 0)
+                || (options.getPageSize() != null && options.getPageSize() > 0);
+    }
+
+    /**
+     * Returns the options of the search run by the connector: the sorting and
+     * paging options are removed and the sort keys are added to the
+     * attributes to get.
+     */
+    public static OperationOptions getConnectorOptions(final OperationOptions options) {
+        OperationOptionsBuilder builder = new OperationOptionsBuilder(options);
+        Map<String, Object> map = builder.getOptions();
+        map.remove(OperationOptions.OP_SORT_KEYS);
+        map.remove(OperationOptions.OP_PAGE_SIZE);
+        map.remove(OperationOptions.OP_PAGED_RESULTS_OFFSET);
+        map.remove(OperationOptions.OP_PAGED_RESULTS_COOKIE);
+        if (options.getAttributesToGet() != null && options.getSortKeys() != null) {
+            Set<String> attributes =
+                    new LinkedHashSet<String>(Arrays.asList(options.getAttributesToGet()));
+            for (SortKey key : options.getSortKeys()) {
+                attributes.add(key.getField());
+            }
+            builder.setAttributesToGet(attributes);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the cached results with the given id.
+     *
+     * @return null if not cached.
+     */
+    public static SortedResults get(final String id) {
+        SortedResults results;
+        synchronized (CACHE) {
+            results = CACHE.get(id);
+            if (results != null && results.isExpired()) {
+                CACHE.remove(id);
+                results.dispose();
+                results = null;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the latest cached results of the search with the given key.
+     *
+     * @return null if not cached.
+     */
+    public static SortedResults getLatest(final String key) {
+        SortedResults latest = null;
+        synchronized (CACHE) {
+            for (SortedResults results : CACHE.values()) {
+                if (results.key.equals(key) && !results.isExpired()
+                        && (latest == null || results.generation > latest.generation)) {
+                    latest = results;
+                }
+            }
+            if (latest != null) {
+                // keep the access order
+                CACHE.get(latest.id);
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Returns the id of the results which issued a cookie.
+     *
+     * @throws IllegalArgumentException
+     *             if the cookie was not issued by the results of the search
+     *             with the given key.
+     */
+    public static String getResultsId(final String key, final String cookie) {
+        int separator = cookie.lastIndexOf(COOKIE_SEPARATOR);
+        if (separator < 0 || !cookie.startsWith(key + COOKIE_SEPARATOR)) {
+            throw new IllegalArgumentException("Invalid paged results cookie: " + cookie);
+        }
+        return cookie.substring(0, separator);
+    }
+
+    /**
+     * Returns the position of the next page in the results which issued a
+     * cookie, starting from 0.
+     *
+     * @throws IllegalArgumentException
+     *             if the cookie is not valid.
+     */
+    public static int getOffset(final String cookie) {
+        int separator = cookie.lastIndexOf(COOKIE_SEPARATOR);
+        try {
+            int offset = Integer.parseInt(cookie.substring(separator + 1));
+            if (separator >= 0 && offset >= 0) {
+                return offset;
+            }
+        } catch (NumberFormatException e) {
+            // invalid
+        }
+        throw new IllegalArgumentException("Invalid paged results cookie: " + cookie);
+    }
+
+    /**
+     * Caches the results of a paged search, under their own id so that the
+     * results of the other searches with the same key are kept.
+     *
+     * @return false if the cache is disabled.
+     */
+    public static boolean put(final SortedResults results) {
+        long ttl = ttlNanos;
+        if (ttl <= 0) {
+            return false;
+        }
+        results.expiresAt = System.nanoTime() + ttl;
+        List<SortedResults> dropped = new ArrayList<SortedResults>();
+        synchronized (CACHE) {
+            CACHE.put(results.id, results);
+            Iterator<SortedResults> it = CACHE.values().iterator();
+            while (CACHE.size() > MAX_CACHED && it.hasNext()) {
+                dropped.add(it.next());
+                it.remove();
+            }
+        }
+        for (SortedResults r : dropped) {
+            r.dispose();
+        }
+        return true;
+    }
+
+    // =======================================================================
+    // Instance
+    // =======================================================================
+
+    private final String key;
+
+    private final long generation;
+
+    /**
+     * Identifies these results in the cache and in their cookies.
+     */
+    private final String id;
+
+    private final int size;
+
+    /**
+     * The results when they fit in one run, otherwise null.
+     */
+    private final List<ConnectorObject> objects;
+
+    private final File file;
+
+    /**
+     * Position in the file of every INDEX_INTERVALth object.
+     */
+    private final long[] index;
+
+    private volatile long expiresAt;
+
+    private SortedResults(final String key, final List<ConnectorObject> objects) {
+        this.key = key;
+        this.generation = GENERATION.incrementAndGet();
+        this.id = key + COOKIE_SEPARATOR + generation;
+        this.size = objects.size();
+        this.objects = objects;
+        this.file = null;
+        this.index = null;
+    }
+
+    private SortedResults(final String key, final int size, final File file, final long[] index) {
+        this.key = key;
+        this.generation = GENERATION.incrementAndGet();
+        this.id = key + COOKIE_SEPARATOR + generation;
+        this.size = size;
+        this.objects = null;
+        this.file = file;
+        this.index = index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    private boolean isExpired() {
+        return System.nanoTime() - expiresAt >= 0;
+    }
+
+    /**
+     * Deletes the file of the results. The pages being read are not
+     * affected on the platforms which keep the content of the open files.
+     */
+    public void dispose() {
+        if (file != null && !file.delete()) {
+            LOG.ok("Unable to delete {0}", file);
+        }
+    }
+
+    /**
+     * Sends the page requested by the options to the handler.
+     *
+     * @return the result with the cookie of the next page, null if the
+     *         results have been dropped from the cache in the meantime.
+     */
+    public SearchResult serve(final ResultsHandler handler, final OperationOptions options) {
+        int pageSize = options.getPageSize() != null ? options.getPageSize() : 0;
+        int start = 0;
+        if (options.getPagedResultsOffset() != null && options.getPagedResultsOffset() > 0) {
+            start = options.getPagedResultsOffset() - 1;
+        } else if (options.getPagedResultsCookie() != null) {
+            start = parseCookie(options.getPagedResultsCookie());
+        }
+        int end = pageSize > 0 ? (int) Math.min((long) start + pageSize, size) : size;
+        int next = start;
+        if (start < end) {
+            DataInputStream input = null;
+            try {
+                if (objects == null) {
+                    try {
+                        input = open(start);
+                    } catch (FileNotFoundException e) {
+                        return null;
+                    }
+                }
+                while (next < end) {
+                    ConnectorObject object = input == null ? objects.get(next) : readObject(input);
+                    next++;
+                    if (!handler.handle(object)) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new ConnectorIOException(e);
+            } finally {
+                IOUtil.quietClose(input);
+            }
+        }
+        if (pageSize <= 0) {
+            return new SearchResult(null, -1, next >= size);
+        }
+        String cookie = next < size ? id + COOKIE_SEPARATOR + next : null;
+        return new SearchResult(cookie, Math.max(0, size - next), true);
+    }
+
+    /**
+     * Returns the position of the next page of a cookie issued by these
+     * results.
+     */
+    private int parseCookie(final String cookie) {
+        if (!getResultsId(key, cookie).equals(id)) {
+            throw new IllegalArgumentException("Paged results cookie of other results: " + cookie);
+        }
+        return getOffset(cookie);
+    }
+
+    /**
+     * Opens the sorted file at the given object.
+     */
+    private DataInputStream open(final int start) throws IOException {
+        final DataInputStream input =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            skip(input, index[start / INDEX_INTERVAL]);
+            for (int i = start / INDEX_INTERVAL * INDEX_INTERVAL; i < start; i++) {
+                skip(input, input.readInt());
+            }
+            return input;
+        } catch (IOException e) {
+            IOUtil.quietClose(input);
+            throw e;
+        }
+    }
+
+    private static void skip(final DataInputStream input, long count) throws IOException {
+        while (count > 0) {
+            long skipped = input.skip(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+
+    private static ConnectorObject readObject(final DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return (ConnectorObject) SerializerUtil.deserializeBinaryObject(bytes);
+    }
+
+    private static int writeObject(final DataOutputStream output, final ConnectorObject object)
+            throws IOException {
+        byte[] bytes = SerializerUtil.serializeBinaryObject(object);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    // =======================================================================
+    // Sorting
+    // =======================================================================
+
+    /**
+     * Compares objects by sort keys, then by uid so that the order does not
+     * change between two pages.
+     */
+    static final class SortKeyComparator implements Comparator<ConnectorObject> {
+
+        private final SortKey[] keys;
+
+        SortKeyComparator(final SortKey[] keys) {
+            this.keys = keys != null ? keys : new SortKey[0];
+        }
+
+        @Override
+        public int compare(final ConnectorObject o1, final ConnectorObject o2) {
+            for (SortKey key : keys) {
+                int cmp = compareValues(getValue(o1, key.getField()), getValue(o2, key.getField()));
+                if (cmp != 0) {
+                    return key.isAscendingOrder() ? cmp : -cmp;
+                }
+            }
+            return o1.getUid().getUidValue().compareTo(o2.getUid().getUidValue());
+        }
+
+        private static Object getValue(final ConnectorObject object, final String name) {
+            Attribute attribute = object.getAttributeByName(name);
+            if (attribute == null || attribute.getValue() == null || attribute.getValue().isEmpty()) {
+                return null;
+            }
+            return attribute.getValue().get(0);
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private static int compareValues(final Object v1, final Object v2) {
+            if (v1 == null || v2 == null) {
+                // missing values last
+                return v1 == null ? (v2 == null ? 0 : 1) : -1;
+            }
+            if (v1 instanceof Comparable && v1.getClass() == v2.getClass()) {
+                return ((Comparable) v1).compareTo(v2);
+            }
+            return v1.toString().compareTo(v2.toString());
+        }
+    }
+
+    /**
+     * Collects the results of the search of the connector.
+     */
+    public static final class Builder implements ResultsHandler {
+
+        private final String key;
+
+        private final Comparator<ConnectorObject> comparator;
+
+        private final int runSize;
+
+        private final List<ConnectorObject> buffer = new ArrayList<ConnectorObject>();
+
+        private final List<File> runs = new ArrayList<File>();
+
+        private int size = 0;
+
+        public Builder(final String key, final SortKey[] keys) {
+            this(key, keys, RUN_SIZE);
+        }
+
+        Builder(final String key, final SortKey[] keys, final int runSize) {
+            this.key = key;
+            this.comparator = new SortKeyComparator(keys);
+            this.runSize = runSize;
+        }
+
+        @Override
+        public boolean handle(final ConnectorObject object) {
+            buffer.add(object);
+            size++;
+            if (buffer.size() >= runSize) {
+                try {
+                    spill();
+                } catch (IOException e) {
+                    throw new ConnectorIOException(e);
+                }
+            }
+            return true;
+        }
+
+        private void spill() throws IOException {
+            Collections.sort(buffer, comparator);
+            File run = createTempFile(".run");
+            runs.add(run);
+            DataOutputStream output =
+                    new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+            try {
+                for (ConnectorObject object : buffer) {
+                    writeObject(output, object);
+                }
+            } finally {
+                output.close();
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Sorts the collected results.
+         */
+        public SortedResults build() {
+            if (runs.isEmpty()) {
+                Collections.sort(buffer, comparator);
+                return new SortedResults(key, new ArrayList<ConnectorObject>(buffer));
+            }
+            try {
+                if (!buffer.isEmpty()) {
+                    spill();
+                }
+                return merge();
+            } catch (IOException e) {
+                throw new ConnectorIOException(e);
+            } finally {
+                dispose();
+            }
+        }
+
+        private SortedResults merge() throws IOException {
+            List<RunReader> readers = new ArrayList<RunReader>(runs.size());
+            PriorityQueue<RunReader> heads = new PriorityQueue<RunReader>(runs.size());
+            File file = createTempFile(".sorted");
+            long[] index = new long[(size + INDEX_INTERVAL - 1) / INDEX_INTERVAL];
+            DataOutputStream output = null;
+            boolean done = false;
+            try {
+                for (File run : runs) {
+                    RunReader reader = new RunReader(run, comparator);
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        heads.add(reader);
+                    }
+                }
+                output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                long position = 0;
+                int count = 0;
+                RunReader reader;
+                while ((reader = heads.poll()) != null) {
+                    if (count % INDEX_INTERVAL == 0) {
+                        index[count / INDEX_INTERVAL] = position;
+                    }
+                    position += writeObject(output, reader.head);
+                    count++;
+                    if (reader.advance()) {
+                        heads.add(reader);
+                    }
+                }
+                output.close();
+                done = true;
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.close();
+                }
+                if (!done) {
+                    IOUtil.quietClose(output);
+                    file.delete();
+                }
+            }
+            return new SortedResults(key, size, file, index);
+        }
+
+        /**
+         * Deletes the run files.
+         */
+        public void dispose() {
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+            buffer.clear();
+        }
+    }
+
+    private static File createTempFile(final String suffix) throws IOException {
+        File dir = directory;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create the directory " + dir);
+        }
+        return File.createTempFile("connid-sort", suffix, dir);
+    }
+
+    private static final class RunReader implements Comparable<RunReader> {
+
+        private final DataInputStream input;
+
+        private final Comparator<ConnectorObject> comparator;
+
+        private ConnectorObject head;
+
+        RunReader(final File run, final Comparator<ConnectorObject> comparator) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+            this.comparator = comparator;
+        }
+
+        boolean advance() throws IOException {
+            try {
+                head = readObject(input);
+                return true;
+            } catch (EOFException e) {
+                head = null;
+                return false;
+            }
+        }
+
+        void close() {
+            IOUtil.quietClose(input);
+        }
+
+        @Override
+        public int compareTo(final RunReader other) {
+            return comparator.compare(head, other.head);
+        }
+    }
+}
@@ -24,6 +24,8 @@
  */
 package org.identityconnectors.framework.impl.api.local.operations;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.identityconnectors.common.Assertions;
@@ -31,9 +33,11 @@ import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.api.operations.SyncApiOp;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.BatchAwareSyncResultsHandler;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
 import org.identityconnectors.framework.common.objects.SyncDelta;
 import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
 import org.identityconnectors.framework.common.objects.SyncDeltaType;
@@ -41,6 +45,7 @@ import org.identityconnectors.framework.common.objects.SyncResultsHandler;
 import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.spi.AttributeNormalizer;
 import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.SyncCheckpointResultsHandler;
 import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
 import org.identityconnectors.framework.spi.operations.SyncOp;
 
@@ -50,6 +55,18 @@ public class SyncImpl extends ConnectorAPIOperationRunner implements SyncApiOp {
     private static final Log OP_LOG = Log.getLog(SyncOp.class);
     private static final Log HANDLER_LOG = Log.getLog(SyncTokenResultsHandler.class);
 
+    /**
+     * Number of handled deltas between two checkpoints.
+     */
+    private static final int CHECKPOINT_INTERVAL = 100;
+
+    /**
+     * The handler of the connector, taking the deltas in batches too.
+     */
+    private interface ConnectorSyncResultsHandler
+            extends SyncTokenResultsHandler, BatchAwareSyncResultsHandler {
+    }
+
     public SyncImpl(final ConnectorOperationalContext context, final Connector connector) {
         super(context, connector);
     }
@@ -64,31 +81,43 @@ public class SyncImpl extends ConnectorAPIOperationRunner implements SyncApiOp {
             options = new OperationOptionsBuilder().build();
         }
 
+        final SyncCheckpointResultsHandler checkpointHandler =
+                handler instanceof SyncCheckpointResultsHandler
+                        ? (SyncCheckpointResultsHandler) handler : null;
+
         ResultsHandlerConfiguration hdlCfg =
                 null != getOperationalContext() ? getOperationalContext()
                         .getResultsHandlerConfiguration() : new ResultsHandlerConfiguration();
 
-        // add a handler in the chain to remove attributes
+        // normalize and remove attributes in a single pass
         String[] attrsToGet = options.getAttributesToGet();
-        if (attrsToGet != null && attrsToGet.length > 0 && hdlCfg.isEnableAttributesToGetSearchResultsHandler()) {
-            handler = new AttributesToGetSyncResultsHandler(handler, attrsToGet);
+        if (attrsToGet == null || attrsToGet.length == 0
+                || !hdlCfg.isEnableAttributesToGetSearchResultsHandler()) {
+            attrsToGet = null;
         }
-        // chain a normalizing results handler
-        if (getConnector() instanceof AttributeNormalizer && hdlCfg.isEnableNormalizingResultsHandler()) {
-            handler =
-                    new NormalizingSyncResultsHandler(handler, getNormalizer(objectClass));
+        ObjectNormalizerFacade normalizer =
+                getConnector() instanceof AttributeNormalizer
+                        && hdlCfg.isEnableNormalizingResultsHandler() ? getNormalizer(objectClass)
+                        : null;
+        if (normalizer != null || attrsToGet != null) {
+            handler = new FusedResultsHandler.Sync(handler, normalizer, attrsToGet);
         }
 
-        final SyncResultsHandler handlerChain = handler;
+        // dispatch the deltas to several threads
+        final ParallelSyncResultsHandler dispatcher =
+                hdlCfg.getSyncDispatchThreads() > 1 ? new ParallelSyncResultsHandler(handler,
+                        hdlCfg.getSyncDispatchThreads()) : null;
+
+        final SyncResultsHandler handlerChain = null != dispatcher ? dispatcher : handler;
         final AtomicReference<SyncToken> result = new AtomicReference<SyncToken>(null);
+        final AtomicLong handled = new AtomicLong();
+        final AtomicReference<SyncToken> checkpoint = new AtomicReference<SyncToken>(null);
         
-        SyncTokenResultsHandler syncHandler = new SyncTokenResultsHandler() {
+        SyncTokenResultsHandler syncHandler = new ConnectorSyncResultsHandler() {
             @Override
             public void handleResult(SyncToken token) {
-            	if (HANDLER_LOG.isLoggable(SpiOperationLoggingUtil.LOG_LEVEL)) {
-            		HANDLER_LOG.log(SyncTokenResultsHandler.class, "handleResult",
-            				SpiOperationLoggingUtil.LOG_LEVEL, "Enter: handleResult("+token+")", null);
-            	}
+            	HANDLER_LOG.log(SyncTokenResultsHandler.class, "handleResult",
+            			SpiOperationLoggingUtil.LOG_LEVEL, null, "Enter: handleResult({0})", token);
             	try {
             		result.compareAndSet(null, token);
             	} catch (RuntimeException e) {
@@ -103,23 +132,62 @@ public class SyncImpl extends ConnectorAPIOperationRunner implements SyncApiOp {
 
             @Override
             public boolean handle(final SyncDelta delta) {
-            	if (HANDLER_LOG.isLoggable(SpiOperationLoggingUtil.LOG_LEVEL)) {
-            		HANDLER_LOG.log(SyncTokenResultsHandler.class, "handle",
-            				SpiOperationLoggingUtil.LOG_LEVEL, "Enter: handle("+delta+")", null);
-            	}
+            	HANDLER_LOG.log(SyncTokenResultsHandler.class, "handle",
+            			SpiOperationLoggingUtil.LOG_LEVEL, null, "Enter: handle({0})", delta);
                 boolean ret;
                 try {
                 	ret = handlerChain.handle(delta);
+                    if (ret) {
+                        handled(1, delta);
+                    }
                 } catch (RuntimeException e) {
                 	SpiOperationLoggingUtil.logOpException(HANDLER_LOG, SyncTokenResultsHandler.class, "handle", e);
                 	throw e;
                 }
-                if (HANDLER_LOG.isLoggable(SpiOperationLoggingUtil.LOG_LEVEL)) {
-            		HANDLER_LOG.log(SyncTokenResultsHandler.class, "handle",
-            				SpiOperationLoggingUtil.LOG_LEVEL, "Return: "+ret, null);
-            	}
+                HANDLER_LOG.log(SyncTokenResultsHandler.class, "handle",
+                		SpiOperationLoggingUtil.LOG_LEVEL, null, "Return: {0}", ret);
                 return ret;
             }
+
+            @Override
+            public boolean handleBatch(final List<SyncDelta> deltas) {
+                HANDLER_LOG.log(BatchAwareSyncResultsHandler.class, "handleBatch",
+                        SpiOperationLoggingUtil.LOG_LEVEL, null, "Enter: handleBatch({0})", deltas);
+                boolean ret;
+                try {
+                    ret = ResultsHandlerUtil.handleBatch(handlerChain, deltas);
+                    if (ret && !deltas.isEmpty()) {
+                        handled(deltas.size(), deltas.get(deltas.size() - 1));
+                    }
+                } catch (RuntimeException e) {
+                    SpiOperationLoggingUtil.logOpException(HANDLER_LOG,
+                            BatchAwareSyncResultsHandler.class, "handleBatch", e);
+                    throw e;
+                }
+                HANDLER_LOG.log(BatchAwareSyncResultsHandler.class, "handleBatch",
+                        SpiOperationLoggingUtil.LOG_LEVEL, null, "Return: {0}", ret);
+                return ret;
+            }
+
+            /**
+             * Counts the handled deltas, reporting a checkpoint every
+             * {@link #CHECKPOINT_INTERVAL} deltas.
+             */
+            private void handled(final int count, final SyncDelta last) {
+                if (null == checkpointHandler) {
+                    return;
+                }
+                long total = handled.addAndGet(count);
+                if (total / CHECKPOINT_INTERVAL != (total - count) / CHECKPOINT_INTERVAL) {
+                    // with several threads only the deltas all handled
+                    // are safe to resume after
+                    SyncToken latest =
+                            null != dispatcher ? dispatcher.getSafeToken() : last.getToken();
+                    if (null != latest && !latest.equals(checkpoint.getAndSet(latest))) {
+                        checkpointHandler.handleCheckpoint(latest);
+                    }
+                }
+            }
         };
         
         if (isLoggable()) {
@@ -137,8 +205,16 @@ public class SyncImpl extends ConnectorAPIOperationRunner implements SyncApiOp {
 	        ((SyncOp) getConnector()).sync(objectClass, token, syncHandler, options);
         } catch (RuntimeException e) {
         	SpiOperationLoggingUtil.logOpException(OP_LOG, SyncOp.class,"sync",e);
+            if (null != dispatcher) {
+                dispatcher.shutdown();
+            }
     		throw e;
         }
+
+        if (null != dispatcher) {
+            // the connector token is only reported once every delta is handled
+            result.set(dispatcher.finish(result.get()));
+        }
         
         if (isLoggable()) {
         	OP_LOG.log(SyncOp.class, "sync", SpiOperationLoggingUtil.LOG_LEVEL,
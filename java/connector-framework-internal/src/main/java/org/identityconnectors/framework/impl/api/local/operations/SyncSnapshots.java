@@ -0,0 +1,716 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+
+/**
+ * The search snapshots of one object class, on which {@link SnapshotSyncImpl}
+ * emulates the sync operation.
+ * <p>
+ * A snapshot generation is made of two files. The index file holds one fixed
+ * size record per object: the hash of its uid, the hash of its content and
+ * the position of the uid in the uid file. The records are sorted by uid hash
+ * (then by uid), so the index can be memory mapped and searched while the
+ * next search runs, and two generations are compared by a single merge. The
+ * snapshots are built with an external sort of bounded runs, the memory used
+ * does not depend on the number of objects.
+ *
+ * @since 1.4.4
+ */
+public class SyncSnapshots {
+
+    /**
+     * Size of an index record: uid hash, content hash and uid position.
+     */
+    static final int RECORD_SIZE = 24;
+
+    /**
+     * Index records per memory mapped segment.
+     */
+    private static final int SEGMENT_RECORDS = 1 << 25;
+
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final String UID_SUFFIX = ".uid";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final String RUN_SUFFIX = ".run";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Comparator<Attribute> BY_NAME = new Comparator<Attribute>() {
+
+        @Override
+        public int compare(Attribute a1, Attribute a2) {
+            return a1.getName().compareTo(a2.getName());
+        }
+    };
+
+    /**
+     * Locks of the snapshots in use by this JVM, by file prefix.
+     */
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<String, Object>();
+
+    private final File directory;
+
+    private final String prefix;
+
+    private final int runSize;
+
+    /**
+     * Creates the snapshots of the given object class.
+     *
+     * @param directory
+     *            directory of the snapshot files.
+     * @param objectClass
+     *            the object class of the snapshots.
+     * @param runSize
+     *            number of records sorted in memory before being written to
+     *            a temporary run file.
+     */
+    public SyncSnapshots(File directory, ObjectClass objectClass, int runSize) {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("runSize must be positive");
+        }
+        this.directory = directory;
+        this.prefix = toFileName(objectClass.getObjectClassValue()) + '.';
+        this.runSize = runSize;
+    }
+
+    /**
+     * Escapes the characters of the object class name not allowed in file
+     * names.
+     */
+    private static String toFileName(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '_') {
+                builder.append(c);
+            } else {
+                builder.append('-').append(String.format("%04x", (int) c));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the object the syncs of these snapshots are serialized on.
+     */
+    public Object getLock() {
+        String key = new File(directory, prefix).getAbsolutePath();
+        Object lock = LOCKS.get(key);
+        if (lock == null) {
+            Object existing = LOCKS.putIfAbsent(key, lock = new Object());
+            if (existing != null) {
+                lock = existing;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Returns the generations on disk, in ascending order.
+     */
+    public List<Long> getGenerations() {
+        List<Long> generations = new ArrayList<Long>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(prefix) && name.endsWith(INDEX_SUFFIX)) {
+                    try {
+                        generations.add(Long.valueOf(name.substring(prefix.length(), name.length()
+                                - INDEX_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // not a snapshot
+                    }
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /**
+     * Deletes the temporary files left by an interrupted sync, and the
+     * generations other than the given ones.
+     */
+    public void clean(long... kept) {
+        String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (!name.startsWith(prefix)) {
+                continue;
+            }
+            boolean delete = name.endsWith(TMP_SUFFIX) || name.endsWith(RUN_SUFFIX);
+            if (name.endsWith(INDEX_SUFFIX) || name.endsWith(UID_SUFFIX)) {
+                try {
+                    long generation =
+                            Long.parseLong(name.substring(prefix.length(), name.lastIndexOf('.')));
+                    delete = true;
+                    for (long k : kept) {
+                        delete &= generation != k;
+                    }
+                } catch (NumberFormatException e) {
+                    // not a snapshot
+                }
+            }
+            if (delete) {
+                new File(directory, name).delete();
+            }
+        }
+    }
+
+    private File getFile(long generation, String suffix) {
+        return new File(directory, prefix + generation + suffix);
+    }
+
+    // =======================================================================
+    // Records
+    // =======================================================================
+
+    /**
+     * Creates the record of an object.
+     */
+    public static Record newRecord(ConnectorObject object) {
+        String uid = object.getUid().getUidValue();
+        List<Attribute> attributes = new ArrayList<Attribute>(object.getAttributes());
+        Collections.sort(attributes, BY_NAME);
+        return new Record(hash(uid.getBytes(UTF8)),
+                hash(SerializerUtil.serializeBinaryObject(attributes)), uid);
+    }
+
+    private static long hash(byte[] bytes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw ConnectorException.wrap(e);
+        }
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    /**
+     * An object of a snapshot.
+     */
+    public static final class Record implements Comparable<Record> {
+
+        private final long uidHash;
+
+        private final long contentHash;
+
+        private final String uid;
+
+        Record(long uidHash, long contentHash, String uid) {
+            this.uidHash = uidHash;
+            this.contentHash = contentHash;
+            this.uid = uid;
+        }
+
+        public long getContentHash() {
+            return contentHash;
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        @Override
+        public int compareTo(Record other) {
+            if (uidHash != other.uidHash) {
+                return uidHash < other.uidHash ? -1 : 1;
+            }
+            return uid.compareTo(other.uid);
+        }
+    }
+
+    /**
+     * Sequence of records in ascending order.
+     */
+    public interface RecordReader {
+
+        /**
+         * Returns the next record, null at the end.
+         */
+        Record next() throws IOException;
+
+        void close();
+    }
+
+    // =======================================================================
+    // Reading
+    // =======================================================================
+
+    /**
+     * Opens the memory mapped index of the given generation.
+     *
+     * @param generation
+     *            the generation, negative for an empty snapshot.
+     */
+    public Index openIndex(long generation) throws IOException {
+        return new Index(generation < 0 ? null : getFile(generation, INDEX_SUFFIX),
+                generation < 0 ? null : getFile(generation, UID_SUFFIX));
+    }
+
+    /**
+     * Opens a sequential reader of the given generation.
+     *
+     * @param generation
+     *            the generation, negative for an empty snapshot.
+     */
+    public RecordReader openReader(long generation) throws IOException {
+        if (generation < 0) {
+            return new MergingReader(Collections.<RecordReader> emptyList());
+        }
+        return new SnapshotReader(getFile(generation, INDEX_SUFFIX), getFile(generation, UID_SUFFIX));
+    }
+
+    /**
+     * Looks up the objects of a snapshot by uid.
+     */
+    public static final class Index {
+
+        private final MappedByteBuffer[] segments;
+
+        private final long size;
+
+        private final File uidFile;
+
+        Index(File indexFile, File uidFile) throws IOException {
+            this.uidFile = uidFile;
+            if (indexFile == null) {
+                segments = new MappedByteBuffer[0];
+                size = 0;
+                return;
+            }
+            RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                size = channel.size() / RECORD_SIZE;
+                segments = new MappedByteBuffer[(int) ((size + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];
+                for (int i = 0; i < segments.length; i++) {
+                    long start = (long) i * SEGMENT_RECORDS;
+                    long count = Math.min(SEGMENT_RECORDS, size - start);
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            start * RECORD_SIZE, count * RECORD_SIZE);
+                }
+            } finally {
+                // the mappings stay valid
+                file.close();
+            }
+        }
+
+        public long size() {
+            return size;
+        }
+
+        private long getLong(long record, int field) {
+            return segments[(int) (record / SEGMENT_RECORDS)].getLong(
+                    (int) (record % SEGMENT_RECORDS) * RECORD_SIZE + field * 8);
+        }
+
+        /**
+         * Returns the content hash of the object in the snapshot.
+         *
+         * @return null if the object is not in the snapshot.
+         */
+        public Long lookup(Record record) throws IOException {
+            // first record with the same uid hash
+            long low = 0;
+            long high = size;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (getLong(middle, 0) < record.uidHash) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            if (low == size || getLong(low, 0) != record.uidHash) {
+                return null;
+            }
+            if (low + 1 == size || getLong(low + 1, 0) != record.uidHash) {
+                // the uid is not compared on a single match, a 64 bits hash
+                // collision with another object is too unlikely
+                return getLong(low, 1);
+            }
+            RandomAccessFile uids = new RandomAccessFile(uidFile, "r");
+            try {
+                for (long i = low; i < size && getLong(i, 0) == record.uidHash; i++) {
+                    uids.seek(getLong(i, 2));
+                    if (record.uid.equals(readUid(uids))) {
+                        return getLong(i, 1);
+                    }
+                }
+            } finally {
+                uids.close();
+            }
+            return null;
+        }
+    }
+
+    private static String readUid(DataInput input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static final class SnapshotReader implements RecordReader {
+
+        private final DataInputStream index;
+
+        private final DataInputStream uids;
+
+        private long remaining;
+
+        SnapshotReader(File indexFile, File uidFile) throws IOException {
+            remaining = indexFile.length() / RECORD_SIZE;
+            index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                uids = new DataInputStream(new BufferedInputStream(new FileInputStream(uidFile)));
+            } catch (IOException e) {
+                IOUtil.quietClose(index);
+                throw e;
+            }
+        }
+
+        @Override
+        public Record next() throws IOException {
+            if (remaining == 0) {
+                return null;
+            }
+            remaining--;
+            long uidHash = index.readLong();
+            long contentHash = index.readLong();
+            index.readLong();
+            return new Record(uidHash, contentHash, readUid(uids));
+        }
+
+        @Override
+        public void close() {
+            IOUtil.quietClose(index);
+            IOUtil.quietClose(uids);
+        }
+    }
+
+    private static final class RunReader implements RecordReader {
+
+        private final DataInputStream input;
+
+        RunReader(File file) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        @Override
+        public Record next() throws IOException {
+            long uidHash;
+            try {
+                uidHash = input.readLong();
+            } catch (EOFException e) {
+                return null;
+            }
+            return new Record(uidHash, input.readLong(), readUid(input));
+        }
+
+        @Override
+        public void close() {
+            IOUtil.quietClose(input);
+        }
+    }
+
+    private static final class ListReader implements RecordReader {
+
+        private final Iterator<Record> iterator;
+
+        ListReader(List<Record> records) {
+            iterator = records.iterator();
+        }
+
+        @Override
+        public Record next() {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Merges sorted readers.
+     */
+    private static final class MergingReader implements RecordReader {
+
+        private final List<RecordReader> readers;
+
+        private final PriorityQueue<Head> heads;
+
+        private boolean started = false;
+
+        MergingReader(List<RecordReader> readers) {
+            this.readers = readers;
+            heads = new PriorityQueue<Head>(Math.max(1, readers.size()));
+        }
+
+        @Override
+        public Record next() throws IOException {
+            if (!started) {
+                started = true;
+                for (RecordReader reader : readers) {
+                    Record record = reader.next();
+                    if (record != null) {
+                        heads.add(new Head(record, reader));
+                    }
+                }
+            }
+            Head head = heads.poll();
+            if (head == null) {
+                return null;
+            }
+            Record record = head.record;
+            Record next = head.reader.next();
+            if (next != null) {
+                heads.add(new Head(next, head.reader));
+            }
+            return record;
+        }
+
+        @Override
+        public void close() {
+            for (RecordReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static final class Head implements Comparable<Head> {
+
+        private final Record record;
+
+        private final RecordReader reader;
+
+        Head(Record record, RecordReader reader) {
+            this.record = record;
+            this.reader = reader;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            return record.compareTo(other.record);
+        }
+    }
+
+    // =======================================================================
+    // Writing
+    // =======================================================================
+
+    /**
+     * Creates a builder sorting the records of a new snapshot.
+     */
+    public Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Sorts records with bounded memory: the records are sorted by runs
+     * written to temporary files, which are merged on reading.
+     */
+    public final class Builder {
+
+        private final List<Record> buffer = new ArrayList<Record>();
+
+        private final List<File> runs = new ArrayList<File>();
+
+        public void add(Record record) throws IOException {
+            buffer.add(record);
+            if (buffer.size() >= runSize) {
+                spill();
+            }
+        }
+
+        private void spill() throws IOException {
+            Collections.sort(buffer);
+            File run = File.createTempFile(prefix, RUN_SUFFIX, directory);
+            runs.add(run);
+            DataOutputStream output =
+                    new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+            try {
+                for (Record record : buffer) {
+                    output.writeLong(record.uidHash);
+                    output.writeLong(record.contentHash);
+                    writeUid(output, record.uid);
+                }
+            } finally {
+                output.close();
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Returns the records added so far, sorted.
+         */
+        public RecordReader sorted() throws IOException {
+            Collections.sort(buffer);
+            List<RecordReader> readers = new ArrayList<RecordReader>(runs.size() + 1);
+            try {
+                for (File run : runs) {
+                    readers.add(new RunReader(run));
+                }
+            } catch (IOException e) {
+                for (RecordReader reader : readers) {
+                    reader.close();
+                }
+                throw e;
+            }
+            readers.add(new ListReader(buffer));
+            return new MergingReader(readers);
+        }
+
+        /**
+         * Deletes the temporary files.
+         */
+        public void dispose() {
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+            buffer.clear();
+        }
+    }
+
+    private static int writeUid(DataOutputStream output, String uid) throws IOException {
+        byte[] bytes = uid.getBytes(UTF8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    /**
+     * Creates the writer of a new generation, records must be written in
+     * ascending order.
+     */
+    public Writer newWriter(long generation) throws IOException {
+        return new Writer(generation);
+    }
+
+    /**
+     * Writes a generation to temporary files, renamed on commit.
+     */
+    public final class Writer {
+
+        private final long generation;
+
+        private final DataOutputStream index;
+
+        private final DataOutputStream uids;
+
+        private long position = 0;
+
+        Writer(long generation) throws IOException {
+            this.generation = generation;
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile(
+                    generation, INDEX_SUFFIX + TMP_SUFFIX))));
+            try {
+                uids = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile(
+                        generation, UID_SUFFIX + TMP_SUFFIX))));
+            } catch (IOException e) {
+                IOUtil.quietClose(index);
+                throw e;
+            }
+        }
+
+        public void write(Record record) throws IOException {
+            index.writeLong(record.uidHash);
+            index.writeLong(record.contentHash);
+            index.writeLong(position);
+            position += writeUid(uids, record.uid);
+        }
+
+        /**
+         * Makes the generation visible, the index last.
+         */
+        public void commit() throws IOException {
+            index.close();
+            uids.close();
+            rename(UID_SUFFIX);
+            rename(INDEX_SUFFIX);
+        }
+
+        private void rename(String suffix) throws IOException {
+            File target = getFile(generation, suffix);
+            target.delete();
+            if (!getFile(generation, suffix + TMP_SUFFIX).renameTo(target)) {
+                throw new IOException("Unable to write " + target);
+            }
+        }
+
+        /**
+         * Deletes the temporary files.
+         */
+        public void abort() {
+            IOUtil.quietClose(index);
+            IOUtil.quietClose(uids);
+            getFile(generation, INDEX_SUFFIX + TMP_SUFFIX).delete();
+            getFile(generation, UID_SUFFIX + TMP_SUFFIX).delete();
+        }
+    }
+}
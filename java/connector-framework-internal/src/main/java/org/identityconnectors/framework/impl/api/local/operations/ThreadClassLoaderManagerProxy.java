@@ -87,7 +87,8 @@ public class ThreadClassLoaderManagerProxy implements InvocationHandler {
                         StreamHandlerUtil.adaptToObjectStreamHandler(paramType, arguments[i]);
                 final ApplicationClassLoaderHandler appHandler =
                         new ApplicationClassLoaderHandler(applicationClassLoader, rawHandler);
-                arguments[i] = StreamHandlerUtil.adaptFromObjectStreamHandler(paramTypes[i], appHandler);
+                arguments[i] = StreamHandlerUtil.adaptFromObjectStreamHandler(
+                        StreamHandlerUtil.getAdaptedType(paramType, arguments[i]), appHandler);
             }
         }
 
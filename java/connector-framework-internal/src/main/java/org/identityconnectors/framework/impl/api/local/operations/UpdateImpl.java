@@ -270,7 +270,7 @@ public class UpdateImpl extends ConnectorAPIOperationRunner implements UpdateApi
      */
     private ConnectorObject getConnectorObject(ObjectClass oclass, Uid uid, OperationOptions options) {
         // attempt to get the connector object..
-        GetApiOp get = new GetImpl(new SearchImpl(getOperationalContext(), getConnector()));
+        GetApiOp get = new GetImpl(getOperationalContext(), getConnector());
         return get.getObject(oclass, uid, options);
     }
 
@@ -26,11 +26,16 @@ package org.identityconnectors.framework.impl.api.remote;
 import java.lang.reflect.InvocationHandler;
 import java.util.HashMap;
 
+import org.identityconnectors.framework.api.ObjectCacheConfiguration;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.AbstractConnectorFacade;
+import org.identityconnectors.framework.impl.api.CoalescingProxy;
 import org.identityconnectors.framework.impl.api.LoggingProxy;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
+import org.identityconnectors.framework.impl.trace.OperationTracer;
 
 /**
  * Implements all the methods of the facade
@@ -47,6 +52,10 @@ public class RemoteConnectorFacadeImpl extends AbstractConnectorFacade {
         // Restore the original configuration settings
         getAPIConfiguration().setProducerBufferSize(configuration.getProducerBufferSize());
         getAPIConfiguration().setTimeoutMap(configuration.getTimeoutMap());
+        getAPIConfiguration().setObjectCacheConfiguration(
+                new ObjectCacheConfiguration(configuration.getObjectCacheConfiguration()));
+        getAPIConfiguration().setSchemaCacheTimeToLiveMillis(
+                configuration.getSchemaCacheTimeToLiveMillis());
         remoteConnectorFacadeKey = getConnectorFacadeKey();
     }
 
@@ -60,18 +69,44 @@ public class RemoteConnectorFacadeImpl extends AbstractConnectorFacade {
         APIConfigurationImpl copy = new APIConfigurationImpl(configuration);
         copy.setProducerBufferSize(0);
         copy.setTimeoutMap(new HashMap<Class<? extends APIOperation>, Integer>());
+        // objects and the schema are cached by the client
+        copy.setObjectCacheConfiguration(null);
+        copy.setSchemaCacheTimeToLiveMillis(0);
         return SerializerUtil.serializeBase64Object(copy);
     }
 
+    @Override
+    protected String getQualifiedKey() {
+        RemoteFrameworkConnectionInfo connection =
+                ((RemoteConnectorInfoImpl) getAPIConfiguration().getConnectorInfo())
+                        .getRemoteConnectionInfo();
+        return connection.getHost() + ":" + connection.getPort() + "/"
+                + qualifyKey(getAPIConfiguration().getConnectorInfo().getConnectorKey(),
+                        remoteConnectorFacadeKey);
+    }
+
     @Override
     protected APIOperation getOperationImplementation(final Class<? extends APIOperation> api) {
         // add remote proxy
         InvocationHandler handler =
                 new RemoteOperationInvocationHandler((RemoteConnectorInfoImpl) getAPIConfiguration()
-                        .getConnectorInfo(), remoteConnectorFacadeKey, api);
+                        .getConnectorInfo(), remoteConnectorFacadeKey, api, getQualifiedKey(),
+                        getAPIConfiguration().getSchemaCacheTimeToLiveMillis());
         APIOperation proxy = newAPIOperationProxy(api, handler);
+        // share identical concurrent reads
+        if (CoalescingProxy.isEnabled() && CoalescingProxy.isCoalescable(api)) {
+            proxy = createCoalescingProxy(api, proxy);
+        }
         // now wrap the proxy in the appropriate timeout proxy
         proxy = createTimeoutProxy(api, proxy);
+        // record metrics
+        if (MetricsRegistry.isEnabled()) {
+            proxy = createMetricsProxy(api, proxy);
+        }
+        // sample operations if tracing is on
+        if (OperationTracer.isEnabled()) {
+            proxy = createTracingProxy(api, proxy);
+        }
         // add logging proxy
         if (LoggingProxy.isLoggable()) {
             proxy = createLoggingProxy(api, proxy);
@@ -41,6 +41,7 @@ import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo.Compression;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
@@ -56,6 +57,12 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
     private static final Log LOG = Log.getLog(RemoteConnectorInfoManagerImpl.class);
 
     private final RemoteFrameworkConnectionInfo frameworkConnectionInfo;
+    /**
+     * Used for the hello requests, which are never compressed since the
+     * server may not support it.
+     */
+    private final RemoteFrameworkConnectionInfo helloConnectionInfo;
+    private volatile boolean compressionSupported = false;
     private List<ConnectorInfo> connectorInfoList;
     private Long serverStartTime = null;
 
@@ -63,6 +70,7 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
 
     private RemoteConnectorInfoManagerImpl() {
         frameworkConnectionInfo = null;
+        helloConnectionInfo = null;
     }
 
     public RemoteConnectorInfoManagerImpl(RemoteFrameworkConnectionInfo info)
@@ -73,6 +81,7 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
     public RemoteConnectorInfoManagerImpl(RemoteFrameworkConnectionInfo info,
             boolean loadConnectorInfo) throws RuntimeException {
         frameworkConnectionInfo = info;
+        helloConnectionInfo = withoutCompression(info);
         if (loadConnectorInfo) {
             init();
         } else {
@@ -82,12 +91,15 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
 
     private void init() {
         RemoteFrameworkConnection connection =
-                new RemoteFrameworkConnection(frameworkConnectionInfo);
+                new RemoteFrameworkConnection(helloConnectionInfo);
         HelloResponse response = null;
         try {
             connection.writeObject(CurrentLocale.get());
             connection.writeObject(frameworkConnectionInfo.getKey());
-            connection.writeObject(new HelloRequest(HelloRequest.CONNECTOR_INFO));
+            connection.writeObject(new HelloRequest(
+                    frameworkConnectionInfo.getCompression() != Compression.NONE
+                            ? HelloRequest.CONNECTOR_INFO | HelloRequest.COMPRESSION
+                            : HelloRequest.CONNECTOR_INFO));
             response = (HelloResponse) connection.readObject();
         } finally {
             connection.close();
@@ -101,10 +113,15 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
             throw ConnectorException.wrap(response.getException());
         }
 
+        compressionSupported =
+                WireCompression.ALGORITHM.equals(response.getServerInfo().get(
+                        HelloResponse.COMPRESSION));
+        RemoteFrameworkConnectionInfo connectionInfo =
+                compressionSupported ? frameworkConnectionInfo : helloConnectionInfo;
         List<RemoteConnectorInfoImpl> remoteInfos = response.getConnectorInfos();
         // populate transient fields not serialized
         for (RemoteConnectorInfoImpl remoteInfo : remoteInfos) {
-            remoteInfo.setRemoteConnectionInfo(frameworkConnectionInfo);
+            remoteInfo.setRemoteConnectionInfo(connectionInfo);
         }
 
         List<ConnectorInfo> connectorInfoBefore = connectorInfoList;
@@ -157,14 +174,35 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
             @SuppressWarnings("unchecked")
             List<RemoteConnectorInfoImpl> remoteInfos =
                     (List<RemoteConnectorInfoImpl>) SerializerUtil.cloneObject(connectorInfoList);
+            RemoteFrameworkConnectionInfo connectionInfo =
+                    compressionSupported ? info : withoutCompression(info);
             for (RemoteConnectorInfoImpl remoteInfo : remoteInfos) {
-                remoteInfo.setRemoteConnectionInfo(info);
+                remoteInfo.setRemoteConnectionInfo(connectionInfo);
             }
             rv.connectorInfoList = CollectionUtil.<ConnectorInfo> newReadOnlyList(remoteInfos);
         }
+        rv.compressionSupported = compressionSupported;
         return rv;
     }
 
+    private static RemoteFrameworkConnectionInfo withoutCompression(
+            RemoteFrameworkConnectionInfo info) {
+        if (info.getCompression() == Compression.NONE) {
+            return info;
+        }
+        return new RemoteFrameworkConnectionInfo(info.getHost(), info.getPort(), info.getKey(),
+                info.getUseSSL(), info.getTrustManagers(), info.getTimeout());
+    }
+
+    /**
+     * Tells whether the server accepts the compression of the
+     * {@link RemoteFrameworkConnectionInfo}, known once the connector infos
+     * were loaded.
+     */
+    public boolean isCompressionSupported() {
+        return compressionSupported;
+    }
+
     @Override
     public ConnectorInfo findConnectorInfo(ConnectorKey key) {
         for (ConnectorInfo info : getConnectorInfos()) {
@@ -250,7 +288,7 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
 
     public Map<String, Object> getServerInfo() throws RuntimeException {
         RemoteFrameworkConnection connection =
-                new RemoteFrameworkConnection(frameworkConnectionInfo);
+                new RemoteFrameworkConnection(helloConnectionInfo);
         try {
             connection.writeObject(CurrentLocale.get());
             connection.writeObject(frameworkConnectionInfo.getKey());
@@ -267,9 +305,33 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
         }
     }
 
+    /**
+     * Returns the text export of the remote connector server's metrics.
+     *
+     * @return the metrics or null if the server does not record any
+     */
+    public String getServerMetrics() throws RuntimeException {
+        RemoteFrameworkConnection connection =
+                new RemoteFrameworkConnection(helloConnectionInfo);
+        try {
+            connection.writeObject(CurrentLocale.get());
+            connection.writeObject(frameworkConnectionInfo.getKey());
+            connection.writeObject(new HelloRequest(HelloRequest.METRICS));
+            HelloResponse response = (HelloResponse) connection.readObject();
+            if (response.getException() instanceof ConnectorException) {
+                throw (ConnectorException) response.getException();
+            } else if (response.getException() != null) {
+                throw ConnectorException.wrap(response.getException());
+            }
+            return (String) response.getServerInfo().get(HelloResponse.METRICS);
+        } finally {
+            connection.close();
+        }
+    }
+
     public List<ConnectorKey> getConnectorKeys() throws RuntimeException {
         RemoteFrameworkConnection connection =
-                new RemoteFrameworkConnection(frameworkConnectionInfo);
+                new RemoteFrameworkConnection(helloConnectionInfo);
         try {
             connection.writeObject(CurrentLocale.get());
             connection.writeObject(frameworkConnectionInfo.getKey());
@@ -23,6 +23,9 @@
 package org.identityconnectors.framework.impl.api.remote;
 
 import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
@@ -37,6 +40,7 @@ import javax.net.ssl.TrustManager;
 
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo.Compression;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
 import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
@@ -49,6 +53,9 @@ public class RemoteFrameworkConnection implements Closeable {
     private Socket socket;
     private BinaryObjectSerializer encoder;
     private BinaryObjectDeserializer decoder;
+    private CountingInputStream countingInput;
+    private CountingOutputStream countingOutput;
+    private WireCompression compression;
 
     public RemoteFrameworkConnection(RemoteFrameworkConnectionInfo info) {
         try {
@@ -64,7 +71,7 @@ public class RemoteFrameworkConnection implements Closeable {
 
     public RemoteFrameworkConnection(Socket socket) {
         try {
-            init(socket);
+            init(socket, null);
         } catch (SocketException e) {
             throw new ConnectorIOException("Failed to init remote connection to "
                     + (null != socket ? socket.toString() : "null"), e);
@@ -110,16 +117,92 @@ public class RemoteFrameworkConnection implements Closeable {
             }
             throw e;
         }
-        init(socket);
+        init(socket, connectionInfo.getCompression());
     }
 
-    private void init(Socket socket) throws Exception {
+    /**
+     * Initializes the streams, the server end passes null as it follows the
+     * compression chosen by the client.
+     */
+    private void init(Socket socket, Compression requested) throws Exception {
         this.socket = socket;
-        InputStream inputStream = this.socket.getInputStream();
-        OutputStream outputStream = this.socket.getOutputStream();
+        countingInput = new CountingInputStream(this.socket.getInputStream());
+        countingOutput = new CountingOutputStream(this.socket.getOutputStream());
+        InputStream input = countingInput;
+        OutputStream output = countingOutput;
+        if (null == requested) {
+            compression = WireCompression.accept(countingInput, countingOutput);
+        } else if (requested != Compression.NONE) {
+            compression = WireCompression.connect(countingInput, countingOutput, requested);
+        }
+        if (null != compression) {
+            input = compression.getInput();
+            output = compression.getOutput();
+        }
         ObjectSerializerFactory factory = ObjectSerializerFactory.getInstance();
-        encoder = factory.newBinarySerializer(outputStream);
-        decoder = factory.newBinaryDeserializer(inputStream);
+        encoder = factory.newBinarySerializer(output);
+        decoder = factory.newBinaryDeserializer(input);
+    }
+
+    /**
+     * Returns the compression of the data exchanged with the peer, the server
+     * end only knows it once the first object was read.
+     */
+    public Compression getCompression() {
+        return null != compression ? compression.getCompression() : Compression.NONE;
+    }
+
+    /**
+     * Returns the number of bytes written to the socket so far.
+     */
+    public long getBytesWritten() {
+        return countingOutput.count;
+    }
+
+    /**
+     * Returns the number of bytes read from the socket so far.
+     */
+    public long getBytesRead() {
+        return countingInput.count;
+    }
+
+    /**
+     * Tells whether the peer has sent data which can be read without
+     * blocking. A broken connection counts as available data, so that reading
+     * reports the failure.
+     */
+    public boolean isInputAvailable() {
+        try {
+            return countingInput.available() > 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Sets the time to wait for data from the peer before reads fail.
+     *
+     * @param timeoutMillis the timeout, 0 meaning no timeout.
+     */
+    public void setReadTimeout(int timeoutMillis) {
+        try {
+            socket.setSoTimeout(timeoutMillis);
+        } catch (SocketException e) {
+            throw new ConnectorIOException(e);
+        }
+    }
+
+    /**
+     * Gets the time to wait for data from the peer before reads fail.
+     *
+     * @return the timeout, 0 meaning no timeout.
+     */
+    public int getReadTimeout() {
+        try {
+            return socket.getSoTimeout();
+        } catch (SocketException e) {
+            throw new ConnectorIOException(e);
+        }
     }
 
     @Override
@@ -137,6 +220,10 @@ public class RemoteFrameworkConnection implements Closeable {
         } catch (Exception e) {
             LOG.info(e, "Failed to close connection.");
             throw ConnectorException.wrap(e);
+        } finally {
+            if (null != compression) {
+                compression.end();
+            }
         }
     }
 
@@ -154,4 +241,59 @@ public class RemoteFrameworkConnection implements Closeable {
         flush();
         return decoder.readObject();
     }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private volatile long count;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private volatile long count;
+
+        CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
 }
@@ -24,40 +24,110 @@
  */
 package org.identityconnectors.framework.impl.api.remote;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
 import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.api.operations.SyncApiOp;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.identityconnectors.framework.common.objects.BatchAwareSyncResultsHandler;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
+import org.identityconnectors.framework.common.objects.Schema;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.impl.api.ObjectStreamHandler;
+import org.identityconnectors.framework.impl.api.SchemaCache;
 import org.identityconnectors.framework.impl.api.StreamHandlerUtil;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestCancel;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePause;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
+import org.identityconnectors.framework.impl.trace.OperationSpan;
+import org.identityconnectors.framework.impl.trace.OperationTracer;
+import org.identityconnectors.framework.spi.OperationDeadline;
+import org.identityconnectors.framework.spi.SyncCheckpointResultsHandler;
 
 /**
  * Invocation handler for all of our operations.
  */
 public class RemoteOperationInvocationHandler implements InvocationHandler {
 
+    private static final Log LOG = Log.getLog(RemoteOperationInvocationHandler.class);
+
+    public static final String SYNC_RETRIES_PROP = "org.identityconnectors.framework.sync.retries";
+
+    /**
+     * Milliseconds to wait before the first resume of a broken sync, doubled
+     * for the next ones.
+     */
+    private static final long SYNC_RETRY_DELAY = 500;
+
+    private static volatile int syncRetries = Integer.getInteger(SYNC_RETRIES_PROP, 3);
+
     private final RemoteConnectorInfoImpl connectorInfo;
 
     private final String connectorFacadeKey;
 
     private final Class<? extends APIOperation> operation;
 
+    private final String schemaCacheKey;
+
+    private final long schemaTimeToLive;
+
     public RemoteOperationInvocationHandler(final RemoteConnectorInfoImpl connectorInfo,
             String connectorFacadeKey, final Class<? extends APIOperation> operation) {
+        this(connectorInfo, connectorFacadeKey, operation, null, 0);
+    }
+
+    /**
+     * Creates the handler of an operation whose schema, if it is the schema
+     * operation, is cached.
+     *
+     * @param schemaCacheKey
+     *            the key of the schema in the {@link SchemaCache}.
+     * @param schemaTimeToLive
+     *            milliseconds the schema is cached for, zero to not cache it.
+     */
+    public RemoteOperationInvocationHandler(final RemoteConnectorInfoImpl connectorInfo,
+            String connectorFacadeKey, final Class<? extends APIOperation> operation,
+            final String schemaCacheKey, final long schemaTimeToLive) {
         this.connectorInfo = connectorInfo;
         this.connectorFacadeKey = connectorFacadeKey;
         this.operation = operation;
+        this.schemaCacheKey = schemaCacheKey;
+        this.schemaTimeToLive = schemaTimeToLive;
+    }
+
+    /**
+     * Returns how many times a broken sync is resumed.
+     */
+    public static int getSyncRetries() {
+        return syncRetries;
+    }
+
+    /**
+     * Sets how many times a sync broken by a {@link ConnectorIOException} of
+     * the connector or of the connection is resumed from its latest checkpoint
+     * before failing, 0 to never resume. A sync failed by the results handler
+     * of the application is never resumed.
+     */
+    public static void setSyncRetries(final int retries) {
+        syncRetries = retries;
     }
 
     @Override
@@ -66,51 +136,186 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
         if (method.getDeclaringClass() == Object.class) {
             return method.invoke(this, args);
         }
+        if (operation == SyncApiOp.class && "sync".equals(method.getName()) && args[2] != null) {
+            return sync(method, args);
+        }
+        return invokeOperation(method, args);
+    }
+
+    /**
+     * Runs a sync, resuming it from the latest checkpoint of the server when
+     * the connection breaks. The deltas handled after that checkpoint are
+     * handled again.
+     */
+    private Object sync(final Method method, final Object[] args) throws Throwable {
+        final Object[] actualArgs = args.clone();
+        final ResumableSyncResultsHandler handler =
+                new ResumableSyncResultsHandler((SyncResultsHandler) args[2]);
+        actualArgs[2] = handler;
+        for (int attempt = 1;; attempt++) {
+            try {
+                return invokeOperation(method, actualArgs);
+            } catch (RuntimeException e) {
+                if (attempt > syncRetries || handler.stopped || handler.failed || !isTransient(e)
+                        || (OperationDeadline.isSet() && OperationDeadline.isExpired())) {
+                    throw e;
+                }
+                if (handler.checkpoint != null) {
+                    actualArgs[1] = handler.checkpoint;
+                }
+                LOG.warn(e, "Sync failed, resuming from {0} (attempt {1} of {2})",
+                        actualArgs[1], attempt, syncRetries);
+                try {
+                    Thread.sleep(SYNC_RETRY_DELAY << (attempt - 1));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static boolean isTransient(final RuntimeException e) {
+        if (e instanceof RemoteWrappedException) {
+            // thrown by the connector on the server
+            return ((RemoteWrappedException) e).is(ConnectorIOException.class);
+        }
+        return e instanceof ConnectorIOException || e.getCause() instanceof IOException;
+    }
+
+    private Object invokeOperation(final Method method, final Object[] args) throws Throwable {
         // partition arguments into arguments that can be simply marshalled as part of the request and
         // those that are response handlers
         List<Object> simpleMarshallArgs = CollectionUtil.newList(args);
         ObjectStreamHandler streamHandlerArg =
                 extractStreamHandler(method.getParameterTypes(), simpleMarshallArgs);
 
-        // build the request object
+        // build the request object, telling the server how long we are going to wait
         RemoteFrameworkConnectionInfo connectionInfo = connectorInfo.getRemoteConnectionInfo();
+        long timeout = 0;
+        if (OperationDeadline.isSet()) {
+            timeout = Math.max(1, OperationDeadline.getRemainingMillis());
+        }
+        // the schema is cached, once expired ask the server for it only if
+        // it changed
+        String schemaKey = null;
+        SchemaCache.Entry cached = null;
+        if (operation == SchemaApiOp.class && schemaCacheKey != null && schemaTimeToLive > 0) {
+            schemaKey = schemaCacheKey;
+            Schema schema = SchemaCache.get(schemaKey);
+            if (schema != null) {
+                return schema;
+            }
+            cached = SchemaCache.getEntry(schemaKey);
+        }
+        String ifNoneMatch = null;
+        if (schemaKey != null) {
+            ifNoneMatch = cached != null ? cached.getTag() : "";
+        }
+        // the server streams the checkpoints to resume a broken sync from
+        boolean syncCheckpoints = operation == SyncApiOp.class && streamHandlerArg != null;
+        // the stream handler takes the batches of the connector as they are
         OperationRequest request = new OperationRequest(
-                connectorInfo.getConnectorKey(), connectorFacadeKey, operation, method.getName(), simpleMarshallArgs);
+                connectorInfo.getConnectorKey(), connectorFacadeKey, operation, method.getName(),
+                simpleMarshallArgs, timeout, ifNoneMatch, syncCheckpoints,
+                streamHandlerArg != null);
 
         // create the connection
         RemoteFrameworkConnection connection = null;
+        // whether the server is done with the request
+        boolean done = false;
 
         try {
             connection = new RemoteFrameworkConnection(connectionInfo);
+            if (timeout > 0 && streamHandlerArg == null) {
+                // do not wait for the response past the deadline
+                int readTimeout = connection.getReadTimeout();
+                if (readTimeout == 0 || readTimeout > timeout) {
+                    connection.setReadTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+                }
+            }
             connection.writeObject(CurrentLocale.get());
             connection.writeObject(connectionInfo.getKey());
             // send the request
             connection.writeObject(request);
 
             // now process the response stream (if any)
+            OperationResponsePart response = null;
             if (streamHandlerArg != null) {
-                handleStreamResponse(connection, streamHandlerArg);
+                response = handleStreamResponse(connection, streamHandlerArg);
             }
 
             // finally return the actual return value
-            OperationResponsePart response = (OperationResponsePart) connection.readObject();
+            if (response == null) {
+                response = (OperationResponsePart) connection.readObject();
+            }
+            done = true;
             if (response.getException() != null) {
                 throw response.getException();
             }
+            if (schemaKey != null) {
+                return cacheSchema(schemaKey, cached, response, schemaTimeToLive);
+            }
             return response.getResult();
+        } catch (RuntimeException e) {
+            if (timeout > 0 && !done && e.getCause() instanceof SocketTimeoutException) {
+                throw new OperationTimeoutException(e.getCause());
+            }
+            throw e;
         } finally {
+            if (null != connection && !done) {
+                // we gave up on the request, tell the server to give up too
+                try {
+                    connection.writeObject(new OperationRequestCancel());
+                    connection.flush();
+                } catch (RuntimeException e) {
+                    // the connection is broken, the server will notice
+                }
+            }
             if (null != connection) {
+                OperationSpan span = OperationTracer.current();
+                if (span != null || MetricsRegistry.isEnabled()) {
+                    connection.flush();
+                    if (span != null) {
+                        span.addBytes(connection.getBytesWritten(), connection.getBytesRead());
+                    }
+                    if (MetricsRegistry.isEnabled()) {
+                        MetricsRegistry.getConnectorMetrics(connectorInfo.getConnectorKey())
+                                .recordRemoteBytes(connection.getBytesWritten(),
+                                        connection.getBytesRead());
+                    }
+                }
                 connection.close();
             }
         }
 
     }
 
+    /**
+     * Caches the schema of a conditional response, returning the cached one
+     * when the server did not send it because it did not change.
+     */
+    private static Object cacheSchema(final String key, final SchemaCache.Entry cached,
+            final OperationResponsePart response, final long timeToLive) {
+        Object result = response.getResult();
+        if (result == null && cached != null && cached.getTag().equals(response.getTag())) {
+            result = cached.getSchema();
+        }
+        if (result instanceof Schema) {
+            SchemaCache.put(key, (Schema) result, response.getTag(), timeToLive);
+        }
+        return result;
+    }
+
     /**
      * Handles a stream response until the end of the stream.
+     *
+     * @return the response if the server failed the operation while
+     *         streaming, null if the stream ended normally.
      */
-    private static void handleStreamResponse(final RemoteFrameworkConnection connection,
-            final ObjectStreamHandler streamHandler) throws ConnectorException {
+    private static OperationResponsePart handleStreamResponse(
+            final RemoteFrameworkConnection connection, final ObjectStreamHandler streamHandler)
+            throws ConnectorException {
 
         boolean handleMore = true;
         while (true) {
@@ -118,7 +323,7 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
             if (response instanceof OperationResponsePart) {
                 OperationResponsePart part = (OperationResponsePart) response;
                 if (part.getException() != null) {
-                    throw part.getException();
+                    return part;
                 }
                 Object object = part.getResult();
                 if (handleMore) {
@@ -131,13 +336,68 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
                     connection.writeObject(new OperationRequestStopData());
                 }
             } else if (response instanceof OperationResponseEnd) {
-                break;
+                return null;
             } else {
                 throw new ConnectorException("Unexpected response: " + response);
             }
         }
     }
 
+    /**
+     * Keeps the latest checkpoint of a sync, and whether the wrapped handler
+     * stopped or failed it.
+     */
+    private static class ResumableSyncResultsHandler
+            implements SyncCheckpointResultsHandler, BatchAwareSyncResultsHandler {
+
+        private final SyncResultsHandler handler;
+
+        private SyncToken checkpoint = null;
+
+        private boolean stopped = false;
+
+        /**
+         * Set while the wrapped handler runs, so that it stays set when the
+         * handler throws.
+         */
+        private boolean failed = false;
+
+        ResumableSyncResultsHandler(final SyncResultsHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean handle(final SyncDelta delta) {
+            failed = true;
+            stopped = !handler.handle(delta);
+            failed = false;
+            return !stopped;
+        }
+
+        @Override
+        public boolean handleBatch(final List<SyncDelta> deltas) {
+            failed = true;
+            stopped = !ResultsHandlerUtil.handleBatch(handler, deltas);
+            failed = false;
+            return !stopped;
+        }
+
+        @Override
+        public void handleCheckpoint(final SyncToken token) {
+            checkpoint = token;
+            if (handler instanceof SyncCheckpointResultsHandler) {
+                failed = true;
+                ((SyncCheckpointResultsHandler) handler).handleCheckpoint(token);
+                failed = false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(handler);
+        }
+    }
+
     /**
      * Partitions arguments into regular arguments and stream arguments.
      *
@@ -0,0 +1,506 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.remote;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo.Compression;
+
+/**
+ * Compresses the bytes exchanged over one {@link RemoteFrameworkConnection}.
+ * <p>
+ * A client that wants compression starts the connection with a preamble
+ * naming the {@link Compression}; from then on both directions travel in
+ * frames. Every flush of the serializer ends a frame, frames shorter than
+ * {@link #getThreshold()} bytes are sent as they are, longer ones are
+ * deflated. {@link Compression#FAST} deflates every frame on its own with the
+ * fastest level, {@link Compression#HIGH} uses the best level and primes
+ * every frame with the previous 32KB of the stream, so that attribute names
+ * and values repeated across frames compress too.
+ * <p>
+ * A server never starts the preamble, it only answers in kind, so clients
+ * must only send it to servers which announced
+ * {@link org.identityconnectors.framework.impl.api.remote.messages.HelloResponse#COMPRESSION}.
+ *
+ * @since 1.4.4
+ */
+public final class WireCompression {
+
+    public static final String THRESHOLD_PROP =
+            "org.identityconnectors.framework.remote.compressionThreshold";
+
+    /**
+     * Name of the algorithm announced by the server.
+     */
+    public static final String ALGORITHM = "deflate";
+
+    /**
+     * Starts a compressed connection, it differs from the magic the binary
+     * serializer starts with.
+     */
+    static final int MAGIC = 0x434D5052;
+
+    private static final int FRAME_RAW = 0;
+    private static final int FRAME_DEFLATED = 1;
+
+    private static final int FRAME_SIZE = 32 * 1024;
+    private static final int WINDOW_SIZE = 32 * 1024;
+
+    private static volatile int threshold = Integer.getInteger(THRESHOLD_PROP, 512);
+
+    private InputStream input;
+    private OutputStream output;
+    private volatile Compression compression = Compression.NONE;
+    private Deflater deflater;
+    private Inflater inflater;
+
+    private WireCompression() {
+    }
+
+    /**
+     * Sets the size under which frames are sent uncompressed.
+     */
+    public static void setThreshold(final int bytes) {
+        threshold = bytes;
+    }
+
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Starts the client end of a compressed connection, the preamble is
+     * written at once.
+     */
+    public static WireCompression connect(final InputStream in, final OutputStream out,
+            final Compression compression) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(compression.ordinal());
+        WireCompression rv = new WireCompression();
+        rv.start(compression);
+        rv.input = rv.new Input(in);
+        rv.output = rv.new Output(out);
+        return rv;
+    }
+
+    /**
+     * Starts the server end of a connection, which is compressed only if the
+     * client starts with the preamble. Nothing is read before the first read.
+     */
+    public static WireCompression accept(final InputStream in, final OutputStream out) {
+        WireCompression rv = new WireCompression();
+        Switch switchable = new Switch(out);
+        rv.output = switchable;
+        rv.input = rv.new Acceptor(in, switchable);
+        return rv;
+    }
+
+    /**
+     * Returns the stream to read the peer's data from.
+     */
+    public InputStream getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the stream to write the data for the peer to.
+     */
+    public OutputStream getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the compression in use, a server end only knows it after the
+     * first read.
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Releases the native resources, the underlying streams are left open.
+     */
+    public synchronized void end() {
+        if (null != deflater) {
+            deflater.end();
+        }
+        if (null != inflater) {
+            inflater.end();
+        }
+    }
+
+    private synchronized void start(final Compression compression) {
+        this.compression = compression;
+        deflater =
+                new Deflater(compression == Compression.HIGH ? Deflater.BEST_COMPRESSION
+                        : Deflater.BEST_SPEED);
+        inflater = new Inflater();
+    }
+
+    private boolean isPrimed() {
+        return compression == Compression.HIGH;
+    }
+
+    /**
+     * Keeps the last {@link #WINDOW_SIZE} bytes of the stream in the window.
+     *
+     * @return the new length of the window
+     */
+    static int slide(final byte[] window, final int windowLength, final byte[] data,
+            final int length) {
+        if (length >= window.length) {
+            System.arraycopy(data, length - window.length, window, 0, window.length);
+            return window.length;
+        }
+        int keep = Math.min(windowLength, window.length - length);
+        System.arraycopy(window, windowLength - keep, window, 0, keep);
+        System.arraycopy(data, 0, window, keep, length);
+        return keep + length;
+    }
+
+    /**
+     * Collects the written bytes into frames.
+     */
+    private final class Output extends FilterOutputStream {
+
+        private final DataOutputStream data;
+        private final byte[] buffer = new byte[FRAME_SIZE];
+        private int count = 0;
+        private byte[] deflated = new byte[FRAME_SIZE];
+        private final byte[] window;
+        private int windowLength = 0;
+
+        Output(final OutputStream out) {
+            super(out);
+            data = new DataOutputStream(out);
+            window = isPrimed() ? new byte[WINDOW_SIZE] : null;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (count == buffer.length) {
+                writeFrame();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    writeFrame();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeFrame();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writeFrame();
+            out.close();
+        }
+
+        private void writeFrame() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            int length = count < threshold ? 0 : deflate();
+            if (length > 0 && length < count) {
+                data.writeByte(FRAME_DEFLATED);
+                data.writeInt(count);
+                data.writeInt(length);
+                data.write(deflated, 0, length);
+            } else {
+                data.writeByte(FRAME_RAW);
+                data.writeInt(count);
+                data.write(buffer, 0, count);
+            }
+            if (null != window) {
+                windowLength = slide(window, windowLength, buffer, count);
+            }
+            count = 0;
+        }
+
+        private int deflate() {
+            synchronized (WireCompression.this) {
+                deflater.reset();
+                if (windowLength > 0) {
+                    deflater.setDictionary(window, 0, windowLength);
+                }
+                deflater.setInput(buffer, 0, count);
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == deflated.length) {
+                        byte[] grown = new byte[deflated.length * 2];
+                        System.arraycopy(deflated, 0, grown, 0, length);
+                        deflated = grown;
+                    }
+                    length += deflater.deflate(deflated, length, deflated.length - length);
+                }
+                return length;
+            }
+        }
+    }
+
+    /**
+     * Reads the frames written by an {@link Output}.
+     */
+    private final class Input extends FilterInputStream {
+
+        private final DataInputStream data;
+        private final byte[] buffer = new byte[FRAME_SIZE];
+        private int position = 0;
+        private int limit = 0;
+        private byte[] deflated = new byte[FRAME_SIZE];
+        private final byte[] window;
+        private int windowLength = 0;
+
+        Input(final InputStream in) {
+            super(in);
+            data = new DataInputStream(in);
+            window = isPrimed() ? new byte[WINDOW_SIZE] : null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !readFrame()) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !readFrame()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            if (n <= 0 || (position == limit && !readFrame())) {
+                return 0;
+            }
+            int skipped = (int) Math.min(n, limit - position);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return limit - position;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private boolean readFrame() throws IOException {
+            int type = in.read();
+            if (type < 0) {
+                return false;
+            }
+            int length = data.readInt();
+            if (length < 0 || length > buffer.length) {
+                throw new IOException("Invalid frame length: " + length);
+            }
+            if (type == FRAME_RAW) {
+                data.readFully(buffer, 0, length);
+            } else if (type == FRAME_DEFLATED) {
+                int deflatedLength = data.readInt();
+                if (deflatedLength < 0 || deflatedLength > buffer.length) {
+                    throw new IOException("Invalid frame length: " + deflatedLength);
+                }
+                data.readFully(deflated, 0, deflatedLength);
+                inflate(deflatedLength, length);
+            } else {
+                throw new IOException("Invalid frame type: " + type);
+            }
+            if (null != window) {
+                windowLength = slide(window, windowLength, buffer, length);
+            }
+            position = 0;
+            limit = length;
+            return true;
+        }
+
+        private void inflate(final int deflatedLength, final int length) throws IOException {
+            synchronized (WireCompression.this) {
+                inflater.reset();
+                inflater.setInput(deflated, 0, deflatedLength);
+                try {
+                    int n = 0;
+                    while (n < length) {
+                        int r = inflater.inflate(buffer, n, length - n);
+                        if (r == 0) {
+                            if (inflater.needsDictionary() && windowLength > 0) {
+                                inflater.setDictionary(window, 0, windowLength);
+                            } else if (inflater.finished() || inflater.needsInput()
+                                    || inflater.needsDictionary()) {
+                                throw new EOFException("Truncated compressed frame");
+                            }
+                        }
+                        n += r;
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Invalid compressed frame: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Server end: looks for the preamble on the first read and switches both
+     * directions to frames if it is there.
+     */
+    private final class Acceptor extends FilterInputStream {
+
+        private final Switch output;
+        private boolean accepted = false;
+
+        Acceptor(final InputStream in, final Switch output) {
+            super(new PushbackInputStream(in, 4));
+            this.output = output;
+        }
+
+        @Override
+        public int read() throws IOException {
+            accept();
+            return super.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            accept();
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            accept();
+            return super.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return accepted ? super.available() : 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void accept() throws IOException {
+            if (accepted) {
+                return;
+            }
+            accepted = true;
+            PushbackInputStream wire = (PushbackInputStream) in;
+            byte[] head = new byte[4];
+            int n = 0;
+            while (n < head.length) {
+                int r = wire.read(head, n, head.length - n);
+                if (r < 0) {
+                    break;
+                }
+                n += r;
+            }
+            int magic =
+                    ((head[0] & 0xff) << 24) | ((head[1] & 0xff) << 16) | ((head[2] & 0xff) << 8)
+                            | (head[3] & 0xff);
+            if (n < head.length || magic != MAGIC) {
+                wire.unread(head, 0, n);
+                return;
+            }
+            int level = wire.read();
+            Compression[] values = Compression.values();
+            if (level <= 0 || level >= values.length) {
+                throw new IOException("Invalid compression: " + level);
+            }
+            start(values[level]);
+            in = new Input(wire);
+            output.setTarget(new Output(output.getTarget()));
+        }
+    }
+
+    /**
+     * Output whose target is switched once the server end knows whether the
+     * client compresses.
+     */
+    private static final class Switch extends FilterOutputStream {
+
+        Switch(final OutputStream out) {
+            super(out);
+        }
+
+        OutputStream getTarget() {
+            return out;
+        }
+
+        void setTarget(final OutputStream target) {
+            out = target;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+    }
+}
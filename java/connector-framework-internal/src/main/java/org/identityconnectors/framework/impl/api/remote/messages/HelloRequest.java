@@ -33,6 +33,12 @@ public class HelloRequest implements Message {
     public static final int SERVER_INFO = 4;
     public static final int CONNECTOR_KEY_LIST = 16;
     //public static final int DEFAULT_CONFIG = 32;
+    public static final int METRICS = 64;
+    /**
+     * Asks whether the server accepts compressed connections, see
+     * {@link HelloResponse#COMPRESSION}.
+     */
+    public static final int COMPRESSION = 128;
     public static final int CONNECTOR_INFO = CONNECTOR_KEY_LIST | SERVER_INFO;
 
     private final int level;
@@ -60,4 +66,12 @@ public class HelloRequest implements Message {
     public boolean isConnectorInfo() {
         return checkInfoLevel(CONNECTOR_INFO);
     }
+
+    public boolean isMetrics() {
+        return checkInfoLevel(METRICS);
+    }
+
+    public boolean isCompression() {
+        return checkInfoLevel(COMPRESSION);
+    }
 }
@@ -37,6 +37,20 @@ import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
 public class HelloResponse implements Message {
 
     public static final String SERVER_START_TIME = "SERVER_START_TIME";
+
+    /**
+     * Text export of the server's
+     * {@link org.identityconnectors.framework.impl.metrics.MetricsRegistry},
+     * sent for {@link HelloRequest#METRICS}.
+     */
+    public static final String METRICS = "METRICS";
+
+    /**
+     * Compression algorithm the server accepts on its connections, sent for
+     * {@link HelloRequest#COMPRESSION}. Older servers leave it out, the
+     * client must not compress then.
+     */
+    public static final String COMPRESSION = "COMPRESSION";
     /**
      * The exception
      */
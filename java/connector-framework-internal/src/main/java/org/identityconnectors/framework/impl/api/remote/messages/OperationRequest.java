@@ -63,14 +63,69 @@ public class OperationRequest implements Message {
      */
     private final List<Object> arguments;
 
+    /**
+     * The time left to the client to wait for the response, in milliseconds,
+     * or zero if the client waits with no time limit.
+     */
+    private final long timeout;
+
+    /**
+     * The tag of the result the client already holds, empty if it holds none
+     * but wants the tag of the result, or null for unconditional requests.
+     */
+    private final String ifNoneMatch;
+
+    /**
+     * Whether the client handles the sync checkpoints streamed as
+     * {@link org.identityconnectors.framework.common.objects.SyncToken}s.
+     */
+    private final boolean syncCheckpoints;
+
+    /**
+     * Whether the client handles the results streamed in batches, as
+     * {@link List}s.
+     */
+    private final boolean resultBatches;
+
     public OperationRequest(ConnectorKey key, String connectorFacadeKey,
             Class<? extends APIOperation> operation, String operationMethodName,
             List<Object> arguments) {
+        this(key, connectorFacadeKey, operation, operationMethodName, arguments, 0);
+    }
+
+    public OperationRequest(ConnectorKey key, String connectorFacadeKey,
+            Class<? extends APIOperation> operation, String operationMethodName,
+            List<Object> arguments, long timeout) {
+        this(key, connectorFacadeKey, operation, operationMethodName, arguments, timeout, null);
+    }
+
+    public OperationRequest(ConnectorKey key, String connectorFacadeKey,
+            Class<? extends APIOperation> operation, String operationMethodName,
+            List<Object> arguments, long timeout, String ifNoneMatch) {
+        this(key, connectorFacadeKey, operation, operationMethodName, arguments, timeout,
+                ifNoneMatch, false);
+    }
+
+    public OperationRequest(ConnectorKey key, String connectorFacadeKey,
+            Class<? extends APIOperation> operation, String operationMethodName,
+            List<Object> arguments, long timeout, String ifNoneMatch, boolean syncCheckpoints) {
+        this(key, connectorFacadeKey, operation, operationMethodName, arguments, timeout,
+                ifNoneMatch, syncCheckpoints, false);
+    }
+
+    public OperationRequest(ConnectorKey key, String connectorFacadeKey,
+            Class<? extends APIOperation> operation, String operationMethodName,
+            List<Object> arguments, long timeout, String ifNoneMatch, boolean syncCheckpoints,
+            boolean resultBatches) {
         connectorKey = key;
         configuration = connectorFacadeKey;
         this.operation = operation;
         this.operationMethodName = operationMethodName;
         this.arguments = CollectionUtil.newReadOnlyList(arguments);
+        this.timeout = timeout;
+        this.ifNoneMatch = ifNoneMatch;
+        this.syncCheckpoints = syncCheckpoints;
+        this.resultBatches = resultBatches;
     }
 
     public ConnectorKey getConnectorKey() {
@@ -92,4 +147,20 @@ public class OperationRequest implements Message {
     public List<Object> getArguments() {
         return arguments;
     }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public String getIfNoneMatch() {
+        return ifNoneMatch;
+    }
+
+    public boolean isSyncCheckpoints() {
+        return syncCheckpoints;
+    }
+
+    public boolean isResultBatches() {
+        return resultBatches;
+    }
 }
@@ -29,14 +29,23 @@ import org.identityconnectors.framework.impl.api.remote.RemoteWrappedException;
  * Represents one part of a response. Most operations return just a single
  * response part, followed by a OperationResponseEnd. The one exception is
  * Search, which returns multiple parts.
+ * <p>
+ * The response to a conditional {@link OperationRequest} carries the tag of
+ * the result, and no result when the tag is the one of the request.
  */
 public class OperationResponsePart implements Message {
     private RemoteWrappedException exception;
     private Object result;
+    private String tag;
 
     public OperationResponsePart(Throwable ex, Object result) {
+        this(ex, result, null);
+    }
+
+    public OperationResponsePart(Throwable ex, Object result, String tag) {
         exception = RemoteWrappedException.wrap(ex);
         this.result = result;
+        this.tag = tag;
     }
 
     public RemoteWrappedException getException() {
@@ -46,4 +55,8 @@ public class OperationResponsePart implements Message {
     public Object getResult() {
         return result;
     }
+
+    public String getTag() {
+        return tag;
+    }
 }
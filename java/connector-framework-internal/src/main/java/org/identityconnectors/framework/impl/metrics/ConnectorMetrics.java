@@ -0,0 +1,202 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.framework.api.ConnectorKey;
+
+/**
+ * All metrics recorded for one {@link ConnectorKey}: per operation counters
+ * and latencies, connector pool waits and the bytes exchanged with connector
+ * servers.
+ *
+ * @since 1.4.4
+ */
+public final class ConnectorMetrics {
+
+    private final ConnectorKey connectorKey;
+
+    private final ConcurrentMap<String, OperationMetrics> operations =
+            new ConcurrentHashMap<String, OperationMetrics>();
+
+    private final LatencyHistogram poolBorrowWait = new LatencyHistogram();
+
+    private final AtomicLong poolBorrowFailures = new AtomicLong();
+
+    private final AtomicLong remoteBytesSent = new AtomicLong();
+
+    private final AtomicLong remoteBytesReceived = new AtomicLong();
+
+    private final AtomicLong serverRequests = new AtomicLong();
+
+    private final AtomicLong serverBytesSent = new AtomicLong();
+
+    private final AtomicLong serverBytesReceived = new AtomicLong();
+
+    private final AtomicLong objectCacheHits = new AtomicLong();
+
+    private final AtomicLong objectCacheMisses = new AtomicLong();
+
+    ConnectorMetrics(final ConnectorKey connectorKey) {
+        this.connectorKey = connectorKey;
+    }
+
+    public ConnectorKey getConnectorKey() {
+        return connectorKey;
+    }
+
+    /**
+     * Returns the metrics of an operation, creating them on first use.
+     *
+     * @param operation
+     *            name of the API operation, usually its simple class name
+     */
+    public OperationMetrics getOperation(final String operation) {
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            metrics = new OperationMetrics(operation);
+            OperationMetrics previous = operations.putIfAbsent(operation, metrics);
+            if (previous != null) {
+                metrics = previous;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of all operations called so far, sorted by name.
+     */
+    public Map<String, OperationMetrics> getOperations() {
+        return new TreeMap<String, OperationMetrics>(operations);
+    }
+
+    /**
+     * Records the time spent borrowing a connector from the pool.
+     */
+    public void recordPoolBorrow(final long elapsedNanos, final boolean failed) {
+        poolBorrowWait.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        if (failed) {
+            poolBorrowFailures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the connector pool borrow wait in microseconds.
+     */
+    public LatencyHistogram getPoolBorrowWait() {
+        return poolBorrowWait;
+    }
+
+    public long getPoolBorrowFailures() {
+        return poolBorrowFailures.get();
+    }
+
+    /**
+     * Records the bytes a client exchanged with a connector server for one
+     * operation.
+     */
+    public void recordRemoteBytes(final long sent, final long received) {
+        remoteBytesSent.addAndGet(sent);
+        remoteBytesReceived.addAndGet(received);
+    }
+
+    public long getRemoteBytesSent() {
+        return remoteBytesSent.get();
+    }
+
+    public long getRemoteBytesReceived() {
+        return remoteBytesReceived.get();
+    }
+
+    /**
+     * Records one operation request served by the connector server.
+     */
+    public void recordServerRequest(final long sent, final long received) {
+        serverRequests.incrementAndGet();
+        serverBytesSent.addAndGet(sent);
+        serverBytesReceived.addAndGet(received);
+    }
+
+    public long getServerRequests() {
+        return serverRequests.get();
+    }
+
+    public long getServerBytesSent() {
+        return serverBytesSent.get();
+    }
+
+    public long getServerBytesReceived() {
+        return serverBytesReceived.get();
+    }
+
+    /**
+     * Records a lookup in the object cache of a facade.
+     */
+    public void recordObjectCacheLookup(final boolean hit) {
+        if (hit) {
+            objectCacheHits.incrementAndGet();
+        } else {
+            objectCacheMisses.incrementAndGet();
+        }
+    }
+
+    public long getObjectCacheHits() {
+        return objectCacheHits.get();
+    }
+
+    public long getObjectCacheMisses() {
+        return objectCacheMisses.get();
+    }
+
+    /**
+     * Returns the share of the object cache lookups which found the object,
+     * between 0 and 1.
+     */
+    public double getObjectCacheHitRatio() {
+        long hits = objectCacheHits.get();
+        long total = hits + objectCacheMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    void reset() {
+        for (OperationMetrics metrics : operations.values()) {
+            metrics.reset();
+        }
+        poolBorrowWait.reset();
+        poolBorrowFailures.set(0);
+        remoteBytesSent.set(0);
+        remoteBytesReceived.set(0);
+        serverRequests.set(0);
+        serverBytesSent.set(0);
+        serverBytesReceived.set(0);
+        objectCacheHits.set(0);
+        objectCacheMisses.set(0);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.common.objects.filter.TranslationPlanCache;
+
+/**
+ * Process wide registry of {@link ConnectorMetrics}, fed by the connector
+ * facades, the connector pools, the remote invocation handler and the
+ * connector server.
+ * <p>
+ * Metrics are on by default and cost a few atomic increments per operation;
+ * they can be turned off with the {@value #ENABLED_PROP} system property or
+ * {@link #setEnabled(boolean)}. The registry can be read locally or, from a
+ * connector server, with a
+ * {@link org.identityconnectors.framework.impl.api.remote.messages.HelloRequest#METRICS}
+ * request, which returns the {@link #toText() text export}.
+ *
+ * @since 1.4.4
+ */
+public final class MetricsRegistry {
+
+    public static final String ENABLED_PROP = "org.identityconnectors.framework.metrics.enabled";
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private static final String[] QUANTILES = { "0.5", "0.9", "0.99", "0.999" };
+
+    private static final ConcurrentMap<ConnectorKey, ConnectorMetrics> METRICS =
+            new ConcurrentHashMap<ConnectorKey, ConnectorMetrics>();
+
+    private static volatile boolean enabled =
+            Boolean.valueOf(System.getProperty(ENABLED_PROP, "true"));
+
+    private MetricsRegistry() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off, facades created while off do not record
+     * their operations.
+     */
+    public static void setEnabled(final boolean enable) {
+        enabled = enable;
+    }
+
+    /**
+     * Returns the metrics of a connector, creating them on first use.
+     */
+    public static ConnectorMetrics getConnectorMetrics(final ConnectorKey key) {
+        ConnectorMetrics metrics = METRICS.get(key);
+        if (metrics == null) {
+            metrics = new ConnectorMetrics(key);
+            ConnectorMetrics previous = METRICS.putIfAbsent(key, metrics);
+            if (previous != null) {
+                metrics = previous;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of all connectors seen so far.
+     */
+    public static List<ConnectorMetrics> getAll() {
+        return new ArrayList<ConnectorMetrics>(METRICS.values());
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public static void reset() {
+        for (ConnectorMetrics metrics : METRICS.values()) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * Returns the text export of all connectors.
+     */
+    public static String toText() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeText(sb, null);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the metrics in a line oriented text format, one
+     * {@code name{labels} value} sample per line.
+     *
+     * @param out
+     *            where to write
+     * @param key
+     *            connector to export, or null for all connectors
+     */
+    public static void writeText(final Appendable out, final ConnectorKey key) throws IOException {
+        for (ConnectorMetrics metrics : getAll()) {
+            if (key == null || key.equals(metrics.getConnectorKey())) {
+                writeConnector(out, metrics);
+            }
+        }
+        if (key == null && TranslationPlanCache.getHits() + TranslationPlanCache.getMisses() > 0) {
+            sample(out, "connid_filter_plan_cache_hits_total", "", TranslationPlanCache.getHits());
+            sample(out, "connid_filter_plan_cache_misses_total", "",
+                    TranslationPlanCache.getMisses());
+            sample(out, "connid_filter_plan_cache_size", "", TranslationPlanCache.size());
+        }
+    }
+
+    private static void writeConnector(final Appendable out, final ConnectorMetrics metrics)
+            throws IOException {
+        final String connector = labels(metrics.getConnectorKey());
+        for (OperationMetrics op : metrics.getOperations().values()) {
+            final String labels = connector + ",operation=\"" + op.getOperation() + "\"";
+            sample(out, "connid_operation_calls_total", labels, op.getCalls());
+            sample(out, "connid_operation_errors_total", labels, op.getErrors());
+            sample(out, "connid_operation_timeouts_total", labels, op.getTimeouts());
+            if (op.getCoalesced() > 0) {
+                sample(out, "connid_operation_coalesced_total", labels, op.getCoalesced());
+            }
+            histogram(out, "connid_operation_latency_micros", labels, op.getLatency());
+            if (op.getObjects().getCount() > 0) {
+                histogram(out, "connid_operation_objects", labels, op.getObjects());
+            }
+        }
+        if (metrics.getPoolBorrowWait().getCount() > 0) {
+            histogram(out, "connid_pool_borrow_wait_micros", connector, metrics.getPoolBorrowWait());
+            sample(out, "connid_pool_borrow_failures_total", connector,
+                    metrics.getPoolBorrowFailures());
+        }
+        if (metrics.getRemoteBytesSent() > 0 || metrics.getRemoteBytesReceived() > 0) {
+            sample(out, "connid_remote_bytes_sent_total", connector, metrics.getRemoteBytesSent());
+            sample(out, "connid_remote_bytes_received_total", connector,
+                    metrics.getRemoteBytesReceived());
+        }
+        if (metrics.getServerRequests() > 0) {
+            sample(out, "connid_server_requests_total", connector, metrics.getServerRequests());
+            sample(out, "connid_server_bytes_sent_total", connector, metrics.getServerBytesSent());
+            sample(out, "connid_server_bytes_received_total", connector,
+                    metrics.getServerBytesReceived());
+        }
+        if (metrics.getObjectCacheHits() > 0 || metrics.getObjectCacheMisses() > 0) {
+            sample(out, "connid_object_cache_hits_total", connector, metrics.getObjectCacheHits());
+            sample(out, "connid_object_cache_misses_total", connector,
+                    metrics.getObjectCacheMisses());
+        }
+    }
+
+    private static String labels(final ConnectorKey key) {
+        return "bundleName=\"" + key.getBundleName() + "\",bundleVersion=\""
+                + key.getBundleVersion() + "\",connectorName=\"" + key.getConnectorName() + "\"";
+    }
+
+    private static void histogram(final Appendable out, final String name, final String labels,
+            final LatencyHistogram histogram) throws IOException {
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            sample(out, name, labels + ",quantile=\"" + QUANTILES[i] + "\"", histogram
+                    .getValueAtPercentile(PERCENTILES[i]));
+        }
+        sample(out, name + "_max", labels, histogram.getMax());
+        sample(out, name + "_sum", labels, histogram.getSum());
+        sample(out, name + "_count", labels, histogram.getCount());
+    }
+
+    private static void sample(final Appendable out, final String name, final String labels,
+            final long value) throws IOException {
+        out.append(name).append('{').append(labels).append("} ").append(Long.toString(value))
+                .append('\n');
+    }
+}
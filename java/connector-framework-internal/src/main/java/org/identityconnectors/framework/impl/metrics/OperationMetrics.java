@@ -0,0 +1,142 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and histograms of one API operation of one connector.
+ *
+ * @since 1.4.4
+ */
+public final class OperationMetrics {
+
+    private final String operation;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LatencyHistogram objects = new LatencyHistogram();
+
+    OperationMetrics(final String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Records a finished call.
+     *
+     * @param elapsedNanos
+     *            duration of the call
+     * @param error
+     *            failure of the call or null
+     * @param timedOut
+     *            whether the failure was a timeout
+     */
+    public void record(final long elapsedNanos, final Throwable error, final boolean timedOut) {
+        calls.incrementAndGet();
+        latency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        if (error != null) {
+            errors.incrementAndGet();
+            if (timedOut) {
+                timeouts.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Records the number of objects a search or sync call streamed to its
+     * handler.
+     */
+    public void recordObjects(final long count) {
+        objects.record(count);
+    }
+
+    /**
+     * Records a call which shared the execution of an identical call in
+     * flight.
+     */
+    public void recordCoalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Returns the share of the calls which did not execute the operation
+     * themselves, between 0 and 1.
+     */
+    public double getCoalescingRatio() {
+        long total = calls.get();
+        return total == 0 ? 0 : (double) coalesced.get() / total;
+    }
+
+    /**
+     * Returns the call latency in microseconds.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the number of objects streamed per call.
+     */
+    public LatencyHistogram getObjects() {
+        return objects;
+    }
+
+    void reset() {
+        calls.set(0);
+        errors.set(0);
+        timeouts.set(0);
+        coalesced.set(0);
+        latency.reset();
+        objects.reset();
+    }
+}
@@ -30,6 +30,7 @@ import java.util.Set;
 
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.ObjectCacheConfiguration;
 import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
@@ -45,6 +46,9 @@ class APIConfigurationHandlers {
 
     public static final List<ObjectTypeMapper> HANDLERS = new ArrayList<ObjectTypeMapper>();
 
+    private static final ObjectCacheConfiguration DEFAULT_OBJECT_CACHE =
+            new ObjectCacheConfiguration();
+
     static {
 
         HANDLERS.add(new AbstractObjectSerializationHandler(ObjectPoolConfiguration.class,
@@ -58,6 +62,15 @@ class APIConfigurationHandlers {
                 rv.setMinEvictableIdleTimeMillis(decoder.readLongField(
                         "minEvictableIdleTimeMillis", rv.getMinEvictableIdleTimeMillis()));
                 rv.setMinIdle(decoder.readIntField("minIdle", rv.getMinIdle()));
+                rv.setTimeBetweenEvictionRunsMillis(decoder.readLongField(
+                        "timeBetweenEvictionRunsMillis", rv.getTimeBetweenEvictionRunsMillis()));
+                rv.setTestWhileIdle(decoder.readBooleanField("testWhileIdle", rv
+                        .isTestWhileIdle()));
+                rv.setValidationIdleTimeMillis(decoder.readLongField("validationIdleTimeMillis",
+                        rv.getValidationIdleTimeMillis()));
+                rv.setThreadAffinity(decoder.readBooleanField("threadAffinity", rv
+                        .isThreadAffinity()));
+                rv.setFair(decoder.readBooleanField("fair", rv.isFair()));
                 return rv;
             }
 
@@ -69,6 +82,27 @@ class APIConfigurationHandlers {
                 encoder.writeLongField("minEvictableIdleTimeMillis", val
                         .getMinEvictableIdleTimeMillis());
                 encoder.writeIntField("minIdle", val.getMinIdle());
+                // the later fields are only written when set, so that the
+                // serialized form of existing configurations stays the same
+                ObjectPoolConfiguration defaults = new ObjectPoolConfiguration();
+                if (val.getTimeBetweenEvictionRunsMillis() != defaults
+                        .getTimeBetweenEvictionRunsMillis()) {
+                    encoder.writeLongField("timeBetweenEvictionRunsMillis", val
+                            .getTimeBetweenEvictionRunsMillis());
+                }
+                if (val.isTestWhileIdle()) {
+                    encoder.writeBooleanField("testWhileIdle", true);
+                }
+                if (val.getValidationIdleTimeMillis() != defaults.getValidationIdleTimeMillis()) {
+                    encoder.writeLongField("validationIdleTimeMillis", val
+                            .getValidationIdleTimeMillis());
+                }
+                if (val.isThreadAffinity()) {
+                    encoder.writeBooleanField("threadAffinity", true);
+                }
+                if (val.isFair()) {
+                    encoder.writeBooleanField("fair", true);
+                }
             }
 
         });
@@ -89,6 +123,10 @@ class APIConfigurationHandlers {
                 rv.setEnableAttributesToGetSearchResultsHandler(decoder.readBooleanField(
                         "enableAttributesToGetSearchResultsHandler", rv
                                 .isEnableAttributesToGetSearchResultsHandler()));
+                rv.setSyncDispatchThreads(decoder.readIntField("syncDispatchThreads", rv
+                        .getSyncDispatchThreads()));
+                rv.setEnableSortingPagingEmulation(decoder.readBooleanField(
+                        "enableSortingPagingEmulation", rv.isEnableSortingPagingEmulation()));
                 return rv;
             }
 
@@ -104,6 +142,35 @@ class APIConfigurationHandlers {
                         .isEnableCaseInsensitiveFilter());
                 encoder.writeBooleanField("enableAttributesToGetSearchResultsHandler", val
                         .isEnableAttributesToGetSearchResultsHandler());
+                if (val.getSyncDispatchThreads() != 0) {
+                    encoder.writeIntField("syncDispatchThreads", val.getSyncDispatchThreads());
+                }
+                if (val.isEnableSortingPagingEmulation()) {
+                    encoder.writeBooleanField("enableSortingPagingEmulation", true);
+                }
+            }
+        });
+
+        HANDLERS.add(new AbstractObjectSerializationHandler(ObjectCacheConfiguration.class,
+                "ObjectCacheConfiguration") {
+
+            public Object deserialize(final ObjectDecoder decoder) {
+                ObjectCacheConfiguration rv = new ObjectCacheConfiguration();
+                rv.setMaxObjects(decoder.readIntField("maxObjects", rv.getMaxObjects()));
+                rv.setTimeToLiveMillis(decoder.readLongField("timeToLiveMillis", rv
+                        .getTimeToLiveMillis()));
+                @SuppressWarnings("unchecked")
+                Set<String> objectClasses =
+                        (Set) decoder.readObjectField("objectClasses", Set.class, null);
+                rv.setObjectClasses(objectClasses);
+                return rv;
+            }
+
+            public void serialize(final Object object, final ObjectEncoder encoder) {
+                ObjectCacheConfiguration val = (ObjectCacheConfiguration) object;
+                encoder.writeIntField("maxObjects", val.getMaxObjects());
+                encoder.writeLongField("timeToLiveMillis", val.getTimeToLiveMillis());
+                encoder.writeObjectField("objectClasses", val.getObjectClasses(), true);
             }
         });
 
@@ -178,6 +245,8 @@ class APIConfigurationHandlers {
                         "connectorPoolConfiguration", null, null));
                 rv.setResultsHandlerConfiguration((ResultsHandlerConfiguration) decoder
                         .readObjectField("resultsHandlerConfiguration", null, null));
+                rv.setObjectCacheConfiguration((ObjectCacheConfiguration) decoder
+                        .readObjectField("objectCacheConfiguration", null, null));
                 rv.setConfigurationProperties((ConfigurationPropertiesImpl) decoder
                         .readObjectField("ConfigurationProperties",
                                 ConfigurationPropertiesImpl.class, null));
@@ -190,18 +259,35 @@ class APIConfigurationHandlers {
                         (Set) decoder.readObjectField("SupportedOperations", Set.class, null);
                 rv.setSupportedOperations(set);
                 rv.setProducerBufferSize(decoder.readIntField("producerBufferSize", 0));
+                rv.setSyncSnapshotDirectory(decoder.readStringField("syncSnapshotDirectory", null));
+                rv.setSchemaCacheTimeToLiveMillis(decoder.readLongField(
+                        "schemaCacheTimeToLiveMillis", 0));
                 return rv;
             }
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
                 final APIConfigurationImpl val = (APIConfigurationImpl) object;
                 encoder.writeIntField("producerBufferSize", val.getProducerBufferSize());
+                if (val.getSyncSnapshotDirectory() != null) {
+                    encoder.writeStringField("syncSnapshotDirectory", val
+                            .getSyncSnapshotDirectory());
+                }
+                if (val.getSchemaCacheTimeToLiveMillis() != 0) {
+                    encoder.writeLongField("schemaCacheTimeToLiveMillis", val
+                            .getSchemaCacheTimeToLiveMillis());
+                }
                 encoder.writeBooleanField("connectorPoolingSupported", val
                         .isConnectorPoolingSupported());
                 encoder.writeObjectField("connectorPoolConfiguration", val
                         .getConnectorPoolConfiguration(), false);
                 encoder.writeObjectField("resultsHandlerConfiguration", val
                         .getResultsHandlerConfiguration(), false);
+                // the default configuration is left out, not to change the
+                // facade keys of the applications not using the cache
+                if (!DEFAULT_OBJECT_CACHE.equals(val.getObjectCacheConfiguration())) {
+                    encoder.writeObjectField("objectCacheConfiguration", val
+                            .getObjectCacheConfiguration(), false);
+                }
                 encoder.writeObjectField("ConfigurationProperties", val
                         .getConfigurationProperties(), true);
                 encoder.writeObjectField("timeoutMap", val.getTimeoutMap(), false);
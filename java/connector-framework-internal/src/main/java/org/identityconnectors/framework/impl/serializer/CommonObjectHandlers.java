@@ -53,6 +53,8 @@ import org.identityconnectors.framework.common.exceptions.PreconditionRequiredEx
 import org.identityconnectors.framework.common.exceptions.RetryableException;
 import org.identityconnectors.framework.common.exceptions.UnknownUidException;
 import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
 import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.identityconnectors.framework.common.objects.AttributeInfo;
 import org.identityconnectors.framework.common.objects.AttributeInfo.Flags;
@@ -793,5 +795,60 @@ class CommonObjectHandlers {
                 encoder.writeObjectField("Uid", val.getUid(), true);
             }
         });
+
+        HANDLERS.add(new EnumSerializationHandler(BatchOperation.Type.class, "BatchOperationType"));
+
+        HANDLERS.add(new AbstractObjectSerializationHandler(BatchOperation.class, "BatchOperation") {
+
+            @Override
+            public Object deserialize(final ObjectDecoder decoder) {
+                final BatchOperation.Type type =
+                        (BatchOperation.Type) decoder.readObjectField("BatchOperationType",
+                                BatchOperation.Type.class, null);
+                final ObjectClass objectClass =
+                        (ObjectClass) decoder.readObjectField("ObjectClass", ObjectClass.class,
+                                null);
+                final Uid uid = (Uid) decoder.readObjectField("Uid", Uid.class, null);
+                @SuppressWarnings("unchecked")
+                final Set<Attribute> attributes =
+                        (Set<Attribute>) decoder.readObjectField("Attributes", Set.class, null);
+                return new BatchOperation(type, objectClass, uid, attributes);
+            }
+
+            @Override
+            public void serialize(final Object object, final ObjectEncoder encoder) {
+                final BatchOperation val = (BatchOperation) object;
+                encoder.writeObjectField("BatchOperationType", val.getType(), true);
+                encoder.writeObjectField("ObjectClass", val.getObjectClass(), true);
+                encoder.writeObjectField("Uid", val.getUid(), true);
+                encoder.writeObjectField("Attributes", val.getAttributes(), true);
+            }
+        });
+
+        HANDLERS.add(new AbstractObjectSerializationHandler(BatchResult.class, "BatchResult") {
+
+            @Override
+            public Object deserialize(final ObjectDecoder decoder) {
+                final int index = decoder.readIntField("index", 0);
+                final Throwable exception =
+                        (Throwable) decoder.readObjectField("exception", null, null);
+                if (exception != null) {
+                    return new BatchResult(index, ConnectorException.wrap(exception));
+                }
+                return new BatchResult(index, (Uid) decoder.readObjectField("Uid", Uid.class,
+                        null));
+            }
+
+            @Override
+            public void serialize(final Object object, final ObjectEncoder encoder) {
+                final BatchResult val = (BatchResult) object;
+                encoder.writeIntField("index", val.getIndex());
+                if (val.isSuccess()) {
+                    encoder.writeObjectField("Uid", val.getUid(), true);
+                } else {
+                    encoder.writeObjectField("exception", val.getException(), false);
+                }
+            }
+        });
     }
 }
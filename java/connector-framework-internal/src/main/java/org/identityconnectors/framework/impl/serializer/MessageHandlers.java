@@ -35,6 +35,7 @@ import org.identityconnectors.framework.impl.api.remote.messages.EchoMessage;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestCancel;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
@@ -107,8 +108,13 @@ class MessageHandlers {
                 @SuppressWarnings("unchecked")
                 final List<Object> arguments =
                         (List) decoder.readObjectField("Arguments", List.class, null);
+                final long timeout = decoder.readLongField("timeout", 0);
+                final String ifNoneMatch = decoder.readStringField("ifNoneMatch", null);
+                final boolean syncCheckpoints = decoder.readBooleanField("syncCheckpoints", false);
+                final boolean resultBatches = decoder.readBooleanField("resultBatches", false);
                 return new OperationRequest(connectorKey, connectorFacadeKey, operation,
-                        operationMethodName, arguments);
+                        operationMethodName, arguments, timeout, ifNoneMatch, syncCheckpoints,
+                        resultBatches);
             }
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
@@ -118,6 +124,18 @@ class MessageHandlers {
                 encoder.writeObjectField("ConnectorKey", val.getConnectorKey(), true);
                 encoder.writeStringField("connectorFacadeKey", val.getConnectorFacadeKey());
                 encoder.writeObjectField("Arguments", val.getArguments(), true);
+                if (val.getTimeout() > 0) {
+                    encoder.writeLongField("timeout", val.getTimeout());
+                }
+                if (val.getIfNoneMatch() != null) {
+                    encoder.writeStringField("ifNoneMatch", val.getIfNoneMatch());
+                }
+                if (val.isSyncCheckpoints()) {
+                    encoder.writeBooleanField("syncCheckpoints", true);
+                }
+                if (val.isResultBatches()) {
+                    encoder.writeBooleanField("resultBatches", true);
+                }
             }
         });
 
@@ -139,14 +157,18 @@ class MessageHandlers {
                 final Throwable exception =
                         (Throwable) decoder.readObjectField("exception", null, null);
                 final Object result = decoder.readObjectField("result", null, null);
+                final String tag = decoder.readStringField("tag", null);
 
-                return new OperationResponsePart(exception, result);
+                return new OperationResponsePart(exception, result, tag);
             }
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
                 final OperationResponsePart val = (OperationResponsePart) object;
                 encoder.writeObjectField("exception", val.getException(), false);
                 encoder.writeObjectField("result", val.getResult(), false);
+                if (val.getTag() != null) {
+                    encoder.writeStringField("tag", val.getTag());
+                }
             }
         });
 
@@ -172,6 +194,17 @@ class MessageHandlers {
             }
         });
 
+        HANDLERS.add(new AbstractObjectSerializationHandler(OperationRequestCancel.class,
+                "OperationRequestCancel") {
+
+            public Object deserialize(final ObjectDecoder decoder) {
+                return new OperationRequestCancel();
+            }
+
+            public void serialize(final Object object, final ObjectEncoder encoder) {
+            }
+        });
+
         HANDLERS.add(new AbstractObjectSerializationHandler(OperationResponsePause.class,
                 "OperationResponsePause") {
 
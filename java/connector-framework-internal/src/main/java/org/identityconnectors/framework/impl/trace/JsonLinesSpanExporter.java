@@ -0,0 +1,124 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.trace;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+
+/**
+ * Appends each span as a single line JSON object to a file.
+ *
+ * @since 1.4.4
+ */
+public class JsonLinesSpanExporter implements SpanExporter, Closeable {
+
+    private static final Log LOG = Log.getLog(JsonLinesSpanExporter.class);
+
+    private final Writer writer;
+
+    public JsonLinesSpanExporter(final File file) {
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+        } catch (IOException e) {
+            throw new ConnectorIOException("Failed to open trace file " + file, e);
+        }
+    }
+
+    public JsonLinesSpanExporter(final Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void export(final OperationSpan span) {
+        final String line = toJson(span);
+        synchronized (writer) {
+            try {
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException e) {
+                LOG.warn(e, "Failed to write span");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (writer) {
+            IOUtil.quietClose(writer);
+        }
+    }
+
+    static String toJson(final OperationSpan span) {
+        StringBuilder bld = new StringBuilder(256);
+        bld.append("{\"start\":").append(span.getStartTime());
+        appendString(bld, "operation", span.getOperation().getSimpleName());
+        appendString(bld, "method", span.getMethod());
+        if (span.getConnectorKey() != null) {
+            appendString(bld, "bundleName", span.getConnectorKey().getBundleName());
+            appendString(bld, "bundleVersion", span.getConnectorKey().getBundleVersion());
+            appendString(bld, "connectorName", span.getConnectorKey().getConnectorName());
+        }
+        appendNumber(bld, "durationNanos", span.getDurationNanos());
+        appendNumber(bld, "poolWaitNanos", span.getPoolWaitNanos());
+        appendNumber(bld, "connectorInitNanos", span.getConnectorInitNanos());
+        appendNumber(bld, "spiCallNanos", span.getSpiCallNanos());
+        appendNumber(bld, "handlerNanos", span.getHandlerNanos());
+        appendNumber(bld, "objects", span.getObjects());
+        appendNumber(bld, "bytesSent", span.getBytesSent());
+        appendNumber(bld, "bytesReceived", span.getBytesReceived());
+        if (span.getException() != null) {
+            appendString(bld, "exception", span.getException());
+        }
+        bld.append('}');
+        return bld.toString();
+    }
+
+    private static void appendNumber(final StringBuilder bld, final String name, final long value) {
+        bld.append(",\"").append(name).append("\":").append(value);
+    }
+
+    private static void appendString(final StringBuilder bld, final String name, final String value) {
+        bld.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                bld.append('\\').append(c);
+            } else if (c < 0x20) {
+                bld.append(String.format("\\u%04x", (int) c));
+            } else {
+                bld.append(c);
+            }
+        }
+        bld.append('"');
+    }
+}
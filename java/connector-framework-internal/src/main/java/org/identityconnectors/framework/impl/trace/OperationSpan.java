@@ -0,0 +1,208 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.operations.APIOperation;
+
+/**
+ * Cost breakdown of a single sampled facade operation.
+ * <p>
+ * All durations are in nanoseconds. The different parts may be recorded from
+ * different threads (e.g. the timeout proxies run the operation on a pooled
+ * thread while results are handled on the caller one), so the counters are
+ * atomic.
+ *
+ * @since 1.4.4
+ */
+public final class OperationSpan {
+
+    private final Class<? extends APIOperation> operation;
+
+    private final String method;
+
+    private final ConnectorKey connectorKey;
+
+    private final long startTime;
+
+    private final long startNanos;
+
+    private volatile long durationNanos = -1;
+
+    private volatile String exception;
+
+    private final AtomicLong poolWaitNanos = new AtomicLong();
+
+    private final AtomicLong connectorInitNanos = new AtomicLong();
+
+    private final AtomicLong spiCallNanos = new AtomicLong();
+
+    private final AtomicLong handlerNanos = new AtomicLong();
+
+    private final AtomicLong objects = new AtomicLong();
+
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    OperationSpan(final Class<? extends APIOperation> operation, final String method,
+            final ConnectorKey connectorKey) {
+        this.operation = operation;
+        this.method = method;
+        this.connectorKey = connectorKey;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    void finish(final Throwable error) {
+        if (error != null) {
+            exception = error.getClass().getName();
+        }
+        durationNanos = System.nanoTime() - startNanos;
+    }
+
+    public Class<? extends APIOperation> getOperation() {
+        return operation;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public ConnectorKey getConnectorKey() {
+        return connectorKey;
+    }
+
+    /**
+     * Wall clock time the operation started at, in milliseconds.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Total time of the operation as seen by the facade caller, -1 while it is
+     * still running.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Class name of the exception the operation failed with, if any.
+     */
+    public String getException() {
+        return exception;
+    }
+
+    /**
+     * Time spent waiting to borrow a connector from the pool (including the
+     * creation of new pooled connectors).
+     */
+    public long getPoolWaitNanos() {
+        return poolWaitNanos.get();
+    }
+
+    /**
+     * Time spent creating and initializing non pooled connectors.
+     */
+    public long getConnectorInitNanos() {
+        return connectorInitNanos.get();
+    }
+
+    /**
+     * Time spent in the SPI call of the connector. For streaming operations
+     * this includes the time the connector was blocked on the results handler.
+     */
+    public long getSpiCallNanos() {
+        return spiCallNanos.get();
+    }
+
+    /**
+     * Time spent in the results handler of the caller.
+     */
+    public long getHandlerNanos() {
+        return handlerNanos.get();
+    }
+
+    /**
+     * Number of objects passed to the results handler of the caller.
+     */
+    public long getObjects() {
+        return objects.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public void addPoolWait(final long nanos) {
+        poolWaitNanos.addAndGet(nanos);
+    }
+
+    public void addConnectorInit(final long nanos) {
+        connectorInitNanos.addAndGet(nanos);
+    }
+
+    public void addSpiCall(final long nanos) {
+        spiCallNanos.addAndGet(nanos);
+    }
+
+    public void addHandled(final long nanos) {
+        addHandled(nanos, 1);
+    }
+
+    public void addHandled(final long nanos, final int count) {
+        handlerNanos.addAndGet(nanos);
+        objects.addAndGet(count);
+    }
+
+    public void addBytes(final long sent, final long received) {
+        bytesSent.addAndGet(sent);
+        bytesReceived.addAndGet(received);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder bld = new StringBuilder();
+        bld.append("OperationSpan: {operation=").append(operation.getSimpleName());
+        bld.append(", method=").append(method);
+        bld.append(", connectorKey=").append(connectorKey);
+        bld.append(", durationNanos=").append(durationNanos);
+        bld.append(", poolWaitNanos=").append(poolWaitNanos);
+        bld.append(", connectorInitNanos=").append(connectorInitNanos);
+        bld.append(", spiCallNanos=").append(spiCallNanos);
+        bld.append(", handlerNanos=").append(handlerNanos);
+        bld.append(", objects=").append(objects);
+        bld.append(", bytesSent=").append(bytesSent);
+        bld.append(", bytesReceived=").append(bytesReceived);
+        bld.append(", exception=").append(exception).append('}');
+        return bld.toString();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.trace;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.operations.APIOperation;
+
+/**
+ * Samples facade operations into {@link OperationSpan}s and hands them to the
+ * registered {@link SpanExporter}s.
+ * <p>
+ * Tracing is off unless a sample rate greater than zero is set and at least
+ * one exporter is registered; while off, facades do not install the
+ * {@link org.identityconnectors.framework.impl.api.TracingProxy} and the
+ * instrumentation points reduce to a volatile read. Both can be set through
+ * the API or with the following system properties:
+ * <ul>
+ * <li>{@value #SAMPLE_RATE_PROP}: fraction of operations to trace, between 0
+ * and 1</li>
+ * <li>{@value #FILE_PROP}: path of a file spans are appended to as JSON
+ * lines</li>
+ * <li>{@value #RING_BUFFER_PROP}: size of an in-memory buffer keeping the
+ * latest spans</li>
+ * </ul>
+ *
+ * @since 1.4.4
+ */
+public final class OperationTracer {
+
+    private static final Log LOG = Log.getLog(OperationTracer.class);
+
+    public static final String SAMPLE_RATE_PROP = "org.identityconnectors.framework.trace.sampleRate";
+
+    public static final String FILE_PROP = "org.identityconnectors.framework.trace.file";
+
+    public static final String RING_BUFFER_PROP = "org.identityconnectors.framework.trace.ringBufferSize";
+
+    private static final List<SpanExporter> EXPORTERS = new CopyOnWriteArrayList<SpanExporter>();
+
+    private static final ThreadLocal<OperationSpan> CURRENT = new ThreadLocal<OperationSpan>();
+
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    /**
+     * One operation out of samplePeriod is traced, 0 means tracing is off.
+     */
+    private static volatile long samplePeriod = 0;
+
+    private static volatile double sampleRate = 0;
+
+    private static volatile boolean enabled = false;
+
+    static {
+        try {
+            String file = System.getProperty(FILE_PROP);
+            if (StringUtil.isNotBlank(file)) {
+                addExporter(new JsonLinesSpanExporter(new File(file)));
+            }
+            Integer ringBufferSize = Integer.getInteger(RING_BUFFER_PROP);
+            if (ringBufferSize != null && ringBufferSize > 0) {
+                addExporter(new RingBufferSpanExporter(ringBufferSize));
+            }
+            String rate = System.getProperty(SAMPLE_RATE_PROP);
+            if (StringUtil.isNotBlank(rate)) {
+                setSampleRate(Double.parseDouble(rate.trim()));
+            }
+        } catch (RuntimeException e) {
+            LOG.error(e, "Failed to configure operation tracing");
+        }
+    }
+
+    private OperationTracer() {
+    }
+
+    /**
+     * Sets the fraction of operations to trace: 0 turns tracing off, 1 traces
+     * every operation.
+     */
+    public static void setSampleRate(final double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + rate);
+        }
+        sampleRate = rate;
+        samplePeriod = rate == 0 ? 0 : Math.max(1, Math.round(1 / rate));
+        updateEnabled();
+    }
+
+    public static double getSampleRate() {
+        return sampleRate;
+    }
+
+    public static void addExporter(final SpanExporter exporter) {
+        EXPORTERS.add(exporter);
+        updateEnabled();
+    }
+
+    public static void removeExporter(final SpanExporter exporter) {
+        EXPORTERS.remove(exporter);
+        updateEnabled();
+    }
+
+    public static List<SpanExporter> getExporters() {
+        return EXPORTERS;
+    }
+
+    private static void updateEnabled() {
+        enabled = samplePeriod > 0 && !EXPORTERS.isEmpty();
+    }
+
+    /**
+     * Returns whether operations are being sampled at all.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a span if this operation is sampled.
+     *
+     * @return the new span, or null if the operation is not traced.
+     */
+    public static OperationSpan startSpan(final Class<? extends APIOperation> operation, final String method,
+            final ConnectorKey connectorKey) {
+        final long period = samplePeriod;
+        if (!enabled || period == 0 || COUNTER.incrementAndGet() % period != 0) {
+            return null;
+        }
+        return new OperationSpan(operation, method, connectorKey);
+    }
+
+    /**
+     * Marks the span finished and exports it.
+     */
+    public static void finishSpan(final OperationSpan span, final Throwable error) {
+        span.finish(error);
+        for (SpanExporter exporter : EXPORTERS) {
+            try {
+                exporter.export(span);
+            } catch (RuntimeException e) {
+                LOG.warn(e, "Failed to export {0}", span);
+            }
+        }
+    }
+
+    /**
+     * Returns the span of the operation running on the current thread, or null
+     * if it is not traced.
+     */
+    public static OperationSpan current() {
+        if (!enabled) {
+            return null;
+        }
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes the given span the current one of this thread.
+     *
+     * @return the span that was current before, to be restored with
+     *         {@link #restore(OperationSpan)}.
+     */
+    public static OperationSpan attach(final OperationSpan span) {
+        final OperationSpan previous = CURRENT.get();
+        CURRENT.set(span);
+        return previous;
+    }
+
+    /**
+     * Restores the span returned by {@link #attach(OperationSpan)}.
+     */
+    public static void restore(final OperationSpan previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
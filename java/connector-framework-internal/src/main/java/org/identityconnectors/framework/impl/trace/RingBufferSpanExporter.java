@@ -0,0 +1,74 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the latest spans in memory, overwriting the oldest ones.
+ *
+ * @since 1.4.4
+ */
+public class RingBufferSpanExporter implements SpanExporter {
+
+    private final AtomicReferenceArray<OperationSpan> buffer;
+
+    private final AtomicLong next = new AtomicLong();
+
+    public RingBufferSpanExporter(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        }
+        buffer = new AtomicReferenceArray<OperationSpan>(size);
+    }
+
+    @Override
+    public void export(final OperationSpan span) {
+        buffer.set((int) (next.getAndIncrement() % buffer.length()), span);
+    }
+
+    /**
+     * Returns the spans currently held, oldest first.
+     */
+    public List<OperationSpan> getSpans() {
+        final long end = next.get();
+        final long start = Math.max(0, end - buffer.length());
+        List<OperationSpan> spans = new ArrayList<OperationSpan>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            OperationSpan span = buffer.get((int) (i % buffer.length()));
+            if (span != null) {
+                spans.add(span);
+            }
+        }
+        return spans;
+    }
+
+    public void clear() {
+        for (int i = 0; i < buffer.length(); i++) {
+            buffer.set(i, null);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.trace;
+
+/**
+ * Receives the finished {@link OperationSpan}s of sampled operations.
+ * <p>
+ * Implementations are called on the thread that completed the operation, so
+ * they must be thread-safe and should return quickly.
+ *
+ * @since 1.4.4
+ */
+public interface SpanExporter {
+
+    /**
+     * Exports a finished span.
+     *
+     * @param span the span, never modified after this call.
+     */
+    void export(OperationSpan span);
+}
@@ -95,6 +95,31 @@ public abstract class ConnectorServer {
      */
     private List<KeyManager> keyManagers = CollectionUtil.<KeyManager> newReadOnlyList();
 
+    /**
+     * Stage the streamed results on the server.
+     */
+    private boolean useResultsStaging = false;
+
+    /**
+     * The memory in bytes the staged results of a connection may use.
+     */
+    private long stagingMemoryLimit = 8L * 1024 * 1024;
+
+    /**
+     * The memory in bytes the staged results of all connections may use.
+     */
+    private long stagingGlobalMemoryLimit = 64L * 1024 * 1024;
+
+    /**
+     * The disk space in bytes the staged results of a connection may use.
+     */
+    private long stagingDiskLimit = 1024L * 1024 * 1024;
+
+    /**
+     * The disk space in bytes the staged results of all connections may use.
+     */
+    private long stagingGlobalDiskLimit = 8L * 1024 * 1024 * 1024;
+
     /**
      * Get the singleton instance of the {@link ConnectorServer}.
      */
@@ -319,6 +344,124 @@ public abstract class ConnectorServer {
         this.bundleParentClassLoader = bundleParentClassLoader;
     }
 
+    /**
+     * Returns whether the results of the search and sync operations are
+     * staged on the server.
+     *
+     * @return whether the streamed results are staged.
+     * @since 1.4.4
+     */
+    public boolean getUseResultsStaging() {
+        return useResultsStaging;
+    }
+
+    /**
+     * Sets whether the results of the search and sync operations are staged
+     * on the server.
+     * <p/>
+     * When staged, the connector hands its results over to a buffer which
+     * streams them to the client independently, so that a slow client does
+     * not keep the backend cursor open. The buffer keeps the results in
+     * memory up to the memory limits, then in a temporary file up to the disk
+     * limits, and only then makes the connector wait.
+     *
+     * @param useResultsStaging
+     *            whether the streamed results are staged.
+     * @since 1.4.4
+     */
+    public void setUseResultsStaging(final boolean useResultsStaging) {
+        assertNotStarted();
+        this.useResultsStaging = useResultsStaging;
+    }
+
+    /**
+     * Returns the memory the staged results of a connection may use.
+     *
+     * @return the limit in bytes.
+     * @since 1.4.4
+     */
+    public long getStagingMemoryLimit() {
+        return stagingMemoryLimit;
+    }
+
+    /**
+     * Sets the memory the staged results of a connection may use.
+     *
+     * @param stagingMemoryLimit
+     *            the limit in bytes.
+     * @since 1.4.4
+     */
+    public void setStagingMemoryLimit(final long stagingMemoryLimit) {
+        assertNotStarted();
+        this.stagingMemoryLimit = stagingMemoryLimit;
+    }
+
+    /**
+     * Returns the memory the staged results of all connections may use.
+     *
+     * @return the limit in bytes.
+     * @since 1.4.4
+     */
+    public long getStagingGlobalMemoryLimit() {
+        return stagingGlobalMemoryLimit;
+    }
+
+    /**
+     * Sets the memory the staged results of all connections may use.
+     *
+     * @param stagingGlobalMemoryLimit
+     *            the limit in bytes.
+     * @since 1.4.4
+     */
+    public void setStagingGlobalMemoryLimit(final long stagingGlobalMemoryLimit) {
+        assertNotStarted();
+        this.stagingGlobalMemoryLimit = stagingGlobalMemoryLimit;
+    }
+
+    /**
+     * Returns the disk space the staged results of a connection may use.
+     *
+     * @return the limit in bytes.
+     * @since 1.4.4
+     */
+    public long getStagingDiskLimit() {
+        return stagingDiskLimit;
+    }
+
+    /**
+     * Sets the disk space the staged results of a connection may use.
+     *
+     * @param stagingDiskLimit
+     *            the limit in bytes.
+     * @since 1.4.4
+     */
+    public void setStagingDiskLimit(final long stagingDiskLimit) {
+        assertNotStarted();
+        this.stagingDiskLimit = stagingDiskLimit;
+    }
+
+    /**
+     * Returns the disk space the staged results of all connections may use.
+     *
+     * @return the limit in bytes.
+     * @since 1.4.4
+     */
+    public long getStagingGlobalDiskLimit() {
+        return stagingGlobalDiskLimit;
+    }
+
+    /**
+     * Sets the disk space the staged results of all connections may use.
+     *
+     * @param stagingGlobalDiskLimit
+     *            the limit in bytes.
+     * @since 1.4.4
+     */
+    public void setStagingGlobalDiskLimit(final long stagingGlobalDiskLimit) {
+        assertNotStarted();
+        this.stagingGlobalDiskLimit = stagingGlobalDiskLimit;
+    }
+
     /**
      * Gets the time when the servers was started last time.
      * <p/>
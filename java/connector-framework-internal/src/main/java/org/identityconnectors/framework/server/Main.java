@@ -49,6 +49,13 @@ public final class Main {
     private static final String PROP_IFADDRESS = "connectorserver.ifaddress";
     private static final String PROP_KEY = "connectorserver.key";
     private static final String PROP_LOGGER_CLASS = "connectorserver.loggerClass";
+    private static final String PROP_RESULTS_STAGING = "connectorserver.resultsStaging";
+    private static final String PROP_STAGING_MEMORY_LIMIT = "connectorserver.stagingMemoryLimit";
+    private static final String PROP_STAGING_GLOBAL_MEMORY_LIMIT =
+            "connectorserver.stagingGlobalMemoryLimit";
+    private static final String PROP_STAGING_DISK_LIMIT = "connectorserver.stagingDiskLimit";
+    private static final String PROP_STAGING_GLOBAL_DISK_LIMIT =
+            "connectorserver.stagingGlobalDiskLimit";
 
     private static final String DEFAULT_LOG_SPI = "org.identityconnectors.common.logging.StdOutLogger";
 
@@ -130,6 +137,12 @@ public final class Main {
         String ifAddress = properties.getProperty(PROP_IFADDRESS);
         String keyHash = properties.getProperty(PROP_KEY);
         String loggerClass = properties.getProperty(PROP_LOGGER_CLASS);
+        String resultsStagingStr = properties.getProperty(PROP_RESULTS_STAGING);
+        String stagingMemoryLimitStr = properties.getProperty(PROP_STAGING_MEMORY_LIMIT);
+        String stagingGlobalMemoryLimitStr =
+                properties.getProperty(PROP_STAGING_GLOBAL_MEMORY_LIMIT);
+        String stagingDiskLimitStr = properties.getProperty(PROP_STAGING_DISK_LIMIT);
+        String stagingGlobalDiskLimitStr = properties.getProperty(PROP_STAGING_GLOBAL_DISK_LIMIT);
         if (portStr == null) {
             throw new ConnectorException("connectorserver.properties is missing " + PROP_PORT);
         }
@@ -169,6 +182,21 @@ public final class Main {
         if (ifAddress != null) {
             connectorServer.setIfAddress(InetAddress.getByName(ifAddress));
         }
+        if (resultsStagingStr != null) {
+            connectorServer.setUseResultsStaging(Boolean.parseBoolean(resultsStagingStr));
+        }
+        if (stagingMemoryLimitStr != null) {
+            connectorServer.setStagingMemoryLimit(Long.parseLong(stagingMemoryLimitStr));
+        }
+        if (stagingGlobalMemoryLimitStr != null) {
+            connectorServer.setStagingGlobalMemoryLimit(Long.parseLong(stagingGlobalMemoryLimitStr));
+        }
+        if (stagingDiskLimitStr != null) {
+            connectorServer.setStagingDiskLimit(Long.parseLong(stagingDiskLimitStr));
+        }
+        if (stagingGlobalDiskLimitStr != null) {
+            connectorServer.setStagingGlobalDiskLimit(Long.parseLong(stagingGlobalDiskLimitStr));
+        }
         connectorServer.start();
         getLog().info("Connector server listening on port " + port);
         connectorServer.awaitStop();
@@ -30,6 +30,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
@@ -61,6 +62,18 @@ class ConnectionListener extends CCLWatchThread {
      */
     private final ExecutorService threadPool;
 
+    /**
+     * Dispatch table shared by the connections, replaced when the bundles
+     * change.
+     */
+    private final AtomicReference<DispatchTable> dispatchTable =
+            new AtomicReference<DispatchTable>();
+
+    /**
+     * Memory and disk used by the results staging of the connections.
+     */
+    private final ResultsStaging.Budget stagingBudget = new ResultsStaging.Budget();
+
     /**
      * Set to indicated we need to start shutting down
      */
@@ -92,7 +105,8 @@ class ConnectionListener extends CCLWatchThread {
             try {
                 Socket connection = socket.accept();
                 ConnectionProcessor processor =
-                        new ConnectionProcessor(connectorServer, connection);
+                        new ConnectionProcessor(connectorServer, dispatchTable, stagingBudget,
+                                connection);
                 // this really sucks - ideally, execute would block
                 // if the queue is full. now we have to do a busy wait
                 // the effect is that eventually our socket's accept
@@ -31,10 +31,11 @@ import java.lang.reflect.Method;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.common.logging.Log;
@@ -43,27 +44,35 @@ import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
 import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
-import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.InvalidCredentialException;
+import org.identityconnectors.framework.common.objects.Schema;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
-import org.identityconnectors.framework.impl.api.ConnectorInfoManagerFactoryImpl;
+import org.identityconnectors.framework.impl.api.AbstractConnectorFacade;
+import org.identityconnectors.framework.impl.api.DeadlineTimer;
 import org.identityconnectors.framework.impl.api.ObjectStreamHandler;
+import org.identityconnectors.framework.impl.api.SchemaCache;
 import org.identityconnectors.framework.impl.api.StreamHandlerUtil;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorInfoImpl;
 import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
 import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnection;
+import org.identityconnectors.framework.impl.api.remote.WireCompression;
 import org.identityconnectors.framework.impl.api.remote.messages.EchoMessage;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestCancel;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePause;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
 import org.identityconnectors.framework.server.ConnectorServer;
+import org.identityconnectors.framework.spi.OperationDeadline;
+import org.identityconnectors.framework.spi.SyncCheckpointResultsHandler;
 
 public class ConnectionProcessor implements Runnable {
 
@@ -72,26 +81,84 @@ public class ConnectionProcessor implements Runnable {
     private static class RemoteResultsHandler implements ObjectStreamHandler {
         private static final int PAUSE_INTERVAL = 200;
 
+        /**
+         * How often results are flushed and the client checked for a cancel
+         * request while streaming.
+         */
+        private static final long CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+        private final ConnectionProcessor processor;
         private final RemoteFrameworkConnection connection;
+        /**
+         * Whether the client takes the batches of results as they are,
+         * otherwise they are sent one result at a time.
+         */
+        private final boolean batches;
         private long count = 0;
+        private long lastCheck = System.nanoTime();
 
-        public RemoteResultsHandler(RemoteFrameworkConnection conn) {
-            connection = conn;
+        public RemoteResultsHandler(ConnectionProcessor processor, boolean batches) {
+            this.processor = processor;
+            this.batches = batches;
+            connection = processor.connection;
         }
 
+        /**
+         * Synchronized as the sync deltas may be dispatched by several
+         * threads.
+         */
         @Override
-        public boolean handle(Object obj) {
+        public synchronized boolean handle(Object obj) {
+            if (obj instanceof List) {
+                List<?> batch = (List<?>) obj;
+                if (batches) {
+                    return send(obj, batch.size());
+                }
+                for (Object result : batch) {
+                    if (!send(result, 1)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return send(obj, 1);
+        }
+
+        /**
+         * Sends a part of the stream, pausing every {@link #PAUSE_INTERVAL}
+         * results for the client to tell whether it wants more.
+         */
+        private boolean send(Object obj, int results) {
+            // give up once the client stopped waiting
+            OperationDeadline.checkExpired();
             try {
                 OperationResponsePart part = new OperationResponsePart(null, obj);
                 connection.writeObject(part);
-                count++;
-                if (count % PAUSE_INTERVAL == 0) {
+                count += results;
+                if (count / PAUSE_INTERVAL != (count - results) / PAUSE_INTERVAL) {
                     connection.writeObject(new OperationResponsePause());
                     Object message = connection.readObject();
+                    lastCheck = System.nanoTime();
+                    if (message instanceof OperationRequestCancel) {
+                        throw processor.cancelled();
+                    }
                     return message instanceof OperationRequestMoreData;
-                } else {
-                    return true;
                 }
+                final long now = System.nanoTime();
+                if (now - lastCheck >= CHECK_INTERVAL_NANOS) {
+                    lastCheck = now;
+                    // a disconnected client fails the flush, a client giving up
+                    // sends a cancel request
+                    connection.flush();
+                    if (connection.isInputAvailable()) {
+                        Object message = connection.readObject();
+                        if (message instanceof OperationRequestCancel) {
+                            throw processor.cancelled();
+                        }
+                        throw new ConnectorException("Unexpected request: " + message);
+                    }
+                }
+                return true;
             } catch (RuntimeException e) {
                 if (e.getCause() instanceof IOException) {
                     throw new BrokenConnectionException((IOException) e.getCause());
@@ -105,9 +172,32 @@ public class ConnectionProcessor implements Runnable {
 
     private final ConnectorServer connectorServer;
     private final RemoteFrameworkConnection connection;
+    private final AtomicReference<DispatchTable> dispatchTable;
+
+    /**
+     * The budget of the results staging, shared by the connections.
+     */
+    private final ResultsStaging.Budget stagingBudget;
+
+    /**
+     * The staging of the results of the running operation, if any.
+     */
+    private ResultsStaging staging;
+
+    /**
+     * Whether the client cancelled the running operation.
+     */
+    private volatile boolean cancelled;
 
     public ConnectionProcessor(ConnectorServer server, Socket socket) {
+        this(server, new AtomicReference<DispatchTable>(), new ResultsStaging.Budget(), socket);
+    }
+
+    ConnectionProcessor(ConnectorServer server, AtomicReference<DispatchTable> dispatchTable,
+            ResultsStaging.Budget stagingBudget, Socket socket) {
         connectorServer = server;
+        this.dispatchTable = dispatchTable;
+        this.stagingBudget = stagingBudget;
         connection = new RemoteFrameworkConnection(socket);
     }
 
@@ -134,6 +224,10 @@ public class ConnectionProcessor implements Runnable {
     }
 
     private boolean processRequest() throws Exception {
+        // make sure the previous response is counted before this request
+        connection.flush();
+        final long bytesWritten = connection.getBytesWritten();
+        final long bytesRead = connection.getBytesRead();
         Locale locale;
         try {
             locale = (Locale) connection.readObject();
@@ -173,7 +267,17 @@ public class ConnectionProcessor implements Runnable {
             } else {
                 OperationRequest opRequest = (OperationRequest) requestObject;
                 OperationResponsePart part = processOperationRequest(opRequest);
+                if (part == null) {
+                    // cancelled, the client is gone
+                    return false;
+                }
                 connection.writeObject(part);
+                if (MetricsRegistry.isEnabled()) {
+                    connection.flush();
+                    MetricsRegistry.getConnectorMetrics(opRequest.getConnectorKey())
+                            .recordServerRequest(connection.getBytesWritten() - bytesWritten,
+                                    connection.getBytesRead() - bytesRead);
+                }
             }
         } else if (requestObject instanceof EchoMessage) {
             if (authException != null) {
@@ -198,11 +302,8 @@ public class ConnectionProcessor implements Runnable {
         return true;
     }
 
-    private ConnectorInfoManager getConnectorInfoManager() {
-        ConnectorInfoManagerFactoryImpl factory =
-                (ConnectorInfoManagerFactoryImpl) ConnectorInfoManagerFactory.getInstance();
-        return factory.getLocalManager(connectorServer.getBundleURLs(), connectorServer
-                .getBundleParentClassLoader());
+    private DispatchTable getDispatchTable() {
+        return DispatchTable.getCurrent(dispatchTable, connectorServer);
     }
 
     private HelloResponse processHelloRequest(HelloRequest request) {
@@ -215,8 +316,14 @@ public class ConnectionProcessor implements Runnable {
             if (request.isServerInfo()) {
                 serverInfo.put(HelloResponse.SERVER_START_TIME, connectorServer.getStartTime());
             }
+            if (request.isMetrics()) {
+                serverInfo.put(HelloResponse.METRICS, MetricsRegistry.toText());
+            }
+            if (request.isCompression()) {
+                serverInfo.put(HelloResponse.COMPRESSION, WireCompression.ALGORITHM);
+            }
             if (request.isConnectorKeys()) {
-                ConnectorInfoManager manager = getConnectorInfoManager();
+                ConnectorInfoManager manager = getDispatchTable().getManager();
                 List<ConnectorInfo> localInfos = manager.getConnectorInfos();
                 connectorKeys = new ArrayList<ConnectorKey>();
                 for (ConnectorInfo localInfo : localInfos) {
@@ -238,42 +345,66 @@ public class ConnectionProcessor implements Runnable {
         return new HelloResponse(exception, serverInfo, connectorKeys, connectorInfo);
     }
 
-    private Method getOperationMethod(OperationRequest request) {
-        Method[] methods = request.getOperation().getDeclaredMethods();
-        Method found = null;
-        for (Method m : methods) {
-            if (m.getName().equalsIgnoreCase(request.getOperationMethodName())) {
-                if (found != null) {
-                    throw new ConnectorException("APIOperations are expected "
-                            + "to have exactly one method of a given name: "
-                            + request.getOperation());
-                }
-                found = m;
-            }
-        }
-        if (found == null) {
-            throw new ConnectorException("APIOperations are expected "
-                    + "to have exactly one method of a given name: " + request.getOperation());
-        }
-        return found;
-    }
-
     private OperationResponsePart processOperationRequest(OperationRequest request)
             throws IOException {
         Object result;
         Throwable exception = null;
+        cancelled = false;
         try {
-            Method method = getOperationMethod(request);
-            APIOperation operation = getAPIOperation(request);
+            DispatchTable table = getDispatchTable();
+            DispatchTable.Invoker invoker =
+                    table.getInvoker(request.getOperation(), request.getOperationMethodName());
+            Method method = invoker.getMethod();
+            APIOperation operation = getAPIOperation(table, request);
             List<Object> arguments = request.getArguments();
             List<Object> argumentsAndStreamHandlers =
-                    populateStreamHandlers(method.getParameterTypes(), arguments);
+                    populateStreamHandlers(invoker, arguments, request.isSyncCheckpoints(),
+                            request.isResultBatches());
+            boolean anyStreams = invoker.getStreamHandlerIndex() >= 0;
+            // enforce the time the client is going to wait for the response
+            if (request.getTimeout() > 0) {
+                OperationDeadline.setDeadlineNanos(System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(request.getTimeout()));
+            }
+            // the results handler watches the client while streaming, otherwise
+            // interrupt the operation if the client sends a cancel request
+            DeadlineTimer.Entry watch = anyStreams ? null : DeadlineTimer.schedule(
+                    System.nanoTime() + Long.MAX_VALUE / 2, new DeadlineTimer.Trigger() {
+                        @Override
+                        public boolean isTriggered() {
+                            return connection.isInputAvailable();
+                        }
+                    });
+            boolean completed = false;
             try {
                 result = method.invoke(operation, argumentsAndStreamHandlers.toArray());
+                completed = true;
             } catch (InvocationTargetException e) {
                 throw e.getCause();
+            } finally {
+                OperationDeadline.setDeadlineNanos(null);
+                if (watch != null && !DeadlineTimer.cancel(watch)) {
+                    cancelled = true;
+                }
+                if (staging != null) {
+                    // the staged results go out before the outcome
+                    ResultsStaging done = staging;
+                    staging = null;
+                    if (completed) {
+                        done.finish();
+                    } else {
+                        try {
+                            done.finish();
+                        } catch (RuntimeException e) {
+                            // report the failure of the operation itself
+                            LOG.warn(e, "Failed to stream the results of the failed operation");
+                        }
+                    }
+                }
+            }
+            if (cancelled) {
+                throw cancelled();
             }
-            boolean anyStreams = argumentsAndStreamHandlers.size() > arguments.size();
             if (anyStreams) {
                 try {
                     connection.writeObject(new OperationResponseEnd());
@@ -289,39 +420,58 @@ public class ConnectionProcessor implements Runnable {
             // at this point the stream is broken - just give up
             throw w.getIOException();
         } catch (Throwable e) {
+            if (cancelled) {
+                // the exception may have been wrapped by the connector
+                LOG.info("Operation {0} cancelled by the client",
+                        request.getOperation().getSimpleName());
+                return null;
+            }
             LOG.error(e, null);
             exception = e;
             result = null;
         }
+        if (request.getIfNoneMatch() != null && result instanceof Schema) {
+            // conditional fetch, do not send the schema the client already holds
+            String tag = SchemaCache.getTag(AbstractConnectorFacade.qualifyKey(
+                    request.getConnectorKey(), request.getConnectorFacadeKey()), (Schema) result);
+            if (tag.equals(request.getIfNoneMatch())) {
+                result = null;
+            }
+            return new OperationResponsePart(null, result, tag);
+        }
         return new OperationResponsePart(exception, result);
     }
 
-    private List<Object> populateStreamHandlers(Class<?>[] paramTypes, List<Object> arguments) {
-        List<Object> rv = new ArrayList<Object>();
-        boolean firstStream = true;
-        Iterator<Object> argIt = arguments.iterator();
-        for (Class<?> paramType : paramTypes) {
-            if (StreamHandlerUtil.isAdaptableToObjectStreamHandler(paramType)) {
-                if (!firstStream) {
-                    throw new UnsupportedOperationException(
-                            "At most one stream handler is supported");
-                }
-                ObjectStreamHandler osh = new RemoteResultsHandler(connection);
-                rv.add(StreamHandlerUtil.adaptFromObjectStreamHandler(paramType, osh));
-                firstStream = false;
-            } else {
-                rv.add(argIt.next());
-            }
+    private List<Object> populateStreamHandlers(DispatchTable.Invoker invoker,
+            List<Object> arguments, boolean syncCheckpoints, boolean resultBatches) {
+        int streamIndex = invoker.getStreamHandlerIndex();
+        if (streamIndex < 0) {
+            return arguments;
         }
+        List<Object> rv = new ArrayList<Object>(arguments.size() + 1);
+        rv.addAll(arguments.subList(0, streamIndex));
+        ObjectStreamHandler osh = new RemoteResultsHandler(this, resultBatches);
+        if (connectorServer.getUseResultsStaging()) {
+            staging = new ResultsStaging(osh, stagingBudget,
+                    connectorServer.getStagingMemoryLimit(),
+                    connectorServer.getStagingGlobalMemoryLimit(),
+                    connectorServer.getStagingDiskLimit(),
+                    connectorServer.getStagingGlobalDiskLimit());
+            osh = staging;
+        }
+        Class<?> streamHandlerType = invoker.getStreamHandlerType();
+        if (syncCheckpoints && streamHandlerType == SyncResultsHandler.class) {
+            // the client resumes a broken sync from the checkpoints
+            streamHandlerType = SyncCheckpointResultsHandler.class;
+        }
+        rv.add(StreamHandlerUtil.adaptFromObjectStreamHandler(streamHandlerType, osh));
+        rv.addAll(arguments.subList(streamIndex, arguments.size()));
         return rv;
     }
 
-    private APIOperation getAPIOperation(OperationRequest request) throws Exception {
-        ConnectorInfoManager manager = getConnectorInfoManager();
-        ConnectorInfo info = manager.findConnectorInfo(request.getConnectorKey());
-        if (info == null) {
-            throw new ConnectorException("No such connector: " + request.getConnectorKey() + " ");
-        }
+    private APIOperation getAPIOperation(DispatchTable table, OperationRequest request)
+            throws Exception {
+        ConnectorInfo info = table.getConnectorInfo(request.getConnectorKey());
         String connectorFacadeKey = request.getConnectorFacadeKey();
 
         ConnectorFacade facade =
@@ -330,6 +480,16 @@ public class ConnectionProcessor implements Runnable {
         return facade.getOperation(request.getOperation());
     }
 
+    /**
+     * Records that the client cancelled the running operation.
+     *
+     * @return the exception to abort the operation with.
+     */
+    private ConnectorException cancelled() {
+        cancelled = true;
+        return new ConnectorException("Operation cancelled by the client");
+    }
+
     private static class BrokenConnectionException extends ConnectorException {
 
         static final long serialVersionUID = 0L;
@@ -0,0 +1,199 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.server.impl;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.identityconnectors.framework.api.ConnectorInfo;
+import org.identityconnectors.framework.api.ConnectorInfoManager;
+import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.common.FrameworkUtil;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.impl.api.ConnectorInfoManagerFactoryImpl;
+import org.identityconnectors.framework.impl.api.StreamHandlerUtil;
+import org.identityconnectors.framework.server.ConnectorServer;
+
+/**
+ * Immutable table resolving the target of an operation request, built once
+ * from a {@link ConnectorInfoManager} and replaced as a whole when the bundles
+ * change, so that requests are dispatched without locking nor reflection.
+ */
+final class DispatchTable {
+
+    /**
+     * The method of an operation, ready to be invoked.
+     */
+    static final class Invoker {
+
+        private final Method method;
+
+        private final int streamHandlerIndex;
+
+        private final Class<?> streamHandlerType;
+
+        private final boolean multipleStreamHandlers;
+
+        Invoker(final Method method) {
+            this.method = method;
+            int index = -1;
+            int count = 0;
+            Class<?>[] paramTypes = method.getParameterTypes();
+            for (int i = 0; i < paramTypes.length; i++) {
+                if (StreamHandlerUtil.isAdaptableToObjectStreamHandler(paramTypes[i])) {
+                    if (index < 0) {
+                        index = i;
+                    }
+                    count++;
+                }
+            }
+            this.streamHandlerIndex = index;
+            this.streamHandlerType = index < 0 ? null : paramTypes[index];
+            this.multipleStreamHandlers = count > 1;
+        }
+
+        Method getMethod() {
+            return method;
+        }
+
+        /**
+         * Returns the index of the stream handler parameter, -1 if none.
+         */
+        int getStreamHandlerIndex() {
+            if (multipleStreamHandlers) {
+                throw new UnsupportedOperationException("At most one stream handler is supported");
+            }
+            return streamHandlerIndex;
+        }
+
+        Class<?> getStreamHandlerType() {
+            return streamHandlerType;
+        }
+    }
+
+    /**
+     * Methods of all the known operations by lower-cased name, null marking
+     * names which are not unique.
+     */
+    private static final Map<Class<? extends APIOperation>, Map<String, Invoker>> INVOKERS;
+
+    static {
+        Map<Class<? extends APIOperation>, Map<String, Invoker>> invokers =
+                new HashMap<Class<? extends APIOperation>, Map<String, Invoker>>();
+        for (Class<? extends APIOperation> operation : FrameworkUtil.allAPIOperations()) {
+            invokers.put(operation, buildInvokers(operation));
+        }
+        INVOKERS = Collections.unmodifiableMap(invokers);
+    }
+
+    private static Map<String, Invoker> buildInvokers(final Class<? extends APIOperation> operation) {
+        Map<String, Invoker> invokers = new HashMap<String, Invoker>();
+        for (Method method : operation.getDeclaredMethods()) {
+            String name = method.getName().toLowerCase(Locale.ENGLISH);
+            invokers.put(name, invokers.containsKey(name) ? null : new Invoker(method));
+        }
+        return Collections.unmodifiableMap(invokers);
+    }
+
+    /**
+     * Returns the current table of the server, replacing the one held by the
+     * reference first if the local managers changed since it was built.
+     */
+    static DispatchTable getCurrent(final AtomicReference<DispatchTable> current,
+            final ConnectorServer server) {
+        ConnectorInfoManagerFactoryImpl factory =
+                (ConnectorInfoManagerFactoryImpl) ConnectorInfoManagerFactory.getInstance();
+        // read the generation first, a change racing with the rebuild is
+        // caught by the next request
+        int generation = factory.getLocalManagerGeneration();
+        DispatchTable table = current.get();
+        while (table == null || table.generation != generation) {
+            DispatchTable update =
+                    new DispatchTable(generation, factory.getLocalManager(server.getBundleURLs(),
+                            server.getBundleParentClassLoader()));
+            if (current.compareAndSet(table, update)) {
+                return update;
+            }
+            table = current.get();
+        }
+        return table;
+    }
+
+    private final int generation;
+
+    private final ConnectorInfoManager manager;
+
+    private final Map<ConnectorKey, ConnectorInfo> connectorInfos;
+
+    DispatchTable(final int generation, final ConnectorInfoManager manager) {
+        this.generation = generation;
+        this.manager = manager;
+        Map<ConnectorKey, ConnectorInfo> infos = new HashMap<ConnectorKey, ConnectorInfo>();
+        for (ConnectorInfo info : manager.getConnectorInfos()) {
+            if (!infos.containsKey(info.getConnectorKey())) {
+                infos.put(info.getConnectorKey(), info);
+            }
+        }
+        this.connectorInfos = Collections.unmodifiableMap(infos);
+    }
+
+    /**
+     * Returns the generation of the local managers this table was built from.
+     */
+    int getGeneration() {
+        return generation;
+    }
+
+    ConnectorInfoManager getManager() {
+        return manager;
+    }
+
+    ConnectorInfo getConnectorInfo(final ConnectorKey key) {
+        ConnectorInfo info = connectorInfos.get(key);
+        if (info == null) {
+            throw new ConnectorException("No such connector: " + key + " ");
+        }
+        return info;
+    }
+
+    Invoker getInvoker(final Class<? extends APIOperation> operation, final String methodName) {
+        Map<String, Invoker> invokers = INVOKERS.get(operation);
+        if (invokers == null) {
+            // not a framework operation, resolve it the slow way
+            invokers = buildInvokers(operation);
+        }
+        Invoker invoker = invokers.get(methodName.toLowerCase(Locale.ENGLISH));
+        if (invoker == null) {
+            throw new ConnectorException("APIOperations are expected "
+                    + "to have exactly one method of a given name: " + operation);
+        }
+        return invoker;
+    }
+}
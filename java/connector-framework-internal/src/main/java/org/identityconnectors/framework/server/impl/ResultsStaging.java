@@ -0,0 +1,388 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.server.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+import org.identityconnectors.framework.impl.api.ObjectStreamHandler;
+import org.identityconnectors.framework.spi.OperationDeadline;
+
+/**
+ * Stages the results of a streaming operation on the server, so that the
+ * connector drains its backend cursor at full speed whatever the pace of the
+ * client.
+ * <p/>
+ * The results are kept in their binary form, in memory up to the memory limits
+ * and in a temporary file beyond them, while a separate thread streams them to
+ * the target handler in order. The connector only blocks once the disk limits
+ * are reached too.
+ */
+final class ResultsStaging implements ObjectStreamHandler, Runnable {
+
+    private static final Log LOG = Log.getLog(ResultsStaging.class);
+
+    /**
+     * Estimated memory overhead of a staged result besides its bytes.
+     */
+    private static final int RECORD_OVERHEAD = 32;
+
+    /**
+     * How long the connector waits before checking the global disk budget
+     * again, as it is released by the other connections.
+     */
+    private static final long BLOCKED_WAIT_MILLIS = 100;
+
+    /**
+     * The memory and disk used by the staging of all the connections of a
+     * server.
+     */
+    static final class Budget {
+
+        private final AtomicLong memory = new AtomicLong();
+
+        private final AtomicLong disk = new AtomicLong();
+
+        private static boolean reserve(AtomicLong used, long size, long limit) {
+            if (used.addAndGet(size) <= limit) {
+                return true;
+            }
+            used.addAndGet(-size);
+            return false;
+        }
+
+        long getMemory() {
+            return memory.get();
+        }
+
+        long getDisk() {
+            return disk.get();
+        }
+    }
+
+    private final ObjectStreamHandler target;
+
+    private final Budget budget;
+
+    private final long memoryLimit;
+
+    private final long globalMemoryLimit;
+
+    private final long diskLimit;
+
+    private final long globalDiskLimit;
+
+    private final LinkedList<byte[]> memory = new LinkedList<byte[]>();
+
+    private long memoryUsed;
+
+    /**
+     * The spill file, always holding results staged after those in memory.
+     */
+    private File file;
+
+    private DataOutputStream fileOutput;
+
+    private DataInputStream fileInput;
+
+    private long fileSize;
+
+    private long fileRecords;
+
+    private long flushedRecords;
+
+    private long readRecords;
+
+    /**
+     * Set once the connector produced all its results.
+     */
+    private boolean done;
+
+    /**
+     * Set once the target does not want more results.
+     */
+    private boolean stopped;
+
+    /**
+     * Set once the streaming thread ended.
+     */
+    private boolean finished;
+
+    /**
+     * The failure of the streaming thread.
+     */
+    private Throwable failure;
+
+    /**
+     * Creates the staging and starts streaming to the target.
+     *
+     * @param target
+     *            the handler to stream the results to, called by a single
+     *            thread.
+     * @param budget
+     *            the budget shared by the connections of the server.
+     * @param memoryLimit
+     *            the memory this staging may use.
+     * @param globalMemoryLimit
+     *            the memory the staging of all the connections may use.
+     * @param diskLimit
+     *            the disk this staging may use.
+     * @param globalDiskLimit
+     *            the disk the staging of all the connections may use.
+     */
+    ResultsStaging(ObjectStreamHandler target, Budget budget, long memoryLimit,
+            long globalMemoryLimit, long diskLimit, long globalDiskLimit) {
+        this.target = target;
+        this.budget = budget;
+        this.memoryLimit = memoryLimit;
+        this.globalMemoryLimit = globalMemoryLimit;
+        this.diskLimit = diskLimit;
+        this.globalDiskLimit = globalDiskLimit;
+        Thread thread = new Thread(this, "ResultsStaging-" + Thread.currentThread().getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public boolean handle(Object obj) {
+        OperationDeadline.checkExpired();
+        byte[] bytes = SerializerUtil.serializeBinaryObject(obj);
+        synchronized (this) {
+            while (true) {
+                if (failure != null) {
+                    throw rethrow(failure);
+                }
+                if (stopped) {
+                    return false;
+                }
+                if (stageInMemory(bytes) || stageOnDisk(bytes)) {
+                    notifyAll();
+                    return true;
+                }
+                try {
+                    wait(BLOCKED_WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw ConnectorException.wrap(e);
+                }
+                OperationDeadline.checkExpired();
+            }
+        }
+    }
+
+    /**
+     * Waits until the staged results are streamed, once the connector is
+     * done.
+     *
+     * @throws RuntimeException
+     *             the failure to stream the results.
+     */
+    void finish() {
+        synchronized (this) {
+            done = true;
+            notifyAll();
+            boolean interrupted = false;
+            while (!finished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // the results must be out before the response
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw rethrow(failure);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                byte[] bytes = next();
+                if (bytes == null) {
+                    break;
+                }
+                if (!target.handle(SerializerUtil.deserializeBinaryObject(bytes))) {
+                    synchronized (this) {
+                        stopped = true;
+                        discard();
+                        notifyAll();
+                    }
+                    break;
+                }
+            }
+        } catch (Throwable e) {
+            synchronized (this) {
+                failure = e;
+                discard();
+                notifyAll();
+            }
+        } finally {
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private boolean stageInMemory(byte[] bytes) {
+        // the memory holds the oldest results only
+        if (fileRecords > 0) {
+            return false;
+        }
+        long size = bytes.length + RECORD_OVERHEAD;
+        if (memoryUsed + size > memoryLimit
+                || !Budget.reserve(budget.memory, size, globalMemoryLimit)) {
+            return false;
+        }
+        memory.add(bytes);
+        memoryUsed += size;
+        return true;
+    }
+
+    private boolean stageOnDisk(byte[] bytes) {
+        long size = bytes.length + 4;
+        if (fileRecords > 0 && fileSize + size > diskLimit) {
+            return false;
+        }
+        if (!Budget.reserve(budget.disk, size, globalDiskLimit)) {
+            if (fileRecords > 0) {
+                return false;
+            }
+            // never block on a result exceeding the limits alone
+            budget.disk.addAndGet(size);
+        }
+        try {
+            if (fileOutput == null) {
+                file = File.createTempFile("staging", ".bin");
+                fileOutput = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(file)));
+                fileInput = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(file)));
+            }
+            fileOutput.writeInt(bytes.length);
+            fileOutput.write(bytes);
+        } catch (IOException e) {
+            throw new ConnectorIOException(e);
+        }
+        fileSize += size;
+        fileRecords++;
+        return true;
+    }
+
+    /**
+     * Gets the next staged result, waiting for the connector.
+     *
+     * @return the next result or null when all results are streamed.
+     */
+    private byte[] next() throws IOException, InterruptedException {
+        synchronized (this) {
+            while (memory.isEmpty() && readRecords == fileRecords && !done) {
+                wait();
+            }
+            if (!memory.isEmpty()) {
+                byte[] bytes = memory.removeFirst();
+                long size = bytes.length + RECORD_OVERHEAD;
+                memoryUsed -= size;
+                budget.memory.addAndGet(-size);
+                notifyAll();
+                return bytes;
+            }
+            if (readRecords == fileRecords) {
+                return null;
+            }
+            if (readRecords == flushedRecords) {
+                fileOutput.flush();
+                flushedRecords = fileRecords;
+            }
+        }
+        // only the flushed records are read, outside the lock
+        byte[] bytes = new byte[fileInput.readInt()];
+        fileInput.readFully(bytes);
+        synchronized (this) {
+            readRecords++;
+            if (readRecords == fileRecords) {
+                // start over with an empty file
+                deleteFile();
+                notifyAll();
+            }
+        }
+        return bytes;
+    }
+
+    private void discard() {
+        budget.memory.addAndGet(-memoryUsed);
+        memory.clear();
+        memoryUsed = 0;
+        deleteFile();
+    }
+
+    private void deleteFile() {
+        if (file != null) {
+            try {
+                fileOutput.close();
+                fileInput.close();
+            } catch (IOException e) {
+                LOG.warn(e, "Failed to close {0}", file);
+            }
+            if (!file.delete()) {
+                LOG.warn("Failed to delete {0}", file);
+            }
+            budget.disk.addAndGet(-fileSize);
+            file = null;
+            fileOutput = null;
+            fileInput = null;
+        }
+        fileSize = 0;
+        fileRecords = 0;
+        flushedRecords = 0;
+        readRecords = 0;
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw ConnectorException.wrap(e);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
+import org.identityconnectors.framework.impl.metrics.OperationMetrics;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CoalescingProxyTests {
+
+    private static final int THREADS = 4;
+
+    /**
+     * Blocks the calls until released.
+     */
+    private static class BlockingGet implements GetApiOp {
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        RuntimeException failure;
+
+        @Override
+        public ConnectorObject getObject(ObjectClass objectClass, Uid uid, OperationOptions options) {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return new ConnectorObjectBuilder().setUid(uid).setName(uid.getUidValue()).build();
+        }
+
+        @Override
+        public Set<Uid> getObjects(ObjectClass objectClass, Collection<Uid> uids,
+                ResultsHandler handler, OperationOptions options) {
+            calls.incrementAndGet();
+            return Collections.emptySet();
+        }
+    }
+
+    private OperationMetrics metrics;
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void before() {
+        metrics = MetricsRegistry.getConnectorMetrics(
+                new ConnectorKey("bundle", "1.0", "CoalescingProxyTests")).getOperation(
+                "GetApiOp");
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterMethod
+    public void after() {
+        executor.shutdownNow();
+        MetricsRegistry.reset();
+    }
+
+    private GetApiOp newProxy(GetApiOp target) {
+        return newProxy("facade", target);
+    }
+
+    private GetApiOp newProxy(String facadeKey, GetApiOp target) {
+        return (GetApiOp) Proxy.newProxyInstance(GetApiOp.class.getClassLoader(),
+                new Class<?>[] { GetApiOp.class }, new CoalescingProxy(facadeKey, target, metrics));
+    }
+
+    /**
+     * Starts identical calls, each with its own options, and waits until all
+     * but the first one are waiting for it.
+     */
+    private List<Future<ConnectorObject>> startCalls(final GetApiOp get) throws Exception {
+        List<Future<ConnectorObject>> rv = new ArrayList<Future<ConnectorObject>>();
+        for (int i = 0; i < THREADS; i++) {
+            rv.add(executor.submit(new Callable<ConnectorObject>() {
+                public ConnectorObject call() {
+                    OperationOptions options =
+                            new OperationOptionsBuilder().setAttributesToGet("a", "b").build();
+                    return get.getObject(ObjectClass.ACCOUNT, new Uid("1"), options);
+                }
+            }));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (metrics.getCoalesced() < THREADS - 1) {
+            assertTrue(System.currentTimeMillis() < deadline, "calls not coalesced");
+            Thread.sleep(10);
+        }
+        return rv;
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        BlockingGet target = new BlockingGet();
+        GetApiOp get = newProxy(target);
+        List<Future<ConnectorObject>> calls = startCalls(get);
+        target.release.countDown();
+
+        ConnectorObject first = calls.get(0).get();
+        for (Future<ConnectorObject> call : calls) {
+            assertSame(call.get(), first);
+        }
+        assertEquals(target.calls.get(), 1);
+
+        // once done, the next call executes again
+        assertEquals(get.getObject(ObjectClass.ACCOUNT, new Uid("1"), null).getUid(), new Uid("1"));
+        assertEquals(target.calls.get(), 2);
+        // calls streaming to a handler are not coalesced
+        get.getObjects(ObjectClass.ACCOUNT, Collections.singleton(new Uid("1")), null, null);
+        assertEquals(target.calls.get(), 3);
+        assertEquals(metrics.getCoalesced(), THREADS - 1);
+    }
+
+    @Test
+    public void testOtherConnectorNotCoalesced() throws Exception {
+        // the same configuration on two versions of a bundle
+        BlockingGet first = new BlockingGet();
+        BlockingGet second = new BlockingGet();
+        final GetApiOp firstGet = newProxy(AbstractConnectorFacade.qualifyKey(
+                new ConnectorKey("bundle", "1.0", "Connector"), "facade"), first);
+        final GetApiOp secondGet = newProxy(AbstractConnectorFacade.qualifyKey(
+                new ConnectorKey("bundle", "1.1", "Connector"), "facade"), second);
+        List<Future<ConnectorObject>> calls = new ArrayList<Future<ConnectorObject>>();
+        for (final GetApiOp get : Arrays.asList(firstGet, secondGet)) {
+            calls.add(executor.submit(new Callable<ConnectorObject>() {
+                public ConnectorObject call() {
+                    return get.getObject(ObjectClass.ACCOUNT, new Uid("1"), null);
+                }
+            }));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (first.calls.get() == 0 || second.calls.get() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "calls coalesced");
+            Thread.sleep(10);
+        }
+        first.release.countDown();
+        second.release.countDown();
+        for (Future<ConnectorObject> call : calls) {
+            assertEquals(call.get().getUid(), new Uid("1"));
+        }
+        assertEquals(metrics.getCoalesced(), 0);
+    }
+
+    @Test
+    public void testCoalesceFailure() throws Exception {
+        BlockingGet target = new BlockingGet();
+        target.failure = new IllegalArgumentException("failed");
+        List<Future<ConnectorObject>> calls = startCalls(newProxy(target));
+        target.release.countDown();
+
+        for (Future<ConnectorObject> call : calls) {
+            try {
+                call.get();
+                fail("expected failure");
+            } catch (ExecutionException e) {
+                assertSame(e.getCause(), target.failure);
+            }
+        }
+        assertEquals(target.calls.get(), 1);
+    }
+}
@@ -25,14 +25,20 @@ package org.identityconnectors.framework.impl.api;
 
 import static org.identityconnectors.framework.common.objects.ObjectClass.ACCOUNT;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.IOUtil;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.ConnectorFacade;
@@ -40,6 +46,7 @@ import org.identityconnectors.framework.api.ConnectorFacadeFactory;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.GetApiOp;
 import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.api.operations.SyncApiOp;
 import org.identityconnectors.framework.api.operations.UpdateApiOp;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
@@ -52,16 +59,22 @@ import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.ScriptContextBuilder;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SortKey;
 import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
 import org.identityconnectors.framework.common.objects.SyncResultsHandler;
 import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.mockconnector.MockAllOpsConnector;
 import org.identityconnectors.mockconnector.MockConfiguration;
 import org.identityconnectors.mockconnector.MockConnector;
 import org.identityconnectors.mockconnector.MockConnector.Call;
+import org.identityconnectors.mockconnector.MockNormalizingConnector;
 import org.identityconnectors.mockconnector.MockUpdateConnector;
 import org.identityconnectors.test.common.TestHelpers;
 import org.testng.annotations.BeforeMethod;
@@ -614,6 +627,127 @@ public class ConnectorFacadeTests {
         assertTrue(obj.getAttributeByName("does not exist") == null);
     }
 
+    @Test
+    public void syncEmulationTests() throws IOException {
+        File directory = File.createTempFile("snapshots", "");
+        directory.delete();
+        try {
+            APIConfiguration impl =
+                    TestHelpers.createTestConfiguration(MockUpdateConnector.class,
+                            new MockConfiguration(false));
+            ConnectorFacadeFactory factory = ConnectorFacadeFactory.getInstance();
+            assertFalse(factory.newInstance(impl).getSupportedOperations().contains(
+                    SyncApiOp.class));
+            impl.setSyncSnapshotDirectory(directory.getAbsolutePath());
+            ConnectorFacade facade = factory.newInstance(impl);
+            assertTrue(facade.getSupportedOperations().contains(SyncApiOp.class));
+
+            final List<SyncDelta> deltas = new ArrayList<SyncDelta>();
+            SyncResultsHandler handler = new SyncResultsHandler() {
+                public boolean handle(SyncDelta delta) {
+                    deltas.add(delta);
+                    return true;
+                }
+            };
+            SyncToken token = facade.sync(ACCOUNT, null, handler, null);
+            assertEquals(deltas.size(), 100);
+            deltas.clear();
+            facade.update(ACCOUNT, newUid(7), CollectionUtil.newSet(AttributeBuilder.build(
+                    "emulated", "sync")), null);
+            facade.sync(ACCOUNT, token, handler, null);
+            assertEquals(deltas.size(), 1);
+            assertEquals(deltas.get(0).getDeltaType(), SyncDeltaType.UPDATE);
+            assertEquals(deltas.get(0).getUid(), newUid(7));
+        } finally {
+            IOUtil.delete(directory);
+        }
+    }
+
+    @Test
+    public void sortingPagingEmulationTests() {
+        APIConfiguration impl =
+                TestHelpers.createTestConfiguration(MockUpdateConnector.class,
+                        new MockConfiguration(false));
+        ConnectorFacadeFactory factory = ConnectorFacadeFactory.getInstance();
+        Filter filter = FilterBuilder.startsWith(AttributeBuilder.build(Name.NAME, "1"));
+        OperationOptionsBuilder options = new OperationOptionsBuilder().setPageSize(4)
+                .setSortKeys(SortKey.descendingOrder(Name.NAME));
+        final List<String> names = new ArrayList<String>();
+        ResultsHandler handler = new ResultsHandler() {
+            public boolean handle(ConnectorObject obj) {
+                names.add(obj.getName().getNameValue());
+                return true;
+            }
+        };
+        try {
+            factory.newInstance(impl).search(ACCOUNT, filter, handler, options.build());
+            fail("paging is refused with the filtered results handler");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        impl.getResultsHandlerConfiguration().setEnableSortingPagingEmulation(true);
+        ConnectorFacade facade = factory.newInstance(impl);
+        SearchResult result = facade.search(ACCOUNT, filter, handler, options.build());
+        assertEquals(names, CollectionUtil.newList("19", "18", "17", "16"));
+        assertEquals(result.getRemainingPagedResults(), 7);
+        final String firstCookie = result.getPagedResultsCookie();
+        names.clear();
+        options.setPagedResultsCookie(result.getPagedResultsCookie());
+        result = facade.search(ACCOUNT, filter, handler, options.build());
+        assertEquals(names, CollectionUtil.newList("15", "14", "13", "12"));
+        names.clear();
+        options.setPagedResultsCookie(result.getPagedResultsCookie());
+        result = facade.search(ACCOUNT, filter, handler, options.build());
+        assertEquals(names, CollectionUtil.newList("11", "10", "1"));
+        assertEquals(result.getPagedResultsCookie(), null);
+
+        // a new first page runs the search again
+        facade.update(ACCOUNT, newUid(19), CollectionUtil.newSet(AttributeBuilder.build(
+                Name.NAME, "199")), null);
+        facade.update(ACCOUNT, newUid(12), CollectionUtil.newSet(AttributeBuilder.build(
+                Name.NAME, "100")), null);
+        try {
+            names.clear();
+            result = facade.search(ACCOUNT, filter, handler, new OperationOptionsBuilder()
+                    .setPageSize(4).setSortKeys(SortKey.descendingOrder(Name.NAME)).build());
+            assertEquals(names, CollectionUtil.newList("199", "18", "17", "16"));
+
+            // each cookie is served by the results which issued it
+            names.clear();
+            options.setPagedResultsCookie(result.getPagedResultsCookie());
+            facade.search(ACCOUNT, filter, handler, options.build());
+            assertEquals(names, CollectionUtil.newList("15", "14", "13", "11"));
+            names.clear();
+            options.setPagedResultsCookie(firstCookie);
+            facade.search(ACCOUNT, filter, handler, options.build());
+            assertEquals(names, CollectionUtil.newList("15", "14", "13", "12"));
+        } finally {
+            facade.update(ACCOUNT, newUid(19), CollectionUtil.newSet(AttributeBuilder.build(
+                    Name.NAME, "19")), null);
+            facade.update(ACCOUNT, newUid(12), CollectionUtil.newSet(AttributeBuilder.build(
+                    Name.NAME, "12")), null);
+        }
+    }
+
+    @Test
+    public void getObjectsNormalizedTests() {
+        APIConfiguration impl = TestHelpers.createTestConfiguration(
+                MockNormalizingConnector.class, new MockConfiguration(false));
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(impl);
+        final List<Uid> found = new ArrayList<Uid>();
+        // the requested uids are matched as normalized by the connector
+        Set<Uid> missing = facade.getObjects(ACCOUNT, Arrays.asList(new Uid("007"),
+                new Uid("12"), new Uid("x")), new ResultsHandler() {
+            public boolean handle(ConnectorObject obj) {
+                found.add(obj.getUid());
+                return true;
+            }
+        }, null);
+        assertEquals(found, Arrays.asList(newUid(7), newUid(12)));
+        assertEquals(missing, CollectionUtil.newSet(new Uid("x")));
+    }
+
     static Uid newUid(int id) {
         return new Uid(Integer.toString(id));
     }
@@ -26,7 +26,10 @@ package org.identityconnectors.framework.impl.api;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.identityconnectors.common.IOUtil.makeURL;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -35,6 +38,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -43,12 +47,17 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.Version;
 import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.AsyncConnectorFacade;
 import org.identityconnectors.framework.api.ConfigurationProperties;
 import org.identityconnectors.framework.api.ConfigurationProperty;
 import org.identityconnectors.framework.api.ConnectorFacade;
@@ -56,7 +65,11 @@ import org.identityconnectors.framework.api.ConnectorFacadeFactory;
 import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
 import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.OperationFuture;
+import org.identityconnectors.framework.api.ResultsSubscriber;
+import org.identityconnectors.framework.api.ResultsSubscription;
 import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
 import org.identityconnectors.framework.api.operations.SearchApiOp;
 import org.identityconnectors.framework.api.operations.SyncApiOp;
@@ -68,12 +81,18 @@ import org.identityconnectors.framework.common.exceptions.PreconditionRequiredEx
 import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.BatchAwareResultsHandler;
+import org.identityconnectors.framework.common.objects.BatchAwareSyncResultsHandler;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
+import org.identityconnectors.framework.common.objects.BatchResultsHandler;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.Name;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Schema;
 import org.identityconnectors.framework.common.objects.ScriptContextBuilder;
 import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.common.objects.SortKey;
@@ -85,7 +104,11 @@ import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
 import org.identityconnectors.framework.impl.api.local.ConnectorPoolManager;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorFacadeImpl;
+import org.identityconnectors.framework.impl.api.remote.RemoteConnectorFacadeImpl;
+import org.identityconnectors.framework.impl.metrics.ConnectorMetrics;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
 import org.identityconnectors.framework.impl.api.remote.RemoteWrappedException;
+import org.identityconnectors.framework.spi.SyncCheckpointResultsHandler;
 import org.testng.annotations.AfterTest;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
@@ -93,7 +116,7 @@ import org.testng.annotations.Test;
 
 public abstract class ConnectorInfoManagerTestBase {
 
-    private static ConnectorInfo findConnectorInfo(ConnectorInfoManager manager, String version,
+    protected static ConnectorInfo findConnectorInfo(ConnectorInfoManager manager, String version,
             String connectorName) {
         for (ConnectorInfo info : manager.getConnectorInfos()) {
             ConnectorKey key = info.getConnectorKey();
@@ -373,6 +396,113 @@ public abstract class ConnectorInfoManagerTestBase {
         }
     }
 
+    @Test
+    public void testGetObjects() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 10);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        // spans several searches, with duplicates and unknown uids
+        List<Uid> uids = new ArrayList<Uid>();
+        for (int i = 0; i < 250; i++) {
+            uids.add(new Uid(String.valueOf(i * 3 % 250)));
+        }
+        uids.add(new Uid("3"));
+        final List<String> found = new ArrayList<String>();
+        Set<Uid> missing = facade.getObjects(ObjectClass.ACCOUNT, uids, new ResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject obj) {
+                found.add(obj.getUid().getUidValue());
+                return true;
+            }
+        }, null);
+        assertEquals(new HashSet<String>(found), CollectionUtil.newSet("0", "1", "2", "3", "4",
+                "5", "6", "7", "8", "9"));
+        assertEquals(found.size(), 10);
+        assertEquals(missing.size(), 240);
+        assertFalse(missing.contains(new Uid("3")));
+        assertTrue(missing.contains(new Uid("10")));
+
+        // stopping reports the rest as not found
+        missing = facade.getObjects(ObjectClass.ACCOUNT, uids, new ResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject obj) {
+                return false;
+            }
+        }, null);
+        assertEquals(missing.size(), 249);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+        assertTrue(facade.getSupportedOperations().contains(BatchApiOp.class));
+
+        List<BatchOperation> operations = new ArrayList<BatchOperation>();
+        for (int i = 0; i < 3; i++) {
+            operations.add(new BatchOperation(BatchOperation.Type.CREATE, ObjectClass.ACCOUNT,
+                    null, CollectionUtil.<Attribute> newSet(new Name("user" + i))));
+        }
+        // the connector cannot delete, the failure is reported, not thrown
+        operations.add(new BatchOperation(BatchOperation.Type.DELETE, ObjectClass.ACCOUNT,
+                new Uid("user0"), null));
+        operations.add(new BatchOperation(BatchOperation.Type.CREATE, ObjectClass.ACCOUNT,
+                null, CollectionUtil.<Attribute> newSet(new Name("user3"))));
+        final List<BatchResult> results = new ArrayList<BatchResult>();
+        facade.executeBatch(operations, new BatchResultsHandler() {
+            @Override
+            public boolean handle(BatchResult result) {
+                results.add(result);
+                return true;
+            }
+        }, null);
+
+        assertEquals(results.size(), 5);
+        for (int i = 0; i < results.size(); i++) {
+            BatchResult result = results.get(i);
+            assertEquals(result.getIndex(), i);
+            if (i == 3) {
+                assertFalse(result.isSuccess());
+                assertNotNull(result.getException().getMessage());
+            } else {
+                assertTrue(result.isSuccess());
+                assertEquals(result.getUid().getUidValue(), "1.0");
+            }
+        }
+
+        // the creations excluded from the configuration are reported as failed
+        Set<Class<? extends APIOperation>> supported =
+                new HashSet<Class<? extends APIOperation>>(api.getSupportedOperations());
+        supported.remove(CreateApiOp.class);
+        ((APIConfigurationImpl) api).setSupportedOperations(supported);
+        facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+        results.clear();
+        facade.executeBatch(operations, new BatchResultsHandler() {
+            @Override
+            public boolean handle(BatchResult result) {
+                results.add(result);
+                return true;
+            }
+        }, null);
+        assertEquals(results.size(), 5);
+        for (BatchResult result : results) {
+            assertFalse(result.isSuccess());
+            if (result.getIndex() != 3) {
+                assertTrue(result.getException().getMessage().contains(
+                        CreateApiOp.class.getName()));
+            }
+        }
+    }
+
     @Test
     public void testSearchStress() throws Exception {
         ConnectorInfoManager manager = getConnectorInfoManager();
@@ -400,6 +530,89 @@ public abstract class ConnectorInfoManagerTestBase {
         System.out.println("Test took: " + (end - start) / 1000);
     }
 
+    @Test
+    public void testObjectCache() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 10);
+        api.getObjectCacheConfiguration().setEnabled(ObjectClass.ACCOUNT, true);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+        ConnectorMetrics metrics = MetricsRegistry.getConnectorMetrics(info.getConnectorKey());
+        long hits = metrics.getObjectCacheHits();
+
+        ConnectorObject object = facade.getObject(ObjectClass.ACCOUNT, new Uid("1"), null);
+        assertNotNull(object);
+        assertSame(facade.getObject(ObjectClass.ACCOUNT, new Uid("1"), null), object);
+        final List<ConnectorObject> found = new ArrayList<ConnectorObject>();
+        facade.search(ObjectClass.ACCOUNT, FilterBuilder.equalTo(new Uid("1")),
+                new ResultsHandler() {
+                    public boolean handle(ConnectorObject obj) {
+                        found.add(obj);
+                        return true;
+                    }
+                }, null);
+        assertEquals(found.size(), 1);
+        assertSame(found.get(0), object);
+        assertEquals(metrics.getObjectCacheHits(), hits + 2);
+
+        // other object classes are not cached
+        assertNotSame(facade.getObject(ObjectClass.GROUP, new Uid("1"), null), facade
+                .getObject(ObjectClass.GROUP, new Uid("1"), null));
+
+        // the sync deltas drop the objects
+        facade.sync(ObjectClass.ACCOUNT, null, new SyncResultsHandler() {
+            public boolean handle(SyncDelta delta) {
+                return true;
+            }
+        }, null);
+        ConnectorObject fetched = facade.getObject(ObjectClass.ACCOUNT, new Uid("1"), null);
+        assertNotSame(fetched, object);
+        assertEquals(fetched, object);
+        assertSame(facade.getObject(ObjectClass.ACCOUNT, new Uid("1"), null), fetched);
+    }
+
+    @Test
+    public void testSchemaCache() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+
+        ConnectorFacadeFactory factory = ConnectorFacadeFactory.getInstance();
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.setSchemaCacheTimeToLiveMillis(5 * 60 * 1000);
+        ConnectorFacade facade = factory.newInstance(api);
+
+        Schema schema = facade.schema();
+        assertSame(facade.schema(), schema);
+
+        factory.invalidateSchema(facade);
+        Schema fetched = facade.schema();
+        assertNotSame(fetched, schema);
+        assertEquals(fetched, schema);
+
+        api.setSchemaCacheTimeToLiveMillis(1);
+        facade = factory.newInstance(api);
+        fetched = facade.schema();
+        Thread.sleep(10);
+        // expired, a remote facade keeps the schema which did not change
+        Schema again = facade.schema();
+        assertEquals(again, schema);
+        if (facade instanceof RemoteConnectorFacadeImpl) {
+            assertSame(again, fetched);
+        } else {
+            assertNotSame(again, fetched);
+        }
+
+        // not cached by default
+        facade = factory.newInstance(info.createDefaultAPIConfiguration());
+        assertNotSame(facade.schema(), facade.schema());
+    }
+
     // @Test(groups = {"broken"}, threadPoolSize = 4, invocationCount = 1000,
     // timeOut = 1000)
     public void testSchemaStress() throws Exception {
@@ -504,6 +717,308 @@ public abstract class ConnectorInfoManagerTestBase {
         }
     }
 
+    @Test
+    public void testSyncDispatch() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 1000);
+        api.getResultsHandlerConfiguration().setSyncDispatchThreads(4);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        final Set<String> uids = Collections.synchronizedSet(new HashSet<String>());
+        SyncToken token = facade.sync(ObjectClass.ACCOUNT, null, new SyncResultsHandler() {
+            public boolean handle(SyncDelta delta) {
+                uids.add(delta.getUid().getUidValue());
+                return true;
+            }
+        }, null);
+
+        assertEquals(token, new SyncToken(0));
+        assertEquals(uids.size(), 1000);
+    }
+
+    @Test
+    public void testSyncCheckpoints() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 250);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        final List<SyncToken> checkpoints = new ArrayList<SyncToken>();
+        facade.sync(ObjectClass.ACCOUNT, null, new SyncCheckpointResultsHandler() {
+            public boolean handle(SyncDelta delta) {
+                return true;
+            }
+
+            public void handleCheckpoint(SyncToken checkpoint) {
+                checkpoints.add(checkpoint);
+            }
+        }, null);
+
+        assertEquals(checkpoints, Arrays.asList(new SyncToken(99), new SyncToken(199)));
+    }
+
+    /**
+     * Records the batches of a search.
+     */
+    private static class BatchRecorder implements BatchAwareResultsHandler {
+
+        private final int maxBatches;
+
+        final List<Integer> batches = new ArrayList<Integer>();
+
+        final List<String> uids = new ArrayList<String>();
+
+        BatchRecorder(int maxBatches) {
+            this.maxBatches = maxBatches;
+        }
+
+        public boolean handle(ConnectorObject obj) {
+            return handleBatch(Collections.singletonList(obj));
+        }
+
+        public boolean handleBatch(List<ConnectorObject> objects) {
+            batches.add(objects.size());
+            for (ConnectorObject obj : objects) {
+                uids.add(obj.getUid().getUidValue());
+            }
+            return batches.size() < maxBatches;
+        }
+    }
+
+    /**
+     * Records the batches and the checkpoints of a sync.
+     */
+    private static class SyncBatchRecorder
+            implements BatchAwareSyncResultsHandler, SyncCheckpointResultsHandler {
+
+        final BatchRecorder recorder = new BatchRecorder(Integer.MAX_VALUE);
+
+        final List<SyncToken> checkpoints = new ArrayList<SyncToken>();
+
+        public boolean handle(SyncDelta delta) {
+            return handleBatch(Collections.singletonList(delta));
+        }
+
+        public boolean handleBatch(List<SyncDelta> deltas) {
+            List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+            for (SyncDelta delta : deltas) {
+                objects.add(delta.getObject());
+            }
+            return recorder.handleBatch(objects);
+        }
+
+        public void handleCheckpoint(SyncToken checkpoint) {
+            checkpoints.add(checkpoint);
+        }
+    }
+
+    @Test
+    public void testSearchBatches() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 1000);
+        api.getConfigurationProperties().setPropertyValue("batchSize", 100);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        // the batches of the connector get through intact
+        BatchRecorder recorder = new BatchRecorder(Integer.MAX_VALUE);
+        facade.search(ObjectClass.ACCOUNT, null, recorder, null);
+        assertEquals(recorder.batches, Collections.nCopies(10, 100));
+        assertEquals(recorder.uids.size(), 1000);
+        for (int i = 0; i < recorder.uids.size(); i++) {
+            assertEquals(recorder.uids.get(i), String.valueOf(i));
+        }
+
+        recorder = new BatchRecorder(3);
+        facade.search(ObjectClass.ACCOUNT, null, recorder, null);
+        assertEquals(recorder.batches, Collections.nCopies(3, 100));
+
+        // handlers of single objects get them one at a time
+        final List<ConnectorObject> results = new ArrayList<ConnectorObject>();
+        facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+            public boolean handle(ConnectorObject obj) {
+                results.add(obj);
+                return results.size() < 150;
+            }
+        }, null);
+        assertEquals(results.size(), 150);
+        assertEquals(results.get(149).getUid().getUidValue(), "149");
+    }
+
+    @Test
+    public void testSyncBatches() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 250);
+        api.getConfigurationProperties().setPropertyValue("batchSize", 30);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        SyncBatchRecorder recorder = new SyncBatchRecorder();
+        facade.sync(ObjectClass.ACCOUNT, null, recorder, null);
+        List<Integer> expected = new ArrayList<Integer>(Collections.nCopies(8, 30));
+        expected.add(10);
+        assertEquals(recorder.recorder.batches, expected);
+        assertEquals(recorder.recorder.uids.get(249), "249");
+        // a checkpoint once the batch crossing every hundred deltas is handled
+        assertEquals(recorder.checkpoints, Arrays.asList(new SyncToken(119), new SyncToken(209)));
+    }
+
+    /**
+     * Requests a number of results, then the remaining ones, and records any
+     * result it did not request.
+     */
+    private static class TestSubscriber<T, R> implements ResultsSubscriber<T, R> {
+
+        private final int firstRequest;
+
+        private volatile long requested = 0;
+
+        final List<T> results = Collections.synchronizedList(new ArrayList<T>());
+
+        final CountDownLatch firstResults;
+
+        final CountDownLatch complete = new CountDownLatch(1);
+
+        volatile boolean unrequested = false;
+
+        volatile ResultsSubscription subscription;
+
+        volatile R outcome;
+
+        TestSubscriber(int firstRequest) {
+            this.firstRequest = firstRequest;
+            firstResults = new CountDownLatch(firstRequest);
+        }
+
+        public void onSubscribe(ResultsSubscription subscription) {
+            this.subscription = subscription;
+            request(firstRequest);
+        }
+
+        void request(long n) {
+            requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+            subscription.request(n);
+        }
+
+        public void onNext(T result) {
+            if (results.size() >= requested) {
+                unrequested = true;
+            }
+            results.add(result);
+            firstResults.countDown();
+        }
+
+        public void onComplete(R outcome) {
+            this.outcome = outcome;
+            complete.countDown();
+        }
+
+        public void onError(RuntimeException error) {
+            complete.countDown();
+        }
+    }
+
+    @Test
+    public void testAsyncOperations() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 1000);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            AsyncConnectorFacade async =
+                    ConnectorFacadeFactory.getInstance().newAsyncInstance(facade, executor);
+
+            // more operations than threads
+            List<OperationFuture<Uid>> creates = new ArrayList<OperationFuture<Uid>>();
+            OperationOptions options = new OperationOptionsBuilder().setOption("delay", 50).build();
+            for (int i = 0; i < 8; i++) {
+                creates.add(async.create(ObjectClass.ACCOUNT,
+                        CollectionUtil.<Attribute> newReadOnlySet(), options));
+            }
+            final CountDownLatch listened = new CountDownLatch(creates.size());
+            for (OperationFuture<Uid> create : creates) {
+                create.addListener(new Runnable() {
+                    public void run() {
+                        listened.countDown();
+                    }
+                });
+            }
+            Uid expected = facade.create(ObjectClass.ACCOUNT,
+                    CollectionUtil.<Attribute> newReadOnlySet(), null);
+            for (OperationFuture<Uid> create : creates) {
+                assertEquals(create.get(10, TimeUnit.SECONDS), expected);
+            }
+            assertTrue(listened.await(10, TimeUnit.SECONDS));
+
+            // the connector waits for the subscriber to request more results
+            TestSubscriber<ConnectorObject, SearchResult> subscriber =
+                    new TestSubscriber<ConnectorObject, SearchResult>(10);
+            async.search(ObjectClass.ACCOUNT, null, null, subscriber);
+            assertTrue(subscriber.firstResults.await(10, TimeUnit.SECONDS));
+            assertEquals(subscriber.complete.getCount(), 1);
+
+            // waiting searches hold none of the threads of the executor
+            TestSubscriber<ConnectorObject, SearchResult> held =
+                    new TestSubscriber<ConnectorObject, SearchResult>(1);
+            async.search(ObjectClass.ACCOUNT, null, null, held);
+            assertTrue(held.firstResults.await(10, TimeUnit.SECONDS));
+            assertEquals(async.create(ObjectClass.ACCOUNT,
+                    CollectionUtil.<Attribute> newReadOnlySet(), null).get(10, TimeUnit.SECONDS),
+                    expected);
+            held.subscription.cancel();
+
+            subscriber.request(Long.MAX_VALUE);
+            assertTrue(subscriber.complete.await(10, TimeUnit.SECONDS));
+            assertFalse(subscriber.unrequested);
+            assertEquals(subscriber.results.size(), 1000);
+            assertEquals(subscriber.results.get(999).getUid().getUidValue(), "999");
+            assertEquals(subscriber.outcome.getRemainingPagedResults(), 0);
+
+            // a cancelled subscription gets nothing more
+            subscriber = new TestSubscriber<ConnectorObject, SearchResult>(300);
+            async.search(ObjectClass.ACCOUNT, null, null, subscriber);
+            assertTrue(subscriber.firstResults.await(10, TimeUnit.SECONDS));
+            subscriber.subscription.cancel();
+            subscriber.subscription.request(Long.MAX_VALUE);
+
+            // nothing reaches the cancelled search while a sync runs
+            TestSubscriber<SyncDelta, SyncToken> syncSubscriber =
+                    new TestSubscriber<SyncDelta, SyncToken>(Integer.MAX_VALUE);
+            async.sync(ObjectClass.ACCOUNT, null, null, syncSubscriber);
+            assertTrue(syncSubscriber.complete.await(10, TimeUnit.SECONDS));
+            assertEquals(syncSubscriber.results.size(), 1000);
+            assertEquals(syncSubscriber.outcome, new SyncToken(0));
+
+            assertFalse(subscriber.unrequested);
+            assertEquals(subscriber.results.size(), 300);
+            assertEquals(subscriber.complete.getCount(), 1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test(dataProvider = "statefulConnectors")
     public void testSyncTokenResults(ConnectorFacade facade) {
         Uid uid =
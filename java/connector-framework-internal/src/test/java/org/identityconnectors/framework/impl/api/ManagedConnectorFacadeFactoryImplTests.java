@@ -0,0 +1,134 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.impl.api.ManagedConnectorFacadeFactoryImpl.CacheStatistics;
+import org.identityconnectors.mockconnector.MockAllOpsConnector;
+import org.identityconnectors.mockconnector.MockConfiguration;
+import org.identityconnectors.mockconnector.MockConnector;
+import org.identityconnectors.test.common.TestHelpers;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class ManagedConnectorFacadeFactoryImplTests {
+
+    @AfterMethod
+    public void cleanup() {
+        ConnectorFacadeFactory.getManagedInstance().dispose();
+        ManagedConnectorFacadeFactoryImpl.setMaxSize(1000);
+        ManagedConnectorFacadeFactoryImpl.setIdleTimeout(1, TimeUnit.HOURS);
+    }
+
+    private ConnectorFacade newFacade(int timeout) {
+        APIConfiguration config =
+                TestHelpers.createTestConfiguration(MockAllOpsConnector.class,
+                        new MockConfiguration(false));
+        // distinct configurations get distinct facades
+        config.setTimeout(GetApiOp.class, timeout);
+        return ConnectorFacadeFactory.getManagedInstance().newInstance(config);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        ManagedConnectorFacadeFactoryImpl.setMaxSize(2);
+        CacheStatistics before = ManagedConnectorFacadeFactoryImpl.getCacheStatistics();
+        ConnectorFacade first = newFacade(1);
+        ConnectorFacade second = newFacade(2);
+        Thread.sleep(1);
+        assertSame(newFacade(1), first);
+        newFacade(3);
+        CacheStatistics after = ManagedConnectorFacadeFactoryImpl.getCacheStatistics();
+        assertEquals(after.getSize(), 2);
+        assertEquals(after.getNumHits() - before.getNumHits(), 1);
+        assertEquals(after.getNumMisses() - before.getNumMisses(), 3);
+        assertEquals(after.getNumEvictions() - before.getNumEvictions(), 1);
+        // the second one was evicted
+        assertSame(newFacade(1), first);
+        assertNotSame(newFacade(2), second);
+    }
+
+    @Test
+    public void testIdleEvicted() throws Exception {
+        ConnectorFacade first = newFacade(1);
+        assertSame(newFacade(1), first);
+        ManagedConnectorFacadeFactoryImpl.setIdleTimeout(1, TimeUnit.MILLISECONDS);
+        Thread.sleep(10);
+        CacheStatistics before = ManagedConnectorFacadeFactoryImpl.getCacheStatistics();
+        assertNotSame(newFacade(1), first);
+        CacheStatistics after = ManagedConnectorFacadeFactoryImpl.getCacheStatistics();
+        assertEquals(after.getNumEvictions() - before.getNumEvictions(), 1);
+        assertEquals(after.getSize(), 1);
+    }
+
+    @Test
+    public void testUsedFacadeNotIdle() throws Exception {
+        ConnectorFacade first = newFacade(10000);
+        ManagedConnectorFacadeFactoryImpl.setIdleTimeout(300, TimeUnit.MILLISECONDS);
+        try {
+            // the application keeps using the facade without looking it up
+            long end = System.currentTimeMillis() + 1000;
+            while (System.currentTimeMillis() < end) {
+                first.getObject(ObjectClass.ACCOUNT, new Uid("0"), null);
+                newFacade(20000);
+                Thread.sleep(10);
+            }
+            assertSame(newFacade(10000), first);
+        } finally {
+            MockConnector.reset();
+        }
+    }
+
+    @Test
+    public void testEvictedInUseDisposedOnceIdle() throws Exception {
+        ManagedConnectorFacadeFactoryImpl.setMaxSize(1);
+        ManagedConnectorFacadeFactoryImpl.setIdleTimeout(300, TimeUnit.MILLISECONDS);
+        try {
+            ConnectorFacade first = newFacade(10000);
+            first.getObject(ObjectClass.ACCOUNT, new Uid("0"), null);
+            newFacade(20000);
+            CacheStatistics stats = ManagedConnectorFacadeFactoryImpl.getCacheStatistics();
+            assertEquals(stats.getSize(), 1);
+            assertEquals(stats.getNumPendingDisposal(), 1);
+
+            Thread.sleep(400);
+            newFacade(20000);
+            assertEquals(ManagedConnectorFacadeFactoryImpl.getCacheStatistics()
+                    .getNumPendingDisposal(), 0);
+        } finally {
+            MockConnector.reset();
+        }
+    }
+}
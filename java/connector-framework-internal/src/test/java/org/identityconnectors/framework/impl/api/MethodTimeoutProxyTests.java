@@ -0,0 +1,165 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.identityconnectors.framework.spi.OperationDeadline;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class MethodTimeoutProxyTests {
+
+    public interface Operation {
+
+        Thread run(long sleepMillis) throws Exception;
+    }
+
+    /**
+     * Sleeps, or busy waits checking the deadline if not given a duration.
+     */
+    private static class SlowOperation implements Operation {
+
+        @Override
+        public Thread run(long sleepMillis) throws Exception {
+            assertTrue(OperationDeadline.isSet());
+            if (sleepMillis > 0) {
+                Thread.sleep(sleepMillis);
+            } else {
+                while (true) {
+                    OperationDeadline.checkExpired();
+                    Thread.yield();
+                }
+            }
+            return Thread.currentThread();
+        }
+    }
+
+    private static Operation newProxy(long timeoutMillis) {
+        return (Operation) Proxy.newProxyInstance(Operation.class.getClassLoader(),
+                new Class<?>[] { Operation.class }, new MethodTimeoutProxy(new SlowOperation(),
+                        timeoutMillis));
+    }
+
+    @AfterMethod
+    public void cleanup() {
+        MethodTimeoutProxy.setMode(MethodTimeoutProxy.Mode.EXECUTOR);
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        MethodTimeoutProxy.setMode(MethodTimeoutProxy.Mode.EXECUTOR);
+        assertFalse(newProxy(5000).run(1) == Thread.currentThread());
+        assertTimeout(newProxy(50), 5000);
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        MethodTimeoutProxy.setMode(MethodTimeoutProxy.Mode.INTERRUPT);
+        Operation operation = newProxy(5000);
+        for (int i = 0; i < 100; i++) {
+            assertSame(operation.run(1), Thread.currentThread());
+        }
+        long start = System.currentTimeMillis();
+        assertTimeout(newProxy(50), 5000);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        // the interruption must not leak to the caller
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertNull(OperationDeadline.getDeadlineNanos());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        MethodTimeoutProxy.setMode(MethodTimeoutProxy.Mode.DEADLINE);
+        assertSame(newProxy(5000).run(1), Thread.currentThread());
+        long start = System.currentTimeMillis();
+        assertTimeout(newProxy(50), 0);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        // a late operation which completed may have changed the resource, so
+        // it is not failed
+        start = System.currentTimeMillis();
+        assertSame(newProxy(50).run(200), Thread.currentThread());
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertNull(OperationDeadline.getDeadlineNanos());
+    }
+
+    @Test
+    public void testNestedDeadline() throws Exception {
+        MethodTimeoutProxy.setMode(MethodTimeoutProxy.Mode.DEADLINE);
+        long outer = System.nanoTime() + 1000000L;
+        OperationDeadline.setDeadlineNanos(outer);
+        try {
+            assertTimeout(newProxy(5000), 0);
+            assertEquals(OperationDeadline.getDeadlineNanos(), Long.valueOf(outer));
+        } finally {
+            OperationDeadline.setDeadlineNanos(null);
+        }
+    }
+
+    @Test
+    public void testTimerTrigger() throws Exception {
+        final AtomicBoolean triggered = new AtomicBoolean();
+        DeadlineTimer.Entry entry = DeadlineTimer.schedule(System.nanoTime() + 60000000000L,
+                new DeadlineTimer.Trigger() {
+                    @Override
+                    public boolean isTriggered() {
+                        return triggered.get();
+                    }
+                });
+        assertFalse(DeadlineTimer.isExpired());
+        triggered.set(true);
+        try {
+            Thread.sleep(5000);
+            fail("expected interruption");
+        } catch (InterruptedException e) {
+            // expected
+        }
+        assertTrue(DeadlineTimer.isExpired());
+        assertFalse(DeadlineTimer.cancel(entry));
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertFalse(DeadlineTimer.isExpired());
+
+        entry = DeadlineTimer.schedule(System.nanoTime() + 60000000000L);
+        assertFalse(DeadlineTimer.isExpired());
+        assertTrue(DeadlineTimer.cancel(entry));
+    }
+
+    private static void assertTimeout(Operation operation, long sleepMillis) throws Exception {
+        try {
+            operation.run(sleepMillis);
+            fail("expected timeout");
+        } catch (OperationTimeoutException e) {
+            // expected
+        }
+    }
+}
@@ -25,15 +25,29 @@ package org.identityconnectors.framework.impl.api;
 
 import java.net.InetAddress;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
 import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo.Compression;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoManagerImpl;
+import org.identityconnectors.framework.impl.api.remote.RemoteOperationInvocationHandler;
+import org.identityconnectors.framework.impl.api.remote.RemoteWrappedException;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
 import org.identityconnectors.framework.server.ConnectorServer;
 import org.testng.Assert;
@@ -97,4 +111,137 @@ public class RemoteConnectorInfoManagerClearTests extends ConnectorInfoManagerTe
         Assert.assertNotNull(mgr.getServerInfo().get(HelloResponse.SERVER_START_TIME));
         Assert.assertEquals(mgr.getConnectorKeys().size(),4);
     }
+
+    @Test
+    public void testCompressedOperations() throws Exception {
+        getConnectorInfoManager();
+        for (Compression compression : new Compression[] { Compression.FAST, Compression.HIGH }) {
+            RemoteConnectorInfoManagerImpl mgr =
+                    new RemoteConnectorInfoManagerImpl(new RemoteFrameworkConnectionInfo(
+                            "127.0.0.1", PORT, new GuardedString("changeit".toCharArray()),
+                            false, null, 0, compression));
+            Assert.assertTrue(mgr.isCompressionSupported());
+            Assert.assertNull(mgr.getServerInfo().get(HelloResponse.COMPRESSION));
+            ConnectorInfo info = findConnectorInfo(mgr, "1.0.0.0",
+                    "org.identityconnectors.testconnector.TstConnector");
+            APIConfiguration api = info.createDefaultAPIConfiguration();
+            api.getConfigurationProperties().setPropertyValue("numResults", 1000);
+            ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+            final List<ConnectorObject> results = new ArrayList<ConnectorObject>();
+            facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                @Override
+                public boolean handle(ConnectorObject obj) {
+                    results.add(obj);
+                    return true;
+                }
+            }, null);
+            Assert.assertEquals(results.size(), 1000);
+            Assert.assertEquals(results.get(999).getUid().getUidValue(), "999");
+        }
+    }
+
+    @Test
+    public void testSearchCancelledByClient() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info = findConnectorInfo(manager, "1.0.0.0",
+                "org.identityconnectors.testconnector.TstConnector");
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.setProducerBufferSize(0);
+        api.getConfigurationProperties().getProperty("numResults").setValue(100000);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        // the client gives up on the first result, the server stops streaming
+        final IllegalStateException failure = new IllegalStateException("give up");
+        try {
+            facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                @Override
+                public boolean handle(ConnectorObject obj) {
+                    throw failure;
+                }
+            }, null);
+            Assert.fail("expected failure");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(e, failure);
+        }
+        // the server is still serving requests
+        final List<ConnectorObject> results = new ArrayList<ConnectorObject>();
+        facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject obj) {
+                results.add(obj);
+                return false;
+            }
+        }, null);
+        Assert.assertEquals(results.size(), 1);
+    }
+
+    @Test
+    public void testSyncResumed() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info = findConnectorInfo(manager, "1.0.0.0",
+                "org.identityconnectors.testconnector.TstConnector");
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 1000);
+        api.getConfigurationProperties().setPropertyValue("failSyncAfter", 250);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        // the sync fails once after 250 deltas and resumes after the delta 199
+        final List<SyncDelta> results = new ArrayList<SyncDelta>();
+        SyncToken token = facade.sync(ObjectClass.ACCOUNT, null, new SyncResultsHandler() {
+            @Override
+            public boolean handle(SyncDelta delta) {
+                results.add(delta);
+                return true;
+            }
+        }, null);
+        Assert.assertEquals(token, new SyncToken(0));
+        Assert.assertEquals(results.size(), 1050);
+        Assert.assertEquals(results.get(249).getToken(), new SyncToken(249));
+        Assert.assertEquals(results.get(250).getToken(), new SyncToken(200));
+        Assert.assertEquals(results.get(1049).getToken(), new SyncToken(999));
+
+        int retries = RemoteOperationInvocationHandler.getSyncRetries();
+        RemoteOperationInvocationHandler.setSyncRetries(0);
+        try {
+            facade.sync(ObjectClass.ACCOUNT, null, new SyncResultsHandler() {
+                @Override
+                public boolean handle(SyncDelta delta) {
+                    return true;
+                }
+            }, null);
+            Assert.fail("expected failure");
+        } catch (RemoteWrappedException e) {
+            Assert.assertTrue(e.is(ConnectorIOException.class));
+        } finally {
+            RemoteOperationInvocationHandler.setSyncRetries(retries);
+        }
+    }
+
+    @Test
+    public void testSyncNotResumedOnHandlerFailure() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info = findConnectorInfo(manager, "1.0.0.0",
+                "org.identityconnectors.testconnector.TstConnector");
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 100);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        // a failure of the application's handler is not a broken connection
+        final ConnectorIOException failure = new ConnectorIOException("handler failed");
+        final List<SyncDelta> results = new ArrayList<SyncDelta>();
+        try {
+            facade.sync(ObjectClass.ACCOUNT, null, new SyncResultsHandler() {
+                @Override
+                public boolean handle(SyncDelta delta) {
+                    results.add(delta);
+                    throw failure;
+                }
+            }, null);
+            Assert.fail("expected failure");
+        } catch (ConnectorIOException e) {
+            Assert.assertSame(e, failure);
+        }
+        Assert.assertEquals(results.size(), 1);
+    }
 }
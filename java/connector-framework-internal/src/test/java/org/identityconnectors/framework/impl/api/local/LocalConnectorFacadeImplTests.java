@@ -0,0 +1,142 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.api.local;
+
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.api.operations.ValidateApiOp;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
+import org.identityconnectors.mockconnector.MockAllOpsConnector;
+import org.identityconnectors.mockconnector.MockConfiguration;
+import org.identityconnectors.mockconnector.MockConnector;
+import org.identityconnectors.test.common.TestHelpers;
+import org.testng.Reporter;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class LocalConnectorFacadeImplTests {
+
+    private static final int ITERATIONS = 5000;
+
+    @AfterMethod(alwaysRun = true)
+    public void cleanup() {
+        MockConnector.reset();
+    }
+
+    private LocalConnectorFacadeImpl newFacade() {
+        APIConfiguration config =
+                TestHelpers.createTestConfiguration(MockAllOpsConnector.class,
+                        new MockConfiguration(false));
+        return (LocalConnectorFacadeImpl) ConnectorFacadeFactory.getInstance().newInstance(config);
+    }
+
+    @Test
+    public void testOperationPipelineReused() {
+        LocalConnectorFacadeImpl facade = newFacade();
+        assertSame(facade.getOperation(GetApiOp.class), facade.getOperation(GetApiOp.class));
+        assertSame(facade.getOperation(SchemaApiOp.class), facade.getOperation(SchemaApiOp.class));
+        // validate works on a fresh configuration each time
+        assertNotSame(facade.getOperation(ValidateApiOp.class),
+                facade.getOperation(ValidateApiOp.class));
+
+        // switching an optional proxy rebuilds the pipeline
+        GetApiOp get = (GetApiOp) facade.getOperation(GetApiOp.class);
+        boolean metrics = MetricsRegistry.isEnabled();
+        MetricsRegistry.setEnabled(!metrics);
+        try {
+            assertNotSame(facade.getOperation(GetApiOp.class), get);
+        } finally {
+            MetricsRegistry.setEnabled(metrics);
+        }
+    }
+
+    /**
+     * Rough measure of the framework overhead of a getObject call against a
+     * connector doing nothing, building the pipeline per call as it used to be
+     * done versus reusing it.
+     */
+    @Test(groups = "benchmark")
+    public void benchmarkGetObject() {
+        LocalConnectorFacadeImpl facade = newFacade();
+        OperationOptions options = new OperationOptionsBuilder().build();
+        Uid uid = new Uid("0");
+        boolean metrics = MetricsRegistry.isEnabled();
+        MetricsRegistry.setEnabled(false);
+        try {
+            // warm up both paths
+            runPerCall(facade, uid, options, ITERATIONS);
+            runCached(facade, uid, options, ITERATIONS);
+
+            long perCall = runPerCall(facade, uid, options, ITERATIONS);
+            long cached = runCached(facade, uid, options, ITERATIONS);
+            // the calls themselves are dominated by the test logger, so
+            // report the cost of building the pipeline alone too
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                facade.getOperationImplementation(GetApiOp.class);
+            }
+            long build = System.nanoTime() - start;
+            Reporter.log(String.format("getObject no-op: per call pipeline %d ns/op, "
+                    + "cached pipeline %d ns/op, building the pipeline %d ns", perCall
+                    / ITERATIONS, cached / ITERATIONS, build / ITERATIONS));
+        } finally {
+            MetricsRegistry.setEnabled(metrics);
+        }
+    }
+
+    private long runPerCall(LocalConnectorFacadeImpl facade, Uid uid, OperationOptions options,
+            int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            assertNull(((GetApiOp) facade.getOperationImplementation(GetApiOp.class)).getObject(
+                    ObjectClass.ACCOUNT, uid, options));
+            if (i % 1000 == 0) {
+                MockConnector.reset();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long runCached(LocalConnectorFacadeImpl facade, Uid uid, OperationOptions options,
+            int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            assertNull(facade.getObject(ObjectClass.ACCOUNT, uid, options));
+            if (i % 1000 == 0) {
+                MockConnector.reset();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
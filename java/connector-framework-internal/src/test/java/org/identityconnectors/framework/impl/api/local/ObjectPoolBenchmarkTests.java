@@ -0,0 +1,130 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.api.local;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.testng.Reporter;
+import org.testng.annotations.Test;
+
+/**
+ * Rough measure of the borrow/return throughput of {@link ObjectPool} with
+ * many more borrowers than pooled objects, in the "benchmark" group.
+ */
+public class ObjectPoolBenchmarkTests {
+
+    private static final int THREADS = 64;
+
+    private static final int MAX_OBJECTS = 8;
+
+    private static final int ITERATIONS = 2000;
+
+    private static class Handler implements ObjectPoolHandler<Object> {
+
+        final AtomicInteger created = new AtomicInteger();
+
+        @Override
+        public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
+            original.validate();
+            return original;
+        }
+
+        @Override
+        public Object makeObject() {
+            created.incrementAndGet();
+            return new Object();
+        }
+
+        @Override
+        public void testObject(Object object) {
+        }
+
+        @Override
+        public void disposeObject(Object object) {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    @Test(groups = "benchmark")
+    public void benchmarkContention() throws Exception {
+        run(false, false);
+        run(true, false);
+        run(false, true);
+    }
+
+    private void run(final boolean fair, final boolean threadAffinity) throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(MAX_OBJECTS);
+        config.setMaxIdle(MAX_OBJECTS);
+        config.setMinIdle(0);
+        config.setFair(fair);
+        config.setThreadAffinity(threadAffinity);
+        Handler handler = new Handler();
+        final ObjectPool<Object> pool = new ObjectPool<Object>(handler, config);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int i = 0; i < THREADS; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < ITERATIONS; j++) {
+                            pool.borrowObject().close();
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        Reporter.log(String.format("%d threads on %d objects, fair=%s, affinity=%s: "
+                + "%d borrows/s, %d waits", THREADS, MAX_OBJECTS, fair, threadAffinity, THREADS
+                * ITERATIONS * 1000000000L / elapsed, pool.getStatistics().getNumWaits()));
+
+        assertEquals(failure.get(), null);
+        assertTrue(handler.created.get() <= MAX_OBJECTS);
+        assertEquals(pool.getStatistics().getNumActive(), 0);
+        assertEquals(pool.getStatistics().getNumBorrows(), THREADS * ITERATIONS);
+        assertTrue(pool.getStatistics().getNumIdle() <= MAX_OBJECTS);
+        pool.shutdown();
+    }
+}
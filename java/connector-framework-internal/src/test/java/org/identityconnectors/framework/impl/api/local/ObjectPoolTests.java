@@ -22,6 +22,15 @@
  */
 package org.identityconnectors.framework.impl.api.local;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -54,7 +63,8 @@ public class ObjectPoolTests {
 
     private class MyTestConnectionFactory implements ObjectPoolHandler<MyTestConnection> {
         private boolean _createBadConnection = false;
-        private int _totalCreatedConnections = 0;
+        private volatile int _totalCreatedConnections = 0;
+        private volatile int _totalTests = 0;
 
         @Override
         public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
@@ -76,6 +86,7 @@ public class ObjectPoolTests {
         @Test
         @Override
 		public void testObject(MyTestConnection object) {
+            _totalTests++;
             object.test();
         }
         @Override
@@ -87,6 +98,10 @@ public class ObjectPoolTests {
             return _totalCreatedConnections;
         }
 
+        public int getTotalTests() {
+            return _totalTests;
+        }
+
 
         public void setCreateBadConnection(boolean v) {
             _createBadConnection = v;
@@ -199,6 +214,15 @@ public class ObjectPoolTests {
         Assert.assertEquals(2, fact.getTotalCreatedConnections());
         conn.close();
         Assert.assertEquals(2, fact.getTotalCreatedConnections());
+
+        //invalidate and make sure we get a new connection
+        conn = pool.borrowObject();
+        conn.invalidate();
+        Assert.assertFalse(conn.getPooledObject().isGood());
+        Assert.assertEquals(0, pool.getStatistics().getNumActive());
+        conn = pool.borrowObject();
+        Assert.assertEquals(3, fact.getTotalCreatedConnections());
+        conn.close();
     }
 
     @Test
@@ -236,6 +260,227 @@ public class ObjectPoolTests {
         Assert.assertEquals(true, conn4.getPooledObject().isGood());
     }
 
+    @Test
+    public void testBackgroundEviction() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(3);
+        config.setMaxIdle(3);
+        config.setMinIdle(1);
+        config.setMinEvictableIdleTimeMillis(200);
+        config.setTimeBetweenEvictionRunsMillis(100);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn3 = pool.borrowObject();
+        conn1.close();
+        conn2.close();
+        conn3.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 3);
+
+        // nobody borrows, the evictor alone disposes of the old idle objects
+        Thread.sleep(1000);
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 1);
+        Assert.assertEquals(pool.getStatistics().getNumActive(), 0);
+        Assert.assertEquals(false, conn1.getPooledObject().isGood());
+        Assert.assertEquals(false, conn2.getPooledObject().isGood());
+        Assert.assertEquals(true, conn3.getPooledObject().isGood());
+        pool.shutdown();
+        Assert.assertEquals(false, conn3.getPooledObject().isGood());
+    }
+
+    @Test
+    public void testWhileIdle() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMinIdle(2);
+        config.setMinEvictableIdleTimeMillis(60 * 1000);
+        config.setTimeBetweenEvictionRunsMillis(100);
+        config.setTestWhileIdle(true);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        // the evictor creates the minimum idle objects in the background
+        Thread.sleep(500);
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 2);
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
+
+        // a broken idle object is replaced without any borrow
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        conn.close();
+        conn.getPooledObject().dispose();
+        Thread.sleep(500);
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 3);
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
+        pool.shutdown();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 0);
+    }
+
+    @Test
+    public void testWhileIdleBlocked() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean block = new AtomicBoolean();
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setTimeBetweenEvictionRunsMillis(50);
+        config.setTestWhileIdle(true);
+        MyTestConnectionFactory blocked = new MyTestConnectionFactory() {
+            @Override
+            public void testObject(MyTestConnection object) {
+                try {
+                    if (block.get()) {
+                        release.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ObjectPool<MyTestConnection> blockedPool = new ObjectPool<MyTestConnection>(blocked, config);
+        try {
+            blockedPool.borrowObject().close();
+            block.set(true);
+            Thread.sleep(200);
+
+            // a pool whose test hangs does not hold up the other pools
+            config.setMinIdle(2);
+            MyTestConnectionFactory fact = new MyTestConnectionFactory();
+            ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact, config);
+            Thread.sleep(500);
+            Assert.assertEquals(fact.getTotalCreatedConnections(), 2);
+            pool.shutdown();
+        } finally {
+            release.countDown();
+            blockedPool.shutdown();
+        }
+    }
+
+    @Test
+    public void testValidationIdleTime() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setValidationIdleTimeMillis(300);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        // new objects are always tested
+        pool.borrowObject().close();
+        Assert.assertEquals(fact.getTotalTests(), 1);
+        // just returned, not tested again
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        Assert.assertEquals(fact.getTotalTests(), 1);
+        conn.close();
+        Thread.sleep(500);
+        conn = pool.borrowObject();
+        Assert.assertEquals(fact.getTotalTests(), 2);
+        conn.close();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testThreadAffinity() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setThreadAffinity(true);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        final ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        ObjectPoolEntry<MyTestConnection> mine = pool.borrowObject();
+        final ObjectPoolEntry<MyTestConnection> other = pool.borrowObject();
+        // the other thread returns its object after this one
+        mine.close();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    other.close();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        // without affinity the one idle for the longest would be borrowed
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        Assert.assertSame(conn, mine);
+        conn.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 2);
+
+        // reusing the same object leaves its node in the idle queue, other
+        // borrowers still get each idle object once
+        for (int i = 0; i < 1000; i++) {
+            pool.borrowObject().close();
+        }
+        final List<ObjectPoolEntry<MyTestConnection>> borrowed =
+                new ArrayList<ObjectPoolEntry<MyTestConnection>>();
+        thread = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 3; i++) {
+                    borrowed.add(pool.borrowObject());
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        Assert.assertEquals(borrowed.size(), 3);
+        Assert.assertEquals(new HashSet<ObjectPoolEntry<MyTestConnection>>(borrowed).size(), 3);
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 3);
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 0);
+        for (ObjectPoolEntry<MyTestConnection> entry : borrowed) {
+            entry.close();
+        }
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 3);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testHandOffOrderAndWaitStatistics() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(1);
+        config.setMaxIdle(1);
+        config.setFair(true);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        final ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final String name : new String[] { "first", "second", "third" }) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        ObjectPoolEntry<MyTestConnection> c = pool.borrowObject();
+                        order.add(name);
+                        Thread.sleep(50);
+                        c.close();
+                    } catch (Exception e) {
+                        order.add(e.toString());
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+            // let it queue up
+            Thread.sleep(200);
+        }
+        conn.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(order, Arrays.asList("first", "second", "third"));
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 1);
+
+        Statistics stats = pool.getStatistics();
+        Assert.assertEquals(stats.getNumBorrows(), 4);
+        Assert.assertEquals(stats.getNumWaits(), 3);
+        Assert.assertTrue(stats.getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(400));
+        Assert.assertTrue(stats.getTotalWaitNanos() >= stats.getMaxWaitNanos());
+        pool.shutdown();
+    }
+
     @Test
     public void testCreateBadConnection()
         throws Exception
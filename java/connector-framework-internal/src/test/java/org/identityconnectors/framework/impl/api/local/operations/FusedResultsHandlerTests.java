@@ -0,0 +1,244 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.spi.AttributeNormalizer;
+import org.testng.Reporter;
+import org.testng.annotations.Test;
+
+public class FusedResultsHandlerTests {
+
+    private static final int WIDTH = 200;
+
+    private static final int OBJECTS = 2000;
+
+    private static final AttributeNormalizer UPPER_CASE = new AttributeNormalizer() {
+        @Override
+        public Attribute normalizeAttribute(ObjectClass oclass, Attribute attribute) {
+            List<Object> values = new ArrayList<Object>();
+            for (Object value : attribute.getValue()) {
+                values.add(value instanceof String ? ((String) value).toUpperCase() : value);
+            }
+            return AttributeBuilder.build(attribute.getName(), values);
+        }
+    };
+
+    private static class Collector implements ResultsHandler {
+
+        private final List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+
+        @Override
+        public boolean handle(ConnectorObject object) {
+            objects.add(object);
+            return true;
+        }
+    }
+
+    private static ConnectorObject newObject(int id, int width) {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setUid(String.valueOf(id));
+        builder.setName("name" + id);
+        for (int i = 0; i < width; i++) {
+            builder.addAttribute("attr" + i, "value" + id + "." + i);
+        }
+        return builder.build();
+    }
+
+    private static ObjectNormalizerFacade newNormalizer() {
+        return new ObjectNormalizerFacade(ObjectClass.ACCOUNT, UPPER_CASE);
+    }
+
+    @Test
+    public void testSameAsChain() {
+        String[] attrsToGet = { "attr1", "ATTR2", "missing" };
+        Filter filter = newNormalizer().normalizeFilter(
+                FilterBuilder.startsWith(AttributeBuilder.build("attr1", "value1")));
+        Collector chained = new Collector();
+        ResultsHandler chain = new SearchImpl.AttributesToGetSearchResultsHandler(
+                new FilteredResultsHandler(new NormalizingResultsHandler(chained,
+                        newNormalizer()), filter), attrsToGet);
+        Collector fused = new Collector();
+        ResultsHandler handler =
+                new FusedResultsHandler(fused, newNormalizer(), filter, false, attrsToGet);
+        for (int i = 0; i < 20; i++) {
+            // the chain filters the values before they are normalized
+            ConnectorObject object = newObject(i, 5);
+            chain.handle(newNormalizer().normalizeObject(object));
+            handler.handle(object);
+        }
+        assertEquals(fused.objects.size(), 11);
+        assertEquals(fused.objects, chained.objects);
+        ConnectorObject first = fused.objects.get(0);
+        assertEquals(first.getAttributes().size(), 4);
+        assertEquals(first.getName().getNameValue(), "NAME1");
+        assertEquals(first.getAttributeByName("attr2").getValue().get(0), "VALUE1.2");
+    }
+
+    @Test
+    public void testFilterOnAttributeNotReturned() {
+        Collector collector = new Collector();
+        Filter filter = FilterBuilder.equalTo(AttributeBuilder.build("attr3", "VALUE7.3"));
+        ResultsHandler handler = new FusedResultsHandler(collector, newNormalizer(), filter,
+                false, new String[] { "attr1" });
+        for (int i = 0; i < 10; i++) {
+            handler.handle(newObject(i, 5));
+        }
+        assertEquals(collector.objects.size(), 1);
+        ConnectorObject object = collector.objects.get(0);
+        assertEquals(object.getUid().getUidValue(), "7");
+        assertNull(object.getAttributeByName("attr3"));
+        assertEquals(object.getAttributeByName("attr1").getValue().get(0), "VALUE7.1");
+    }
+
+    @Test
+    public void testValidationMode() {
+        Filter filter = FilterBuilder.equalTo(new Uid("1"));
+        ResultsHandler handler =
+                new FusedResultsHandler(new Collector(), null, filter, true, null);
+        assertTrue(handler.handle(newObject(1, 1)));
+        try {
+            handler.handle(newObject(2, 1));
+            fail("expected failure");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPassThrough() {
+        Collector collector = new Collector();
+        ConnectorObject object = newObject(1, 3);
+        new FusedResultsHandler(collector, null, null, false, null).handle(object);
+        assertSame(collector.objects.get(0), object);
+    }
+
+    @Test
+    public void testSync() {
+        final List<SyncDelta> deltas = new ArrayList<SyncDelta>();
+        SyncResultsHandler handler = new FusedResultsHandler.Sync(new SyncResultsHandler() {
+            @Override
+            public boolean handle(SyncDelta delta) {
+                deltas.add(delta);
+                return true;
+            }
+        }, newNormalizer(), new String[] { "attr0" });
+        SyncDeltaBuilder builder = new SyncDeltaBuilder();
+        builder.setToken(new SyncToken(1));
+        builder.setDeltaType(SyncDeltaType.CREATE_OR_UPDATE);
+        builder.setObject(newObject(1, 3));
+        handler.handle(builder.build());
+        SyncDelta delete = new SyncDeltaBuilder().setToken(new SyncToken(2))
+                .setDeltaType(SyncDeltaType.DELETE).setUid(new Uid("2"))
+                .setObjectClass(ObjectClass.ACCOUNT).build();
+        handler.handle(delete);
+
+        assertEquals(deltas.size(), 2);
+        ConnectorObject object = deltas.get(0).getObject();
+        assertEquals(object.getAttributes().size(), 3);
+        assertEquals(object.getAttributeByName("attr0").getValue().get(0), "VALUE1.0");
+        assertEquals(deltas.get(0).getToken(), new SyncToken(1));
+        assertSame(deltas.get(1), delete);
+    }
+
+    @Test
+    public void testSameResultsAsChain() {
+        runChainAndFused(newObjects(20));
+    }
+
+    /**
+     * Rough comparison of the handler chain and the fused handler on wide
+     * objects, returning a few of their attributes.
+     */
+    @Test(groups = "benchmark")
+    public void benchmarkWideObjects() {
+        List<ConnectorObject> objects = newObjects(WIDTH);
+        for (int run = 0; run < 3; run++) {
+            long[] nanos = runChainAndFused(objects);
+            Reporter.log(String.format("%d objects of %d attributes: chain %d ms, "
+                    + "fused %d ms", OBJECTS, WIDTH, nanos[0] / 1000000, nanos[1] / 1000000));
+        }
+    }
+
+    private static List<ConnectorObject> newObjects(int width) {
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>(OBJECTS);
+        for (int i = 0; i < OBJECTS; i++) {
+            objects.add(newObject(i, width));
+        }
+        return objects;
+    }
+
+    /**
+     * Runs the objects through the handler chain and the fused handler.
+     *
+     * @return the nanoseconds spent by the chain and by the fused handler
+     */
+    private long[] runChainAndFused(List<ConnectorObject> objects) {
+        String[] attrsToGet = { "attr1", "attr2", "attr3", "attr4", "attr5" };
+        Filter filter = newNormalizer().normalizeFilter(
+                FilterBuilder.startsWith(new Uid("1")));
+        Collector chained = new Collector();
+        ResultsHandler chain = new SearchImpl.AttributesToGetSearchResultsHandler(
+                new FilteredResultsHandler(new NormalizingResultsHandler(chained,
+                        newNormalizer()), filter), attrsToGet);
+        long begin = System.nanoTime();
+        for (ConnectorObject object : objects) {
+            chain.handle(object);
+        }
+        long chainNanos = System.nanoTime() - begin;
+
+        Collector fused = new Collector();
+        ResultsHandler handler =
+                new FusedResultsHandler(fused, newNormalizer(), filter, false, attrsToGet);
+        begin = System.nanoTime();
+        for (ConnectorObject object : objects) {
+            handler.handle(object);
+        }
+        long fusedNanos = System.nanoTime() - begin;
+        assertEquals(fused.objects.size(), 1111);
+        assertEquals(fused.objects, chained.objects);
+        return new long[] { chainNanos, fusedNanos };
+    }
+}
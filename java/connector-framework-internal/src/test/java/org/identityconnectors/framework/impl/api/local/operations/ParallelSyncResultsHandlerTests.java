@@ -0,0 +1,156 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.testng.annotations.Test;
+
+public class ParallelSyncResultsHandlerTests {
+
+    @Test
+    public void testOrderPerUid() {
+        final Map<String, List<Integer>> handled = new ConcurrentHashMap<String, List<Integer>>();
+        ParallelSyncResultsHandler dispatcher =
+                new ParallelSyncResultsHandler(new SyncResultsHandler() {
+                    public boolean handle(SyncDelta delta) {
+                        List<Integer> tokens = handled.get(delta.getUid().getUidValue());
+                        if (null == tokens) {
+                            tokens = new ArrayList<Integer>();
+                            handled.put(delta.getUid().getUidValue(), tokens);
+                        }
+                        tokens.add((Integer) delta.getToken().getValue());
+                        return true;
+                    }
+                }, 4);
+        for (int i = 0; i < 1000; i++) {
+            dispatcher.handle(createDelta(i, "uid" + (i % 10)));
+        }
+        assertEquals(dispatcher.finish(new SyncToken(1000)), new SyncToken(1000));
+        assertEquals(dispatcher.getSafeToken(), new SyncToken(999));
+        assertEquals(handled.size(), 10);
+        for (int i = 0; i < 10; i++) {
+            List<Integer> tokens = handled.get("uid" + i);
+            assertEquals(tokens.size(), 100);
+            for (int j = 0; j < tokens.size(); j++) {
+                assertEquals(tokens.get(j).intValue(), j * 10 + i);
+            }
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void testSafeToken() throws Exception {
+        // the fast deltas must not wait behind the slow one
+        String fast = "fast";
+        for (int i = 0; lane("slow") == lane(fast); i++) {
+            fast = "fast" + i;
+        }
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch handled = new CountDownLatch(10);
+        ParallelSyncResultsHandler dispatcher =
+                new ParallelSyncResultsHandler(new SyncResultsHandler() {
+                    public boolean handle(SyncDelta delta) {
+                        if ("slow".equals(delta.getUid().getUidValue())) {
+                            try {
+                                blocked.await();
+                            } catch (InterruptedException e) {
+                                throw ConnectorException.wrap(e);
+                            }
+                        }
+                        handled.countDown();
+                        return true;
+                    }
+                }, 2);
+        for (int i = 0; i < 10; i++) {
+            dispatcher.handle(createDelta(i, i == 3 ? "slow" : fast));
+        }
+        // the deltas after the slow one can not be checkpointed
+        while (handled.getCount() > 1) {
+            Thread.sleep(10);
+        }
+        assertEquals(dispatcher.getSafeToken(), new SyncToken(2));
+        blocked.countDown();
+        assertEquals(dispatcher.finish(new SyncToken(10)), new SyncToken(10));
+        assertEquals(dispatcher.getSafeToken(), new SyncToken(9));
+    }
+
+    @Test(timeOut = 10000)
+    public void testFailure() throws Exception {
+        ParallelSyncResultsHandler dispatcher =
+                new ParallelSyncResultsHandler(new SyncResultsHandler() {
+                    public boolean handle(SyncDelta delta) {
+                        if (delta.getToken().getValue().equals(5)) {
+                            throw new ConnectorException("failed");
+                        }
+                        return true;
+                    }
+                }, 3);
+        for (int i = 0; i < 5; i++) {
+            dispatcher.handle(createDelta(i, "uid" + i));
+        }
+        // the deltas queued after a failure are skipped, so let these go first
+        while (dispatcher.getSafeToken() == null
+                || !dispatcher.getSafeToken().equals(new SyncToken(4))) {
+            Thread.sleep(10);
+        }
+        dispatcher.handle(createDelta(5, "uid0"));
+        try {
+            dispatcher.finish(new SyncToken(7));
+            fail("The handler failure must be thrown");
+        } catch (ConnectorException e) {
+            assertEquals(e.getMessage(), "failed");
+        }
+        assertFalse(dispatcher.handle(createDelta(6, "uid1")));
+        assertEquals(dispatcher.getSafeToken(), new SyncToken(4));
+    }
+
+    private int lane(String uid) {
+        return (uid.hashCode() & Integer.MAX_VALUE) % 2;
+    }
+
+    private SyncDelta createDelta(int token, String uid) {
+        ConnectorObjectBuilder object = new ConnectorObjectBuilder();
+        object.setUid(uid);
+        object.setName(uid);
+        SyncDeltaBuilder builder = new SyncDeltaBuilder();
+        builder.setDeltaType(SyncDeltaType.CREATE_OR_UPDATE);
+        builder.setToken(new SyncToken(token));
+        builder.setObject(object.build());
+        return builder.build();
+    }
+}
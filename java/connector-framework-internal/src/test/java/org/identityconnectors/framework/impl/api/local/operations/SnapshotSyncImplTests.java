@@ -0,0 +1,246 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SnapshotSyncImplTests {
+
+    private File directory;
+
+    private final Map<String, String> objects = new TreeMap<String, String>();
+
+    private SnapshotSyncImpl sync;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = File.createTempFile("snapshots", "");
+        directory.delete();
+        objects.clear();
+        // small runs to exercise the external sort
+        sync = new SnapshotSyncImpl(directory, new MapSearch(), 3);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        IOUtil.delete(directory);
+    }
+
+    @Test
+    public void testDiff() {
+        for (int i = 0; i < 10; i++) {
+            objects.put("uid" + i, "value" + i);
+        }
+        List<SyncDelta> deltas = new ArrayList<SyncDelta>();
+        SyncToken token = sync.sync(ObjectClass.ACCOUNT, null, collect(deltas, -1), null);
+        assertEquals(token, new SyncToken(0L));
+        assertEquals(deltas.size(), 10);
+        for (SyncDelta delta : deltas) {
+            assertEquals(delta.getDeltaType(), SyncDeltaType.CREATE);
+            assertEquals(delta.getToken(), token);
+        }
+
+        objects.remove("uid3");
+        objects.put("uid5", "changed");
+        objects.put("uid10", "value10");
+        deltas.clear();
+        token = sync.sync(ObjectClass.ACCOUNT, token, collect(deltas, -1), null);
+        assertEquals(token, new SyncToken(1L));
+        assertEquals(deltas.size(), 3);
+        assertEquals(getChanges(deltas), Arrays.asList("CREATE uid10", "DELETE uid3",
+                "UPDATE uid5"));
+
+        deltas.clear();
+        token = sync.sync(ObjectClass.ACCOUNT, token, collect(deltas, -1), null);
+        assertEquals(token, new SyncToken(2L));
+        assertTrue(deltas.isEmpty());
+        // only the snapshots of the last sync are kept
+        assertEquals(directory.list().length, 4);
+    }
+
+    @Test
+    public void testStopped() {
+        for (int i = 0; i < 10; i++) {
+            objects.put("uid" + i, "value" + i);
+        }
+        SyncToken token = sync.getLatestSyncToken(ObjectClass.ACCOUNT);
+        for (int i = 0; i < 10; i++) {
+            objects.put("uid" + i, "changed" + i);
+        }
+        objects.put("uid10", "value10");
+        List<SyncDelta> deltas = new ArrayList<SyncDelta>();
+        token = sync.sync(ObjectClass.ACCOUNT, token, collect(deltas, 4), null);
+        assertEquals(deltas.size(), 4);
+        // the changes not reported yet come with the next sync
+        List<SyncDelta> next = new ArrayList<SyncDelta>();
+        sync.sync(ObjectClass.ACCOUNT, token, collect(next, -1), null);
+        assertEquals(next.size(), 7);
+        List<String> all = getChanges(deltas);
+        all.addAll(getChanges(next));
+        assertEquals(new TreeSet<String>(all).size(), 11);
+    }
+
+    @Test
+    public void testStoppedOnDelete() {
+        for (int i = 0; i < 10; i++) {
+            objects.put("uid" + i, "value" + i);
+        }
+        SyncToken token = sync.getLatestSyncToken(ObjectClass.ACCOUNT);
+        objects.clear();
+        List<SyncDelta> deltas = new ArrayList<SyncDelta>();
+        token = sync.sync(ObjectClass.ACCOUNT, token, collect(deltas, 2), null);
+        assertEquals(getChanges(deltas).size(), 2);
+        List<SyncDelta> next = new ArrayList<SyncDelta>();
+        sync.sync(ObjectClass.ACCOUNT, token, collect(next, -1), null);
+        assertEquals(next.size(), 8);
+    }
+
+    @Test
+    public void testMissingSnapshot() {
+        objects.put("uid1", "value1");
+        SyncToken token = sync.getLatestSyncToken(ObjectClass.ACCOUNT);
+        objects.put("uid2", "value2");
+        List<SyncDelta> deltas = new ArrayList<SyncDelta>();
+        // the changes since the latest older snapshot are reported
+        SyncToken next = sync.sync(ObjectClass.ACCOUNT, new SyncToken(7L), collect(deltas, -1), null);
+        assertEquals(getChanges(deltas), Arrays.asList("CREATE uid2"));
+        assertEquals(next, new SyncToken(((Long) token.getValue()) + 1));
+    }
+
+    @Test
+    public void testObjectClasses() {
+        objects.put("uid1", "value1");
+        SyncToken token = sync.getLatestSyncToken(ObjectClass.ACCOUNT);
+        List<SyncDelta> deltas = new ArrayList<SyncDelta>();
+        sync.sync(ObjectClass.GROUP, token, collect(deltas, -1), null);
+        // no snapshot of groups yet
+        assertEquals(getChanges(deltas), Arrays.asList("CREATE uid1"));
+    }
+
+    @Test
+    public void testIndexLookup() throws IOException {
+        directory.mkdirs();
+        SyncSnapshots snapshots = new SyncSnapshots(directory, ObjectClass.ACCOUNT, 2);
+        SyncSnapshots.Builder builder = snapshots.newBuilder();
+        List<SyncSnapshots.Record> records = new ArrayList<SyncSnapshots.Record>();
+        for (int i = 0; i < 50; i++) {
+            objects.put("uid" + i, "value" + i);
+            SyncSnapshots.Record record = SyncSnapshots.newRecord(createObject(ObjectClass.ACCOUNT, "uid" + i));
+            records.add(record);
+            builder.add(record);
+        }
+        SyncSnapshots.Writer writer = snapshots.newWriter(0);
+        SyncSnapshots.RecordReader sorted = builder.sorted();
+        SyncSnapshots.Record previous = null;
+        for (SyncSnapshots.Record record = sorted.next(); record != null; record = sorted.next()) {
+            if (previous != null) {
+                assertTrue(previous.compareTo(record) < 0);
+            }
+            writer.write(record);
+            previous = record;
+        }
+        sorted.close();
+        writer.commit();
+        builder.dispose();
+
+        SyncSnapshots.Index index = snapshots.openIndex(0);
+        assertEquals(index.size(), 50);
+        for (SyncSnapshots.Record record : records) {
+            assertEquals(index.lookup(record), Long.valueOf(record.getContentHash()));
+        }
+        objects.put("uid50", "value50");
+        assertNull(index.lookup(SyncSnapshots.newRecord(createObject(ObjectClass.ACCOUNT, "uid50"))));
+        assertEquals(snapshots.getGenerations(), Arrays.asList(0L));
+        assertFalse(new File(directory, "__ACCOUNT__.0.idx.tmp").exists());
+    }
+
+    private static List<String> getChanges(List<SyncDelta> deltas) {
+        List<String> changes = new ArrayList<String>();
+        for (SyncDelta delta : deltas) {
+            changes.add(delta.getDeltaType() + " " + delta.getUid().getUidValue());
+        }
+        Collections.sort(changes);
+        return changes;
+    }
+
+    private static SyncResultsHandler collect(final List<SyncDelta> deltas, final int max) {
+        return new SyncResultsHandler() {
+            public boolean handle(SyncDelta delta) {
+                deltas.add(delta);
+                return deltas.size() != max;
+            }
+        };
+    }
+
+    private ConnectorObject createObject(ObjectClass objectClass, String uid) {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setObjectClass(objectClass);
+        builder.setUid(uid);
+        builder.setName(uid);
+        builder.addAttribute("value", objects.get(uid));
+        return builder.build();
+    }
+
+    private class MapSearch implements SearchApiOp {
+
+        public SearchResult search(ObjectClass objectClass, Filter filter, ResultsHandler handler,
+                OperationOptions options) {
+            for (String uid : new ArrayList<String>(objects.keySet())) {
+                if (!handler.handle(createObject(objectClass, uid))) {
+                    break;
+                }
+            }
+            return new SearchResult();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SortKey;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SortedResultsTests {
+
+    private File directory;
+
+    private File previousDirectory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = File.createTempFile("sorted", "");
+        directory.delete();
+        previousDirectory = SortedResults.getDirectory();
+        SortedResults.setDirectory(directory);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        SortedResults.clear();
+        SortedResults.setDirectory(previousDirectory);
+        IOUtil.delete(directory);
+    }
+
+    @Test
+    public void testSortSpilled() {
+        // 3 runs, not aligned on the index interval
+        int count = SortedResults.INDEX_INTERVAL * 2 + 7;
+        SortedResults results = build(count, 1000, SortKey.descendingOrder("number"));
+        assertEquals(directory.list().length, 1);
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        SearchResult result = results.serve(collect(objects), new OperationOptionsBuilder().build());
+        assertEquals(objects.size(), count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(getNumber(objects.get(i)), count - 1 - i);
+        }
+        assertNull(result.getPagedResultsCookie());
+        assertTrue(result.isAllResultsReturned());
+        results.dispose();
+        assertEquals(directory.list().length, 0);
+    }
+
+    @Test
+    public void testSortInMemory() {
+        SortedResults results = build(50, 1000, SortKey.ascendingOrder("group"),
+                SortKey.descendingOrder("number"));
+        assertEquals(directory.list() == null ? 0 : directory.list().length, 0);
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        results.serve(collect(objects), new OperationOptionsBuilder().build());
+        assertEquals(objects.size(), 50);
+        // groups ascending, missing group last, numbers descending in a group
+        for (int i = 1; i < objects.size(); i++) {
+            ConnectorObject previous = objects.get(i - 1);
+            ConnectorObject current = objects.get(i);
+            String g1 = getGroup(previous);
+            String g2 = getGroup(current);
+            if (g1 == null) {
+                assertNull(g2);
+            } else if (g2 != null && g1.equals(g2)) {
+                assertTrue(getNumber(previous) > getNumber(current));
+            } else {
+                assertTrue(g2 == null || g1.compareTo(g2) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void testPages() {
+        int count = SortedResults.INDEX_INTERVAL + 100;
+        SortedResults results = build(count, 300, SortKey.ascendingOrder("number"));
+
+        // by offset
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        SearchResult result = results.serve(collect(objects),
+                new OperationOptionsBuilder().setPageSize(10).setPagedResultsOffset(1030).build());
+        assertEquals(objects.size(), 10);
+        assertEquals(getNumber(objects.get(0)), 1029);
+        assertEquals(result.getRemainingPagedResults(), count - 1039);
+
+        // by cookie
+        objects.clear();
+        String cookie = null;
+        int pages = 0;
+        do {
+            OperationOptionsBuilder options = new OperationOptionsBuilder().setPageSize(100);
+            if (cookie != null) {
+                options.setPagedResultsCookie(cookie);
+            }
+            result = results.serve(collect(objects), options.build());
+            cookie = result.getPagedResultsCookie();
+            pages++;
+        } while (cookie != null);
+        assertEquals(pages, (count + 99) / 100);
+        assertEquals(objects.size(), count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(getNumber(objects.get(i)), i);
+        }
+        results.dispose();
+    }
+
+    @Test
+    public void testInvalidCookie() {
+        SortedResults results = build(10, 100, SortKey.ascendingOrder("number"));
+        try {
+            results.serve(collect(new ArrayList<ConnectorObject>()),
+                    new OperationOptionsBuilder().setPageSize(5).setPagedResultsCookie("other:5")
+                            .build());
+            fail("the cookie of another search");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        // a cookie is served by the results which issued it only
+        String cookie = results.serve(collect(new ArrayList<ConnectorObject>()),
+                new OperationOptionsBuilder().setPageSize(5).build()).getPagedResultsCookie();
+        assertEquals(SortedResults.getResultsId("key", cookie), results.getId());
+        assertEquals(SortedResults.getOffset(cookie), 5);
+        SortedResults other = build(10, 100, SortKey.ascendingOrder("number"));
+        try {
+            other.serve(collect(new ArrayList<ConnectorObject>()),
+                    new OperationOptionsBuilder().setPageSize(5).setPagedResultsCookie(cookie)
+                            .build());
+            fail("the cookie of other results");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCache() {
+        long ttl = SortedResults.getTimeToLive(TimeUnit.MILLISECONDS);
+        try {
+            SortedResults results = build(10, 100);
+            assertTrue(SortedResults.put(results));
+            assertTrue(SortedResults.get(results.getId()) == results);
+            assertTrue(SortedResults.getLatest("key") == results);
+            assertNull(SortedResults.get("other"));
+            assertNull(SortedResults.getLatest("other"));
+
+            // the results of another search of the same query are kept
+            SortedResults other = build(10, 100);
+            assertTrue(SortedResults.put(other));
+            assertTrue(SortedResults.get(results.getId()) == results);
+            assertTrue(SortedResults.getLatest("key") == other);
+
+            SortedResults.setTimeToLive(0, TimeUnit.MILLISECONDS);
+            assertNull(SortedResults.get(results.getId()));
+            assertTrue(!SortedResults.put(results));
+        } finally {
+            SortedResults.setTimeToLive(ttl, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void testConnectorOptions() {
+        OperationOptions options = new OperationOptionsBuilder().setPageSize(10)
+                .setPagedResultsOffset(3).setSortKeys(SortKey.ascendingOrder("number"))
+                .setAttributesToGet("group").build();
+        assertTrue(SortedResults.isRequested(options));
+        OperationOptions connectorOptions = SortedResults.getConnectorOptions(options);
+        assertNull(connectorOptions.getPageSize());
+        assertNull(connectorOptions.getPagedResultsOffset());
+        assertNull(connectorOptions.getSortKeys());
+        assertNotNull(connectorOptions.getAttributesToGet());
+        assertEquals(connectorOptions.getAttributesToGet(), new String[] { "group", "number" });
+        assertTrue(!SortedResults.isRequested(connectorOptions));
+    }
+
+    private static SortedResults build(int count, int runSize, SortKey... keys) {
+        SortedResults.Builder builder = new SortedResults.Builder("key", keys, runSize);
+        try {
+            // insert in a scattered order
+            for (int i = 0; i < count; i++) {
+                int number = (int) ((i * 7919L) % count);
+                ConnectorObjectBuilder object = new ConnectorObjectBuilder();
+                object.setUid("uid" + number);
+                object.setName("name" + number);
+                object.addAttribute("number", number);
+                if (number % 5 != 0) {
+                    object.addAttribute("group", "group" + (number % 3));
+                }
+                builder.handle(object.build());
+            }
+            return builder.build();
+        } finally {
+            builder.dispose();
+        }
+    }
+
+    private static int getNumber(ConnectorObject object) {
+        return (Integer) object.getAttributeByName("number").getValue().get(0);
+    }
+
+    private static String getGroup(ConnectorObject object) {
+        return object.getAttributeByName("group") == null ? null : (String) object
+                .getAttributeByName("group").getValue().get(0);
+    }
+
+    private static ResultsHandler collect(final List<ConnectorObject> objects) {
+        return new ResultsHandler() {
+            public boolean handle(ConnectorObject object) {
+                objects.add(object);
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.remote;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo.Compression;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.PredefinedAttributes;
+import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
+import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
+import org.identityconnectors.framework.common.serializer.ObjectSerializerFactory;
+import org.testng.Reporter;
+import org.testng.annotations.Test;
+
+public class WireCompressionTests {
+
+    private static final int OBJECTS = 2000;
+
+    /**
+     * Objects written between two flushes, as the connector server flushes
+     * its results in batches.
+     */
+    private static final int FLUSH_INTERVAL = 50;
+
+    /**
+     * Input whose source is set once the peer has written.
+     */
+    private static class DeferredInput extends InputStream {
+
+        private InputStream source;
+
+        @Override
+        public int read() throws IOException {
+            return source.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return source.read(b, off, len);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (Compression compression : new Compression[] { Compression.FAST, Compression.HIGH }) {
+            List<ConnectorObject> objects = newObjects(OBJECTS);
+            DeferredInput reply = new DeferredInput();
+            ByteArrayOutputStream wire = new ByteArrayOutputStream();
+            WireCompression client = WireCompression.connect(reply, wire, compression);
+            assertEquals(client.getCompression(), compression);
+            write(client.getOutput(), objects);
+
+            ByteArrayOutputStream serverWire = new ByteArrayOutputStream();
+            WireCompression server =
+                    WireCompression.accept(new ByteArrayInputStream(wire.toByteArray()),
+                            serverWire);
+            assertEquals(server.getCompression(), Compression.NONE);
+            assertEquals(read(server.getInput(), objects.size()), objects);
+            assertEquals(server.getCompression(), compression);
+
+            // the server answers in kind
+            write(server.getOutput(), objects.subList(0, 10));
+            reply.source = new ByteArrayInputStream(serverWire.toByteArray());
+            assertEquals(read(client.getInput(), 10), objects.subList(0, 10));
+
+            assertTrue(wire.size() < plainSize(objects) / 2, compression + ": " + wire.size());
+            client.end();
+            server.end();
+        }
+    }
+
+    @Test
+    public void testPlainClientAccepted() throws Exception {
+        List<ConnectorObject> objects = newObjects(100);
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        write(wire, objects);
+
+        ByteArrayOutputStream serverWire = new ByteArrayOutputStream();
+        WireCompression server =
+                WireCompression.accept(new ByteArrayInputStream(wire.toByteArray()), serverWire);
+        assertEquals(read(server.getInput(), objects.size()), objects);
+        assertEquals(server.getCompression(), Compression.NONE);
+
+        write(server.getOutput(), objects);
+        assertEquals(serverWire.size(), wire.size());
+        assertEquals(read(new ByteArrayInputStream(serverWire.toByteArray()), objects.size()),
+                objects);
+        server.end();
+    }
+
+    @Test
+    public void testSmallFramesSentAsTheyAre() throws Exception {
+        List<ConnectorObject> objects = newObjects(OBJECTS);
+        int threshold = WireCompression.getThreshold();
+        WireCompression.setThreshold(Integer.MAX_VALUE);
+        try {
+            ByteArrayOutputStream wire = new ByteArrayOutputStream();
+            WireCompression client =
+                    WireCompression.connect(new ByteArrayInputStream(new byte[0]), wire,
+                            Compression.HIGH);
+            write(client.getOutput(), objects);
+            assertTrue(wire.size() >= plainSize(objects));
+
+            WireCompression server =
+                    WireCompression.accept(new ByteArrayInputStream(wire.toByteArray()),
+                            new ByteArrayOutputStream());
+            assertEquals(read(server.getInput(), objects.size()), objects);
+            client.end();
+            server.end();
+        } finally {
+            WireCompression.setThreshold(threshold);
+        }
+    }
+
+    /**
+     * Reports the bytes on the wire and the CPU time spent on both ends for a
+     * stream of typical account objects.
+     */
+    @Test(groups = "benchmark")
+    public void benchmarkCompression() throws Exception {
+        List<ConnectorObject> objects = newObjects(OBJECTS);
+        // warm up
+        for (int i = 0; i < 5; i++) {
+            measure(Compression.NONE, objects, false);
+            measure(Compression.FAST, objects, false);
+            measure(Compression.HIGH, objects, false);
+        }
+        measure(Compression.NONE, objects, true);
+        measure(Compression.FAST, objects, true);
+        measure(Compression.HIGH, objects, true);
+    }
+
+    private void measure(Compression compression, List<ConnectorObject> objects,
+            boolean report) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long begin = threads.getCurrentThreadCpuTime();
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        OutputStream out = wire;
+        WireCompression client = null;
+        if (compression != Compression.NONE) {
+            client =
+                    WireCompression.connect(new ByteArrayInputStream(new byte[0]), wire,
+                            compression);
+            out = client.getOutput();
+        }
+        write(out, objects);
+        long written = threads.getCurrentThreadCpuTime();
+        WireCompression server =
+                WireCompression.accept(new ByteArrayInputStream(wire.toByteArray()),
+                        new ByteArrayOutputStream());
+        assertEquals(read(server.getInput(), objects.size()).size(), objects.size());
+        long end = threads.getCurrentThreadCpuTime();
+        if (null != client) {
+            client.end();
+        }
+        server.end();
+        if (report) {
+            Reporter.log(String.format("%d objects, compression=%s: %d bytes, "
+                    + "write %d ms, read %d ms", objects.size(), compression, wire.size(),
+                    (written - begin) / 1000000, (end - written) / 1000000));
+        }
+    }
+
+    private static List<ConnectorObject> newObjects(int count) {
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>(count);
+        for (int i = 0; i < count; i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setUid("uid=user" + i + ",ou=people,dc=example,dc=com");
+            builder.setName("user" + i);
+            builder.addAttribute(AttributeBuilder.build("givenName", "Given" + (i % 97)));
+            builder.addAttribute(AttributeBuilder.build("sn", "Surname" + (i % 89)));
+            builder.addAttribute(AttributeBuilder.build("mail", "user" + i + "@example.com"));
+            builder.addAttribute(AttributeBuilder.build("telephoneNumber", "+1 555 01"
+                    + (i % 100)));
+            builder.addAttribute(AttributeBuilder.build("employeeNumber", i));
+            builder.addAttribute(AttributeBuilder.build("description", "Account of user " + i
+                    + " in the engineering department"));
+            builder.addAttribute(AttributeBuilder.build("memberOf",
+                    "cn=staff,ou=groups,dc=example,dc=com", "cn=team" + (i % 10)
+                            + ",ou=groups,dc=example,dc=com"));
+            builder.addAttribute(AttributeBuilder.buildEnabled(i % 7 != 0));
+            builder.addAttribute(AttributeBuilder.build(PredefinedAttributes.LAST_LOGIN_DATE_NAME,
+                    1500000000000L + i * 60000L));
+            objects.add(builder.build());
+        }
+        return objects;
+    }
+
+    private static void write(OutputStream out, List<ConnectorObject> objects) {
+        BinaryObjectSerializer encoder =
+                ObjectSerializerFactory.getInstance().newBinarySerializer(out);
+        int count = 0;
+        for (ConnectorObject object : objects) {
+            encoder.writeObject(object);
+            if (++count % FLUSH_INTERVAL == 0) {
+                encoder.flush();
+            }
+        }
+        encoder.flush();
+    }
+
+    private static List<Object> read(InputStream in, int count) {
+        BinaryObjectDeserializer decoder =
+                ObjectSerializerFactory.getInstance().newBinaryDeserializer(in);
+        List<Object> objects = new ArrayList<Object>(count);
+        for (int i = 0; i < count; i++) {
+            objects.add(decoder.readObject());
+        }
+        return objects;
+    }
+
+    private static int plainSize(List<ConnectorObject> objects) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, objects);
+        return out.size();
+    }
+}
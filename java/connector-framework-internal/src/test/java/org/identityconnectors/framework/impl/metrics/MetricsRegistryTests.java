@@ -0,0 +1,136 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.impl.metrics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
+import org.identityconnectors.framework.impl.api.remote.messages.HelloRequest;
+import org.identityconnectors.mockconnector.MockAllOpsConnector;
+import org.identityconnectors.mockconnector.MockConfiguration;
+import org.identityconnectors.test.common.TestHelpers;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MetricsRegistryTests {
+
+    @BeforeMethod
+    public void setup() {
+        MetricsRegistry.reset();
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.getValueAtPercentile(50), 0);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(histogram.getCount(), 1000);
+        assertEquals(histogram.getMax(), 1000);
+        assertEquals(histogram.getSum(), 500500);
+        assertWithin(histogram.getValueAtPercentile(50), 500);
+        assertWithin(histogram.getValueAtPercentile(99), 990);
+        assertEquals(histogram.getValueAtPercentile(100), 1000);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(histogram.getMax(), Long.MAX_VALUE);
+        histogram.reset();
+        assertEquals(histogram.getCount(), 0);
+    }
+
+    @Test
+    public void bucketBounds() {
+        for (long value = 0; value < 1 << 20; value += 7) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.bucketUpperBound(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.bucketUpperBound(index - 1) < value);
+        }
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16, actual + " != "
+                + expected);
+    }
+
+    @Test
+    public void facadeOperations() {
+        APIConfiguration config =
+                TestHelpers.createTestConfiguration(MockAllOpsConnector.class,
+                        new MockConfiguration(false));
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(config);
+        facade.schema();
+        facade.schema();
+        facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+
+            @Override
+            public boolean handle(ConnectorObject connectorObject) {
+                return true;
+            }
+        }, null);
+
+        ConnectorMetrics metrics = MetricsRegistry.getConnectorMetrics(
+                ((APIConfigurationImpl) config).getConnectorInfo().getConnectorKey());
+        OperationMetrics schema = metrics.getOperation("SchemaApiOp");
+        assertEquals(schema.getCalls(), 2);
+        assertEquals(schema.getErrors(), 0);
+        assertEquals(schema.getLatency().getCount(), 2);
+        OperationMetrics search = metrics.getOperation("SearchApiOp");
+        assertEquals(search.getCalls(), 1);
+        assertEquals(search.getObjects().getCount(), 1);
+
+        String text = MetricsRegistry.toText();
+        assertTrue(text.contains("connid_operation_calls_total{bundleName=\""), text);
+        assertTrue(text.contains(",operation=\"SchemaApiOp\"} 2\n"), text);
+        assertTrue(text.contains("connid_operation_latency_micros{"), text);
+    }
+
+    @Test
+    public void disabled() {
+        MetricsRegistry.setEnabled(false);
+        try {
+            APIConfiguration config =
+                    TestHelpers.createTestConfiguration(MockAllOpsConnector.class,
+                            new MockConfiguration(false));
+            ConnectorFacadeFactory.getInstance().newInstance(config).test();
+            ConnectorMetrics metrics = MetricsRegistry.getConnectorMetrics(
+                    ((APIConfigurationImpl) config).getConnectorInfo().getConnectorKey());
+            assertEquals(metrics.getOperation("TestApiOp").getCalls(), 0);
+        } finally {
+            MetricsRegistry.setEnabled(true);
+        }
+    }
+
+    @Test
+    public void helloRequestLevel() {
+        assertTrue(new HelloRequest(HelloRequest.METRICS | HelloRequest.SERVER_INFO).isMetrics());
+        assertTrue(!new HelloRequest(HelloRequest.CONNECTOR_INFO).isMetrics());
+    }
+}
@@ -73,6 +73,8 @@ import org.identityconnectors.framework.common.exceptions.PermissionDeniedExcept
 import org.identityconnectors.framework.common.exceptions.UnknownUidException;
 import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
 import org.identityconnectors.framework.common.objects.AttributeInfo;
 import org.identityconnectors.framework.common.objects.AttributeInfoBuilder;
 import org.identityconnectors.framework.common.objects.AttributeUtil;
@@ -117,6 +119,7 @@ import org.identityconnectors.framework.impl.api.remote.messages.EchoMessage;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestCancel;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
@@ -423,6 +426,11 @@ public class ObjectSerializationTests {
         v1.setMaxWait(3);
         v1.setMinEvictableIdleTimeMillis(4);
         v1.setMinIdle(5);
+        v1.setTimeBetweenEvictionRunsMillis(6);
+        v1.setTestWhileIdle(true);
+        v1.setValidationIdleTimeMillis(7);
+        v1.setThreadAffinity(true);
+        v1.setFair(true);
 
         ObjectPoolConfiguration v2 =
             (ObjectPoolConfiguration)cloneObject(v1);
@@ -434,6 +442,30 @@ public class ObjectSerializationTests {
         assertEquals(3, v2.getMaxWait());
         assertEquals(4, v2.getMinEvictableIdleTimeMillis());
         assertEquals(5, v2.getMinIdle());
+        assertEquals(6, v2.getTimeBetweenEvictionRunsMillis());
+        assertTrue(v2.isTestWhileIdle());
+        assertEquals(7, v2.getValidationIdleTimeMillis());
+        assertTrue(v2.isThreadAffinity());
+        assertTrue(v2.isFair());
+
+        // the fields added later are left out when they are not set
+        String xml = SerializerUtil.serializeXmlObject(new ObjectPoolConfiguration(), false);
+        assertFalse(xml.contains("timeBetweenEvictionRunsMillis"));
+        assertFalse(xml.contains("testWhileIdle"));
+        assertFalse(xml.contains("validationIdleTimeMillis"));
+        assertFalse(xml.contains("threadAffinity"));
+        assertFalse(xml.contains("fair"));
+        assertEquals(SerializerUtil.cloneObject(new ObjectPoolConfiguration()),
+                new ObjectPoolConfiguration());
+        assertEquals(new ObjectPoolConfiguration().getTimeBetweenEvictionRunsMillis(), 0);
+
+        // the background evictor is written once enabled
+        v1 = new ObjectPoolConfiguration();
+        v1.setTimeBetweenEvictionRunsMillis(60 * 1000);
+        assertTrue(SerializerUtil.serializeXmlObject(v1, false).contains(
+                "timeBetweenEvictionRunsMillis"));
+        assertEquals(((ObjectPoolConfiguration) cloneObject(v1))
+                .getTimeBetweenEvictionRunsMillis(), 60 * 1000);
     }
 
     @Test
@@ -513,6 +545,12 @@ public class ObjectSerializationTests {
         Map<Class<? extends APIOperation>,Integer> map =
             CollectionUtil.<Class<? extends APIOperation>,Integer>newMap(CreateApiOp.class,new Integer(6));
         v1.setTimeoutMap(map);
+        v1.getObjectCacheConfiguration().setEnabled(ObjectClass.ACCOUNT, true);
+        v1.getObjectCacheConfiguration().setMaxObjects(10);
+        v1.getResultsHandlerConfiguration().setSyncDispatchThreads(4);
+        v1.getResultsHandlerConfiguration().setEnableSortingPagingEmulation(true);
+        v1.setSyncSnapshotDirectory("/var/lib/connid/snapshots");
+        v1.setSchemaCacheTimeToLiveMillis(60000);
 
         APIConfigurationImpl v2 = (APIConfigurationImpl)
             cloneObject(v1);
@@ -526,6 +564,12 @@ public class ObjectSerializationTests {
         assertEquals(FrameworkUtil.allAPIOperations(),
                 v2.getSupportedOperations());
         assertEquals(map, v2.getTimeoutMap());
+        assertEquals(v1.getObjectCacheConfiguration(), v2.getObjectCacheConfiguration());
+        assertTrue(v2.getObjectCacheConfiguration().isEnabled(ObjectClass.ACCOUNT));
+        assertEquals(v2.getResultsHandlerConfiguration().getSyncDispatchThreads(), 4);
+        assertTrue(v2.getResultsHandlerConfiguration().isEnableSortingPagingEmulation());
+        assertEquals(v2.getSyncSnapshotDirectory(), "/var/lib/connid/snapshots");
+        assertEquals(v2.getSchemaCacheTimeToLiveMillis(), 60000);
     }
 
     @Test
@@ -959,7 +1003,9 @@ public class ObjectSerializationTests {
                 SerializerUtil.serializeBase64Object(apiImpl),
                 CreateApiOp.class,
                 "mymethodName",
-                args);
+                args,
+                1500L,
+                "my tag");
         OperationRequest v2 = (OperationRequest)cloneObject(v1);
         assertEquals("my bundle", v2.getConnectorKey().getBundleName());
         assertEquals("my version", v2.getConnectorKey().getBundleVersion());
@@ -968,6 +1014,8 @@ public class ObjectSerializationTests {
         assertEquals(CreateApiOp.class, v2.getOperation());
         assertEquals("mymethodName", v2.getOperationMethodName());
         assertEquals(args, v2.getArguments());
+        assertEquals(1500L, v2.getTimeout());
+        assertEquals("my tag", v2.getIfNoneMatch());
     }
 
     @Test
@@ -979,10 +1027,11 @@ public class ObjectSerializationTests {
     @Test
     public void testOperationResponsePart() {
         RuntimeException ex = new RuntimeException("foo", new IllegalArgumentException("Cause"));
-        OperationResponsePart v1 = new OperationResponsePart(ex,"bar");
+        OperationResponsePart v1 = new OperationResponsePart(ex,"bar","my tag");
         OperationResponsePart v2 = (OperationResponsePart)cloneObject(v1);
         assertNotNull(v2.getException());
         assertEquals("bar", v2.getResult());
+        assertEquals("my tag", v2.getTag());
     }
 
     @Test
@@ -1006,6 +1055,13 @@ public class ObjectSerializationTests {
         assertNotNull(v2);
     }
 
+    @Test
+    public void testOperationRequestCancel() {
+        OperationRequestCancel v1 = new OperationRequestCancel();
+        OperationRequestCancel v2 = (OperationRequestCancel)cloneObject(v1);
+        assertNotNull(v2);
+    }
+
     @Test
     public void testEchoMessage() {
         EchoMessage v1 = new EchoMessage("test","xml");
@@ -1131,6 +1187,41 @@ public class ObjectSerializationTests {
         assertEquals("myuid", v2.getUid().getUidValue());
     }
 
+    @Test
+    public void testBatchOperation() {
+        BatchOperation v1 = new BatchOperation(BatchOperation.Type.UPDATE,
+                new ObjectClass("myclass"), new Uid("myuid"),
+                CollectionUtil.newSet(AttributeBuilder.build("foo", "bar")));
+        BatchOperation v2 = (BatchOperation) cloneObject(v1);
+        assertEquals(v2.getType(), BatchOperation.Type.UPDATE);
+        assertEquals(v2.getObjectClass(), v1.getObjectClass());
+        assertEquals(v2.getUid(), v1.getUid());
+        assertEquals(v2.getAttributes(), v1.getAttributes());
+
+        v1 = new BatchOperation(BatchOperation.Type.CREATE, ObjectClass.ACCOUNT, null,
+                CollectionUtil.<Attribute> newSet(new Name("myname")));
+        v2 = (BatchOperation) cloneObject(v1);
+        assertEquals(v2.getType(), BatchOperation.Type.CREATE);
+        assertNull(v2.getUid());
+        assertEquals(v2.getAttributes(), v1.getAttributes());
+    }
+
+    @Test
+    public void testBatchResult() {
+        BatchResult v1 = new BatchResult(3, new Uid("myuid"));
+        BatchResult v2 = (BatchResult) cloneObject(v1);
+        assertEquals(v2.getIndex(), 3);
+        assertEquals(v2.getUid(), v1.getUid());
+        assertTrue(v2.isSuccess());
+
+        v1 = new BatchResult(4, new UnknownUidException("gone"));
+        v2 = (BatchResult) cloneObject(v1);
+        assertEquals(v2.getIndex(), 4);
+        assertNull(v2.getUid());
+        assertTrue(v2.getException() instanceof UnknownUidException);
+        assertEquals(v2.getException().getMessage(), "gone");
+    }
+
     /**
      * Highly insecure method! Do not do this in production
      * code. This is only for test purposes
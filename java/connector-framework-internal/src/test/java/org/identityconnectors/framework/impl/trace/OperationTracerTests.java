@@ -0,0 +1,147 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.trace;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.mockconnector.MockAllOpsConnector;
+import org.identityconnectors.mockconnector.MockConfiguration;
+import org.identityconnectors.test.common.TestHelpers;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class OperationTracerTests {
+
+    private RingBufferSpanExporter exporter;
+
+    @BeforeMethod
+    public void setup() {
+        exporter = new RingBufferSpanExporter(16);
+        OperationTracer.addExporter(exporter);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        OperationTracer.setSampleRate(0);
+        OperationTracer.removeExporter(exporter);
+    }
+
+    private ConnectorFacade newFacade() {
+        APIConfiguration config =
+                TestHelpers.createTestConfiguration(MockAllOpsConnector.class, new MockConfiguration(false));
+        return ConnectorFacadeFactory.getInstance().newInstance(config);
+    }
+
+    @Test
+    public void disabled() {
+        assertFalse(OperationTracer.isEnabled());
+        newFacade().schema();
+        assertTrue(exporter.getSpans().isEmpty());
+        assertNull(OperationTracer.startSpan(SchemaApiOp.class, "schema", null));
+    }
+
+    @Test
+    public void traceOperations() {
+        OperationTracer.setSampleRate(1);
+        assertTrue(OperationTracer.isEnabled());
+        ConnectorFacade facade = newFacade();
+        facade.schema();
+        facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+
+            @Override
+            public boolean handle(ConnectorObject connectorObject) {
+                return true;
+            }
+        }, null);
+
+        List<OperationSpan> spans = exporter.getSpans();
+        assertEquals(spans.size(), 2);
+        OperationSpan schema = spans.get(0);
+        assertEquals(schema.getOperation(), SchemaApiOp.class);
+        assertEquals(schema.getMethod(), "schema");
+        assertTrue(schema.getDurationNanos() >= schema.getSpiCallNanos());
+        assertTrue(schema.getSpiCallNanos() > 0);
+        assertTrue(schema.getConnectorInitNanos() + schema.getPoolWaitNanos() > 0);
+        assertNull(schema.getException());
+        assertEquals(spans.get(1).getOperation(), SearchApiOp.class);
+        // the span is not left on the thread
+        assertNull(OperationTracer.current());
+    }
+
+    @Test
+    public void sampling() {
+        OperationTracer.setSampleRate(0.25);
+        ConnectorFacade facade = newFacade();
+        for (int i = 0; i < 8; i++) {
+            facade.schema();
+        }
+        assertEquals(exporter.getSpans().size(), 2);
+    }
+
+    @Test
+    public void ringBuffer() {
+        RingBufferSpanExporter ring = new RingBufferSpanExporter(2);
+        for (int i = 0; i < 5; i++) {
+            ring.export(new OperationSpan(SchemaApiOp.class, "schema" + i, null));
+        }
+        List<OperationSpan> spans = ring.getSpans();
+        assertEquals(spans.size(), 2);
+        assertEquals(spans.get(0).getMethod(), "schema3");
+        assertEquals(spans.get(1).getMethod(), "schema4");
+    }
+
+    @Test
+    public void jsonLines() {
+        StringWriter writer = new StringWriter();
+        JsonLinesSpanExporter json = new JsonLinesSpanExporter(writer);
+        OperationSpan span = new OperationSpan(SearchApiOp.class, "search", null);
+        span.addHandled(10);
+        span.addHandled(20);
+        span.addBytes(5, 7);
+        span.finish(new IllegalStateException());
+        json.export(span);
+
+        String line = writer.toString();
+        assertTrue(line.endsWith("}\n"));
+        assertTrue(line.contains("\"operation\":\"SearchApiOp\""));
+        assertTrue(line.contains("\"handlerNanos\":30"));
+        assertTrue(line.contains("\"objects\":2"));
+        assertTrue(line.contains("\"bytesSent\":5,\"bytesReceived\":7"));
+        assertTrue(line.contains("\"exception\":\"java.lang.IllegalStateException\""));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.server.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.api.operations.SyncApiOp;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.server.ConnectorServer;
+import org.testng.annotations.Test;
+
+public class DispatchTableTests {
+
+    @Test
+    public void testInvokers() throws Exception {
+        DispatchTable table = newTable();
+        DispatchTable.Invoker invoker = table.getInvoker(SearchApiOp.class, "SEARCH");
+        assertEquals(invoker.getMethod().getName(), "search");
+        assertEquals(invoker.getStreamHandlerIndex(), 2);
+        invoker = table.getInvoker(SyncApiOp.class, "getLatestSyncToken");
+        assertEquals(invoker.getStreamHandlerIndex(), -1);
+        assertEquals(invoker.getStreamHandlerType(), null);
+        assertSame(table.getInvoker(GetApiOp.class, "getObject"), table.getInvoker(
+                GetApiOp.class, "getobject"));
+        try {
+            table.getInvoker(GetApiOp.class, "getNothing");
+            fail("Unknown method must fail");
+        } catch (ConnectorException e) {
+            // expected
+        }
+        try {
+            table.getConnectorInfo(new ConnectorKey("bundle", "1.0", "connector"));
+            fail("Unknown connector must fail");
+        } catch (ConnectorException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReplacedWhenManagersChange() throws Exception {
+        ConnectorServer server = ConnectorServer.newInstance();
+        server.setBundleURLs(Collections.<URL> emptyList());
+        AtomicReference<DispatchTable> current = new AtomicReference<DispatchTable>();
+        DispatchTable table = DispatchTable.getCurrent(current, server);
+        assertSame(DispatchTable.getCurrent(current, server), table);
+        ConnectorInfoManagerFactory.getInstance().clearLocalCache();
+        DispatchTable update = DispatchTable.getCurrent(current, server);
+        assertNotSame(update, table);
+        assertSame(current.get(), update);
+        assertSame(DispatchTable.getCurrent(current, server), update);
+    }
+
+    private static DispatchTable newTable() {
+        ConnectorServer server = ConnectorServer.newInstance();
+        server.setBundleURLs(Collections.<URL> emptyList());
+        return DispatchTable.getCurrent(new AtomicReference<DispatchTable>(), server);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.server.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.impl.api.ObjectStreamHandler;
+import org.testng.annotations.Test;
+
+public class ResultsStagingTests {
+
+    private static class Target implements ObjectStreamHandler {
+
+        private final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+
+        private final CountDownLatch release;
+
+        private final int limit;
+
+        Target(CountDownLatch release, int limit) {
+            this.release = release;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean handle(Object obj) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw ConnectorException.wrap(e);
+            }
+            results.add(obj);
+            return results.size() < limit;
+        }
+    }
+
+    @Test
+    public void testSpilled() {
+        ResultsStaging.Budget budget = new ResultsStaging.Budget();
+        CountDownLatch release = new CountDownLatch(1);
+        Target target = new Target(release, Integer.MAX_VALUE);
+        ResultsStaging staging =
+                new ResultsStaging(target, budget, 1000, 1000, Long.MAX_VALUE, Long.MAX_VALUE);
+        // the connector is not held back by the blocked target
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(staging.handle("result" + i));
+        }
+        assertTrue(budget.getMemory() <= 1000);
+        assertTrue(budget.getDisk() > 0);
+        release.countDown();
+        staging.finish();
+        assertEquals(target.results.size(), 1000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(target.results.get(i), "result" + i);
+        }
+        assertEquals(budget.getMemory(), 0);
+        assertEquals(budget.getDisk(), 0);
+    }
+
+    @Test
+    public void testInterleaved() {
+        ResultsStaging.Budget budget = new ResultsStaging.Budget();
+        Target target = new Target(new CountDownLatch(0), Integer.MAX_VALUE);
+        ResultsStaging staging =
+                new ResultsStaging(target, budget, 300, 300, Long.MAX_VALUE, Long.MAX_VALUE);
+        // results keep their order while moving between memory and disk
+        for (int i = 0; i < 20000; i++) {
+            assertTrue(staging.handle(i));
+        }
+        staging.finish();
+        assertEquals(target.results.size(), 20000);
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(target.results.get(i), i);
+        }
+        assertEquals(budget.getMemory(), 0);
+        assertEquals(budget.getDisk(), 0);
+    }
+
+    @Test
+    public void testBlocked() throws Exception {
+        final ResultsStaging.Budget budget = new ResultsStaging.Budget();
+        CountDownLatch release = new CountDownLatch(1);
+        Target target = new Target(release, Integer.MAX_VALUE);
+        final ResultsStaging staging = new ResultsStaging(target, budget, 0, 0, 200, 200);
+        final AtomicInteger staged = new AtomicInteger();
+        Thread connector = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100; i++) {
+                    staging.handle("result" + i);
+                    staged.incrementAndGet();
+                }
+            }
+        };
+        connector.start();
+        // the connector waits once the disk limits are reached
+        connector.join(500);
+        assertTrue(connector.isAlive());
+        assertTrue(staged.get() < 100);
+        assertTrue(budget.getDisk() <= 200);
+        release.countDown();
+        connector.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(connector.isAlive());
+        staging.finish();
+        assertEquals(target.results.size(), 100);
+        assertEquals(target.results.get(99), "result99");
+    }
+
+    @Test
+    public void testGlobalLimits() {
+        ResultsStaging.Budget budget = new ResultsStaging.Budget();
+        CountDownLatch release = new CountDownLatch(1);
+        Target first = new Target(release, Integer.MAX_VALUE);
+        Target second = new Target(release, Integer.MAX_VALUE);
+        ResultsStaging firstStaging =
+                new ResultsStaging(first, budget, 1000, 1000, Long.MAX_VALUE, Long.MAX_VALUE);
+        ResultsStaging secondStaging =
+                new ResultsStaging(second, budget, 1000, 1000, Long.MAX_VALUE, Long.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(firstStaging.handle("result" + i));
+        }
+        long memory = budget.getMemory();
+        // the memory is taken by the first connection
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            large.append("large result");
+        }
+        assertTrue(secondStaging.handle(large.toString()));
+        assertEquals(budget.getMemory(), memory);
+        release.countDown();
+        firstStaging.finish();
+        secondStaging.finish();
+        assertEquals(first.results.size(), 100);
+        assertEquals(second.results.size(), 1);
+        assertEquals(budget.getMemory(), 0);
+        assertEquals(budget.getDisk(), 0);
+    }
+
+    @Test
+    public void testStopped() throws Exception {
+        ResultsStaging.Budget budget = new ResultsStaging.Budget();
+        Target target = new Target(new CountDownLatch(0), 10);
+        ResultsStaging staging =
+                new ResultsStaging(target, budget, 1000, 1000, Long.MAX_VALUE, Long.MAX_VALUE);
+        int staged = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (staging.handle("result" + staged)) {
+            staged++;
+            if (staged > 10) {
+                // give the target time to ask for the stop
+                Thread.sleep(1);
+            }
+            assertTrue(System.nanoTime() < deadline);
+        }
+        staging.finish();
+        assertEquals(target.results.size(), 10);
+        assertEquals(budget.getMemory(), 0);
+        assertEquals(budget.getDisk(), 0);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        ResultsStaging.Budget budget = new ResultsStaging.Budget();
+        final IllegalStateException failure = new IllegalStateException("broken");
+        ResultsStaging staging = new ResultsStaging(new ObjectStreamHandler() {
+            @Override
+            public boolean handle(Object obj) {
+                throw failure;
+            }
+        }, budget, 1000, 1000, Long.MAX_VALUE, Long.MAX_VALUE);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try {
+            while (true) {
+                staging.handle("result");
+                Thread.sleep(1);
+                assertTrue(System.nanoTime() < deadline);
+            }
+        } catch (IllegalStateException e) {
+            assertSame(e, failure);
+        }
+        try {
+            staging.finish();
+            fail("expected failure");
+        } catch (IllegalStateException e) {
+            assertSame(e, failure);
+        }
+        assertEquals(budget.getMemory(), 0);
+        assertEquals(budget.getDisk(), 0);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.mockconnector;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.spi.AttributeNormalizer;
+
+/**
+ * Mock connector whose uids are numbers, normalized without leading zeros.
+ */
+public class MockNormalizingConnector extends MockUpdateConnector implements AttributeNormalizer {
+
+    @Override
+    public Attribute normalizeAttribute(ObjectClass oclass, Attribute attribute) {
+        if (attribute instanceof Uid) {
+            String value = ((Uid) attribute).getUidValue();
+            while (value.length() > 1 && value.charAt(0) == '0') {
+                value = value.substring(1);
+            }
+            return new Uid(value);
+        }
+        return attribute;
+    }
+}
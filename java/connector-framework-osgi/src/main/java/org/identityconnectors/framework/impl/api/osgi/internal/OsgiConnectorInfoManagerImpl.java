@@ -35,6 +35,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
 
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.Pair;
@@ -45,6 +46,7 @@ import org.identityconnectors.common.event.ConnectorEvent;
 import org.identityconnectors.common.event.ConnectorEventHandler;
 import org.identityconnectors.common.event.ConnectorEventPublisher;
 import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.AsyncConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
 import org.identityconnectors.framework.api.ConnectorInfo;
@@ -55,7 +57,9 @@ import org.identityconnectors.framework.common.exceptions.ConfigurationException
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.AbstractConnectorInfo;
+import org.identityconnectors.framework.impl.api.AsyncConnectorFacadeImpl;
 import org.identityconnectors.framework.impl.api.ConnectorMessagesImpl;
+import org.identityconnectors.framework.impl.api.SchemaCache;
 import org.identityconnectors.framework.impl.api.local.ConnectorPoolManager;
 import org.identityconnectors.framework.impl.api.local.JavaClassProperties;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorFacadeImpl;
@@ -163,6 +167,16 @@ public class OsgiConnectorInfoManagerImpl extends ConnectorFacadeFactory impleme
         return ret;
     }
 
+    @Override
+    public AsyncConnectorFacade newAsyncInstance(ConnectorFacade facade, ExecutorService executor) {
+        return new AsyncConnectorFacadeImpl(facade, executor);
+    }
+
+    @Override
+    public void invalidateSchema(ConnectorFacade facade) {
+        SchemaCache.invalidate(facade);
+    }
+
     @Override
     public void addingEntries(Bundle bundle, List<ManifestEntry> list) {
         NullArgumentException.validateNotNull(bundle, "Bundle");
@@ -0,0 +1,39 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.common.logging;
+
+/**
+ * Marker for {@link LogSpi} implementations whose answers to
+ * {@link LogSpi#isLoggable(Class, Log.Level)} and
+ * {@link LogSpi#needToInferCaller(Class, Log.Level)} may be cached by
+ * {@link Log}.
+ * <p>
+ * The answers are kept per logged class for at most
+ * {@link Log#LEVEL_CACHE_PROP} milliseconds; implementations (or whoever
+ * changes the levels of the underlying logging system) should call
+ * {@link Log#levelsChanged()} to have them refreshed immediately.
+ *
+ * @since 1.4.4
+ */
+public interface LevelCachingLogSpi extends LogSpi {
+}
@@ -30,6 +30,8 @@ import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.IOUtil;
@@ -72,6 +74,21 @@ public final class Log {
      */
     public static final String LOGSPI_PROPS_FILE = "connectors.properties";
 
+    /**
+     * System property with the number of milliseconds the levels of a
+     * {@link LevelCachingLogSpi} are cached for each logged class; defaults to
+     * 1000, use 0 to disable caching.
+     */
+    public static final String LEVEL_CACHE_PROP = PACKAGE + ".levelCacheMillis";
+
+    private static final long LEVEL_CACHE_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong(LEVEL_CACHE_PROP, 1000L));
+
+    /**
+     * Bumped by {@link #levelsChanged()} to invalidate all cached levels.
+     */
+    private static final AtomicInteger LEVEL_GENERATION = new AtomicInteger();
+
     /**
      * Cache the SPI class so we one search for it once.
      */
@@ -113,12 +130,23 @@ public final class Log {
      */
     private final LogSpi logImpl;
 
+    /**
+     * Whether {@link #levelState} is used or the SPI is asked every time.
+     */
+    private final boolean cacheLevels;
+
+    /**
+     * Cached answers of the SPI, only used if {@link #cacheLevels}.
+     */
+    private volatile LevelState levelState;
+
     /**
      * Create an instance of the log based on the SPI in the System properties.
      */
     private Log(final Class<?> clazz, final LogSpi logImpl) {
         this.clazz = clazz;
         this.logImpl = logImpl;
+        this.cacheLevels = logImpl instanceof LevelCachingLogSpi && LEVEL_CACHE_NANOS > 0;
     }
 
     /**
@@ -157,9 +185,69 @@ public final class Log {
      * Determine if its log-able at this level within this class.
      */
     public boolean isLoggable(final Level level) {
+        if (cacheLevels) {
+            return (getLevelState().loggable & (1 << level.ordinal())) != 0;
+        }
         return logImpl.isLoggable(clazz, level);
     }
 
+    /**
+     * Notifies all loggers that the levels of the underlying logging system
+     * may have changed, so that levels cached on behalf of a
+     * {@link LevelCachingLogSpi} are fetched again on next use.
+     */
+    public static void levelsChanged() {
+        LEVEL_GENERATION.incrementAndGet();
+    }
+
+    private boolean needToInferCaller(final Level level) {
+        if (cacheLevels) {
+            return (getLevelState().inferCaller & (1 << level.ordinal())) != 0;
+        }
+        return logImpl.needToInferCaller(clazz, level);
+    }
+
+    private LevelState getLevelState() {
+        LevelState state = levelState;
+        final int generation = LEVEL_GENERATION.get();
+        if (state == null || state.generation != generation || System.nanoTime() - state.expiresAt > 0) {
+            int loggable = 0;
+            int inferCaller = 0;
+            for (Level level : Level.values()) {
+                if (logImpl.isLoggable(clazz, level)) {
+                    loggable |= 1 << level.ordinal();
+                    if (logImpl.needToInferCaller(clazz, level)) {
+                        inferCaller |= 1 << level.ordinal();
+                    }
+                }
+            }
+            state = new LevelState(loggable, inferCaller, generation, System.nanoTime() + LEVEL_CACHE_NANOS);
+            levelState = state;
+        }
+        return state;
+    }
+
+    /**
+     * Immutable snapshot of the levels of a class, one bit per {@link Level}.
+     */
+    private static final class LevelState {
+
+        private final int loggable;
+
+        private final int inferCaller;
+
+        private final int generation;
+
+        private final long expiresAt;
+
+        private LevelState(final int loggable, final int inferCaller, final int generation, final long expiresAt) {
+            this.loggable = loggable;
+            this.inferCaller = inferCaller;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     // =======================================================================
     // Helper Methods..
     // =======================================================================
@@ -185,6 +273,37 @@ public final class Log {
         }
     }
 
+    /**
+     * Logs with an explicit class and method name, so the caller never needs
+     * to be inferred. The message is only formatted with {@link MessageFormat}
+     * (and the arguments only converted to strings) if the level is enabled.
+     *
+     * @param clazz
+     *            Class that is being logged.
+     * @param method
+     *            Method name that is being logged.
+     * @param level
+     *            Logging level.
+     * @param ex
+     *            [optional] exception stack trace to log.
+     * @param format
+     *            format of the message.
+     * @param args
+     *            [optional] parameters to the format string.
+     * @since 1.4.4
+     */
+    public void log(final Class<?> clazz, final String method, final Log.Level level,
+            final Throwable ex, final String format, final Object... args) {
+
+        if (isLoggable(level)) {
+            String message = format;
+            if (format != null && args != null && args.length > 0) {
+                message = MessageFormat.format(format, args);
+            }
+            logImpl.log(clazz, method, level, message, ex);
+        }
+    }
+
     /**
      * Logs based on the parameters given. Uses the format parameter inside
      * {@link MessageFormat}.
@@ -209,8 +328,9 @@ public final class Log {
             } else if (format == null && ex != null) {
                 message = ex.getLocalizedMessage();
             }
-            //To get the StackTrace is expensive. Extract the method name only if it's necessary!!!
-            log(level, ex, message, logImpl.needToInferCaller(clazz, level) ? Thread.currentThread().getStackTrace() : null);
+            // To get the StackTrace is expensive. Extract the method name only if it's necessary!!!
+            // Throwable.getStackTrace() skips the security and thread checks of Thread.getStackTrace()
+            log(level, ex, message, needToInferCaller(level) ? new Throwable().getStackTrace() : null);
         }
     }
 
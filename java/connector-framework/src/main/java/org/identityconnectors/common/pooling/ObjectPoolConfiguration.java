@@ -39,6 +39,11 @@ public final class ObjectPoolConfiguration {
         this.setMaxWait(other.getMaxWait());
         this.setMinEvictableIdleTimeMillis(other.getMinEvictableIdleTimeMillis());
         this.setMinIdle(other.getMinIdle());
+        this.setTimeBetweenEvictionRunsMillis(other.getTimeBetweenEvictionRunsMillis());
+        this.setTestWhileIdle(other.isTestWhileIdle());
+        this.setValidationIdleTimeMillis(other.getValidationIdleTimeMillis());
+        this.setThreadAffinity(other.isThreadAffinity());
+        this.setFair(other.isFair());
     }
 
     /**
@@ -68,6 +73,33 @@ public final class ObjectPoolConfiguration {
      */
     private int minIdle = 1;
 
+    /**
+     * Time between two runs of the background idle object evictor. Zero means
+     * no background eviction, the default.
+     */
+    private long timeBetweenEvictionRunsMillis = 0;
+
+    /**
+     * Test idle objects during the eviction runs.
+     */
+    private boolean testWhileIdle = false;
+
+    /**
+     * Minimum idle time before a borrowed object is tested. Zero means always
+     * test.
+     */
+    private long validationIdleTimeMillis = 0;
+
+    /**
+     * Prefer the object last returned by the borrowing thread.
+     */
+    private boolean threadAffinity = false;
+
+    /**
+     * Hand returned objects to the waiting borrowers in arrival order.
+     */
+    private boolean fair = false;
+
     /**
      * Get the set number of maximum objects (idle+active).
      */
@@ -143,6 +175,111 @@ public final class ObjectPoolConfiguration {
         this.minIdle = minIdle;
     }
 
+    /**
+     * Time between two runs of the background evictor, which disposes of the
+     * idle objects older than {@link #getMinEvictableIdleTimeMillis()} and
+     * creates idle objects up to {@link #getMinIdle()}. Zero, the default,
+     * means idle objects are only evicted when objects are borrowed.
+     *
+     * @since 1.4.4
+     */
+    public long getTimeBetweenEvictionRunsMillis() {
+        return timeBetweenEvictionRunsMillis;
+    }
+
+    /**
+     * Time between two runs of the background evictor. Zero, the default,
+     * means idle objects are only evicted when objects are borrowed.
+     *
+     * @since 1.4.4
+     */
+    public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+        this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+    }
+
+    /**
+     * Whether the background evictor tests the idle objects it keeps, so
+     * broken objects are disposed of and live ones are kept alive.
+     *
+     * @since 1.4.4
+     */
+    public boolean isTestWhileIdle() {
+        return testWhileIdle;
+    }
+
+    /**
+     * Whether the background evictor tests the idle objects it keeps.
+     *
+     * @since 1.4.4
+     */
+    public void setTestWhileIdle(boolean testWhileIdle) {
+        this.testWhileIdle = testWhileIdle;
+    }
+
+    /**
+     * Minimum time an object must have been idle to be tested when it is
+     * borrowed, objects returned more recently are handed out untested. Zero
+     * means always test.
+     *
+     * @since 1.4.4
+     */
+    public long getValidationIdleTimeMillis() {
+        return validationIdleTimeMillis;
+    }
+
+    /**
+     * Minimum time an object must have been idle to be tested when it is
+     * borrowed. Zero means always test.
+     *
+     * @since 1.4.4
+     */
+    public void setValidationIdleTimeMillis(long validationIdleTimeMillis) {
+        this.validationIdleTimeMillis = validationIdleTimeMillis;
+    }
+
+    /**
+     * Whether a thread borrows the object it returned last when that one is
+     * idle, which keeps the objects warm for the threads using them and
+     * avoids contention on the idle queue.
+     *
+     * @since 1.4.4
+     */
+    public boolean isThreadAffinity() {
+        return threadAffinity;
+    }
+
+    /**
+     * Whether a thread borrows the object it returned last when that one is
+     * idle.
+     *
+     * @since 1.4.4
+     */
+    public void setThreadAffinity(boolean threadAffinity) {
+        this.threadAffinity = threadAffinity;
+    }
+
+    /**
+     * Whether returned objects are handed directly to the borrowers waiting
+     * for one, the longest waiting first. Otherwise a waiting borrower is only
+     * woken up and may lose the object to a borrower which just arrived, which
+     * gives a better throughput but no bound on the wait.
+     *
+     * @since 1.4.4
+     */
+    public boolean isFair() {
+        return fair;
+    }
+
+    /**
+     * Whether returned objects are handed directly to the borrowers waiting
+     * for one, the longest waiting first.
+     *
+     * @since 1.4.4
+     */
+    public void setFair(boolean fair) {
+        this.fair = fair;
+    }
+
     public void validate() {
         if (minIdle < 0) {
             throw new IllegalArgumentException("Min idle is less than zero.");
@@ -159,6 +296,12 @@ public final class ObjectPoolConfiguration {
         if (minEvictableIdleTimeMillis < 0) {
             throw new IllegalArgumentException("Min evictable idle time millis less than zero.");
         }
+        if (timeBetweenEvictionRunsMillis < 0) {
+            throw new IllegalArgumentException("Time between eviction runs millis less than zero.");
+        }
+        if (validationIdleTimeMillis < 0) {
+            throw new IllegalArgumentException("Validation idle time millis less than zero.");
+        }
         if (minIdle > maxIdle) {
             throw new IllegalArgumentException("Min idle is greater than max idle.");
         }
@@ -170,7 +313,9 @@ public final class ObjectPoolConfiguration {
     @Override
     public int hashCode() {
         return (int) (getMaxObjects() + getMaxIdle() + getMaxWait()
-                + getMinEvictableIdleTimeMillis() + getMinIdle());
+                + getMinEvictableIdleTimeMillis() + getMinIdle()
+                + getTimeBetweenEvictionRunsMillis() + (isTestWhileIdle() ? 1 : 0)
+                + getValidationIdleTimeMillis() + (isThreadAffinity() ? 2 : 0) + (isFair() ? 4 : 0));
     }
 
     @Override
@@ -193,6 +338,21 @@ public final class ObjectPoolConfiguration {
             if (getMinIdle() != other.getMinIdle()) {
                 return false;
             }
+            if (getTimeBetweenEvictionRunsMillis() != other.getTimeBetweenEvictionRunsMillis()) {
+                return false;
+            }
+            if (isTestWhileIdle() != other.isTestWhileIdle()) {
+                return false;
+            }
+            if (getValidationIdleTimeMillis() != other.getValidationIdleTimeMillis()) {
+                return false;
+            }
+            if (isThreadAffinity() != other.isThreadAffinity()) {
+                return false;
+            }
+            if (isFair() != other.isFair()) {
+                return false;
+            }
             return true;
         }
         return false;
@@ -207,6 +367,11 @@ public final class ObjectPoolConfiguration {
         bld.put("MaxWait", getMaxWait());
         bld.put("MinEvictableIdleTimeMillis", getMinEvictableIdleTimeMillis());
         bld.put("MinIdle", getMinIdle());
+        bld.put("TimeBetweenEvictionRunsMillis", getTimeBetweenEvictionRunsMillis());
+        bld.put("TestWhileIdle", isTestWhileIdle());
+        bld.put("ValidationIdleTimeMillis", getValidationIdleTimeMillis());
+        bld.put("ThreadAffinity", isThreadAffinity());
+        bld.put("Fair", isFair());
         return bld.toString();
     }
 }
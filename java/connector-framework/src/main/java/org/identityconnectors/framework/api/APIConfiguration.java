@@ -117,4 +117,60 @@ public interface APIConfiguration {
      */
     ResultsHandlerConfiguration getResultsHandlerConfiguration();
 
+    /**
+     * Get the configuration of the object cache of the facade.
+     *
+     * @since 1.4.4
+     */
+    ObjectCacheConfiguration getObjectCacheConfiguration();
+
+    /**
+     * Sets the directory of the search snapshots used to emulate the
+     * {@link org.identityconnectors.framework.api.operations.SyncApiOp sync}
+     * operation of a {@link Connector} which only supports {@link SearchOp}.
+     * <p>
+     * Each sync takes a full search of the object class and reports the
+     * differences with the snapshot referenced by the token. The directory
+     * belongs to the facade, it must not be shared with the facades of other
+     * resources. With a remote connector server, it is a directory of the
+     * server.
+     *
+     * @param directory
+     *            the snapshot directory, null (the default) disables the
+     *            emulation.
+     * @since 1.4.4
+     */
+    void setSyncSnapshotDirectory(String directory);
+
+    /**
+     * Get the directory of the search snapshots of the emulated sync
+     * operation.
+     *
+     * @since 1.4.4
+     */
+    String getSyncSnapshotDirectory();
+
+    /**
+     * Sets how long the facade caches the schema of the connector.
+     * <p>
+     * The schema is cached per connector and facade configuration. Once
+     * expired it is fetched again; a remote facade then gets it from the
+     * connector server only if it changed. Applications changing the schema
+     * of a resource drop the cached one with
+     * {@link ConnectorFacadeFactory#invalidateSchema(ConnectorFacade)}.
+     *
+     * @param timeToLive
+     *            milliseconds the schema is cached for, zero (the default)
+     *            disables the cache.
+     * @since 1.4.4
+     */
+    void setSchemaCacheTimeToLiveMillis(long timeToLive);
+
+    /**
+     * Get how long the facade caches the schema of the connector.
+     *
+     * @since 1.4.4
+     */
+    long getSchemaCacheTimeToLiveMillis();
+
 }
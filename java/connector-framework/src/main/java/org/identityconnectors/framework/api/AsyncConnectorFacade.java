@@ -0,0 +1,116 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.api;
+
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+
+/**
+ * Runs the operations of a {@link ConnectorFacade} without blocking the
+ * caller.
+ * <p>
+ * The operations on single objects run on the threads of an
+ * {@link ExecutorService}, so an application may have many more operations
+ * pending than threads. The results of a search or a sync are pushed to a
+ * {@link ResultsSubscriber} as it requests them, from a thread of the
+ * framework: while it requests none, that thread and the connector are held,
+ * and a remote connector server is held at its next pause in the stream.
+ *
+ * @see ConnectorFacadeFactory#newAsyncInstance(ConnectorFacade,
+ *      ExecutorService)
+ * @since 1.4.4
+ */
+public interface AsyncConnectorFacade {
+
+    /**
+     * Returns the facade running the operations.
+     */
+    ConnectorFacade getConnectorFacade();
+
+    /**
+     * Creates an object.
+     *
+     * @see org.identityconnectors.framework.api.operations.CreateApiOp#create(ObjectClass,
+     *      Set, OperationOptions)
+     */
+    OperationFuture<Uid> create(ObjectClass objectClass, Set<Attribute> createAttributes,
+            OperationOptions options);
+
+    /**
+     * Updates an object.
+     *
+     * @see org.identityconnectors.framework.api.operations.UpdateApiOp#update(ObjectClass,
+     *      Uid, Set, OperationOptions)
+     */
+    OperationFuture<Uid> update(ObjectClass objectClass, Uid uid, Set<Attribute> replaceAttributes,
+            OperationOptions options);
+
+    /**
+     * Deletes an object.
+     *
+     * @see org.identityconnectors.framework.api.operations.DeleteApiOp#delete(ObjectClass,
+     *      Uid, OperationOptions)
+     */
+    OperationFuture<Void> delete(ObjectClass objectClass, Uid uid, OperationOptions options);
+
+    /**
+     * Gets an object, the future returning null if it does not exist.
+     *
+     * @see org.identityconnectors.framework.api.operations.GetApiOp#getObject(ObjectClass,
+     *      Uid, OperationOptions)
+     */
+    OperationFuture<ConnectorObject> getObject(ObjectClass objectClass, Uid uid,
+            OperationOptions options);
+
+    /**
+     * Searches the objects, publishing them to the subscriber, and then the
+     * {@link SearchResult}.
+     *
+     * @see org.identityconnectors.framework.api.operations.SearchApiOp#search(ObjectClass,
+     *      Filter, org.identityconnectors.framework.common.objects.ResultsHandler,
+     *      OperationOptions)
+     */
+    void search(ObjectClass objectClass, Filter filter, OperationOptions options,
+            ResultsSubscriber<ConnectorObject, SearchResult> subscriber);
+
+    /**
+     * Synchronizes the changes, publishing them to the subscriber, and then
+     * the {@link SyncToken} of the connector.
+     *
+     * @see org.identityconnectors.framework.api.operations.SyncApiOp#sync(ObjectClass,
+     *      SyncToken, org.identityconnectors.framework.common.objects.SyncResultsHandler,
+     *      OperationOptions)
+     */
+    void sync(ObjectClass objectClass, SyncToken token, OperationOptions options,
+            ResultsSubscriber<SyncDelta, SyncToken> subscriber);
+}
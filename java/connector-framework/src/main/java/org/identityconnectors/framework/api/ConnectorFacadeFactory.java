@@ -23,6 +23,8 @@
  */
 package org.identityconnectors.framework.api;
 
+import java.util.concurrent.ExecutorService;
+
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 
 /**
@@ -106,4 +108,40 @@ public abstract class ConnectorFacadeFactory {
      * @since 1.4
      */
     public abstract ConnectorFacade newInstance(ConnectorInfo connectorInfo, String config);
+
+    /**
+     * Get an {@link AsyncConnectorFacade} running the operations of a
+     * {@link ConnectorFacade}.
+     *
+     * @param facade
+     *            the facade running the operations.
+     * @param executor
+     *            the executor running the operations on single objects, null
+     *            for a pool of the framework shared by the asynchronous
+     *            facades. Searches and syncs run on a pool of the framework.
+     * @return {@link AsyncConnectorFacade} to call API operations against.
+     * @throws UnsupportedOperationException
+     *             if this factory does not provide asynchronous facades.
+     * @since 1.4.4
+     */
+    public AsyncConnectorFacade newAsyncInstance(ConnectorFacade facade, ExecutorService executor) {
+        throw new UnsupportedOperationException(getClass().getName()
+                + " does not provide asynchronous facades");
+    }
+
+    /**
+     * Drops the schema cached for a facade, so that the next call of its
+     * schema operation asks the connector.
+     *
+     * @param facade
+     *            a facade of this factory.
+     * @throws UnsupportedOperationException
+     *             if this factory does not cache schemas.
+     * @see APIConfiguration#setSchemaCacheTimeToLiveMillis(long)
+     * @since 1.4.4
+     */
+    public void invalidateSchema(ConnectorFacade facade) {
+        throw new UnsupportedOperationException(getClass().getName()
+                + " does not cache schemas");
+    }
 }
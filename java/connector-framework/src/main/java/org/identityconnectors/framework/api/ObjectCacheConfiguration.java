@@ -0,0 +1,157 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.api;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.identityconnectors.framework.common.objects.ObjectClass;
+
+/**
+ * Configuration of the object cache of a {@link ConnectorFacade}.
+ * <p>
+ * The facade caches the objects of the enabled object classes returned by
+ * {@link org.identityconnectors.framework.api.operations.GetApiOp#getObject}
+ * and by searches for a single {@link org.identityconnectors.framework.common.objects.Uid}.
+ * The cached objects are dropped when they are created, updated or deleted
+ * through the same facade, or reported by its sync operation. Changes made
+ * by other applications are seen once the objects expire. The cache is
+ * disabled by default.
+ *
+ * @since 1.4.4
+ */
+public class ObjectCacheConfiguration {
+
+    /**
+     * Names of the object classes whose objects are cached.
+     */
+    private Set<String> objectClasses = new TreeSet<String>();
+
+    /**
+     * Maximum number of objects in the cache.
+     */
+    private int maxObjects = 1000;
+
+    /**
+     * Time an object is cached for.
+     */
+    private long timeToLiveMillis = 60 * 1000L;
+
+    /**
+     * default empty constructor.
+     */
+    public ObjectCacheConfiguration() {
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param source
+     *            configuration that copied to.
+     */
+    public ObjectCacheConfiguration(ObjectCacheConfiguration source) {
+        this.objectClasses = new TreeSet<String>(source.objectClasses);
+        this.maxObjects = source.maxObjects;
+        this.timeToLiveMillis = source.timeToLiveMillis;
+    }
+
+    /**
+     * Tells whether the objects of any object class are cached.
+     */
+    public boolean isEnabled() {
+        return !objectClasses.isEmpty() && maxObjects > 0 && timeToLiveMillis > 0;
+    }
+
+    /**
+     * Tells whether the objects of the given object class are cached.
+     */
+    public boolean isEnabled(ObjectClass objectClass) {
+        return isEnabled() && objectClasses.contains(objectClass.getObjectClassValue());
+    }
+
+    /**
+     * Turns caching on or off for the objects of the given object class.
+     */
+    public void setEnabled(ObjectClass objectClass, boolean enabled) {
+        if (enabled) {
+            objectClasses.add(objectClass.getObjectClassValue());
+        } else {
+            objectClasses.remove(objectClass.getObjectClassValue());
+        }
+    }
+
+    public Set<String> getObjectClasses() {
+        return Collections.unmodifiableSet(objectClasses);
+    }
+
+    public void setObjectClasses(Set<String> objectClasses) {
+        this.objectClasses =
+                objectClasses == null ? new TreeSet<String>() : new TreeSet<String>(objectClasses);
+    }
+
+    public int getMaxObjects() {
+        return maxObjects;
+    }
+
+    public void setMaxObjects(int maxObjects) {
+        this.maxObjects = maxObjects;
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    public void setTimeToLiveMillis(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final ObjectCacheConfiguration other = (ObjectCacheConfiguration) obj;
+        return objectClasses.equals(other.objectClasses) && maxObjects == other.maxObjects
+                && timeToLiveMillis == other.timeToLiveMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 79 * hash + objectClasses.hashCode();
+        hash = 79 * hash + maxObjects;
+        hash = 79 * hash + (int) (timeToLiveMillis ^ (timeToLiveMillis >>> 32));
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectCacheConfiguration{" + "objectClasses=" + objectClasses + "\nmaxObjects="
+                + maxObjects + "\ntimeToLiveMillis=" + timeToLiveMillis + '}';
+    }
+}
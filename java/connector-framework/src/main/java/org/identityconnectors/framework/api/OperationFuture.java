@@ -0,0 +1,44 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.api;
+
+import java.util.concurrent.Future;
+
+/**
+ * The pending result of an operation of an {@link AsyncConnectorFacade}.
+ *
+ * @since 1.4.4
+ */
+public interface OperationFuture<T> extends Future<T> {
+
+    /**
+     * Registers a listener run once the operation is done, at once on the
+     * calling thread if it is done already, otherwise on the thread which ran
+     * the operation. The listener gets the outcome with {@link #get()}, which
+     * no longer blocks.
+     *
+     * @param listener
+     *            the listener, which should not block.
+     */
+    void addListener(Runnable listener);
+}
@@ -35,12 +35,35 @@ import org.identityconnectors.common.security.GuardedString;
  * instance of the connector framework.
  */
 public final class RemoteFrameworkConnectionInfo {
+
+    /**
+     * Compression of the data exchanged with the remote framework.
+     *
+     * @since 1.4.4
+     */
+    public enum Compression {
+        /**
+         * The data is sent as it is.
+         */
+        NONE,
+        /**
+         * Cheap compression, for fast links where CPU time matters more than
+         * bytes.
+         */
+        FAST,
+        /**
+         * Best ratio, for slow links where bytes matter more than CPU time.
+         */
+        HIGH
+    }
+
     private final String host;
     private final int port;
     private final GuardedString key;
     private final boolean useSSL;
     private final List<TrustManager> trustManagers;
     private final int timeout;
+    private final Compression compression;
 
     /**
      * Creates a new instance of RemoteFrameworkConnectionInfo, using a clear
@@ -79,6 +102,36 @@ public final class RemoteFrameworkConnectionInfo {
      */
     public RemoteFrameworkConnectionInfo(String host, int port, GuardedString key, boolean useSSL,
             List<TrustManager> trustManagers, int timeout) {
+        this(host, port, key, useSSL, trustManagers, timeout, Compression.NONE);
+    }
+
+    /**
+     * Creates a new instance of RemoteFrameworkConnectionInfo.
+     *
+     * @param host
+     *            The host to connect to
+     * @param port
+     *            The port to connect to
+     * @param key
+     *            The remote framework key
+     * @param useSSL
+     *            Set to true if we are to connect via SSL.
+     * @param trustManagers
+     *            List of {@link TrustManager}'s to use for establising the SSL
+     *            connection. May be null or empty, in which case the default
+     *            installed providers for the JVM will be used. Ignored if
+     *            'useSSL' is false.
+     * @param timeout
+     *            The timeout to use (in milliseconds). A value of 0 means
+     *            infinite timeout;
+     * @param compression
+     *            The compression to use. It is only used if the remote
+     *            framework announces support for it, otherwise the data is
+     *            sent uncompressed.
+     * @since 1.4.4
+     */
+    public RemoteFrameworkConnectionInfo(String host, int port, GuardedString key, boolean useSSL,
+            List<TrustManager> trustManagers, int timeout, Compression compression) {
         Assertions.nullCheck(host, "host");
         Assertions.nullCheck(key, "key");
         this.host = host;
@@ -87,6 +140,7 @@ public final class RemoteFrameworkConnectionInfo {
         this.useSSL = useSSL;
         this.trustManagers = CollectionUtil.newReadOnlyList(trustManagers);
         this.timeout = timeout;
+        this.compression = null != compression ? compression : Compression.NONE;
     }
 
     /**
@@ -145,6 +199,16 @@ public final class RemoteFrameworkConnectionInfo {
         return timeout;
     }
 
+    /**
+     * Returns the compression to use for the connection.
+     *
+     * @return the compression to use for the connection, never null.
+     * @since 1.4.4
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -170,6 +234,9 @@ public final class RemoteFrameworkConnectionInfo {
             if (getTimeout() != other.getTimeout()) {
                 return false;
             }
+            if (getCompression() != other.getCompression()) {
+                return false;
+            }
 
             return true;
         }
@@ -72,6 +72,29 @@ public class ResultsHandlerConfiguration {
      * in the handler chain.
      */
     boolean enableAttributesToGetSearchResultsHandler = true;
+    /**
+     * Number of threads the
+     * {@link org.identityconnectors.framework.common.objects.SyncDelta}s are
+     * dispatched to, partitioned by
+     * {@link org.identityconnectors.framework.common.objects.Uid} so the
+     * changes of one object are handled in order. With 1 or less the deltas
+     * are handled on the thread of the connector.
+     *
+     * @since 1.4.4
+     */
+    int syncDispatchThreads = 0;
+    /**
+     * Enables the sorting and paging of the search results by the framework,
+     * for the connectors which do not support
+     * {@link org.identityconnectors.framework.common.objects.OperationOptions#OP_SORT_KEYS}
+     * and
+     * {@link org.identityconnectors.framework.common.objects.OperationOptions#OP_PAGE_SIZE}.
+     * The connector then runs the whole search, the results are sorted on
+     * disk and the pages are served from there.
+     *
+     * @since 1.4.4
+     */
+    boolean enableSortingPagingEmulation = false;
 
     /**
      * default empty constructor.
@@ -92,6 +115,8 @@ public class ResultsHandlerConfiguration {
         this.enableCaseInsensitiveFilter = source.isEnableCaseInsensitiveFilter();
         this.enableAttributesToGetSearchResultsHandler =
                 source.isEnableAttributesToGetSearchResultsHandler();
+        this.syncDispatchThreads = source.getSyncDispatchThreads();
+        this.enableSortingPagingEmulation = source.isEnableSortingPagingEmulation();
     }
 
     public boolean isEnableAttributesToGetSearchResultsHandler() {
@@ -135,6 +160,34 @@ public class ResultsHandlerConfiguration {
         this.enableNormalizingResultsHandler = enableNormalizingResultsHandler;
     }
 
+    /**
+     * @since 1.4.4
+     */
+    public int getSyncDispatchThreads() {
+        return syncDispatchThreads;
+    }
+
+    /**
+     * @since 1.4.4
+     */
+    public void setSyncDispatchThreads(int syncDispatchThreads) {
+        this.syncDispatchThreads = syncDispatchThreads;
+    }
+
+    /**
+     * @since 1.4.4
+     */
+    public boolean isEnableSortingPagingEmulation() {
+        return enableSortingPagingEmulation;
+    }
+
+    /**
+     * @since 1.4.4
+     */
+    public void setEnableSortingPagingEmulation(boolean enableSortingPagingEmulation) {
+        this.enableSortingPagingEmulation = enableSortingPagingEmulation;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -159,6 +212,12 @@ public class ResultsHandlerConfiguration {
         if (this.enableAttributesToGetSearchResultsHandler != other.enableAttributesToGetSearchResultsHandler) {
             return false;
         }
+        if (this.syncDispatchThreads != other.syncDispatchThreads) {
+            return false;
+        }
+        if (this.enableSortingPagingEmulation != other.enableSortingPagingEmulation) {
+            return false;
+        }
         return true;
     }
 
@@ -170,6 +229,8 @@ public class ResultsHandlerConfiguration {
         hash = 79 * hash + (this.filteredResultsHandlerInValidationMode ? 1 : 0);
         hash = 79 * hash + (this.enableCaseInsensitiveFilter ? 1 : 0);
         hash = 79 * hash + (this.enableAttributesToGetSearchResultsHandler ? 1 : 0);
+        hash = 79 * hash + this.syncDispatchThreads;
+        hash = 79 * hash + (this.enableSortingPagingEmulation ? 1 : 0);
         return hash;
     }
 
@@ -180,6 +241,8 @@ public class ResultsHandlerConfiguration {
                 + enableFilteredResultsHandler + "\nfilteredResultsHandlerInValidationMode="
                 + filteredResultsHandlerInValidationMode + "\nenableCaseInsensitiveFilter="
                 + enableCaseInsensitiveFilter + "\nenableAttributesToGetSearchResultsHandler="
-                + enableAttributesToGetSearchResultsHandler + '}';
+                + enableAttributesToGetSearchResultsHandler + "\nsyncDispatchThreads="
+                + syncDispatchThreads + "\nenableSortingPagingEmulation="
+                + enableSortingPagingEmulation + '}';
     }
 }
@@ -0,0 +1,73 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.api;
+
+/**
+ * Receives the results of a search or a sync of an
+ * {@link AsyncConnectorFacade}.
+ * <p>
+ * The subscriber first gets its {@link ResultsSubscription}, then as many
+ * results as it requested, and finally either the outcome of the operation or
+ * its failure, unless it cancelled the subscription. The calls are made one
+ * at a time.
+ *
+ * @param <T>
+ *            the type of the results.
+ * @param <R>
+ *            the type of the outcome.
+ * @since 1.4.4
+ */
+public interface ResultsSubscriber<T, R> {
+
+    /**
+     * Called first, before the operation starts.
+     *
+     * @param subscription
+     *            the subscription to request the results with.
+     */
+    void onSubscribe(ResultsSubscription subscription);
+
+    /**
+     * Called for each result requested.
+     *
+     * @param result
+     *            the result.
+     */
+    void onNext(T result);
+
+    /**
+     * Called once the operation is complete.
+     *
+     * @param outcome
+     *            the outcome of the operation, may be null.
+     */
+    void onComplete(R outcome);
+
+    /**
+     * Called if the operation failed.
+     *
+     * @param error
+     *            the failure of the operation.
+     */
+    void onError(RuntimeException error);
+}
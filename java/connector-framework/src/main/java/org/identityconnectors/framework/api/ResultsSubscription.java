@@ -0,0 +1,49 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.api;
+
+/**
+ * The link between a {@link ResultsSubscriber} and a search or a sync of an
+ * {@link AsyncConnectorFacade}. Its methods may be called from any thread.
+ *
+ * @since 1.4.4
+ */
+public interface ResultsSubscription {
+
+    /**
+     * Requests more results.
+     *
+     * @param n
+     *            the number of results to add to the demand, strictly
+     *            positive.
+     * @throws IllegalArgumentException
+     *             if n is not strictly positive.
+     */
+    void request(long n);
+
+    /**
+     * Cancels the operation, no more results are passed to the subscriber
+     * nor the outcome of the operation.
+     */
+    void cancel();
+}
@@ -0,0 +1,63 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.api.operations;
+
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResultsHandler;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+
+/**
+ * Executes a list of creates, updates and deletes in one call.
+ * <p>
+ * Connectors implementing
+ * {@link org.identityconnectors.framework.spi.operations.BatchOp} receive the
+ * whole batch, for the other ones the framework runs the operations one after
+ * the other on a single connector. A remote batch is sent in one request.
+ *
+ * @since 1.4.4
+ */
+public interface BatchApiOp extends APIOperation {
+
+    /**
+     * Executes the operations of the batch.
+     * <p>
+     * A failing operation does not stop the batch, its exception is reported
+     * in its {@link org.identityconnectors.framework.common.objects.BatchResult
+     * result}. Results may not arrive in the order of the operations, each of
+     * them carries the index of its operation.
+     *
+     * @param operations
+     *            the creates, updates and deletes to execute. Must not be
+     *            null.
+     * @param handler
+     *            receives the result of each operation. Must not be null.
+     * @param options
+     *            additional options that impact the way the operations are
+     *            run. May be null.
+     */
+    void executeBatch(List<BatchOperation> operations, BatchResultsHandler handler,
+            OperationOptions options);
+}
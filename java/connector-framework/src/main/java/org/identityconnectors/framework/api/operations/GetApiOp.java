@@ -22,9 +22,13 @@
  */
 package org.identityconnectors.framework.api.operations;
 
+import java.util.Collection;
+import java.util.Set;
+
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.Uid;
 
 /**
@@ -46,4 +50,28 @@ public interface GetApiOp extends APIOperation {
      *         <code>null</code> if no such object could be found.
      */
     public ConnectorObject getObject(ObjectClass objectClass, Uid uid, OperationOptions options);
+
+    /**
+     * Get the {@link ConnectorObject}s with any of the given {@link Uid}s.
+     * <p>
+     * The lookups are grouped in searches with an OR of the uids, remotely the
+     * whole set is resolved in one request. Each object is handed once to the
+     * handler, in no particular order.
+     *
+     * @param objectClass
+     *            type of objects to get.
+     * @param uids
+     *            the unique ids of the objects to get, duplicates are
+     *            ignored.
+     * @param handler
+     *            receives the objects as they are found.
+     * @param options
+     *            additional options that impact the way this operation is run.
+     *            May be null.
+     * @return the uids of the objects which could not be found, including the
+     *         ones not looked up because the handler stopped the operation.
+     * @since 1.4.4
+     */
+    public Set<Uid> getObjects(ObjectClass objectClass, Collection<Uid> uids,
+            ResultsHandler handler, OperationOptions options);
 }
@@ -48,6 +48,7 @@ import org.identityconnectors.common.security.GuardedByteArray;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.AuthenticationApiOp;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
 import org.identityconnectors.framework.api.operations.DeleteApiOp;
 import org.identityconnectors.framework.api.operations.GetApiOp;
@@ -68,6 +69,7 @@ import org.identityconnectors.framework.common.objects.SortKey;
 import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.operations.AuthenticateOp;
+import org.identityconnectors.framework.spi.operations.BatchOp;
 import org.identityconnectors.framework.spi.operations.CreateOp;
 import org.identityconnectors.framework.spi.operations.DeleteOp;
 import org.identityconnectors.framework.spi.operations.ResolveUsernameOp;
@@ -117,6 +119,7 @@ public final class FrameworkUtil {
         SPI_TO_API.put(ScriptOnConnectorOp.class, ScriptOnConnectorApiOp.class);
         SPI_TO_API.put(ScriptOnResourceOp.class, ScriptOnResourceApiOp.class);
         SPI_TO_API.put(SyncOp.class, SyncApiOp.class);
+        SPI_TO_API.put(BatchOp.class, BatchApiOp.class);
     }
 
     /**
@@ -129,6 +132,10 @@ public final class FrameworkUtil {
         if (spi == SearchOp.class) {
             set.add(GetApiOp.class);
         }
+        // the framework runs batches one operation after the other
+        if (spi == CreateOp.class || spi == UpdateOp.class || spi == DeleteOp.class) {
+            set.add(BatchApiOp.class);
+        }
         return set;
     }
 
@@ -0,0 +1,58 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.common.objects;
+
+import java.util.List;
+
+/**
+ * A {@link ResultsHandler} that also handles the objects in batches.
+ * <p>
+ * A connector reading its objects a page at a time may pass each page at once
+ * with {@link ResultsHandlerUtil#handleBatch(ResultsHandler, List)}, the
+ * framework then carries the batch intact to the application, including over
+ * the wire to a remote connector server. Handlers that only implement
+ * {@link ResultsHandler} still get the objects one at a time.
+ *
+ * @since 1.4.4
+ */
+public interface BatchAwareResultsHandler extends ResultsHandler {
+
+    /**
+     * Invoked with a batch of matching {@link ConnectorObject}s, in the order
+     * they would have been passed to {@link #handle(ConnectorObject)}.
+     * <p>
+     * The list must not be modified once passed, the handler may keep it.
+     *
+     * @param connectorObjects
+     *            The matching ConnectorObjects.
+     * @return {@code true} if this handler should continue to be notified of
+     *         any remaining matching ConnectorObjects, or {@code false} if
+     *         they should be skipped, in which case the objects of the batch
+     *         may have been only partly handled.
+     * @throws RuntimeException
+     *             If the application encounters an exception. This will stop
+     *             iteration and the exception will propagate to the
+     *             application.
+     */
+    boolean handleBatch(List<ConnectorObject> connectorObjects);
+}
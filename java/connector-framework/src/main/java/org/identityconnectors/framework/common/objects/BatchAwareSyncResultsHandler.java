@@ -0,0 +1,52 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.common.objects;
+
+import java.util.List;
+
+/**
+ * A {@link SyncResultsHandler} that also handles the deltas in batches.
+ *
+ * @see BatchAwareResultsHandler
+ * @since 1.4.4
+ */
+public interface BatchAwareSyncResultsHandler extends SyncResultsHandler {
+
+    /**
+     * Called to handle a batch of deltas, in the order they would have been
+     * passed to {@link #handle(SyncDelta)}.
+     * <p>
+     * The list must not be modified once passed, the handler may keep it.
+     *
+     * @param deltas
+     *            The changes
+     * @return True if the application wants to continue processing more
+     *         results, false if the deltas of the batch may have been only
+     *         partly handled.
+     * @throws RuntimeException
+     *             If the application encounters an exception. This will stop
+     *             iteration and the exception will propagate to the
+     *             application.
+     */
+    public boolean handleBatch(List<SyncDelta> deltas);
+}
@@ -0,0 +1,140 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.common.objects;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
+
+/**
+ * One create, update or delete of a {@link BatchApiOp batch}.
+ *
+ * @since 1.4.4
+ */
+public final class BatchOperation {
+
+    /**
+     * The kind of change of a batch operation.
+     */
+    public enum Type {
+        /**
+         * Creates an object from the attributes.
+         */
+        CREATE,
+        /**
+         * Replaces the attributes of the object with the uid.
+         */
+        UPDATE,
+        /**
+         * Deletes the object with the uid.
+         */
+        DELETE
+    }
+
+    private final Type type;
+    private final ObjectClass objectClass;
+    private final Uid uid;
+    private final Set<Attribute> attributes;
+
+    /**
+     * Create a BatchOperation.
+     *
+     * @param type
+     *            The kind of change. May not be null.
+     * @param objectClass
+     *            The object class. May not be null.
+     * @param uid
+     *            The uid of the object to update or delete, null for a
+     *            create.
+     * @param attributes
+     *            The attributes to create or replace, null for a delete.
+     */
+    public BatchOperation(Type type, ObjectClass objectClass, Uid uid, Set<Attribute> attributes) {
+        Assertions.nullCheck(type, "type");
+        Assertions.nullCheck(objectClass, "objectClass");
+        if (type == Type.CREATE) {
+            if (uid != null) {
+                throw new IllegalArgumentException("A create must not have a uid");
+            }
+        } else {
+            Assertions.nullCheck(uid, "uid");
+        }
+        if (type == Type.DELETE) {
+            if (attributes != null && !attributes.isEmpty()) {
+                throw new IllegalArgumentException("A delete must not have attributes");
+            }
+            attributes = Collections.emptySet();
+        } else {
+            Assertions.nullCheck(attributes, "attributes");
+        }
+        this.type = type;
+        this.objectClass = objectClass;
+        this.uid = uid;
+        this.attributes = Collections.unmodifiableSet(new LinkedHashSet<Attribute>(attributes));
+    }
+
+    /**
+     * Returns the kind of change.
+     *
+     * @return The kind of change.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the object class.
+     *
+     * @return The object class.
+     */
+    public ObjectClass getObjectClass() {
+        return objectClass;
+    }
+
+    /**
+     * Returns the uid of the object to update or delete.
+     *
+     * @return The uid, null for a create.
+     */
+    public Uid getUid() {
+        return uid;
+    }
+
+    /**
+     * Returns the attributes to create or replace.
+     *
+     * @return The attributes, empty for a delete.
+     */
+    public Set<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchOperation: " + type + ", " + objectClass + ", " + uid + ", " + attributes;
+    }
+}
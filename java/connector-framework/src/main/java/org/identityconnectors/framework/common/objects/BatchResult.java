@@ -0,0 +1,112 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.common.objects;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
+
+/**
+ * The outcome of one operation of a {@link BatchApiOp batch}: either the
+ * {@link Uid} of the object or the exception the operation failed with.
+ *
+ * @since 1.4.4
+ */
+public final class BatchResult {
+
+    private final int index;
+    private final Uid uid;
+    private final RuntimeException exception;
+
+    /**
+     * Create a successful BatchResult.
+     *
+     * @param index
+     *            The position of the operation in the batch.
+     * @param uid
+     *            The uid of the created, updated or deleted object. May not be
+     *            null.
+     */
+    public BatchResult(int index, Uid uid) {
+        Assertions.nullCheck(uid, "uid");
+        this.index = index;
+        this.uid = uid;
+        this.exception = null;
+    }
+
+    /**
+     * Create a failed BatchResult.
+     *
+     * @param index
+     *            The position of the operation in the batch.
+     * @param exception
+     *            Why the operation failed. May not be null.
+     */
+    public BatchResult(int index, RuntimeException exception) {
+        Assertions.nullCheck(exception, "exception");
+        this.index = index;
+        this.uid = null;
+        this.exception = exception;
+    }
+
+    /**
+     * Returns the position of the operation in the batch.
+     *
+     * @return The index of the operation, starting at 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the uid of the created, updated or deleted object.
+     *
+     * @return The uid, null if the operation failed.
+     */
+    public Uid getUid() {
+        return uid;
+    }
+
+    /**
+     * Returns why the operation failed.
+     *
+     * @return The exception, null if the operation succeeded.
+     */
+    public RuntimeException getException() {
+        return exception;
+    }
+
+    /**
+     * Returns whether the operation succeeded.
+     *
+     * @return True if the operation has a uid.
+     */
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult: " + index + ", " + (exception == null ? uid : exception);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.common.objects;
+
+import org.identityconnectors.framework.api.operations.BatchApiOp;
+
+/**
+ * Callback interface that an application implements in order to handle the
+ * results of a {@link BatchApiOp batch} as each operation completes.
+ *
+ * @since 1.4.4
+ */
+public interface BatchResultsHandler {
+
+    /**
+     * Called to handle the result of one operation. The framework calls this
+     * method once per operation of the batch, synchronously: once the call to
+     * {@link BatchApiOp#executeBatch BatchApiOp#executeBatch()} returns, the
+     * framework no longer calls this method.
+     *
+     * @param result
+     *            The outcome of an operation
+     * @return True if the application wants the remaining operations to be
+     *         executed.
+     * @throws RuntimeException
+     *             If the application encounters an exception. This will stop
+     *             the batch and the exception will propagate to the
+     *             application.
+     */
+    public boolean handle(BatchResult result);
+}
@@ -0,0 +1,88 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.common.objects;
+
+import java.util.List;
+
+/**
+ * Utility methods to pass results in batches to any handler.
+ *
+ * @since 1.4.4
+ */
+public final class ResultsHandlerUtil {
+
+    private ResultsHandlerUtil() {
+    }
+
+    /**
+     * Passes a batch of objects to a handler, at once if it is a
+     * {@link BatchAwareResultsHandler}, one at a time otherwise.
+     *
+     * @param handler
+     *            the handler of the objects.
+     * @param objects
+     *            the objects, not modified once passed.
+     * @return false if the handler wants no more objects.
+     */
+    public static boolean handleBatch(final ResultsHandler handler,
+            final List<ConnectorObject> objects) {
+        if (objects.isEmpty()) {
+            return true;
+        }
+        if (handler instanceof BatchAwareResultsHandler) {
+            return ((BatchAwareResultsHandler) handler).handleBatch(objects);
+        }
+        for (ConnectorObject object : objects) {
+            if (!handler.handle(object)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes a batch of deltas to a handler, at once if it is a
+     * {@link BatchAwareSyncResultsHandler}, one at a time otherwise.
+     *
+     * @param handler
+     *            the handler of the deltas.
+     * @param deltas
+     *            the deltas, not modified once passed.
+     * @return false if the handler wants no more deltas.
+     */
+    public static boolean handleBatch(final SyncResultsHandler handler,
+            final List<SyncDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return true;
+        }
+        if (handler instanceof BatchAwareSyncResultsHandler) {
+            return ((BatchAwareSyncResultsHandler) handler).handleBatch(deltas);
+        }
+        for (SyncDelta delta : deltas) {
+            if (!handler.handle(delta)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
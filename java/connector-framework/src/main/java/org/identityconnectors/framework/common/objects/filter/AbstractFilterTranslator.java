@@ -109,8 +109,7 @@ abstract public class AbstractFilterTranslator<T> implements FilterTranslator<T>
         }
         // this must come first
         filter = eliminateExternallyChainedFilters(filter);
-        filter = normalizeNot(filter);
-        filter = simplifyAndDistribute(filter);
+        filter = simplify(filter);
         // might have simplified it to the everything filter
         if (filter == null) {
             return new ArrayList<T>();
@@ -127,6 +126,56 @@ abstract public class AbstractFilterTranslator<T> implements FilterTranslator<T>
         return optimized;
     }
 
+    /**
+     * Returns the key of the cached translation plans of this translator.
+     * <p>
+     * The translation first simplifies and distributes the filter, which calls
+     * the <code>create*</code> methods many times to find out which
+     * expressions they support. A translator may opt in to cache the outcome
+     * per shape of the filter, that is its operators and attribute names, as
+     * long as whether its <code>create*</code> methods return null depends on
+     * the operator, the attribute name and the negation only, never on the
+     * values. The filters of a known shape then only create the expressions
+     * of the resulting query.
+     * <p>
+     * The plans are cached by {@link TranslationPlanCache} under the class of
+     * the translator and this key, which must tell apart the translators of
+     * the class supporting different expressions, for example their object
+     * class. The cache holds the key as long as the class loader of the
+     * translator, so the key should only refer to framework classes, not to
+     * the classes of the connector.
+     *
+     * @return the key, or null (the default) to not cache the plans.
+     * @since 1.4.4
+     */
+    protected Object getTranslationPlanKey() {
+        return null;
+    }
+
+    /**
+     * Pushes the Nots to the leaves, prunes the unsupported expressions and
+     * distributes the Ands, using the cached plan when there is one.
+     */
+    private Filter simplify(Filter filter) {
+        Object planKey = getTranslationPlanKey();
+        List<Filter> leaves = new ArrayList<Filter>();
+        String shape = planKey != null ? TranslationPlanCache.shape(filter, leaves) : null;
+        if (shape == null) {
+            return simplifyAndDistribute(normalizeNot(filter));
+        }
+        TranslationPlanCache.Key key = new TranslationPlanCache.Key(getClass(), planKey, shape);
+        TranslationPlanCache.Plan plan = TranslationPlanCache.get(getClass(), key);
+        if (plan != null) {
+            return plan.bind(leaves);
+        }
+        Filter simplified = simplifyAndDistribute(normalizeNot(filter));
+        plan = TranslationPlanCache.Plan.of(simplified, leaves);
+        if (plan != null) {
+            TranslationPlanCache.put(getClass(), key, plan);
+        }
+        return simplified;
+    }
+
     private Filter eliminateExternallyChainedFilters(Filter filter) {
         while (filter instanceof ExternallyChainedFilter) {
             filter = ((ExternallyChainedFilter) filter).getFilter();
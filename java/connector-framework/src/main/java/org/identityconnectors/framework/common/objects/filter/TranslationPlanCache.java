@@ -0,0 +1,349 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.common.objects.filter;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches how {@link AbstractFilterTranslator}s simplify and distribute the
+ * filters, keyed by the shape of the filters: their operators and attribute
+ * names. The translation of a filter of a known shape binds the leaves of the
+ * filter into the cached plan, and only creates the expressions of the
+ * resulting query.
+ * <p/>
+ * Only the translators overriding
+ * {@link AbstractFilterTranslator#getTranslationPlanKey()} use the cache,
+ * which keeps the most recently used plans of each class loader up to its
+ * maximum size. The plans are held per class loader of the translators, weakly
+ * referenced, so that the cache does not keep the class loaders of the
+ * unloaded connector bundles alive.
+ *
+ * @since 1.4.4
+ */
+public final class TranslationPlanCache {
+
+    /**
+     * System property setting the maximum number of cached plans per class
+     * loader, 1000 by default.
+     */
+    public static final String MAX_SIZE_PROP =
+            "org.identityconnectors.framework.filter.planCacheSize";
+
+    private static volatile int maxSize = Integer.getInteger(MAX_SIZE_PROP, 1000);
+
+    private static final Map<ClassLoader, Map<Key, Plan>> PLANS =
+            new WeakHashMap<ClassLoader, Map<Key, Plan>>();
+
+    private static final AtomicLong HITS = new AtomicLong();
+
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private TranslationPlanCache() {
+    }
+
+    /**
+     * Returns the maximum number of cached plans per class loader.
+     */
+    public static int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of cached plans per class loader, 0 disabling
+     * the cache.
+     */
+    public static void setMaxSize(final int size) {
+        maxSize = size;
+        synchronized (PLANS) {
+            for (Map<Key, Plan> plans : PLANS.values()) {
+                while (plans.size() > size) {
+                    plans.remove(plans.keySet().iterator().next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of translations which used a cached plan.
+     */
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * Returns the number of translations which had to build their plan.
+     */
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    /**
+     * Returns the ratio of the translations which used a cached plan.
+     *
+     * @return the ratio between 0 and 1, 0 if there was no translation.
+     */
+    public static double getHitRatio() {
+        long hits = HITS.get();
+        long total = hits + MISSES.get();
+        return total > 0 ? (double) hits / total : 0;
+    }
+
+    /**
+     * Returns the number of cached plans.
+     */
+    public static int size() {
+        int size = 0;
+        synchronized (PLANS) {
+            for (Map<Key, Plan> plans : PLANS.values()) {
+                size += plans.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes the cached plans and resets the statistics.
+     */
+    public static void clear() {
+        synchronized (PLANS) {
+            PLANS.clear();
+        }
+        HITS.set(0);
+        MISSES.set(0);
+    }
+
+    static Plan get(final Class<?> translator, final Key key) {
+        Plan plan = null;
+        synchronized (PLANS) {
+            Map<Key, Plan> plans = PLANS.get(translator.getClassLoader());
+            if (plans != null) {
+                plan = plans.get(key);
+            }
+        }
+        (plan != null ? HITS : MISSES).incrementAndGet();
+        return plan;
+    }
+
+    static void put(final Class<?> translator, final Key key, final Plan plan) {
+        if (maxSize > 0) {
+            synchronized (PLANS) {
+                ClassLoader loader = translator.getClassLoader();
+                Map<Key, Plan> plans = PLANS.get(loader);
+                if (plans == null) {
+                    plans = new LinkedHashMap<Key, Plan>(16, 0.75f, true) {
+
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        protected boolean removeEldestEntry(final Map.Entry<Key, Plan> eldest) {
+                            return size() > maxSize;
+                        }
+                    };
+                    PLANS.put(loader, plans);
+                }
+                plans.put(key, plan);
+            }
+        }
+    }
+
+    /**
+     * Describes the shape of a filter and collects its leaves.
+     *
+     * @param filter
+     *            the filter.
+     * @param leaves
+     *            the leaves, in order.
+     * @return the shape or null if a leaf occurs more than once, so that the
+     *         plan could not tell the occurrences apart.
+     */
+    static String shape(final Filter filter, final List<Filter> leaves) {
+        StringBuilder shape = new StringBuilder();
+        Map<Filter, Filter> seen = new IdentityHashMap<Filter, Filter>();
+        return appendShape(shape, filter, leaves, seen) ? shape.toString() : null;
+    }
+
+    private static boolean appendShape(final StringBuilder shape, final Filter filter,
+            final List<Filter> leaves, final Map<Filter, Filter> seen) {
+        if (filter instanceof AndFilter || filter instanceof OrFilter) {
+            CompositeFilter composite = (CompositeFilter) filter;
+            shape.append(filter instanceof AndFilter ? "&(" : "|(");
+            if (!appendShape(shape, composite.getLeft(), leaves, seen)) {
+                return false;
+            }
+            shape.append(',');
+            if (!appendShape(shape, composite.getRight(), leaves, seen)) {
+                return false;
+            }
+            shape.append(')');
+        } else if (filter instanceof NotFilter) {
+            shape.append("!(");
+            if (!appendShape(shape, ((NotFilter) filter).getFilter(), leaves, seen)) {
+                return false;
+            }
+            shape.append(')');
+        } else {
+            if (seen.put(filter, filter) != null) {
+                return false;
+            }
+            leaves.add(filter);
+            shape.append(filter.getClass().getName());
+            if (filter instanceof AttributeFilter) {
+                shape.append(':').append(((AttributeFilter) filter).getName());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Identifies the plans of a translator within its class loader, by the
+     * name of its class so as not to refer to the class loader.
+     */
+    static final class Key {
+
+        private final String translator;
+
+        private final Object qualifier;
+
+        private final String shape;
+
+        Key(final Class<?> translator, final Object qualifier, final String shape) {
+            this.translator = translator.getName();
+            this.qualifier = qualifier;
+            this.shape = shape;
+        }
+
+        @Override
+        public int hashCode() {
+            return (translator.hashCode() * 31 + qualifier.hashCode()) * 31 + shape.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return translator.equals(other.translator) && qualifier.equals(other.qualifier)
+                    && shape.equals(other.shape);
+        }
+    }
+
+    /**
+     * The simplified and distributed form of a filter, referring to the leaves
+     * of the original filter by position.
+     */
+    static final class Plan {
+
+        private static final int EVERYTHING = 0;
+
+        private static final int AND = 1;
+
+        private static final int OR = 2;
+
+        private static final int NOT = 3;
+
+        private static final int LEAF = 4;
+
+        private final int type;
+
+        private final int leaf;
+
+        private final Plan left;
+
+        private final Plan right;
+
+        private Plan(final int type, final int leaf, final Plan left, final Plan right) {
+            this.type = type;
+            this.leaf = leaf;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * Creates the plan of a simplified filter.
+         *
+         * @param simplified
+         *            the simplified filter, null for everything.
+         * @param leaves
+         *            the leaves of the original filter.
+         * @return the plan, null if the simplified filter does not consist of
+         *         these leaves.
+         */
+        static Plan of(final Filter simplified, final List<Filter> leaves) {
+            if (simplified == null) {
+                return new Plan(EVERYTHING, -1, null, null);
+            }
+            Map<Filter, Integer> positions = new IdentityHashMap<Filter, Integer>();
+            for (int i = 0; i < leaves.size(); i++) {
+                positions.put(leaves.get(i), i);
+            }
+            return of(simplified, positions);
+        }
+
+        private static Plan of(final Filter filter, final Map<Filter, Integer> positions) {
+            if (filter instanceof AndFilter || filter instanceof OrFilter) {
+                CompositeFilter composite = (CompositeFilter) filter;
+                Plan left = of(composite.getLeft(), positions);
+                Plan right = of(composite.getRight(), positions);
+                if (left == null || right == null) {
+                    return null;
+                }
+                return new Plan(filter instanceof AndFilter ? AND : OR, -1, left, right);
+            } else if (filter instanceof NotFilter) {
+                Plan inner = of(((NotFilter) filter).getFilter(), positions);
+                return inner != null ? new Plan(NOT, -1, inner, null) : null;
+            }
+            Integer position = positions.get(filter);
+            return position != null ? new Plan(LEAF, position, null, null) : null;
+        }
+
+        /**
+         * Builds the simplified filter from the leaves of a filter of the
+         * shape of this plan.
+         *
+         * @return the simplified filter, null for everything.
+         */
+        Filter bind(final List<Filter> leaves) {
+            switch (type) {
+            case EVERYTHING:
+                return null;
+            case AND:
+                return new AndFilter(left.bind(leaves), right.bind(leaves));
+            case OR:
+                return new OrFilter(left.bind(leaves), right.bind(leaves));
+            case NOT:
+                return new NotFilter(left.bind(leaves));
+            default:
+                return leaves.get(leaf);
+            }
+        }
+    }
+}
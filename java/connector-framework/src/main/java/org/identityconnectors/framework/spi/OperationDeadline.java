@@ -0,0 +1,121 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.spi;
+
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+
+/**
+ * Deadline of the operation running on the current thread, as derived by the
+ * framework from the operation timeout configured in the
+ * {@link org.identityconnectors.framework.api.APIConfiguration}.
+ * <p/>
+ * Connectors performing long or repeated work may check it cooperatively, for
+ * example between requests sent to the resource, in order to give up as soon
+ * as the caller is no longer waiting for the result. The deadline is only set
+ * while the framework is enforcing a timeout.
+ *
+ * @since 1.4.4
+ */
+public final class OperationDeadline {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<Long>();
+
+    private OperationDeadline() {
+        // empty constructor for singleton class
+    }
+
+    /**
+     * Sets the deadline of the current thread. Used by the framework.
+     *
+     * @param deadlineNanos
+     *            the deadline as a {@link System#nanoTime()} value, or
+     *            <code>null</code> to clear it.
+     */
+    public static void setDeadlineNanos(final Long deadlineNanos) {
+        if (deadlineNanos == null) {
+            DEADLINE.remove();
+        } else {
+            DEADLINE.set(deadlineNanos);
+        }
+    }
+
+    /**
+     * Gets the deadline of the current thread.
+     *
+     * @return the deadline as a {@link System#nanoTime()} value, or
+     *         <code>null</code> if there is none.
+     */
+    public static Long getDeadlineNanos() {
+        return DEADLINE.get();
+    }
+
+    /**
+     * Returns true if a deadline is set on the current thread.
+     *
+     * @return true if a deadline is set on the current thread.
+     */
+    public static boolean isSet() {
+        return DEADLINE.get() != null;
+    }
+
+    /**
+     * Gets the time left before the deadline.
+     *
+     * @return the milliseconds left, zero if the deadline has passed or
+     *         {@link Long#MAX_VALUE} if there is no deadline.
+     */
+    public static long getRemainingMillis() {
+        final Long deadline = DEADLINE.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * Returns true if the deadline of the current thread has passed.
+     *
+     * @return true if the deadline has passed, false if it has not or if there
+     *         is no deadline.
+     */
+    public static boolean isExpired() {
+        final Long deadline = DEADLINE.get();
+        return deadline != null && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Throws an {@link OperationTimeoutException} if the deadline of the
+     * current thread has passed.
+     *
+     * @throws OperationTimeoutException
+     *             if the deadline has passed.
+     */
+    public static void checkExpired() {
+        if (isExpired()) {
+            throw new OperationTimeoutException("Operation deadline exceeded");
+        }
+    }
+}
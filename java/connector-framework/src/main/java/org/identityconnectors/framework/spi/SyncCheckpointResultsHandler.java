@@ -0,0 +1,48 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.spi;
+
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+
+/**
+ * A SyncCheckpointResultsHandler is a Callback interface that an application
+ * implements in order to be told, while
+ * {@link org.identityconnectors.framework.api.operations.SyncApiOp} is
+ * running, how far the sync could be resumed from.
+ *
+ * @since 1.4.4
+ */
+public interface SyncCheckpointResultsHandler extends SyncResultsHandler {
+
+    /**
+     * Invoked periodically during the sync once all the deltas up to the
+     * checkpoint have been handled.
+     *
+     * @param checkpoint
+     *            The token a sync can be resumed from without missing any
+     *            change.
+     */
+    public void handleCheckpoint(SyncToken checkpoint);
+
+}
@@ -0,0 +1,64 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.spi.operations;
+
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResultsHandler;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+
+/**
+ * Executes several creates, updates and deletes at once, for resources with
+ * native bulk support such as LDAP or SCIM bulk requests and JDBC batches.
+ * <p>
+ * Connectors without this operation still support
+ * {@link org.identityconnectors.framework.api.operations.BatchApiOp}, the
+ * framework then calls {@link CreateOp}, {@link UpdateOp} and {@link DeleteOp}
+ * for each operation.
+ *
+ * @since 1.4.4
+ */
+public interface BatchOp extends SPIOperation {
+
+    /**
+     * Executes the operations of the batch.
+     * <p>
+     * The connector must report exactly one result per operation, with the
+     * index of the operation in the list. A failed operation is reported with
+     * its exception rather than thrown, an exception thrown by the connector
+     * ends the batch. The connector must stop when the handler returns false.
+     *
+     * @param operations
+     *            the operations, with normalized attributes and uids. Will
+     *            never be null.
+     * @param handler
+     *            receives the result of each operation. Will never be null.
+     * @param options
+     *            additional options that impact the way the operations are
+     *            run. Will never be null.
+     */
+    void executeBatch(List<BatchOperation> operations, BatchResultsHandler handler,
+            OperationOptions options);
+}
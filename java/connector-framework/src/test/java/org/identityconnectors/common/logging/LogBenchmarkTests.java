@@ -0,0 +1,112 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.common.logging;
+
+import static org.testng.Assert.assertTrue;
+
+import org.identityconnectors.common.logging.Log.Level;
+import org.testng.Reporter;
+import org.testng.annotations.Test;
+
+/**
+ * Rough comparison of the cost of a debug log statement through {@link Log},
+ * with debug on and off, for a provider whose level checks are cached and for
+ * one whose level checks are not. The benchmark is in the "benchmark" group,
+ * which the default build leaves out.
+ */
+public class LogBenchmarkTests {
+
+    private static final int ITERATIONS = 200000;
+
+    /**
+     * Provider with a costly level check and no output.
+     */
+    public static class SlowLevelLogSpi implements LogSpi {
+
+        volatile boolean debug;
+
+        volatile int calls;
+
+        @Override
+        public void log(Class<?> clazz, String method, Level level, String message, Throwable ex) {
+        }
+
+        @Override
+        public void log(Class<?> clazz, StackTraceElement caller, Level level, String message, Throwable ex) {
+        }
+
+        @Override
+        public boolean isLoggable(Class<?> clazz, Level level) {
+            calls++;
+            // simulate a logger lookup by name
+            return clazz.getName().hashCode() != 0 && (debug || !Level.OK.equals(level));
+        }
+
+        @Override
+        public boolean needToInferCaller(Class<?> clazz, Level level) {
+            return Level.OK.equals(level) && debug;
+        }
+    }
+
+    public static class CachedSlowLevelLogSpi extends SlowLevelLogSpi implements LevelCachingLogSpi {
+    }
+
+    @Test
+    public void testLevelChecksCached() {
+        SlowLevelLogSpi spi = new CachedSlowLevelLogSpi();
+        Log log = Log.getLog(LogBenchmarkTests.class, spi);
+        for (boolean debug : new boolean[] { false, true }) {
+            spi.debug = debug;
+            Log.levelsChanged();
+            spi.calls = 0;
+            run(log, 1000);
+            assertTrue(spi.calls < 1000);
+        }
+    }
+
+    @Test(groups = "benchmark")
+    public void benchmarkDebugOnAndOff() {
+        for (SlowLevelLogSpi spi : new SlowLevelLogSpi[] { new SlowLevelLogSpi(), new CachedSlowLevelLogSpi() }) {
+            Log log = Log.getLog(LogBenchmarkTests.class, spi);
+            for (boolean debug : new boolean[] { false, true }) {
+                spi.debug = debug;
+                Log.levelsChanged();
+                // warm up
+                run(log, ITERATIONS / 10);
+                spi.calls = 0;
+                long start = System.nanoTime();
+                run(log, ITERATIONS);
+                long elapsed = System.nanoTime() - start;
+                Reporter.log(String.format("%s debug=%s: %d ns/op, %d level checks",
+                        spi.getClass().getSimpleName(), debug, elapsed / ITERATIONS, spi.calls));
+            }
+        }
+    }
+
+    private static void run(final Log log, final int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            log.log(LogBenchmarkTests.class, "run", Level.OK, null, "Handle: {0}", i);
+            log.ok("Infer: {0}", i);
+        }
+    }
+}
@@ -305,6 +305,57 @@ public class LogTests {
         }
     }
 
+    public static class MockLevelCachingLogSpi extends MockLogSpi implements LevelCachingLogSpi {
+        public int _isloggableCalls = 0;
+
+        @Override
+        public boolean isLoggable(Class<?> clazz, Level level) {
+            _isloggableCalls++;
+            return super.isLoggable(clazz, level);
+        }
+    }
+
+    @Test
+    public void checkLevelCache() {
+        MockLevelCachingLogSpi spi = new MockLevelCachingLogSpi();
+        Log log = Log.getLog(String.class, spi);
+        spi._isloggable = false;
+        assertFalse(log.isOk());
+        int calls = spi._isloggableCalls;
+        // levels are cached..
+        spi._isloggable = true;
+        for (int i = 0; i < 100; i++) {
+            assertFalse(log.isOk());
+            assertFalse(log.isError());
+        }
+        assertEquals(spi._isloggableCalls, calls);
+        // until the levels are reported as changed
+        Log.levelsChanged();
+        assertTrue(log.isOk());
+        assertTrue(spi._isloggableCalls > calls);
+    }
+
+    @Test
+    public void checkDeferredFormatting() {
+        final Object arg = new Object() {
+
+            @Override
+            public String toString() {
+                throw new AssertionError("Must not be formatted");
+            }
+        };
+        MockLogSpi spi = new MockLogSpi();
+        Log log = Log.getLog(String.class, spi);
+        spi._isloggable = false;
+        log.log(Integer.class, "method", Log.Level.OK, null, "Enter: {0}", arg);
+        assertNull(spi._message);
+        spi._isloggable = true;
+        log.log(Integer.class, "method", Log.Level.OK, null, "Enter: {0}", "arg");
+        assertEquals(spi._message, "Enter: arg");
+        assertEquals(spi._methodName, "method");
+        assertEquals(spi._class, Integer.class);
+    }
+
     @Test(expectedExceptions = IllegalArgumentException.class)
     public void checkGetLog() {
         Log.getLog(MockLogSpi.class);
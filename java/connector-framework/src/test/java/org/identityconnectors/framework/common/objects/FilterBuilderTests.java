@@ -30,6 +30,7 @@ import static org.testng.Assert.assertTrue;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
 import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
 import org.testng.annotations.Test;
 
 public class FilterBuilderTests {
@@ -222,6 +223,10 @@ public class FilterBuilderTests {
         assertTrue(filter.accept(null));
         filter = FilterBuilder.or(new FalseFilter(), new FalseFilter());
         assertFalse(filter.accept(null));
+        // the right side of a wide or is still an or
+        filter = FilterBuilder.or(new FalseFilter(), new FalseFilter(), new TrueFilter());
+        assertTrue(filter.accept(null));
+        assertTrue(((OrFilter) filter).getRight().accept(null));
     }
 
     @Test
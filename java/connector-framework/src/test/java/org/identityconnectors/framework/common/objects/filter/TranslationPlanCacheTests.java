@@ -0,0 +1,256 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2018 ConnId. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.common.objects.filter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TranslationPlanCacheTests {
+
+    /**
+     * Supports And, Equals and StartsWith only, counting the created
+     * expressions.
+     */
+    private static class CountingTranslator extends AbstractFilterTranslator<String> {
+
+        private final Object planKey;
+
+        private int created;
+
+        CountingTranslator(Object planKey) {
+            this.planKey = planKey;
+        }
+
+        @Override
+        protected Object getTranslationPlanKey() {
+            return planKey;
+        }
+
+        @Override
+        protected String createAndExpression(String leftExpression, String rightExpression) {
+            created++;
+            return "(& " + leftExpression + " " + rightExpression + ")";
+        }
+
+        @Override
+        protected String createEqualsExpression(EqualsFilter filter, boolean not) {
+            created++;
+            return not("(= " + filter.getName() + " "
+                    + filter.getAttribute().getValue().get(0) + ")", not);
+        }
+
+        @Override
+        protected String createStartsWithExpression(StartsWithFilter filter, boolean not) {
+            created++;
+            return not("(^ " + filter.getName() + " " + filter.getValue() + ")", not);
+        }
+
+        private String not(String expr, boolean not) {
+            return not ? "(! " + expr + ")" : expr;
+        }
+    }
+
+    private int maxSize;
+
+    @BeforeMethod
+    public void setUp() {
+        maxSize = TranslationPlanCache.getMaxSize();
+        TranslationPlanCache.clear();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        TranslationPlanCache.setMaxSize(maxSize);
+        TranslationPlanCache.clear();
+    }
+
+    private static Filter newFilter(String value) {
+        // (uid = v or mail ^ v) and not (status = v or desc ends with v)
+        return FilterBuilder.and(FilterBuilder.or(
+                FilterBuilder.equalTo(AttributeBuilder.build("uid", value)),
+                FilterBuilder.startsWith(AttributeBuilder.build("mail", value))),
+                FilterBuilder.not(FilterBuilder.or(
+                        FilterBuilder.equalTo(AttributeBuilder.build("status", value)),
+                        FilterBuilder.endsWith(AttributeBuilder.build("desc", value)))));
+    }
+
+    @Test
+    public void testSameTranslation() {
+        CountingTranslator first = new CountingTranslator("key");
+        List<String> expected = new CountingTranslator(null).translate(newFilter("x"));
+        assertEquals(first.translate(newFilter("x")), expected);
+        assertEquals(TranslationPlanCache.getMisses(), 1);
+
+        CountingTranslator second = new CountingTranslator("key");
+        CountingTranslator uncached = new CountingTranslator(null);
+        List<String> translated = second.translate(newFilter("y"));
+        assertEquals(translated, uncached.translate(newFilter("y")));
+        assertEquals(translated, Arrays.asList("(& (= uid y) (! (= status y)))",
+                "(& (^ mail y) (! (= status y)))"));
+        // only the expressions of the query are created
+        assertTrue(second.created < uncached.created);
+        assertEquals(TranslationPlanCache.getHits(), 1);
+        assertEquals(TranslationPlanCache.getHitRatio(), 0.5);
+    }
+
+    @Test
+    public void testKeys() {
+        new CountingTranslator("key").translate(newFilter("x"));
+        new CountingTranslator("other").translate(newFilter("x"));
+        new CountingTranslator(null).translate(newFilter("x"));
+        // other attributes, another shape
+        new CountingTranslator("key").translate(FilterBuilder.equalTo(AttributeBuilder.build(
+                "uid", "x")));
+        new CountingTranslator("key").translate(FilterBuilder.equalTo(AttributeBuilder.build(
+                "mail", "x")));
+        assertEquals(TranslationPlanCache.getHits(), 0);
+        assertEquals(TranslationPlanCache.size(), 4);
+    }
+
+    @Test
+    public void testEverything() {
+        Filter filter = FilterBuilder.endsWith(AttributeBuilder.build("desc", "x"));
+        assertEquals(new CountingTranslator("key").translate(filter), Collections.emptyList());
+        CountingTranslator translator = new CountingTranslator("key");
+        assertEquals(translator.translate(filter), Collections.emptyList());
+        assertEquals(translator.created, 0);
+        assertEquals(TranslationPlanCache.getHits(), 1);
+    }
+
+    @Test
+    public void testRepeatedLeaf() {
+        Filter leaf = FilterBuilder.equalTo(AttributeBuilder.build("uid", "x"));
+        Filter filter = FilterBuilder.and(leaf, FilterBuilder.not(leaf));
+        assertEquals(new CountingTranslator("key").translate(filter),
+                Arrays.asList("(& (= uid x) (! (= uid x)))"));
+        assertEquals(TranslationPlanCache.size(), 0);
+    }
+
+    @Test
+    public void testMaxSize() {
+        TranslationPlanCache.setMaxSize(2);
+        for (String name : new String[] { "a", "b", "c", "a" }) {
+            new CountingTranslator("key").translate(FilterBuilder.equalTo(AttributeBuilder
+                    .build(name, "x")));
+        }
+        assertEquals(TranslationPlanCache.size(), 2);
+        assertEquals(TranslationPlanCache.getMisses(), 4);
+        TranslationPlanCache.setMaxSize(0);
+        assertEquals(TranslationPlanCache.size(), 0);
+        assertEquals(new CountingTranslator("key").translate(newFilter("x")).size(), 2);
+        assertEquals(TranslationPlanCache.size(), 0);
+    }
+
+    /**
+     * Loads its own copy of {@link CountingTranslator}, as a connector bundle
+     * would.
+     */
+    private static class TranslatorClassLoader extends ClassLoader {
+
+        private static final String NAME = CountingTranslator.class.getName();
+
+        TranslatorClassLoader() {
+            super(TranslationPlanCacheTests.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!NAME.equals(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (this) {
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null) {
+                    byte[] bytes = readClass(name);
+                    clazz = defineClass(name, bytes, 0, bytes.length);
+                }
+                return clazz;
+            }
+        }
+
+        private byte[] readClass(String name) throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    out.write(buffer, 0, read);
+                }
+                in.close();
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> translateInLoader(ClassLoader loader, Filter filter)
+            throws Exception {
+        Class<?> clazz = loader.loadClass(CountingTranslator.class.getName());
+        assertNotSame(clazz, CountingTranslator.class);
+        Constructor<?> constructor = clazz.getDeclaredConstructor(Object.class);
+        constructor.setAccessible(true);
+        return ((AbstractFilterTranslator<String>) constructor.newInstance("key"))
+                .translate(filter);
+    }
+
+    @Test
+    public void testClassLoaders() throws Exception {
+        List<String> expected = new CountingTranslator("key").translate(newFilter("x"));
+        ClassLoader loader = new TranslatorClassLoader();
+        assertEquals(translateInLoader(loader, newFilter("x")), expected);
+        // the same translator in another class loader has its own plans
+        assertEquals(TranslationPlanCache.getMisses(), 2);
+        assertEquals(TranslationPlanCache.size(), 2);
+        assertEquals(translateInLoader(loader, newFilter("y")),
+                new CountingTranslator(null).translate(newFilter("y")));
+        assertEquals(TranslationPlanCache.getHits(), 1);
+
+        // the cache does not keep the class loader alive
+        WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(loader);
+        loader = null;
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(reference.get());
+        assertEquals(TranslationPlanCache.size(), 1);
+    }
+}
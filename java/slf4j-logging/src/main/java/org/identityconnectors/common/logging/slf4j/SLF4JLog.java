@@ -23,7 +23,11 @@
 
 package org.identityconnectors.common.logging.slf4j;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.LevelCachingLogSpi;
 import org.identityconnectors.common.logging.Log.Level;
 import org.identityconnectors.common.logging.LogSpi;
 import org.slf4j.Logger;
@@ -36,12 +40,14 @@ import org.slf4j.spi.LocationAwareLogger;
  * @author Laszlo Hordos
  * @since 1.1
  */
-public class SLF4JLog implements LogSpi {
+public class SLF4JLog implements LevelCachingLogSpi {
 
     private static final String CLASS = "Class: ";
     private static final String METHOD = "Method: ";
     private static final String MESSAGE = "Message: ";
 
+    private final ConcurrentMap<String, Logger> loggers = new ConcurrentHashMap<String, Logger>(1);
+
     /**
      * Uses the SLF4J logger to log the message.
      *
@@ -50,8 +56,7 @@ public class SLF4JLog implements LogSpi {
      */
     public void log(final Class<?> clazz, final String methodName, final Level level,
                     final String message, final Throwable ex) {
-        final String clazzName = clazz.getName();
-        final Logger logger = LoggerFactory.getLogger(clazzName);
+        final Logger logger = getLogger(clazz);
 
         if (logger instanceof LocationAwareLogger) {
             if (StringUtil.isBlank(methodName)) {
@@ -112,7 +117,7 @@ public class SLF4JLog implements LogSpi {
      * logging.
      */
     public boolean isLoggable(Class<?> clazz, Level level) {
-        final Logger logger = LoggerFactory.getLogger(clazz);
+        final Logger logger = getLogger(clazz);
         boolean ret = true;
         if (Level.OK.equals(level)) {
             ret = logger.isDebugEnabled();
@@ -130,7 +135,18 @@ public class SLF4JLog implements LogSpi {
      * The caller is extracted only if the Level is OK (Debug).
      */
     public boolean needToInferCaller(Class<?> clazz, Level level) {
-        return LoggerFactory.getLogger(clazz).isDebugEnabled();
+        return Level.OK.equals(level) && getLogger(clazz).isDebugEnabled();
+    }
+
+    private Logger getLogger(final Class<?> clazz) {
+        final String clazzName = clazz.getName();
+        Logger logger = loggers.get(clazzName);
+        if (logger == null) {
+            logger = LoggerFactory.getLogger(clazzName);
+            Logger old = loggers.putIfAbsent(clazzName, logger);
+            logger = old != null ? old : logger;
+        }
+        return logger;
     }
 
     private int getLogLevel(Level level) {
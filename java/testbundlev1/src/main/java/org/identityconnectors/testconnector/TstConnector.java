@@ -23,8 +23,11 @@
  */
 package org.identityconnectors.testconnector;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
 import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.AttributeInfoBuilder;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
@@ -33,6 +36,7 @@ import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.ObjectClassInfoBuilder;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.ResultsHandlerUtil;
 import org.identityconnectors.framework.common.objects.Schema;
 import org.identityconnectors.framework.common.objects.SchemaBuilder;
 import org.identityconnectors.framework.common.objects.SearchResult;
@@ -138,6 +142,7 @@ public class TstConnector implements CreateOp, PoolableConnector, SchemaOp, Sear
     public void executeQuery(ObjectClass objectClass, String query, ResultsHandler handler, OperationOptions options) {
         checkClassLoader();
         int remaining = _config.getNumResults();
+        List<ConnectorObject> batch = new ArrayList<ConnectorObject>();
         for (int i = 0; i < _config.getNumResults(); i++ ) {
             Integer delay = (Integer)options.getOptions().get("delay");
             if ( delay != null ) {
@@ -153,7 +158,19 @@ public class TstConnector implements CreateOp, PoolableConnector, SchemaOp, Sear
             }
 
             ConnectorObject rv = builder.build();
-            if (handler.handle(rv)) {
+            if (_config.getBatchSize() > 0) {
+                // hand the objects over a page at a time
+                batch.add(rv);
+                if (batch.size() < _config.getBatchSize()
+                        && i < _config.getNumResults() - 1) {
+                    continue;
+                }
+                if (!ResultsHandlerUtil.handleBatch(handler, batch)) {
+                    break;
+                }
+                remaining -= batch.size();
+                batch = new ArrayList<ConnectorObject>();
+            } else if (handler.handle(rv)) {
                 remaining--;
             } else {
                 break;
@@ -169,8 +186,15 @@ public class TstConnector implements CreateOp, PoolableConnector, SchemaOp, Sear
                      SyncResultsHandler handler,
                      OperationOptions options) {
         checkClassLoader();
-        int remaining = _config.getNumResults();
-        for (int i = 0; i < _config.getNumResults(); i++ ) {
+        // resume after the delta of the token
+        int start = token != null && token.getValue() instanceof Integer
+                ? (Integer) token.getValue() + 1 : 0;
+        int remaining = _config.getNumResults() - start;
+        List<SyncDelta> batch = new ArrayList<SyncDelta>();
+        for (int i = start; i < _config.getNumResults(); i++ ) {
+            if (token == null && i > 0 && i == _config.getFailSyncAfter()) {
+                throw new ConnectorIOException("Sync broken after " + i + " deltas");
+            }
             ConnectorObjectBuilder obuilder =
                 new ConnectorObjectBuilder();
             obuilder.setUid(Integer.toString(i));
@@ -181,9 +205,22 @@ public class TstConnector implements CreateOp, PoolableConnector, SchemaOp, Sear
                 new SyncDeltaBuilder();
             builder.setObject(obuilder.build());
             builder.setDeltaType(SyncDeltaType.CREATE_OR_UPDATE);
-            builder.setToken(new SyncToken("mytoken"));
+            builder.setToken(new SyncToken(i));
 
             SyncDelta rv = builder.build();
+            if (_config.getBatchSize() > 0) {
+                batch.add(rv);
+                if (batch.size() < _config.getBatchSize()
+                        && i < _config.getNumResults() - 1) {
+                    continue;
+                }
+                if (!ResultsHandlerUtil.handleBatch(handler, batch)) {
+                    break;
+                }
+                remaining -= batch.size();
+                batch = new ArrayList<SyncDelta>();
+                continue;
+            }
             if (!handler.handle(rv)) {
                 break;
             }
@@ -37,6 +37,10 @@ public class TstConnectorConfig extends AbstractConfiguration {
 
     private boolean failValidation;
 
+    private int failSyncAfter;
+
+    private int batchSize;
+
     private boolean resetConnectionCount;
 
     public TstConnectorConfig() {
@@ -95,6 +99,26 @@ public class TstConnectorConfig extends AbstractConfiguration {
         failValidation = fail;
     }
 
+    public int getFailSyncAfter() {
+        TstConnector.checkClassLoader();
+        return failSyncAfter;
+    }
+
+    public void setFailSyncAfter(int failSyncAfter) {
+        TstConnector.checkClassLoader();
+        this.failSyncAfter = failSyncAfter;
+    }
+
+    public int getBatchSize() {
+        TstConnector.checkClassLoader();
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        TstConnector.checkClassLoader();
+        this.batchSize = batchSize;
+    }
+
     @Override
     public void validate() {
         TstConnector.checkClassLoader();